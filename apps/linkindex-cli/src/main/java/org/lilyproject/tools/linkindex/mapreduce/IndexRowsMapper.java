@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.tools.linkindex.mapreduce;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.lilyproject.linkindex.FieldedLink;
+import org.lilyproject.linkindex.LinkIndex;
+import org.lilyproject.repository.api.AbsoluteRecordId;
+import org.lilyproject.repository.api.SchemaId;
+
+/**
+ * Produces the rows of either the forward or the backward link index table, to be written as HFiles.
+ */
+public class IndexRowsMapper extends LinkExtractionMapper<Put> {
+
+    /**
+     * Config key for the index to produce the rows of: {@link LinkIndex#FORWARD_INDEX}
+     * or {@link LinkIndex#BACKWARD_INDEX}.
+     */
+    public static final String INDEX_NAME = "lily.linkindex.builder.index";
+
+    private boolean forward;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        forward = LinkIndex.FORWARD_INDEX.equals(context.getConfiguration().get(INDEX_NAME));
+    }
+
+    @Override
+    protected void write(AbsoluteRecordId sourceRecord, SchemaId vtag, Set<FieldedLink> links, Context context)
+            throws IOException, InterruptedException {
+        List<Put> puts = forward ?
+                getLinkIndex().createForwardIndexPuts(sourceRecord, vtag, links) :
+                getLinkIndex().createBackwardIndexPuts(sourceRecord, vtag, links);
+        for (Put put : puts) {
+            context.write(new ImmutableBytesWritable(put.getRow()), put);
+        }
+    }
+}
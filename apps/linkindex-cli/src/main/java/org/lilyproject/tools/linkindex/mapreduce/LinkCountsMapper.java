@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.tools.linkindex.mapreduce;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.LongWritable;
+import org.lilyproject.linkindex.FieldedLink;
+import org.lilyproject.linkindex.LinkIndex;
+import org.lilyproject.repository.api.AbsoluteRecordId;
+import org.lilyproject.repository.api.SchemaId;
+
+/**
+ * Emits a one for each link, keyed on the row of the {@link LinkIndex#COUNTS_TABLE} followed by the source field,
+ * to be summed by the {@link LinkCountsReducer}.
+ */
+public class LinkCountsMapper extends LinkExtractionMapper<LongWritable> {
+    private static final LongWritable ONE = new LongWritable(1L);
+
+    @Override
+    protected void write(AbsoluteRecordId sourceRecord, SchemaId vtag, Set<FieldedLink> links, Context context)
+            throws IOException, InterruptedException {
+        for (FieldedLink link : links) {
+            byte[] key = Bytes.add(LinkIndex.getCountsRow(link.getAbsoluteRecordId(), vtag),
+                    link.getFieldTypeId().getBytes());
+            context.write(new ImmutableBytesWritable(key), ONE);
+        }
+    }
+}
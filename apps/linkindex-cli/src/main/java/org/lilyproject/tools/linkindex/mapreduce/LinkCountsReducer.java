@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.tools.linkindex.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableReducer;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.LongWritable;
+import org.lilyproject.linkindex.LinkIndex;
+
+/**
+ * Sums the link counts produced by the {@link LinkCountsMapper} and writes them to the
+ * {@link LinkIndex#COUNTS_TABLE}, replacing the existing counts.
+ */
+public class LinkCountsReducer extends TableReducer<ImmutableBytesWritable, LongWritable, ImmutableBytesWritable> {
+    private static final int SCHEMA_ID_LENGTH = 16; // see SchemaIdImpl
+
+    @Override
+    protected void reduce(ImmutableBytesWritable key, Iterable<LongWritable> values, Context context)
+            throws IOException, InterruptedException {
+        long count = 0;
+        for (LongWritable value : values) {
+            count += value.get();
+        }
+
+        // The key is the counts row followed by the source field, which has a fixed length
+        byte[] bytes = key.copyBytes();
+        byte[] row = Bytes.head(bytes, bytes.length - SCHEMA_ID_LENGTH);
+        byte[] sourceField = Bytes.tail(bytes, SCHEMA_ID_LENGTH);
+
+        Put put = new Put(row);
+        // Encoded the same way as the increments done by the link index
+        put.add(LinkIndex.COUNTS_FAMILY, sourceField, Bytes.toBytes(count));
+        context.write(new ImmutableBytesWritable(row), put);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.tools.linkindex.mapreduce;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.client.LilyClient;
+import org.lilyproject.hbaseindex.IndexManager;
+import org.lilyproject.hbaseindex.IndexNotFoundException;
+import org.lilyproject.linkindex.FieldedLink;
+import org.lilyproject.linkindex.LinkCollector;
+import org.lilyproject.linkindex.LinkIndex;
+import org.lilyproject.linkindex.RecordLinkExtractor;
+import org.lilyproject.mapreduce.IdRecordMapper;
+import org.lilyproject.mapreduce.IdRecordWritable;
+import org.lilyproject.mapreduce.LilyMapReduceUtil;
+import org.lilyproject.mapreduce.RecordIdWritable;
+import org.lilyproject.repository.api.AbsoluteRecordId;
+import org.lilyproject.repository.api.IdRecord;
+import org.lilyproject.repository.api.LRepository;
+import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.RecordNotFoundException;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.VersionNotFoundException;
+import org.lilyproject.util.hbase.RepoAndTableUtil;
+import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.repo.VTaggedRecord;
+
+/**
+ * Base class of the mappers of the {@link LinkIndexBuilder}: extracts the links of each record for each of its
+ * vtags, in the same way as the {@link org.lilyproject.linkindex.LinkIndexUpdater} does.
+ */
+abstract class LinkExtractionMapper<VALUEOUT> extends IdRecordMapper<ImmutableBytesWritable, VALUEOUT> {
+    private final Log log = LogFactory.getLog(getClass());
+
+    private LilyClient lilyClient;
+    private LRepository repository;
+    private LTable table;
+    private String tableName;
+    private LinkIndex linkIndex;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        lilyClient = LilyMapReduceUtil.getLilyClient(conf);
+        try {
+            repository = lilyClient.getRepository(conf.get(LilyMapReduceUtil.REPOSITORY_NAME));
+            // Each split covers one record table
+            String hbaseTableName = Bytes.toString(((TableSplit) context.getInputSplit()).getTableName());
+            tableName = RepoAndTableUtil.extractLilyTableName(repository.getRepositoryName(), hbaseTableName);
+            table = repository.getTable(tableName);
+
+            linkIndex = new LinkIndex(new IndexManager(HBaseConfiguration.create(conf)), lilyClient);
+        } catch (RepositoryException e) {
+            throw new IOException("Error setting up the repository", e);
+        } catch (IndexNotFoundException e) {
+            throw new IOException("Error setting up the link index", e);
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        Closer.close(linkIndex);
+        Closer.close(lilyClient);
+    }
+
+    @Override
+    protected void map(RecordIdWritable key, IdRecordWritable value, Context context)
+            throws IOException, InterruptedException {
+        IdRecord record = value.getRecord();
+        AbsoluteRecordId absRecordId = repository.getIdGenerator().newAbsoluteRecordId(tableName, record.getId());
+
+        try {
+            VTaggedRecord vtRecord = new VTaggedRecord(record, null, table, repository);
+            // Since one version might have multiple vtags, the links are extracted only once per version
+            for (Map.Entry<Long, Set<SchemaId>> entry : vtRecord.getVTagsByVersion().entrySet()) {
+                Set<FieldedLink> links = extractLinks(vtRecord, entry.getKey(), context);
+                if (links.isEmpty()) {
+                    continue;
+                }
+                for (SchemaId vtag : entry.getValue()) {
+                    write(absRecordId, vtag, links, context);
+                    context.getCounter(LinkIndexBuilderCounters.LINKS).increment(links.size());
+                }
+            }
+        } catch (RepositoryException e) {
+            throw new IOException("Error reading the vtags of record " + absRecordId, e);
+        }
+
+        context.getCounter(LinkIndexBuilderCounters.RECORDS).increment(1L);
+    }
+
+    private Set<FieldedLink> extractLinks(VTaggedRecord vtRecord, long version, Context context)
+            throws InterruptedException {
+        try {
+            IdRecord versionRecord;
+            try {
+                versionRecord = vtRecord.getIdRecord(version);
+            } catch (RecordNotFoundException e) {
+                // vtag points to a non-existing record
+                return Collections.emptySet();
+            }
+
+            LinkCollector collector = new LinkCollector(repository.getIdGenerator());
+            RecordLinkExtractor.extract(versionRecord, collector, repository);
+            return collector.getLinks();
+        } catch (VersionNotFoundException e) {
+            // A vtag pointing to a non-existing version, nothing unusual.
+            return Collections.emptySet();
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            // Like the link index updater, skip the record rather than failing the whole build
+            log.error("Error extracting links from record " + vtRecord.getId() + ", version " + version, e);
+            context.getCounter(LinkIndexBuilderCounters.EXTRACTION_ERRORS).increment(1L);
+            return Collections.emptySet();
+        }
+    }
+
+    protected LinkIndex getLinkIndex() {
+        return linkIndex;
+    }
+
+    /**
+     * Writes the output for the links of a record in a vtag, links is never empty.
+     */
+    protected abstract void write(AbsoluteRecordId sourceRecord, SchemaId vtag, Set<FieldedLink> links,
+            Context context) throws IOException, InterruptedException;
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.tools.linkindex.mapreduce;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.ngdata.sep.SepModel;
+import com.ngdata.sep.impl.SepModelImpl;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.HFileOutputFormat;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.regionserver.metrics.SchemaMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.reduce.LongSumReducer;
+import org.lilyproject.cli.BaseZkCliTool;
+import org.lilyproject.client.LilyClient;
+import org.lilyproject.hbaseindex.IndexManager;
+import org.lilyproject.linkindex.LinkIndex;
+import org.lilyproject.linkindex.LinkIndexUpdater;
+import org.lilyproject.mapreduce.LilyMapReduceUtil;
+import org.lilyproject.repository.api.LRepository;
+import org.lilyproject.repository.api.RecordScan;
+import org.lilyproject.sep.ZooKeeperItfAdapter;
+import org.lilyproject.util.Version;
+import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.zookeeper.ZkUtil;
+import org.lilyproject.util.zookeeper.ZooKeeperItf;
+
+/**
+ * Builds the link index from scratch using MapReduce, for records which did not pass through the
+ * {@link org.lilyproject.linkindex.LinkIndexUpdater}, such as those loaded by the bulk import tool.
+ *
+ * <p>The links are extracted from all records and written as HFiles, which are then bulk loaded into the
+ * forward and backward index tables. The forward table is built first, so that, as when updating the link index,
+ * no entries end up in the backward table which could not be found via the forward table. Finally the
+ * link counts are written to the counts table, replacing the existing counts.</p>
+ *
+ * <p>The rows are added to the existing index tables: links which no longer exist are not removed, so the
+ * tables should be empty (truncated) before running this tool.</p>
+ *
+ * <p>With the counts-only option, only the counts table is rebuilt: it is emptied by the tool and then
+ * filled with the counts of the links found in the records, leaving the forward and backward tables as they
+ * are. This is a required step when upgrading a link index which predates the counts table, since the link
+ * index updates only maintain the counts of the links they add or remove.</p>
+ *
+ * <p>The link index updater must not run while this tool runs: the counts are written as absolute values,
+ * which would overwrite the increments done by the updater meanwhile, and changes to links made during the
+ * scan of the records would be missed. Therefore the tool refuses to run while the SEP subscription of the
+ * {@link org.lilyproject.linkindex.LinkIndexUpdater} exists. It is removed by disabling the link index in
+ * linkindex.xml and restarting the Lily servers. Since record changes are then not queued for the updater
+ * either, records should not be updated until the link index is enabled again after the rebuild.</p>
+ */
+public class LinkIndexBuilder extends BaseZkCliTool {
+    private Option tablesOption;
+    private Option countsOnlyOption;
+
+    private LilyClient lilyClient;
+
+    private ZooKeeperItf zk;
+
+    @Override
+    protected String getCmdName() {
+        return "lily-build-linkindex";
+    }
+
+    public static void main(String[] args) {
+        new LinkIndexBuilder().start(args);
+    }
+
+    @Override
+    protected String getVersion() {
+        return Version.readVersion("org.lilyproject", "lily-linkindex-cli");
+    }
+
+    @Override
+    @SuppressWarnings("static-access")
+    public List<Option> getOptions() {
+        List<Option> options = super.getOptions();
+
+        tablesOption = OptionBuilder
+                .withArgName("tables")
+                .hasArg()
+                .withDescription("Comma-separated list of the repository tables of which to index the links " +
+                        "(default: all tables)")
+                .withLongOpt("tables")
+                .create("t");
+        options.add(tablesOption);
+
+        countsOnlyOption = OptionBuilder
+                .withDescription("Only rebuild the referrer counts, leaving the forward and backward index tables " +
+                        "untouched. The counts table is emptied first.")
+                .withLongOpt("counts-only")
+                .create("c");
+        options.add(countsOnlyOption);
+
+        return options;
+    }
+
+    @Override
+    public int run(CommandLine cmd) throws Exception {
+        int result = super.run(cmd);
+        if (result != 0) {
+            return result;
+        }
+
+        Configuration conf = HBaseConfiguration.create();
+        conf.set("hbase.zookeeper.quorum", zkConnectionString);
+
+        zk = ZkUtil.connect(zkConnectionString, zkSessionTimeout);
+        SepModel sepModel = new SepModelImpl(new ZooKeeperItfAdapter(zk), conf);
+        if (sepModel.hasSubscription(LinkIndexUpdater.SUBSCRIPTION_NAME)) {
+            System.err.println("The link index updater is enabled: its updates would conflict with the rebuild.");
+            System.err.println("Disable the link index in linkindex.xml and restart the Lily servers, which removes");
+            System.err.println("the " + LinkIndexUpdater.SUBSCRIPTION_NAME
+                    + " subscription, before running this tool.");
+            System.err.println("Avoid updating records until the link index is enabled again after the rebuild.");
+            return 1;
+        }
+
+        // The link index covers the records of the default repository
+        lilyClient = new LilyClient(zkConnectionString, 60000);
+        LRepository repository = lilyClient.getDefaultRepository();
+
+        List<String> tables = null;
+        if (cmd.hasOption(tablesOption.getOpt())) {
+            tables = Arrays.asList(cmd.getOptionValue(tablesOption.getOpt()).split(","));
+        }
+
+        // Creates the link index tables if they do not exist yet
+        Closer.close(new LinkIndex(new IndexManager(conf), lilyClient));
+
+        if (cmd.hasOption(countsOnlyOption.getOpt())) {
+            truncateCountsTable(conf);
+        } else {
+            if (!buildIndexTable(LinkIndex.FORWARD_INDEX, conf, repository, tables)) {
+                return 1;
+            }
+            if (!buildIndexTable(LinkIndex.BACKWARD_INDEX, conf, repository, tables)) {
+                return 1;
+            }
+        }
+        if (!buildCounts(conf, repository, tables)) {
+            return 1;
+        }
+
+        return 0;
+    }
+
+    @Override
+    protected void cleanup() {
+        Closer.close(lilyClient);
+        Closer.close(zk);
+        super.cleanup();
+    }
+
+    private boolean buildIndexTable(String indexName, Configuration conf, LRepository repository,
+            List<String> tables) throws Exception {
+        Job job = new Job(conf);
+        job.setJobName(getCmdName() + ": " + indexName);
+        job.setJarByClass(LinkIndexBuilder.class);
+        job.getConfiguration().set(IndexRowsMapper.INDEX_NAME, indexName);
+        LilyMapReduceUtil.initMapperJob(newScan(), true, zkConnectionString, repository, job, tables);
+        job.setMapperClass(IndexRowsMapper.class);
+        job.setMapOutputKeyClass(ImmutableBytesWritable.class);
+        job.setMapOutputValueClass(Put.class);
+        job.setOutputKeyClass(ImmutableBytesWritable.class);
+        job.setOutputValueClass(KeyValue.class);
+
+        Path hfileDir = new Path("/tmp/lily-linkindex-" + UUID.randomUUID());
+        HFileOutputFormat.setOutputPath(job, hfileDir);
+
+        HTable indexTable = new HTable(conf, indexName);
+        try {
+            // Sets up the sorting and partitioning of the rows over the regions of the index table
+            HFileOutputFormat.configureIncrementalLoad(job, indexTable);
+
+            System.out.println("Building " + indexName);
+            if (!job.waitForCompletion(true)) {
+                System.err.println("Building " + indexName + " failed");
+                return false;
+            }
+
+            SchemaMetrics.configureGlobally(conf);
+            new LoadIncrementalHFiles(conf).doBulkLoad(hfileDir, indexTable);
+        } finally {
+            Closer.close(indexTable);
+            FileSystem.get(conf).delete(hfileDir, true);
+        }
+        return true;
+    }
+
+    /**
+     * Removes all counts, so that no counts remain for links which no longer exist: the counts job only writes
+     * the counts of the links it finds.
+     */
+    private void truncateCountsTable(Configuration conf) throws IOException {
+        HBaseAdmin admin = new HBaseAdmin(conf);
+        try {
+            HTableDescriptor countsTableDescriptor = admin.getTableDescriptor(Bytes.toBytes(LinkIndex.COUNTS_TABLE));
+            System.out.println("Truncating " + LinkIndex.COUNTS_TABLE);
+            admin.disableTable(LinkIndex.COUNTS_TABLE);
+            admin.deleteTable(LinkIndex.COUNTS_TABLE);
+            admin.createTable(countsTableDescriptor);
+        } finally {
+            admin.close();
+        }
+    }
+
+    private boolean buildCounts(Configuration conf, LRepository repository, List<String> tables) throws Exception {
+        Job job = new Job(conf);
+        job.setJobName(getCmdName() + ": " + LinkIndex.COUNTS_TABLE);
+        job.setJarByClass(LinkIndexBuilder.class);
+        LilyMapReduceUtil.initMapperJob(newScan(), true, zkConnectionString, repository, job, tables);
+        job.setMapperClass(LinkCountsMapper.class);
+        job.setMapOutputKeyClass(ImmutableBytesWritable.class);
+        job.setMapOutputValueClass(LongWritable.class);
+        job.setCombinerClass(LongSumReducer.class);
+        TableMapReduceUtil.initTableReducerJob(LinkIndex.COUNTS_TABLE, LinkCountsReducer.class, job);
+
+        System.out.println("Building " + LinkIndex.COUNTS_TABLE);
+        if (!job.waitForCompletion(true)) {
+            System.err.println("Building " + LinkIndex.COUNTS_TABLE + " failed");
+            return false;
+        }
+        return true;
+    }
+
+    private RecordScan newScan() {
+        RecordScan scan = new RecordScan();
+        // A full scan would only push the frequently read blocks out of the block cache
+        scan.setCaching(100);
+        scan.setCacheBlocks(false);
+        return scan;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.tools.linkindex.mapreduce;
+
+/**
+ * Counters of the {@link LinkIndexBuilder} jobs.
+ */
+public enum LinkIndexBuilderCounters {
+
+    /**
+     * Number of records of which the links have been extracted.
+     */
+    RECORDS,
+
+    /**
+     * Number of links written, a link occurring in several vtags is counted once for each vtag.
+     */
+    LINKS,
+
+    /**
+     * Number of record versions which have been skipped because their links could not be extracted.
+     */
+    EXTRACTION_ERRORS
+}
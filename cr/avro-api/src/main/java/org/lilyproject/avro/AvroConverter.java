@@ -42,6 +42,7 @@ import org.lilyproject.repository.api.MutationCondition;
 import org.lilyproject.repository.api.QName;
 import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.RecordType;
 import org.lilyproject.repository.api.RemoteException;
 import org.lilyproject.repository.api.RepositoryException;
@@ -178,6 +179,46 @@ public class AvroConverter {
         return avroRecords;
     }
 
+    public AvroMutationResult convert(RecordMutationResult result, LRepository repository)
+            throws AvroRepositoryException, AvroInterruptedException, RepositoryException, InterruptedException {
+        AvroMutationResult avroResult = new AvroMutationResult();
+        if (result.getRecord() != null) {
+            avroResult.setRecord(convert(result.getRecord(), repository));
+        }
+        if (result.getException() != null) {
+            avroResult.setException(convert(result.getException()));
+        }
+        return avroResult;
+    }
+
+    public RecordMutationResult convert(AvroMutationResult avroResult, LRepository repository)
+            throws RepositoryException, InterruptedException {
+        if (avroResult.getException() != null) {
+            return RecordMutationResult.failure(convert(avroResult.getException()));
+        }
+        Record record = avroResult.getRecord() != null ? convertRecord(avroResult.getRecord(), repository) : null;
+        return RecordMutationResult.success(record);
+    }
+
+    public List<AvroMutationResult> convertMutationResults(List<RecordMutationResult> results,
+            LRepository repository)
+            throws AvroRepositoryException, AvroInterruptedException, RepositoryException, InterruptedException {
+        List<AvroMutationResult> avroResults = new ArrayList<AvroMutationResult>(results.size());
+        for (RecordMutationResult result : results) {
+            avroResults.add(convert(result, repository));
+        }
+        return avroResults;
+    }
+
+    public List<RecordMutationResult> convertAvroMutationResults(List<AvroMutationResult> avroResults,
+            LRepository repository) throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(avroResults.size());
+        for (AvroMutationResult avroResult : avroResults) {
+            results.add(convert(avroResult, repository));
+        }
+        return results;
+    }
+
 
     public FieldType convert(AvroFieldType avroFieldType, TypeManager typeManager)
             throws RepositoryException, InterruptedException {
@@ -703,6 +744,22 @@ public class AvroConverter {
         return repository.getIdGenerator().fromBytes(bytes);
     }
 
+    public List<ByteBuffer> convertRecordIds(Collection<RecordId> recordIds) {
+        List<ByteBuffer> avroRecordIds = new ArrayList<ByteBuffer>(recordIds.size());
+        for (RecordId recordId : recordIds) {
+            avroRecordIds.add(convert(recordId));
+        }
+        return avroRecordIds;
+    }
+
+    public List<RecordId> convertAvroRecordIdBytes(List<ByteBuffer> avroRecordIds, LRepository repository) {
+        List<RecordId> recordIds = new ArrayList<RecordId>(avroRecordIds.size());
+        for (ByteBuffer avroRecordId : avroRecordIds) {
+            recordIds.add(convertAvroRecordId(avroRecordId, repository));
+        }
+        return recordIds;
+    }
+
     public Set<RecordId> convertAvroRecordIds(List<String> avroRecordIds, LRepository repository) {
         Set<RecordId> recordIds = new HashSet<RecordId>();
         for (String avroRecordId : avroRecordIds) {
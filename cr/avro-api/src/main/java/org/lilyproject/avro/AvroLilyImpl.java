@@ -139,6 +139,82 @@ public class AvroLilyImpl implements AvroLily {
         }
     }
 
+    @Override
+    public List<AvroMutationResult> createBatch(AvroAuthzContext authzContext, List<ByteBuffer> records,
+            String repositoryName, String tableName) throws AvroRepositoryException, AvroInterruptedException {
+        try {
+            AuthorizationContextHolder.setCurrentContext(converter.convert(authzContext));
+            LRepository repository = repositoryManager.getRepository(repositoryName);
+            LTable table = repository.getTable(tableName);
+            return converter.convertMutationResults(
+                    table.create(converter.convertAvroRecords(records, repository)), repository);
+        } catch (RepositoryException e) {
+            throw converter.convert(e);
+        } catch (InterruptedException e) {
+            throw converter.convert(e);
+        } finally {
+            AuthorizationContextHolder.clearContext();
+        }
+    }
+
+    @Override
+    public List<AvroMutationResult> updateBatch(AvroAuthzContext authzContext, List<ByteBuffer> records,
+            String repositoryName, String tableName, boolean updateVersion, boolean useLatestRecordType)
+            throws AvroRepositoryException, AvroInterruptedException {
+        try {
+            AuthorizationContextHolder.setCurrentContext(converter.convert(authzContext));
+            LRepository repository = repositoryManager.getRepository(repositoryName);
+            LTable table = repository.getTable(tableName);
+            return converter.convertMutationResults(
+                    table.update(converter.convertAvroRecords(records, repository), updateVersion,
+                            useLatestRecordType), repository);
+        } catch (RepositoryException e) {
+            throw converter.convert(e);
+        } catch (InterruptedException e) {
+            throw converter.convert(e);
+        } finally {
+            AuthorizationContextHolder.clearContext();
+        }
+    }
+
+    @Override
+    public List<AvroMutationResult> createOrUpdateBatch(AvroAuthzContext authzContext, List<ByteBuffer> records,
+            String repositoryName, String tableName, boolean useLatestRecordType)
+            throws AvroRepositoryException, AvroInterruptedException {
+        try {
+            AuthorizationContextHolder.setCurrentContext(converter.convert(authzContext));
+            LRepository repository = repositoryManager.getRepository(repositoryName);
+            LTable table = repository.getTable(tableName);
+            return converter.convertMutationResults(
+                    table.createOrUpdate(converter.convertAvroRecords(records, repository), useLatestRecordType),
+                    repository);
+        } catch (RepositoryException e) {
+            throw converter.convert(e);
+        } catch (InterruptedException e) {
+            throw converter.convert(e);
+        } finally {
+            AuthorizationContextHolder.clearContext();
+        }
+    }
+
+    @Override
+    public List<AvroMutationResult> deleteBatch(AvroAuthzContext authzContext, List<ByteBuffer> recordIds,
+            String repositoryName, String tableName) throws AvroRepositoryException, AvroInterruptedException {
+        try {
+            AuthorizationContextHolder.setCurrentContext(converter.convert(authzContext));
+            LRepository repository = repositoryManager.getRepository(repositoryName);
+            LTable table = repository.getTable(tableName);
+            return converter.convertMutationResults(
+                    table.delete(converter.convertAvroRecordIdBytes(recordIds, repository)), repository);
+        } catch (RepositoryException e) {
+            throw converter.convert(e);
+        } catch (InterruptedException e) {
+            throw converter.convert(e);
+        } finally {
+            AuthorizationContextHolder.clearContext();
+        }
+    }
+
     // TODO since this is a pure-read method, the client should do it directly rather than going
     //      over to lily-server.
     @Override
@@ -121,6 +121,9 @@ public class BulkIngester implements Closeable {
             // we need an HBaseRepository for bulk access
             Configuration conf = HBaseConfiguration.create();
             conf.set("hbase.zookeeper.quorum", zkConnString);
+            // write record events in the same format as the Lily servers
+            conf.setBoolean(RecordEvent.BINARY_FORMAT_PROPERTY,
+                    LilyClient.getHBaseConfiguration(zk).getBoolean(RecordEvent.BINARY_FORMAT_PROPERTY, false));
             HBaseTableFactory hbaseTableFactory = new HBaseTableFactoryImpl(conf);
             HBaseRepository hbaseRepository = createHBaseRepository(repositoryName, tableName, zk, conf, hbaseTableFactory);
 
@@ -237,7 +240,8 @@ public class BulkIngester implements Closeable {
         }
         Put put = hbaseRepo.buildPut(record, 1L, fieldTypes, recordEvent, Sets.<BlobReference>newHashSet(),
                 Sets.<BlobReference>newHashSet(), 1L);
-        put.add(LilyHBaseSchema.RecordCf.DATA.bytes, LilyHBaseSchema.RecordColumn.PAYLOAD.bytes, recordEvent.toJsonBytes());
+        put.add(LilyHBaseSchema.RecordCf.DATA.bytes, LilyHBaseSchema.RecordColumn.PAYLOAD.bytes,
+                recordEvent.toBytes(hbaseRepo.isBinaryRecordEvents()));
         return put;
     }
 
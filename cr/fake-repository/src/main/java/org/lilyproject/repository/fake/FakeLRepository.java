@@ -39,6 +39,7 @@ import org.lilyproject.repository.api.RecordBuilder;
 import org.lilyproject.repository.api.RecordException;
 import org.lilyproject.repository.api.RecordFactory;
 import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.RecordScan;
 import org.lilyproject.repository.api.RecordScanner;
 import org.lilyproject.repository.api.Repository;
@@ -159,6 +160,31 @@ public class FakeLRepository implements LRepository, Repository {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records) throws RepositoryException, InterruptedException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records, boolean b) throws RepositoryException, InterruptedException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<RecordMutationResult> create(List<Record> records) throws RepositoryException, InterruptedException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<RecordMutationResult> update(List<Record> records, boolean b, boolean b1) throws RepositoryException, InterruptedException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<RecordMutationResult> delete(List<RecordId> recordIds) throws RepositoryException, InterruptedException {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public Record read(RecordId recordId, List<QName> qNames) throws RepositoryException, InterruptedException {
         throw new UnsupportedOperationException();
@@ -214,6 +240,11 @@ public class FakeLRepository implements LRepository, Repository {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public List<IdRecord> readWithIds(List<RecordId> recordIds, List<SchemaId> schemaIds) throws RepositoryException, InterruptedException {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void delete(RecordId recordId) throws RepositoryException, InterruptedException {
         throw new UnsupportedOperationException();
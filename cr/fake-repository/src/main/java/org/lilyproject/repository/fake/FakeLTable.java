@@ -44,6 +44,7 @@ import org.lilyproject.repository.api.RecordException;
 import org.lilyproject.repository.api.RecordExistsException;
 import org.lilyproject.repository.api.RecordFactory;
 import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.RecordNotFoundException;
 import org.lilyproject.repository.api.RecordScan;
 import org.lilyproject.repository.api.RecordScanner;
@@ -203,6 +204,48 @@ public class FakeLTable implements Repository {
         return update(record);
     }
 
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records) throws RepositoryException, InterruptedException {
+        return createOrUpdate(records, true);
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records, boolean b) throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = Lists.newArrayList();
+        for (Record record : records) {
+            results.add(RecordMutationResult.success(createOrUpdate(record, b)));
+        }
+        return results;
+    }
+
+    @Override
+    public List<RecordMutationResult> create(List<Record> records) throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = Lists.newArrayList();
+        for (Record record : records) {
+            results.add(RecordMutationResult.success(create(record)));
+        }
+        return results;
+    }
+
+    @Override
+    public List<RecordMutationResult> update(List<Record> records, boolean b, boolean b1) throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = Lists.newArrayList();
+        for (Record record : records) {
+            results.add(RecordMutationResult.success(update(record, b, b1)));
+        }
+        return results;
+    }
+
+    @Override
+    public List<RecordMutationResult> delete(List<RecordId> recordIds) throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = Lists.newArrayList();
+        for (RecordId recordId : recordIds) {
+            delete(recordId);
+            results.add(RecordMutationResult.success(null));
+        }
+        return results;
+    }
+
     private Record getRecord(RecordId recordId) throws RecordNotFoundException {
         Record record = records.get(recordId);
         if (record == null) {
@@ -283,6 +326,17 @@ public class FakeLTable implements Repository {
         return idRecord;
     }
 
+    @Override
+    public List<IdRecord> readWithIds(List<RecordId> recordIds, List<SchemaId> schemaIds) throws RepositoryException, InterruptedException {
+        List<IdRecord> list = Lists.newArrayList();
+        for (RecordId id : recordIds) {
+            if (records.containsKey(id)) {
+                list.add(readWithIds(id, null, schemaIds));
+            }
+        }
+        return list;
+    }
+
     @Override
     public void delete(RecordId recordId) throws RepositoryException, InterruptedException {
         records.remove(recordId);
@@ -32,7 +32,7 @@ import org.lilyproject.repository.api.*;
 import org.lilyproject.repository.impl.FieldTypeBuilderImpl;
 import org.lilyproject.repository.impl.FieldTypeEntryImpl;
 import org.lilyproject.repository.impl.FieldTypeImpl;
-import org.lilyproject.repository.impl.FieldTypesImpl;
+import org.lilyproject.repository.impl.FieldTypesCache;
 import org.lilyproject.repository.impl.RecordTypeBuilderImpl;
 import org.lilyproject.repository.impl.RecordTypeImpl;
 import org.lilyproject.repository.impl.id.SchemaIdImpl;
@@ -70,8 +70,8 @@ public class FakeTypeManager implements TypeManager {
     private IdGenerator idGenerator;
 
     public FakeTypeManager(IdGenerator idGenerator) {
-        this.registerDefaultValueTypes();
         this.idGenerator = idGenerator;
+        this.registerDefaultValueTypes();
 
         try {
             FieldType fieldType = newFieldType(getValueType("LONG"), VersionTag.LAST, Scope.NON_VERSIONED);
@@ -362,7 +362,9 @@ public class FakeTypeManager implements TypeManager {
 
     @Override
     public org.lilyproject.repository.api.FieldTypes getFieldTypesSnapshot() throws InterruptedException {
-        return new FieldTypesImpl();
+        FieldTypesCache fieldTypesCache = new FieldTypesCache();
+        fieldTypesCache.refreshFieldTypes(Lists.newArrayList(fieldTypes.values()));
+        return fieldTypesCache.getSnapshot();
     }
 
     @Override
@@ -23,7 +23,8 @@ import org.lilyproject.repository.api.AbsoluteRecordId;
 /**
  * Iterator used to iterate over results of a query on the dereference map.
  *
- *
+ * <p>The dependants are fetched incrementally while iterating, so the iterator can be used for records with
+ * a very large number of dependants. It should be closed when done, also when not iterated till the end.</p>
  */
 public interface DependantRecordIdsIterator extends Closeable {
 
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.derefmap;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.lilyproject.repository.api.AbsoluteRecordId;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.util.ArgumentValidator;
+
+/**
+ * The new dependencies of a record in a vtag, used when updating several records at once with
+ * {@link DerefMap#updateDependants(java.util.List)}.
+ */
+public final class DependantsUpdate {
+    private final AbsoluteRecordId parentRecordId;
+    private final SchemaId dependantVtagId;
+    private final Map<DependencyEntry, Set<SchemaId>> newDependantEntries;
+
+    /**
+     * See {@link DerefMap#updateDependants(AbsoluteRecordId, SchemaId, Map)} for the meaning of the arguments.
+     */
+    public DependantsUpdate(AbsoluteRecordId parentRecordId, SchemaId dependantVtagId,
+                            Map<DependencyEntry, Set<SchemaId>> newDependantEntries) {
+        ArgumentValidator.notNull(parentRecordId, "parentRecordId");
+        ArgumentValidator.notNull(dependantVtagId, "dependantVtagId");
+        ArgumentValidator.notNull(newDependantEntries, "newDependantEntries");
+
+        this.parentRecordId = parentRecordId;
+        this.dependantVtagId = dependantVtagId;
+        this.newDependantEntries = newDependantEntries;
+    }
+
+    public AbsoluteRecordId getParentRecordId() {
+        return parentRecordId;
+    }
+
+    public SchemaId getDependantVtagId() {
+        return dependantVtagId;
+    }
+
+    public Map<DependencyEntry, Set<SchemaId>> getNewDependantEntries() {
+        return newDependantEntries;
+    }
+}
@@ -16,6 +16,7 @@
 package org.lilyproject.indexer.derefmap;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,6 +50,14 @@ public interface DerefMap {
     void updateDependants(AbsoluteRecordId parentRecordId, final SchemaId dependantVtagId,
                             Map<DependencyEntry, Set<SchemaId>> newDependantEntries) throws IOException;
 
+    /**
+     * Same as {@link #updateDependants(AbsoluteRecordId, SchemaId, Map)}, for several records (or several vtags
+     * of a record) at once. This is more efficient than updating them one by one, since the changes are written
+     * with a few multi-mutations rather than one mutation per dependency. A record should occur at most once per
+     * vtag in the list.
+     */
+    void updateDependants(List<DependantsUpdate> updates) throws IOException;
+
     /**
      * Find all record ids which depend on one of the given fields of a given record in a given vtag. Both the set of
      * fields and the vtag can be <code>null</code> if you want to ignore filtering on the fields and/or vtag.
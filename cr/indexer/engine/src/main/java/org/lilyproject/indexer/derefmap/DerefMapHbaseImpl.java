@@ -16,8 +16,11 @@
 package org.lilyproject.indexer.derefmap;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -25,6 +28,7 @@ import com.google.common.collect.Sets;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.lilyproject.hbaseindex.Index;
+import org.lilyproject.hbaseindex.IndexWriter;
 import org.lilyproject.hbaseindex.IndexDefinition;
 import org.lilyproject.hbaseindex.IndexEntry;
 import org.lilyproject.hbaseindex.IndexManager;
@@ -49,22 +53,35 @@ public class DerefMapHbaseImpl implements DerefMap {
 
     private static final byte[] DUMMY_IDENTIFIER = new byte[]{0};
 
+    /**
+     * The default number of dependants read in one go from the backward index.
+     */
+    public static final int DEFAULT_SCANNER_CACHING = 500;
+
     private Index forwardDerefIndex;
 
     private Index backwardDerefIndex;
 
+    private IndexWriter forwardDerefIndexWriter;
+
+    private IndexWriter backwardDerefIndexWriter;
+
     private DerefMapSerializationUtil serializationUtil;
 
+    private final int scannerCaching;
+
     /**
      * Private constructor. Clients should use static factory methods {@link #delete(String,
-     * org.apache.hadoop.conf.Configuration)} and {@link #create(String, Configuration, HBaseTableFactory,
-     * IdGenerator)}
+     * org.apache.hadoop.conf.Configuration)} and {@link #create(String, String, Configuration, HBaseTableFactory,
+     * IdGenerator, int)}
      */
     private DerefMapHbaseImpl(final String owningRepoName, final String indexName, final Configuration hbaseConfiguration,
-                              final HBaseTableFactory tableFactory, final IdGenerator idGenerator)
+                              final HBaseTableFactory tableFactory, final IdGenerator idGenerator,
+                              final int scannerCaching)
             throws IndexNotFoundException, IOException, InterruptedException {
 
         this.serializationUtil = new DerefMapSerializationUtil(idGenerator);
+        this.scannerCaching = scannerCaching;
 
         final IndexManager indexManager = new IndexManager(hbaseConfiguration, tableFactory);
 
@@ -84,6 +101,18 @@ public class DerefMapHbaseImpl implements DerefMap {
         backwardIndexDef.addByteField("dependant_vtag", DerefMapSerializationUtil.SCHEMA_ID_BYTE_LENGTH);
         backwardIndexDef.addVariableLengthByteField("variant_properties_pattern");
         backwardDerefIndex = indexManager.getIndex(owningRepoName, backwardIndexDef);
+
+        // The updates of concurrent indexer threads are written together
+        forwardDerefIndexWriter = new IndexWriter(forwardDerefIndex);
+        backwardDerefIndexWriter = new IndexWriter(backwardDerefIndex);
+    }
+
+    /**
+     * Writes the pending updates and stops the background writers of the index tables.
+     */
+    public void close() {
+        Closer.close(forwardDerefIndexWriter);
+        Closer.close(backwardDerefIndexWriter);
     }
 
     /**
@@ -100,7 +129,23 @@ public class DerefMapHbaseImpl implements DerefMap {
     public static DerefMap create(final String owningRepoName, final String indexName, final Configuration hbaseConfiguration,
                                   final HBaseTableFactory tableFactory, final IdGenerator idGenerator)
             throws IndexNotFoundException, IOException, InterruptedException {
-        return new DerefMapHbaseImpl(owningRepoName, indexName, hbaseConfiguration, tableFactory, idGenerator);
+        return create(owningRepoName, indexName, hbaseConfiguration, tableFactory, idGenerator,
+                DEFAULT_SCANNER_CACHING);
+    }
+
+    /**
+     * Same as {@link #create(String, String, Configuration, HBaseTableFactory, IdGenerator)}, with a specific
+     * number of dependants to read in one go when iterating over the dependants of a record.
+     *
+     * @param scannerCaching number of dependants fetched per round trip by the iterators returned from
+     *                       {@link #findDependantsOf}
+     */
+    public static DerefMap create(final String owningRepoName, final String indexName, final Configuration hbaseConfiguration,
+                                  final HBaseTableFactory tableFactory, final IdGenerator idGenerator,
+                                  final int scannerCaching)
+            throws IndexNotFoundException, IOException, InterruptedException {
+        return new DerefMapHbaseImpl(owningRepoName, indexName, hbaseConfiguration, tableFactory, idGenerator,
+                scannerCaching);
     }
 
     /**
@@ -130,39 +175,67 @@ public class DerefMapHbaseImpl implements DerefMap {
     public void updateDependants(AbsoluteRecordId parentRecordId, SchemaId parentVtagId,
                                    Map<DependencyEntry, Set<SchemaId>> newDependantEntries)
             throws IOException {
+        updateDependants(Collections.singletonList(
+                new DependantsUpdate(parentRecordId, parentVtagId, newDependantEntries)));
+    }
 
-        final Set<DependencyEntry> existingEntries = findDependencies(parentRecordId, parentVtagId);
+    @Override
+    public void updateDependants(List<DependantsUpdate> updates) throws IOException {
+        final List<IndexEntry> removedBackwardEntries = new ArrayList<IndexEntry>();
+        final List<IndexEntry> forwardEntries = new ArrayList<IndexEntry>(updates.size());
+        final List<IndexEntry> addedBackwardEntries = new ArrayList<IndexEntry>();
+
+        for (DependantsUpdate update : updates) {
+            final AbsoluteRecordId parentRecordId = update.getParentRecordId();
+            final SchemaId parentVtagId = update.getDependantVtagId();
+            final Map<DependencyEntry, Set<SchemaId>> newDependantEntries = update.getNewDependantEntries();
+
+            final Set<DependencyEntry> existingEntries = findDependencies(parentRecordId, parentVtagId);
+
+            // Figure out what changed
+            final Set<DependencyEntry> removedDependencies =
+                    figureOutRemovedDependencies(newDependantEntries.keySet(), existingEntries);
+            final Collection<DependencyEntry> addedDependencies =
+                    figureOutAddedDependencies(newDependantEntries.keySet(), existingEntries);
+
+            for (DependencyEntry removed : removedDependencies) {
+                removedBackwardEntries.add(createBackwardEntry(removed.getDependency(), parentRecordId,
+                        parentVtagId, null, removed.getMoreDimensionedVariants()));
+            }
 
-        // Figure out what changed
-        final Set<DependencyEntry> removedDependencies =
-                figureOutRemovedDependencies(newDependantEntries.keySet(), existingEntries);
-        final Collection<DependencyEntry> addedDependencies =
-                figureOutAddedDependencies(newDependantEntries.keySet(), existingEntries);
+            // added and removed at the same time, it is a single row
+            forwardEntries.add(createForwardEntry(parentRecordId, parentVtagId, newDependantEntries.keySet()));
+
+            for (DependencyEntry added : addedDependencies) {
+                final Set<SchemaId> fields = newDependantEntries.get(added);
+                addedBackwardEntries.add(createBackwardEntry(added.getDependency(), parentRecordId, parentVtagId,
+                        fields, added.getMoreDimensionedVariants()));
+            }
+        }
 
         // IMPORTANT implementation note: the order in which changes are applied is not arbitrary. It is such that if
         // the process would fail in between, there will never be left any state in the backward index which would not
-        // be found via the forward index.
-
-        // delete removed from bwd index
-        for (DependencyEntry removed : removedDependencies) {
-            final IndexEntry backwardEntry =
-                    createBackwardEntry(removed.getDependency(), parentRecordId, parentVtagId, null,
-                            removed.getMoreDimensionedVariants());
-            backwardDerefIndex.removeEntry(backwardEntry);
-        }
+        // be found via the forward index. Each step is a single multi-mutation over all the updated records.
+
+        // The steps are written through index writers, which combine them with those of concurrent updates.
+        try {
+            // delete removed from bwd index
+            if (!removedBackwardEntries.isEmpty()) {
+                IndexWriter.waitFor(backwardDerefIndexWriter.removeEntries(removedBackwardEntries));
+            }
 
-        // update fwd index (added and removed at the same time, it is a single row)
-        final IndexEntry fwdEntry =
-                createForwardEntry(parentRecordId, parentVtagId, newDependantEntries.keySet());
-        forwardDerefIndex.addEntry(fwdEntry);
-
-        // add added to bwd idx
-        for (DependencyEntry added : addedDependencies) {
-            final Set<SchemaId> fields = newDependantEntries.get(added);
-            final IndexEntry backwardEntry =
-                    createBackwardEntry(added.getDependency(), parentRecordId, parentVtagId, fields,
-                            added.getMoreDimensionedVariants());
-            backwardDerefIndex.addEntry(backwardEntry);
+            // update fwd index
+            if (!forwardEntries.isEmpty()) {
+                IndexWriter.waitFor(forwardDerefIndexWriter.addEntries(forwardEntries));
+            }
+
+            // add added to bwd idx
+            if (!addedBackwardEntries.isEmpty()) {
+                IndexWriter.waitFor(backwardDerefIndexWriter.addEntries(addedBackwardEntries));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while updating the deref map", e);
         }
     }
 
@@ -278,7 +351,10 @@ public class DerefMapHbaseImpl implements DerefMap {
             query.addEqualsCondition("dependant_vtag", vtag.getBytes());
         }
 
+        // The variant properties and the fields are filtered on the region servers, only matching dependants
+        // are transferred, scannerCaching at a time
         query.setIndexFilter(new DerefMapIndexFilter(parentRecordId.getRecordId().getVariantProperties(), fields));
+        query.setCaching(scannerCaching);
 
         return new DependantRecordIdsIteratorImpl(backwardDerefIndex.performQuery(query), this.serializationUtil);
     }
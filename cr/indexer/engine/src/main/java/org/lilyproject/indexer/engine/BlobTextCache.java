@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.engine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.repository.api.Blob;
+import org.lilyproject.util.ObjectUtils;
+import org.lilyproject.util.hbase.LilyHBaseSchema.BlobTextCf;
+
+/**
+ * A size-bounded cache of the text extracted from blobs, used by {@link ValueEvaluator}.
+ *
+ * <p>The text is keyed on the blob key ({@link Blob#getValue()}), the media type and the write limit used
+ * for the extraction. A blob key always refers to the same content, blobs are never modified but replaced
+ * by new blobs, so cached text never becomes stale.</p>
+ *
+ * <p>The cache has two tiers. The first tier is kept in memory, its size is expressed as the total number of
+ * characters of the cached texts. The optional second tier is the blob text table in HBase (see
+ * {@link org.lilyproject.util.hbase.LilyHBaseSchema#getBlobTextTable}), which is shared by all indexer
+ * processes and survives restarts, so that a full reindex does not extract all blobs again. Texts found in
+ * the table are added to the memory tier. The table is only a cache: when it can not be accessed, this is
+ * logged and the text is extracted again.</p>
+ */
+public class BlobTextCache {
+    /**
+     * Blob keys longer than this are not stored in the table. These are inline blobs, of which the key is the
+     * content itself: they are cheap to extract again.
+     */
+    private static final int MAX_TABLE_ROW_LENGTH = 1024;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final Cache<Key, String> cache;
+    private final HTableInterface table;
+    private final AtomicLong tableHits = new AtomicLong();
+    private final AtomicLong tableMisses = new AtomicLong();
+
+    public BlobTextCache(long maximumSize) {
+        this(maximumSize, null);
+    }
+
+    /**
+     * @param maximumSize the maximum number of characters kept in memory
+     * @param table the blob text table used as second tier, null for none
+     */
+    public BlobTextCache(long maximumSize, HTableInterface table) {
+        this.table = table;
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumSize)
+                .weigher(new Weigher<Key, String>() {
+                    @Override
+                    public int weigh(Key key, String text) {
+                        return key.blobKey.length + text.length();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the text extracted before from the blob, or null if not present.
+     */
+    public String get(Blob blob, int writeLimit) {
+        if (blob.getValue() == null) {
+            return null;
+        }
+
+        Key key = new Key(blob, writeLimit);
+        String text = cache.getIfPresent(key);
+        if (text == null && isStoredInTable(key)) {
+            text = getFromTable(key);
+            if (text != null) {
+                tableHits.incrementAndGet();
+                cache.put(key, text);
+            } else {
+                tableMisses.incrementAndGet();
+            }
+        }
+        return text;
+    }
+
+    public void put(Blob blob, int writeLimit, String text) {
+        if (blob.getValue() != null) {
+            Key key = new Key(blob, writeLimit);
+            cache.put(key, text);
+            if (isStoredInTable(key)) {
+                putInTable(key, text);
+            }
+        }
+    }
+
+    private boolean isStoredInTable(Key key) {
+        return table != null && key.blobKey.length <= MAX_TABLE_ROW_LENGTH;
+    }
+
+    private String getFromTable(Key key) {
+        try {
+            Get get = new Get(key.blobKey);
+            get.addColumn(BlobTextCf.DATA.bytes, key.getQualifier());
+            Result result = table.get(get);
+            byte[] value = result.getValue(BlobTextCf.DATA.bytes, key.getQualifier());
+            return value != null ? Bytes.toString(value) : null;
+        } catch (IOException e) {
+            log.warn("Error reading extracted blob text from the blob text table", e);
+            return null;
+        }
+    }
+
+    private void putInTable(Key key, String text) {
+        try {
+            Put put = new Put(key.blobKey);
+            put.add(BlobTextCf.DATA.bytes, key.getQualifier(), Bytes.toBytes(text));
+            table.put(put);
+        } catch (IOException e) {
+            log.warn("Error writing extracted blob text to the blob text table", e);
+        }
+    }
+
+    /**
+     * The statistics of the memory tier.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * The number of memory misses that were found in the table.
+     */
+    public long getTableHitCount() {
+        return tableHits.get();
+    }
+
+    /**
+     * The number of memory misses that were not found in the table either.
+     */
+    public long getTableMissCount() {
+        return tableMisses.get();
+    }
+
+    private static final class Key {
+        private final byte[] blobKey;
+        private final String mediaType;
+        private final int writeLimit;
+
+        Key(Blob blob, int writeLimit) {
+            this.blobKey = blob.getValue();
+            this.mediaType = blob.getMediaType();
+            this.writeLimit = writeLimit;
+        }
+
+        /**
+         * The column in the row of the blob: the write limit followed by the media type.
+         */
+        byte[] getQualifier() {
+            return Bytes.add(Bytes.toBytes(writeLimit), Bytes.toBytes(mediaType != null ? mediaType : ""));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return writeLimit == other.writeLimit && Arrays.equals(blobKey, other.blobKey)
+                    && ObjectUtils.safeEquals(mediaType, other.mediaType);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(blobKey);
+            result = 31 * result + (mediaType != null ? mediaType.hashCode() : 0);
+            result = 31 * result + writeLimit;
+            return result;
+        }
+    }
+}
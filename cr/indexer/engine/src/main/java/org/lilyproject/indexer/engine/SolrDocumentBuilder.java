@@ -16,6 +16,7 @@
 package org.lilyproject.indexer.engine;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,7 @@ import org.apache.solr.common.SolrInputDocument;
 import org.lilyproject.indexer.derefmap.DependencyEntry;
 import org.lilyproject.indexer.derefmap.DerefMapUtil;
 import org.lilyproject.indexer.model.indexerconf.Dep;
+import org.lilyproject.indexer.model.indexerconf.DerefRecordLoader;
 import org.lilyproject.indexer.model.indexerconf.FieldTemplatePart;
 import org.lilyproject.indexer.model.indexerconf.IndexRecordFilter;
 import org.lilyproject.indexer.model.indexerconf.IndexUpdateBuilder;
@@ -65,9 +67,11 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
     private final TypeManager typeManager;
     private final ValueEvaluator valueEvaluator;
     private final NameTemplateResolver nameTemplateResolver;
+    private final DerefRecordLoader derefRecordLoader;
 
     private final SolrInputDocument solrDoc = new SolrInputDocument();
     private boolean emptyDocument = true;
+    private final List<PendingField> pendingFields = new ArrayList<PendingField>();
 
     private Stack<RecordContext> contexts;
     private LoadingCache<DependencyEntry, Set<SchemaId>> dependencies;
@@ -79,12 +83,14 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
     private long version;
 
     public SolrDocumentBuilder(LRepository repository, IndexRecordFilter indexRecordFilter, SystemFields systemFields,
-                               ValueEvaluator valueEvaluator, String table, IdRecord record, String key, SchemaId vtag, long version) {
+                               ValueEvaluator valueEvaluator, DerefRecordLoader derefRecordLoader, String table,
+                               IdRecord record, String key, SchemaId vtag, long version) {
         this.repository = repository;
         this.indexRecordFilter = indexRecordFilter;
         this.systemFields = systemFields;
         this.typeManager = repository.getTypeManager();
         this.valueEvaluator = valueEvaluator;
+        this.derefRecordLoader = derefRecordLoader;
         this.table = table;
         this.recordId = record.getId();
         this.key = key;
@@ -106,11 +112,13 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
         });
     }
 
-    public boolean isEmptyDocument() {
+    public boolean isEmptyDocument() throws InterruptedException, RepositoryException {
+        addPendingFields();
         return emptyDocument;
     }
 
     public SolrInputDocument build() throws InterruptedException, RepositoryException {
+        addPendingFields();
         solrDoc.setField("lily.id", recordId.toString());
         solrDoc.setField("lily.table", table);
         solrDoc.setField("lily.key", key);
@@ -132,6 +140,12 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
 
     @Override
     public void addField(String fieldName, List<String> values) throws InterruptedException, RepositoryException {
+        if (values instanceof ValueEvaluator.ExtractedContent) {
+            // Don't wait for the content extraction now, the other fields can be evaluated meanwhile
+            pendingFields.add(new PendingField(fieldName, (ValueEvaluator.ExtractedContent) values));
+            return;
+        }
+
         if (values != null) {
             for (String value : values) {
                 solrDoc.addField(fieldName, value);
@@ -140,6 +154,23 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
         }
     }
 
+    private void addPendingFields() throws InterruptedException, RepositoryException {
+        for (PendingField field : pendingFields) {
+            addField(field.fieldName, field.content.await());
+        }
+        pendingFields.clear();
+    }
+
+    private static final class PendingField {
+        private final String fieldName;
+        private final ValueEvaluator.ExtractedContent content;
+
+        PendingField(String fieldName, ValueEvaluator.ExtractedContent content) {
+            this.fieldName = fieldName;
+            this.content = content;
+        }
+    }
+
     @Override
     public RecordContext getRecordContext() {
         return contexts.peek();
@@ -227,6 +258,11 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
         return vtag;
     }
 
+    @Override
+    public DerefRecordLoader getDerefRecordLoader() {
+        return derefRecordLoader;
+    }
+
     @Override
     public String evalIndexFieldName(NameTemplate nameTemplate) {
         if (getRecordContext().record != null) {
@@ -17,16 +17,29 @@ package org.lilyproject.indexer.engine;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.AbstractList;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
@@ -47,6 +60,7 @@ import org.lilyproject.repository.api.FieldType;
 import org.lilyproject.repository.api.LRepository;
 import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.util.concurrent.CustomThreadFactory;
 import org.lilyproject.util.io.Closer;
 import org.lilyproject.util.repo.SystemFields;
 
@@ -54,17 +68,82 @@ import org.lilyproject.util.repo.SystemFields;
  * Evaluates an index field value (a {@link Value}) to a value.
  */
 public class ValueEvaluator {
+    /**
+     * The number of blob extractions per extraction thread that can wait for a thread.
+     */
+    private static final int EXTRACTION_QUEUE_SIZE_PER_THREAD = 100;
+
     private Log log = LogFactory.getLog(getClass());
 
     private LilyIndexerConf conf;
 
     private SystemFields systemFields;
 
-    private Parser tikaParser = new AutoDetectParser();
+    private Parser tikaParser;
+
+    private BlobTextCache blobTextCache;
+
+    private ExecutorService extractionExecutor;
+
+    private final AtomicLong extractionTimeouts = new AtomicLong();
+
+    private final AtomicLong extractionRejections = new AtomicLong();
 
     public ValueEvaluator(LilyIndexerConf conf) {
+        this(conf, (HTableInterface) null);
+    }
+
+    /**
+     * @param blobTextTable the table in which to cache extracted blob text, see {@link BlobTextCache}, null
+     *                      for none
+     */
+    public ValueEvaluator(LilyIndexerConf conf, HTableInterface blobTextTable) {
+        this(conf, new AutoDetectParser(), blobTextTable);
+    }
+
+    ValueEvaluator(LilyIndexerConf conf, Parser tikaParser) {
+        this(conf, tikaParser, null);
+    }
+
+    ValueEvaluator(LilyIndexerConf conf, Parser tikaParser, HTableInterface blobTextTable) {
         this.conf = conf;
+        this.tikaParser = tikaParser;
         this.systemFields = conf.getSystemFields();
+        if (conf.getContentExtractionCacheSize() > 0 || blobTextTable != null) {
+            this.blobTextCache = new BlobTextCache(conf.getContentExtractionCacheSize(), blobTextTable);
+        }
+    }
+
+    /**
+     * The cache of the text extracted from blobs, null if it is disabled in the indexer conf and there is no
+     * blob text table.
+     */
+    public BlobTextCache getBlobTextCache() {
+        return blobTextCache;
+    }
+
+    /**
+     * The number of blob extractions that were abandoned because they took longer than the timeout.
+     */
+    public long getExtractionTimeoutCount() {
+        return extractionTimeouts.get();
+    }
+
+    /**
+     * The number of blob extractions that were skipped because too many extractions were waiting already.
+     */
+    public long getExtractionRejectionCount() {
+        return extractionRejections.get();
+    }
+
+    /**
+     * Stops the threads used for content extraction.
+     */
+    public synchronized void stop() {
+        if (extractionExecutor != null) {
+            extractionExecutor.shutdownNow();
+            extractionExecutor = null;
+        }
     }
 
     /**
@@ -125,7 +204,7 @@ public class ValueEvaluator {
         // validated during
         // the construction of the indexer conf.
 
-        List<String> result = new ArrayList<String>(indexValues.size());
+        ExtractedContent result = new ExtractedContent();
 
         Deque<Integer> indexes = new ArrayDeque<Integer>();
 
@@ -139,11 +218,11 @@ public class ValueEvaluator {
             extractContent(table, indexValue.value, indexes, indexValue.record, indexValue.fieldType, result, repository);
         }
 
-        return result.isEmpty() ? null : result;
+        return result;
     }
 
     private void extractContent(String table, Object value, Deque<Integer> indexes, Record record, FieldType fieldType,
-            List<String> result, LRepository repository) {
+            ExtractedContent result, LRepository repository) {
 
         if (value instanceof List) { // this covers both LIST and PATH types
             List values = (List) value;
@@ -157,19 +236,42 @@ public class ValueEvaluator {
         }
     }
 
-    private void extractContent(String table, Object value, Record record, FieldType fieldType, int[] indexes, List<String> result,
-            LRepository repository) {
+    private void extractContent(String table, Object value, Record record, FieldType fieldType, int[] indexes,
+            ExtractedContent result, LRepository repository) {
 
         Blob blob = (Blob) value;
-        InputStream is = null;
+        int writeLimit = conf.getContentExtractionWriteLimit();
 
-        // TODO make write limit configurable
-        WriteOutContentHandler woh = new WriteOutContentHandler(500 * 1000); // 500K limit (Tika default: 100K)
-        BodyContentHandler ch = new BodyContentHandler(woh);
+        // Reindexing a record mostly means extracting the same, unchanged, blobs again
+        String text = blobTextCache != null ? blobTextCache.get(blob, writeLimit) : null;
+        if (text != null) {
+            result.add(text);
+            return;
+        }
 
+        String description = "Field '" + fieldType.getName() + "', record '" + record.getId() + "'";
+
+        // The blob is opened here rather than in the extraction thread, the record and the repository are
+        // not meant to be used by multiple threads.
+        InputStream is;
         try {
             is = repository.getTable(table).getInputStream(record, fieldType.getName(), indexes);
+        } catch (Throwable t) {
+            log.error("Error extracting blob content. " + description + ".", t);
+            return;
+        }
+
+        result.add(new ExtractContentTask(blob, writeLimit, is, description));
+    }
+
+    /**
+     * @return null if the extraction failed
+     */
+    private String parseContent(Blob blob, int writeLimit, InputStream is, String description) {
+        WriteOutContentHandler woh = new WriteOutContentHandler(writeLimit);
+        BodyContentHandler ch = new BodyContentHandler(woh);
 
+        try {
             Metadata metadata = new Metadata();
             metadata.add(Metadata.CONTENT_TYPE, blob.getMediaType());
             if (blob.getName() != null) {
@@ -183,22 +285,169 @@ public class ValueEvaluator {
             if (woh.isWriteLimitReached(t)) {
                 // ok, we'll just add use the partial result
                 if (log.isInfoEnabled()) {
-                    log.info("Blob extraction: write limit reached. Field '" + fieldType.getName() + "', record '"
-                            + record.getId() + "'.");
+                    log.info("Blob extraction: write limit reached. " + description + ".");
                 }
             } else {
-                log.error(
-                        "Error extracting blob content. Field '" + fieldType.getName() + "', record '" + record.getId()
-                                + "'.", t);
-                return;
+                log.error("Error extracting blob content. " + description + ".", t);
+                return null;
             }
-        } finally {
+        }
+
+        return ch.toString();
+    }
+
+    private synchronized ExecutorService getExtractionExecutor() {
+        if (extractionExecutor == null) {
+            // The number of threads is the CPU budget for content extraction, extractions beyond that are queued.
+            // The queue is bounded so that extractions that cannot keep up don't pile up blobs in memory, when
+            // it is full the executor rejects the extraction.
+            int threads = conf.getContentExtractionThreads();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(threads * EXTRACTION_QUEUE_SIZE_PER_THREAD),
+                    new CustomThreadFactory("indexer-extract", null, true), new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            extractionExecutor = executor;
+        }
+        return extractionExecutor;
+    }
+
+    /**
+     * Extracts the text of one blob, in one of the extraction threads.
+     */
+    private class ExtractContentTask implements Callable<String> {
+        private final Blob blob;
+        private final int writeLimit;
+        private final InputStream is;
+        private final String description;
+        private volatile boolean abandoned;
+
+        ExtractContentTask(Blob blob, int writeLimit, InputStream is, String description) {
+            this.blob = blob;
+            this.writeLimit = writeLimit;
+            this.is = is;
+            this.description = description;
+        }
+
+        @Override
+        public String call() {
+            String text;
+            try {
+                text = abandoned ? null : parseContent(blob, writeLimit, is, description);
+            } finally {
+                Closer.close(is);
+            }
+            if (text != null && !abandoned && blobTextCache != null) {
+                blobTextCache.put(blob, writeLimit, text);
+            }
+            return text;
+        }
+
+        /**
+         * Closing the input makes most parsers give up soon, which frees the extraction thread.
+         */
+        void abandon() {
+            abandoned = true;
             Closer.close(is);
         }
+    }
 
-        String text = ch.toString();
-        if (text.length() > 0) {
-            result.add(text);
+    /**
+     * The text extracted from the blobs of an index value. The extraction runs in the background, so that
+     * the other index fields can be evaluated meanwhile. {@link SolrDocumentBuilder} waits for the extraction
+     * when the document is complete, accessing the list's elements waits for it as well.
+     *
+     * <p>An extraction that is not finished within the configured timeout, counted from when the value was
+     * evaluated, is abandoned: the value then lacks the text of that blob, but the document is still indexed
+     * with its other fields. The same happens when the extraction cannot be started because too many extractions
+     * are waiting for a thread.</p>
+     */
+    class ExtractedContent extends AbstractList<String> {
+        private final long deadline = System.currentTimeMillis() + conf.getContentExtractionTimeout();
+        private final List<ExtractContentTask> tasks = new ArrayList<ExtractContentTask>();
+        private final List<Future<String>> futures = new ArrayList<Future<String>>();
+        private List<String> texts;
+
+        void add(String text) {
+            tasks.add(null);
+            futures.add(Futures.immediateFuture(text));
+        }
+
+        void add(ExtractContentTask task) {
+            Future<String> future;
+            try {
+                future = getExtractionExecutor().submit(task);
+            } catch (RejectedExecutionException e) {
+                task.abandon();
+                extractionRejections.incrementAndGet();
+                log.warn("Blob extraction: skipped because too many extractions are waiting. "
+                        + task.description + ".");
+                return;
+            }
+            tasks.add(task);
+            futures.add(future);
+        }
+
+        /**
+         * Waits for the extractions to finish and returns the non-empty texts.
+         */
+        List<String> await() throws InterruptedException {
+            if (texts != null) {
+                return texts;
+            }
+
+            List<String> result = new ArrayList<String>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                String text = null;
+                try {
+                    long timeout = Math.max(deadline - System.currentTimeMillis(), 0);
+                    text = futures.get(i).get(timeout, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    abandon(i);
+                    extractionTimeouts.incrementAndGet();
+                    log.warn("Blob extraction: timed out after " + conf.getContentExtractionTimeout() + " ms. "
+                            + tasks.get(i).description + ".");
+                } catch (ExecutionException e) {
+                    log.error("Error extracting blob content. " + tasks.get(i).description + ".", e.getCause());
+                } catch (InterruptedException e) {
+                    for (int j = i; j < futures.size(); j++) {
+                        abandon(j);
+                    }
+                    throw e;
+                }
+
+                if (text != null && text.length() > 0) {
+                    result.add(text);
+                }
+            }
+
+            texts = result;
+            return texts;
+        }
+
+        private void abandon(int i) {
+            if (tasks.get(i) != null) {
+                tasks.get(i).abandon();
+            }
+            futures.get(i).cancel(true);
+        }
+
+        private List<String> awaitUninterruptibly() {
+            try {
+                return await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Collections.emptyList();
+            }
+        }
+
+        @Override
+        public String get(int index) {
+            return awaitUninterruptibly().get(index);
+        }
+
+        @Override
+        public int size() {
+            return awaitUninterruptibly().size();
         }
     }
 
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -545,6 +546,47 @@ public class DerefMapBasicTest {
                                                 absId(b), field, tag2)));
     }
 
+    @Test
+    public void batchedUpdates() throws Exception {
+        String idPrefix = newIdPrefix();
+
+        final SchemaId tag1 = ids.getSchemaId(UUID.randomUUID());
+        final SchemaId tag2 = ids.getSchemaId(UUID.randomUUID());
+        final SchemaId field = ids.getSchemaId(UUID.randomUUID());
+        final Set<SchemaId> fields = Sets.newHashSet(field);
+        final RecordId dependant1 = ids.newRecordId(idPrefix + "dependant1");
+        final RecordId dependant2 = ids.newRecordId(idPrefix + "dependant2");
+        final RecordId dependency1 = ids.newRecordId(idPrefix + "dependency1");
+        final RecordId dependency2 = ids.newRecordId(idPrefix + "dependency2");
+
+        derefMap.updateDependants(Arrays.asList(
+                new DependantsUpdate(absId(dependant1), tag1,
+                        Collections.singletonMap(new DependencyEntry(absId(dependency1)), fields)),
+                new DependantsUpdate(absId(dependant1), tag2,
+                        Collections.singletonMap(new DependencyEntry(absId(dependency2)), fields)),
+                new DependantsUpdate(absId(dependant2), tag1,
+                        Collections.singletonMap(new DependencyEntry(absId(dependency1)), fields))));
+
+        assertEquals(Sets.newHashSet(absId(dependant1), absId(dependant2)),
+                asRecordIds(derefMap.findDependantsOf(absId(dependency1), field, tag1)));
+        assertEquals(Sets.newHashSet(absId(dependant1)),
+                asRecordIds(derefMap.findDependantsOf(absId(dependency2), field, tag2)));
+
+        // move the dependency of dependant1 in tag1, drop the one of dependant2, leave tag2 as is
+        derefMap.updateDependants(Arrays.asList(
+                new DependantsUpdate(absId(dependant1), tag1,
+                        Collections.singletonMap(new DependencyEntry(absId(dependency2)), fields)),
+                new DependantsUpdate(absId(dependant2), tag1,
+                        Collections.<DependencyEntry, Set<SchemaId>>emptyMap())));
+
+        assertEquals(Sets.newHashSet(), asRecordIds(derefMap.findDependantsOf(absId(dependency1), field, tag1)));
+        assertEquals(Sets.newHashSet(absId(dependant1)),
+                asRecordIds(derefMap.findDependantsOf(absId(dependency2), field, tag1)));
+        assertEquals(Sets.newHashSet(absId(dependant1)),
+                asRecordIds(derefMap.findDependantsOf(absId(dependency2), field, tag2)));
+        assertTrue(derefMap.findDependencies(absId(dependant2), tag1).isEmpty());
+    }
+
     private Set<AbsoluteRecordId> asRecordIds(DependantRecordIdsIterator iter) throws IOException {
         Set<AbsoluteRecordId> result = Sets.newHashSet();
         while (iter.hasNext()) {
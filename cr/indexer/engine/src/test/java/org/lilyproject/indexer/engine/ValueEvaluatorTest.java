@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AbstractParser;
+import org.apache.tika.parser.ParseContext;
+import org.junit.Test;
+import org.lilyproject.indexer.model.indexerconf.IndexRecordFilter;
+import org.lilyproject.indexer.model.indexerconf.LilyIndexerConf;
+import org.lilyproject.repository.api.Blob;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.IdRecord;
+import org.lilyproject.repository.api.LRepository;
+import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.TypeManager;
+import org.lilyproject.repository.api.ValueType;
+import org.lilyproject.util.hbase.LilyHBaseSchema.Table;
+import org.xml.sax.ContentHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ValueEvaluatorTest {
+    @Test
+    public void testSlowExtractionTimesOut() throws Exception {
+        LilyIndexerConf conf = new LilyIndexerConf() {
+            {
+                setContentExtractionThreads(1);
+                setContentExtractionTimeout(100);
+                setContentExtractionCacheSize(0);
+            }
+        };
+
+        QName blobField = new QName("ns", "blob");
+        ValueType blobType = mock(ValueType.class);
+        when(blobType.getBaseName()).thenReturn("BLOB");
+        when(blobType.getDeepestValueType()).thenReturn(blobType);
+        FieldType blobFieldType = mock(FieldType.class);
+        when(blobFieldType.getName()).thenReturn(blobField);
+        when(blobFieldType.getValueType()).thenReturn(blobType);
+
+        IdRecord record = mock(IdRecord.class);
+        when(record.getId()).thenReturn(mock(RecordId.class));
+        doReturn(new Blob("application/pdf", 10L, "a.pdf")).when(record).getField(blobField);
+
+        LTable table = mock(LTable.class);
+        when(table.getInputStream(record, blobField)).thenReturn(new ByteArrayInputStream(new byte[10]));
+
+        SchemaId vtag = mock(SchemaId.class);
+        FieldType vtagFieldType = mock(FieldType.class);
+        when(vtagFieldType.getName()).thenReturn(new QName("ns", "last"));
+        TypeManager typeManager = mock(TypeManager.class);
+        when(typeManager.getFieldTypeById(vtag)).thenReturn(vtagFieldType);
+
+        LRepository repository = mock(LRepository.class);
+        when(repository.getTypeManager()).thenReturn(typeManager);
+        when(repository.getTable(Table.RECORD.name)).thenReturn(table);
+
+        ValueEvaluator valueEvaluator = new ValueEvaluator(conf, new SlowParser());
+        try {
+            SolrDocumentBuilder builder = new SolrDocumentBuilder(repository, mock(IndexRecordFilter.class), null,
+                    valueEvaluator, null, Table.RECORD.name, record, "key", vtag, 1L);
+            builder.addField("content", valueEvaluator.format(Table.RECORD.name, record, blobFieldType, true, null,
+                    repository));
+            builder.addField("title", Collections.singletonList("hello"));
+
+            SolrInputDocument document = builder.build();
+
+            // The document is built with the other fields, only the content of the blob is missing
+            assertNull(document.getField("content"));
+            assertEquals("hello", document.getFieldValue("title"));
+            assertEquals(1, valueEvaluator.getExtractionTimeoutCount());
+        } finally {
+            valueEvaluator.stop();
+        }
+    }
+
+    /**
+     * A parser that does not finish before it is interrupted.
+     */
+    private static class SlowParser extends AbstractParser {
+        @Override
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context) {
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
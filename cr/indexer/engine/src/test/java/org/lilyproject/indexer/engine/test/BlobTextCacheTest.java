@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.engine.test;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.lilyproject.indexer.engine.BlobTextCache;
+import org.lilyproject.repository.api.Blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BlobTextCacheTest {
+    @Test
+    public void testKey() {
+        BlobTextCache cache = new BlobTextCache(1000);
+        cache.put(new Blob(Bytes.toBytes("key1"), "application/pdf", 10L, "a.pdf"), 100, "text");
+
+        // Another blob object with the same key and media type, the name does not matter
+        assertEquals("text", cache.get(new Blob(Bytes.toBytes("key1"), "application/pdf", 10L, "b.pdf"), 100));
+        assertNull(cache.get(new Blob(Bytes.toBytes("key1"), "application/pdf", 10L, "a.pdf"), 200));
+        assertNull(cache.get(new Blob(Bytes.toBytes("key1"), "text/plain", 10L, "a.pdf"), 100));
+        assertNull(cache.get(new Blob(Bytes.toBytes("key2"), "application/pdf", 10L, "a.pdf"), 100));
+
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals(3, cache.getStats().missCount());
+    }
+
+    @Test
+    public void testBlobWithoutKey() {
+        BlobTextCache cache = new BlobTextCache(1000);
+        Blob blob = new Blob("application/pdf", 10L, "a.pdf");
+        cache.put(blob, 100, "text");
+        assertNull(cache.get(blob, 100));
+    }
+
+    @Test
+    public void testTable() throws IOException {
+        HTableInterface table = mock(HTableInterface.class);
+        Result found = mock(Result.class);
+        when(found.getValue(any(byte[].class), any(byte[].class))).thenReturn(Bytes.toBytes("text"));
+        when(table.get(any(Get.class))).thenReturn(found);
+
+        BlobTextCache cache = new BlobTextCache(1000, table);
+        Blob blob = new Blob(Bytes.toBytes("key1"), "application/pdf", 10L, "a.pdf");
+        assertEquals("text", cache.get(blob, 100));
+        // The text read from the table is kept in memory
+        assertEquals("text", cache.get(blob, 100));
+        verify(table, times(1)).get(any(Get.class));
+        assertEquals(1, cache.getTableHitCount());
+
+        cache.put(blob, 200, "other");
+        verify(table).put(any(Put.class));
+
+        // Failing table access is a miss
+        when(table.get(any(Get.class))).thenThrow(new IOException());
+        assertNull(cache.get(new Blob(Bytes.toBytes("key2"), "application/pdf", 10L, "a.pdf"), 100));
+        assertEquals(1, cache.getTableMissCount());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.hbase.mapper;
+
+import javax.management.ObjectName;
+
+import com.google.common.cache.CacheStats;
+import org.apache.hadoop.metrics.MetricsContext;
+import org.apache.hadoop.metrics.MetricsRecord;
+import org.apache.hadoop.metrics.MetricsUtil;
+import org.apache.hadoop.metrics.Updater;
+import org.apache.hadoop.metrics.util.MetricsBase;
+import org.apache.hadoop.metrics.util.MetricsLongValue;
+import org.apache.hadoop.metrics.util.MetricsRegistry;
+import org.apache.hadoop.metrics.util.MetricsTimeVaryingLong;
+import org.apache.hadoop.metrics.util.MetricsTimeVaryingRate;
+import org.lilyproject.indexer.engine.BlobTextCache;
+import org.lilyproject.indexer.engine.ValueEvaluator;
+import org.lilyproject.util.hbase.metrics.MBeanUtil;
+import org.lilyproject.util.hbase.metrics.MetricsDynamicMBeanBase;
+
+/**
+ * Metrics of the {@link LilyResultToSolrMapper} of one index.
+ */
+public class IndexerMetrics implements Updater {
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final MetricsRecord metricsRecord;
+    private final MetricsContext context;
+    private final MetricsTimeVaryingRate mapRate;
+    private final MetricsTimeVaryingLong recordReads;
+    private final MetricsTimeVaryingLong recordReadHits;
+    private final MetricsLongValue blobTextCacheHits;
+    private final MetricsLongValue blobTextCacheMisses;
+    private final MetricsLongValue blobTextTableHits;
+    private final MetricsLongValue blobTextTableMisses;
+    private final MetricsLongValue blobExtractionTimeouts;
+    private final MetricsLongValue blobExtractionRejections;
+    private final MetricsTimeVaryingLong reindexEvents;
+    private final MetricsTimeVaryingLong reindexEventsMerged;
+    private final ValueEvaluator valueEvaluator;
+    private final IndexerMetricsMXBean mbean;
+    private final String recordName;
+
+    /**
+     * @param valueEvaluator the evaluator of which to report the blob extraction counts
+     */
+    public IndexerMetrics(String recordName, ValueEvaluator valueEvaluator) {
+        this.recordName = recordName;
+        this.valueEvaluator = valueEvaluator;
+        mapRate = new MetricsTimeVaryingRate("map", registry);
+        recordReads = new MetricsTimeVaryingLong("recordReads", registry);
+        recordReadHits = new MetricsTimeVaryingLong("recordReadHits", registry);
+        blobTextCacheHits = new MetricsLongValue("blobTextCacheHits", registry);
+        blobTextCacheMisses = new MetricsLongValue("blobTextCacheMisses", registry);
+        blobTextTableHits = new MetricsLongValue("blobTextTableHits", registry);
+        blobTextTableMisses = new MetricsLongValue("blobTextTableMisses", registry);
+        blobExtractionTimeouts = new MetricsLongValue("blobExtractionTimeouts", registry);
+        blobExtractionRejections = new MetricsLongValue("blobExtractionRejections", registry);
+        reindexEvents = new MetricsTimeVaryingLong("reindexEvents", registry);
+        reindexEventsMerged = new MetricsTimeVaryingLong("reindexEventsMerged", registry);
+
+        context = MetricsUtil.getContext("indexer");
+        metricsRecord = MetricsUtil.createRecord(context, recordName);
+        context.registerUpdater(this);
+        mbean = new IndexerMetricsMXBean(this.registry);
+    }
+
+    public void shutdown() {
+        context.unregisterUpdater(this);
+        mbean.shutdown();
+    }
+
+    @Override
+    public void doUpdates(MetricsContext unused) {
+        synchronized (this) {
+            BlobTextCache blobTextCache = valueEvaluator.getBlobTextCache();
+            if (blobTextCache != null) {
+                CacheStats stats = blobTextCache.getStats();
+                blobTextCacheHits.set(stats.hitCount());
+                blobTextCacheMisses.set(stats.missCount());
+                blobTextTableHits.set(blobTextCache.getTableHitCount());
+                blobTextTableMisses.set(blobTextCache.getTableMissCount());
+            }
+            blobExtractionTimeouts.set(valueEvaluator.getExtractionTimeoutCount());
+            blobExtractionRejections.set(valueEvaluator.getExtractionRejectionCount());
+            for (MetricsBase m : registry.getMetricsList()) {
+                m.pushMetric(metricsRecord);
+            }
+        }
+        metricsRecord.update();
+    }
+
+    /**
+     * Reports the mapping of one row.
+     *
+     * @param recordReads the number of records read from the repository
+     * @param recordReadHits the number of record reads that were served from the records read before
+     */
+    void reportMap(long duration, int recordReads, int recordReadHits) {
+        mapRate.inc(duration);
+        this.recordReads.inc(recordReads);
+        this.recordReadHits.inc(recordReadHits);
+    }
+
+    /**
+     * Reports the publishing of reindex events for records containing denormalized data.
+     */
+    void reportReindexEvents(int count) {
+        reindexEvents.inc(count);
+    }
+
+    /**
+     * Reports a reindex event that was merged into a pending event for the same record.
+     */
+    void reportMergedReindexEvent() {
+        reindexEventsMerged.inc();
+    }
+
+    public class IndexerMetricsMXBean extends MetricsDynamicMBeanBase {
+        private final ObjectName mbeanName;
+
+        public IndexerMetricsMXBean(MetricsRegistry registry) {
+            super(registry, "Lily Indexer");
+
+            mbeanName = MBeanUtil.registerMBean("Indexer", recordName, this);
+        }
+
+        public void shutdown() {
+            if (mbeanName != null) {
+                MBeanUtil.unregisterMBean(mbeanName);
+            }
+        }
+    }
+}
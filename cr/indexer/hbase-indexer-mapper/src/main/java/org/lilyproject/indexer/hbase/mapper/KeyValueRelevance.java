@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.hbase.mapper;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.common.base.Predicate;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.indexer.model.indexerconf.DerefValue;
+import org.lilyproject.indexer.model.indexerconf.DynamicIndexField;
+import org.lilyproject.indexer.model.indexerconf.FieldTemplatePart;
+import org.lilyproject.indexer.model.indexerconf.Follow;
+import org.lilyproject.indexer.model.indexerconf.ForEachNode;
+import org.lilyproject.indexer.model.indexerconf.IndexField;
+import org.lilyproject.indexer.model.indexerconf.LilyIndexerConf;
+import org.lilyproject.indexer.model.indexerconf.LinkFieldFollow;
+import org.lilyproject.indexer.model.indexerconf.MappingNode;
+import org.lilyproject.indexer.model.indexerconf.MatchNode;
+import org.lilyproject.indexer.model.indexerconf.NameTemplate;
+import org.lilyproject.indexer.model.indexerconf.RecordFieldFollow;
+import org.lilyproject.indexer.model.indexerconf.TemplatePart;
+import org.lilyproject.indexer.model.indexerconf.Value;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.FieldTypes;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.TypeManager;
+import org.lilyproject.util.ByteArrayKey;
+import org.lilyproject.util.hbase.LilyHBaseSchema.RecordCf;
+import org.lilyproject.util.hbase.LilyHBaseSchema.RecordColumn;
+
+/**
+ * Decides which KeyValues of the record table are relevant to an index, for
+ * {@link LilyResultToSolrMapper#isRelevantKV}.
+ *
+ * <p>The qualifiers of all relevant columns are kept in one immutable set, so that evaluating a KeyValue is a single
+ * hash lookup. Relevant are the system columns and the columns of the fields the indexer configuration depends on:
+ * the fields used by the index fields (including those along dereference chains), forEach and match nodes, name
+ * templates and the record filter, and the fields matching a dynamic field.</p>
+ *
+ * <p>Since dynamic fields and the record filter refer to fields by name or type, the set is rebuilt whenever the
+ * schema changes, which is detected through a change of the field types snapshot of the type manager. A change of
+ * the indexer configuration results in a new mapper, and thus a new instance of this class.</p>
+ */
+class KeyValueRelevance {
+    private final LilyIndexerConf conf;
+    private final TypeManager typeManager;
+    private final Set<SchemaId> confFieldIds;
+    private final Set<QName> filterFieldNames;
+    private volatile Table table;
+
+    KeyValueRelevance(LilyIndexerConf conf, TypeManager typeManager) {
+        this.conf = conf;
+        this.typeManager = typeManager;
+        this.filterFieldNames = conf.getRecordFilter().getFieldDependencies();
+
+        final Set<SchemaId> fieldIds = new HashSet<SchemaId>();
+        conf.getIndexFields().visitAll(new Predicate<MappingNode>() {
+            @Override
+            public boolean apply(MappingNode mappingNode) {
+                if (mappingNode instanceof IndexField) {
+                    IndexField indexField = (IndexField) mappingNode;
+                    addFieldIds(indexField.getValue(), fieldIds);
+                    addFieldIds(indexField.getName(), fieldIds);
+                } else if (mappingNode instanceof ForEachNode) {
+                    addFieldId(((ForEachNode) mappingNode).getFollow(), fieldIds);
+                } else if (mappingNode instanceof MatchNode) {
+                    fieldIds.addAll(((MatchNode) mappingNode).getRecordMatcher().getFieldDependencyIds());
+                }
+                return true;
+            }
+        });
+        this.confFieldIds = fieldIds;
+    }
+
+    boolean isRelevant(KeyValue kv) throws RepositoryException, InterruptedException {
+        if (!kv.matchingFamily(RecordCf.DATA.bytes)) {
+            return false;
+        }
+        return getTable().relevantQualifiers.contains(new ByteArrayKey(kv.getQualifier()));
+    }
+
+    private Table getTable() throws RepositoryException, InterruptedException {
+        FieldTypes fieldTypes = typeManager.getFieldTypesSnapshot();
+        Table current = table;
+        if (current == null || current.fieldTypes != fieldTypes) {
+            // Concurrent rebuilds produce equal tables, so there's no need to synchronize
+            current = new Table(fieldTypes);
+            table = current;
+        }
+        return current;
+    }
+
+    private boolean isRelevant(FieldType fieldType) {
+        if (confFieldIds.contains(fieldType.getId()) || filterFieldNames.contains(fieldType.getName())) {
+            return true;
+        }
+        for (DynamicIndexField dynamicField : conf.getDynamicFields()) {
+            if (dynamicField.matches(fieldType).match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addFieldIds(Value value, Set<SchemaId> fieldIds) {
+        if (value.getFieldDependency() != null) {
+            fieldIds.add(value.getFieldDependency());
+        }
+        if (value.getTargetFieldType() != null) {
+            fieldIds.add(value.getTargetFieldType().getId());
+        }
+        if (value instanceof DerefValue) {
+            // Changing a link field of any of the records along the chain changes the dereferenced value
+            for (Follow follow : ((DerefValue) value).getFollows()) {
+                addFieldId(follow, fieldIds);
+            }
+        }
+    }
+
+    private static void addFieldIds(NameTemplate nameTemplate, Set<SchemaId> fieldIds) {
+        if (nameTemplate == null) {
+            return;
+        }
+        for (TemplatePart part : nameTemplate.getParts()) {
+            if (part instanceof FieldTemplatePart && ((FieldTemplatePart) part).getFieldType() != null) {
+                fieldIds.add(((FieldTemplatePart) part).getFieldType().getId());
+            }
+        }
+    }
+
+    private static void addFieldId(Follow follow, Set<SchemaId> fieldIds) {
+        if (follow instanceof LinkFieldFollow) {
+            fieldIds.add(((LinkFieldFollow) follow).getFieldType().getId());
+        } else if (follow instanceof RecordFieldFollow) {
+            fieldIds.add(((RecordFieldFollow) follow).getFieldType().getId());
+        }
+    }
+
+    private class Table {
+        private final FieldTypes fieldTypes;
+        private final Set<ByteArrayKey> relevantQualifiers = new HashSet<ByteArrayKey>();
+
+        Table(FieldTypes fieldTypes) throws RepositoryException, InterruptedException {
+            this.fieldTypes = fieldTypes;
+
+            for (RecordColumn column : RecordColumn.values()) {
+                relevantQualifiers.add(new ByteArrayKey(column.bytes));
+            }
+
+            for (FieldType fieldType : fieldTypes.getFieldTypes()) {
+                if (isRelevant(fieldType)) {
+                    relevantQualifiers.add(new ByteArrayKey(
+                            Bytes.add(new byte[]{RecordColumn.DATA_PREFIX}, fieldType.getId().getBytes())));
+                }
+            }
+        }
+    }
+}
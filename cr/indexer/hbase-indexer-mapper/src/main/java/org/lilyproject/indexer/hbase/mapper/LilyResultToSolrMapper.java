@@ -1,8 +1,8 @@
 package org.lilyproject.indexer.hbase.mapper;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -12,43 +12,38 @@ import java.util.Set;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.ngdata.hbaseindexer.Configurable;
 import com.ngdata.hbaseindexer.parse.SolrUpdateWriter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
-import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrInputDocument;
 import org.lilyproject.client.LilyClient;
 import org.lilyproject.hbaseindex.IndexNotFoundException;
 import org.lilyproject.indexer.derefmap.DependantRecordIdsIterator;
+import org.lilyproject.indexer.derefmap.DependantsUpdate;
 import org.lilyproject.indexer.derefmap.DependencyEntry;
 import org.lilyproject.indexer.derefmap.DerefMap;
 import org.lilyproject.indexer.derefmap.DerefMapHbaseImpl;
 import org.lilyproject.indexer.engine.SolrDocumentBuilder;
 import org.lilyproject.indexer.engine.ValueEvaluator;
 import org.lilyproject.indexer.model.api.LResultToSolrMapper;
+import org.lilyproject.indexer.model.indexerconf.DerefRecordLoader;
 import org.lilyproject.indexer.model.indexerconf.DynamicFieldNameTemplateResolver;
 import org.lilyproject.indexer.model.indexerconf.DynamicIndexField;
 import org.lilyproject.indexer.model.indexerconf.IndexCase;
-import org.lilyproject.indexer.model.indexerconf.IndexField;
 import org.lilyproject.indexer.model.indexerconf.IndexerConfException;
 import org.lilyproject.indexer.model.indexerconf.LilyIndexerConf;
-import org.lilyproject.indexer.model.indexerconf.MappingNode;
 import org.lilyproject.indexer.model.util.IndexRecordFilterUtil;
 import org.lilyproject.repository.api.AbsoluteRecordId;
 import org.lilyproject.repository.api.FieldType;
-import org.lilyproject.repository.api.FieldTypeNotFoundException;
 import org.lilyproject.repository.api.IdGenerator;
 import org.lilyproject.repository.api.IdRecord;
 import org.lilyproject.repository.api.LRepository;
@@ -64,7 +59,6 @@ import org.lilyproject.repository.api.ValueType;
 import org.lilyproject.repository.api.VersionNotFoundException;
 import org.lilyproject.repository.impl.RecordDecoder;
 import org.lilyproject.repository.impl.id.AbsoluteRecordIdImpl;
-import org.lilyproject.repository.impl.id.SchemaIdImpl;
 import org.lilyproject.sep.LilyEventPublisherManager;
 import org.lilyproject.util.Pair;
 import org.lilyproject.util.hbase.HBaseTableFactory;
@@ -73,6 +67,7 @@ import org.lilyproject.util.hbase.LilyHBaseSchema;
 import org.lilyproject.util.hbase.RepoAndTableUtil;
 import org.lilyproject.util.io.Closer;
 import org.lilyproject.util.repo.RecordEvent;
+import org.lilyproject.util.repo.RecordEventHeader;
 import org.lilyproject.util.repo.RecordEventHelper;
 import org.lilyproject.util.repo.VTaggedRecord;
 import org.lilyproject.util.zookeeper.ZooKeeperItf;
@@ -95,9 +90,13 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
     private IdGenerator idGenerator;
     private LilyIndexerConf lilyIndexerConf;
     private ValueEvaluator valueEvaluator;
+    private HTableInterface blobTextTable;
     private DerefMap derefMap;
     private LilyEventPublisherManager eventPublisherManager;
     private String subscriptionId;
+    private IndexerMetrics metrics;
+    private ReindexEventBatcher reindexEventBatcher;
+    private KeyValueRelevance keyValueRelevance;
 
     public LilyResultToSolrMapper(String indexName, LilyIndexerConf lilyIndexerConf, RepositoryManager repositoryManager, ZooKeeperItf zooKeeperItf) {
         setIndexName(indexName);
@@ -124,17 +123,38 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         repository = repositoryManager.getRepository(repositoryName != null ? repositoryName : RepoAndTableUtil.DEFAULT_REPOSITORY);
         idGenerator = repository.getIdGenerator();
 
-        valueEvaluator = new ValueEvaluator(lilyIndexerConf);
+        if (lilyIndexerConf.getContentExtractionCacheTable()) {
+            blobTextTable = LilyHBaseSchema.getBlobTextTable(
+                    new HBaseTableFactoryImpl(LilyClient.getHBaseConfiguration(zooKeeperItf)));
+        }
+        valueEvaluator = new ValueEvaluator(lilyIndexerConf, blobTextTable);
         recordDecoder = new RecordDecoder(repository.getTypeManager(), repository.getIdGenerator(), repository.getRecordFactory());
+        metrics = new IndexerMetrics(indexName, valueEvaluator);
+        keyValueRelevance = new KeyValueRelevance(lilyIndexerConf, repository.getTypeManager());
         if (lilyIndexerConf.containsDerefExpressions()) {
-            HBaseTableFactory tableFactory = new HBaseTableFactoryImpl(LilyClient.getHBaseConfiguration(zooKeeperItf));
+            Configuration hbaseConf = LilyClient.getHBaseConfiguration(zooKeeperItf);
+            HBaseTableFactory tableFactory = new HBaseTableFactoryImpl(hbaseConf);
             eventPublisherManager = new LilyEventPublisherManager(tableFactory);
             derefMap = DerefMapHbaseImpl.create(repository.getRepositoryName(), indexName,
-                    LilyClient.getHBaseConfiguration(zooKeeperItf), null, repository.getIdGenerator());
+                    LilyClient.getHBaseConfiguration(zooKeeperItf), null, repository.getIdGenerator(),
+                    lilyIndexerConf.getDenormalizedUpdatesScannerCaching());
+            // the reindex events are written in the same format as the Lily servers write theirs
+            boolean binaryEvents = hbaseConf.getBoolean(RecordEvent.BINARY_FORMAT_PROPERTY, false);
+            reindexEventBatcher = new ReindexEventBatcher(eventPublisherManager, repository.getRepositoryName(),
+                    subscriptionId, lilyIndexerConf.getDenormalizedUpdatesBatchSize(),
+                    lilyIndexerConf.getDenormalizedUpdatesMaxRate(), metrics, binaryEvents);
         }
     }
 
     public void stop () {
+        Closer.close(derefMap);
+        if (metrics != null) {
+            metrics.shutdown();
+        }
+        if (valueEvaluator != null) {
+            valueEvaluator.stop();
+        }
+        Closer.close(blobTextTable);
         Closer.close(eventPublisherManager);
         Closer.close(repository);
         Closer.close(repositoryManager);
@@ -146,9 +166,11 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         try {
             // If we have a request to reindex then all the information we need should be in the payload
             if (result.containsColumn(LilyHBaseSchema.RecordCf.DATA.bytes, LilyHBaseSchema.RecordColumn.PAYLOAD.bytes)) {
-                RecordEvent event = new RecordEvent(result.getFamilyMap(LilyHBaseSchema.RecordCf.DATA.bytes)
-                        .get(LilyHBaseSchema.RecordColumn.PAYLOAD.bytes), idGenerator);
-                return event.getType().equals(INDEX);
+                // Only the header of the event is needed to know its type
+                RecordEventHeader header = RecordEventHeader.fromBytes(result.getFamilyMap(
+                        LilyHBaseSchema.RecordCf.DATA.bytes).get(LilyHBaseSchema.RecordColumn.PAYLOAD.bytes),
+                        idGenerator);
+                return INDEX.equals(header.getType());
             }
         } catch (IOException e) {
             log.error("Unable to decode record event", e);
@@ -159,57 +181,14 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
 
     @Override
     public boolean isRelevantKV(final KeyValue kv) {
-        if (!Arrays.equals(LilyHBaseSchema.RecordCf.DATA.bytes,kv.getFamily())) {
-            return false;
-        }
-        final byte[] qualifier = kv.getQualifier();
-        if (qualifier[0] == LilyHBaseSchema.RecordColumn.DATA_PREFIX) {
-            SchemaId fieldId = new SchemaIdImpl(Bytes.tail(qualifier, qualifier.length - 1));
-            FieldType fieldType  = null;
-            try {
-                fieldType = repository.getTypeManager().getFieldTypeById(fieldId);
-            } catch (IllegalArgumentException e) {
-                // no qualifier
-                return false;
-            } catch (FieldTypeNotFoundException e) {
-                // field doesn't exist
-                return false;
-            } catch (RepositoryException e) {
-                log.warn(e);
-            } catch (InterruptedException e) {
-                log.warn(e);
-            }
-
-            if (fieldType == null) {
-                return false;
-            }
-
-            StaticFieldTypeFinder finder = new StaticFieldTypeFinder(fieldType);
-            lilyIndexerConf.getIndexFields().visitAll(finder);
-            if (finder.foundRelevant) {
-                return true;
-            }
-
-            for (DynamicIndexField indexField : lilyIndexerConf.getDynamicFields()) {
-                if (indexField.matches(fieldType).match) {
-                    return true;
-                }
-            }
-        } else if (qualifier[0] == LilyHBaseSchema.RecordColumn.SYSTEM_PREFIX) {            
-            List<LilyHBaseSchema.RecordColumn> columns = Arrays.asList(LilyHBaseSchema.RecordColumn.values());
-            Collection<LilyHBaseSchema.RecordColumn> filtered = Collections2.filter(columns,
-                    new Predicate<LilyHBaseSchema.RecordColumn>() {
-                @Override
-                public boolean apply(LilyHBaseSchema.RecordColumn input) {
-                    return Arrays.equals(input.bytes, qualifier);
-                }
-            });
-            return !filtered.isEmpty();
-        } else {
-            // is this a lily key value?
+        try {
+            return keyValueRelevance.isRelevant(kv);
+        } catch (RepositoryException e) {
+            log.warn(e);
+        } catch (InterruptedException e) {
+            log.warn(e);
+            Thread.currentThread().interrupt();
         }
-
-
         return false;
     }
 
@@ -220,6 +199,10 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
 
     @Override
     public void map(Result result, SolrUpdateWriter solrUpdateWriter) {
+        long before = System.currentTimeMillis();
+        // All reads done while mapping this row go through this repository, it remembers the records read, so
+        // that e.g. a record reached by several dereference expressions is only read once.
+        MemoizingRepository repository = new MemoizingRepository(this.repository);
         try {
             Record record = recordDecoder.decodeRecord(result);
             RecordEvent event = new RecordEvent(result.getFamilyMap(LilyHBaseSchema.RecordCf.DATA.bytes)
@@ -248,7 +231,7 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
                 vtagsToIndex.retainAll(vtRecord.getVTags().keySet());
 
                 log.debug(vtagsToIndex.toString());
-                index(table, vtRecord, vtagsToIndex, solrUpdateWriter);
+                index(table, vtRecord, vtagsToIndex, repository, solrUpdateWriter);
             } else if (event.getType().equals(DELETE)) {
                 solrUpdateWriter.deleteByQuery("lily.id:" + ClientUtils.escapeQueryChars(record.getId().toString()));
 
@@ -324,7 +307,7 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
                         return;
                     }
 
-                    handleRecordCreateUpdate(vtRecord, table, solrUpdateWriter);
+                    handleRecordCreateUpdate(vtRecord, table, repository, solrUpdateWriter);
                 }
 
                 if (derefMap != null) {
@@ -334,6 +317,8 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
             }
         } catch (Exception e) {
             log.warn("Something went wrong while indexing", e);
+        } finally {
+            metrics.reportMap(System.currentTimeMillis() - before, repository.getMisses(), repository.getHits());
         }
     }
 
@@ -341,8 +326,6 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
                                         Set<SchemaId> changedVTagFields)
             throws RepositoryException, InterruptedException, IOException {
 
-        Multimap<AbsoluteRecordId, SchemaId> referrersAndVTags = ArrayListMultimap.create();
-
         Set<SchemaId> allVTags = lilyIndexerConf.getVtags();
 
         if (log.isDebugEnabled()) {
@@ -352,68 +335,77 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         // The reason to iterate over all vtags is because a field from a record without versions might be
         // dereferenced into multiple vtagged versions of another record, and we don't know what the [indexed]
         // vtags of that other record are.
+        Set<SchemaId> vtagsRegardlessOfFields = new HashSet<SchemaId>();
+        Set<SchemaId> vtagsForFields = new HashSet<SchemaId>();
         for (SchemaId vtag : allVTags) {
             if ((changedVTagFields != null && changedVTagFields.contains(vtag)) || updatedFieldsByScope == null) {
                 // changed vtags or delete: reindex regardless of fields
-                AbsoluteRecordId absRecordId = new AbsoluteRecordIdImpl(table, recordId);
-                DependantRecordIdsIterator dependants = derefMap.findDependantsOf(absRecordId);
+                vtagsRegardlessOfFields.add(vtag);
+            } else {
+                // vtag didn't change, but some fields did change
+                vtagsForFields.add(vtag);
+            }
+        }
+
+        //
+        // Add an index message to each of the found referrers, their actual indexing will be triggered
+        // by the message queue. The referrers are streamed from the deref map rather than collected first,
+        // since highly referenced records can have more of them than fit comfortably in memory. The messages
+        // are published in batches, messages for a referrer which is already waiting to be published are
+        // merged into one. All messages are published before returning, so that none of them get lost once
+        // the SEP considers the update of this record as processed.
+        //
+        AbsoluteRecordId absRecordId = new AbsoluteRecordIdImpl(table, recordId);
+        ReindexEventBatcher.Batch batch = reindexEventBatcher.newBatch();
+        try {
+            if (!vtagsRegardlessOfFields.isEmpty()) {
+                // The dependants in all vtags are the same for each of these vtags, so they are read only once
+                int count = publishReindexEvents(batch, derefMap.findDependantsOf(absRecordId),
+                        vtagsRegardlessOfFields);
                 if (log.isDebugEnabled()) {
-                    log.debug("changed vtag: dependants of " + recordId + ": " +
-                            depIds(derefMap.findDependantsOf(absRecordId)));
-                }
-                while (dependants.hasNext()) {
-                    referrersAndVTags.put(dependants.next(), vtag);
+                    log.debug(String.format("Record %1$s: requested reindex of %2$s records in vtags %3$s because " +
+                            "they might contain outdated denormalized data.", recordId, count,
+                            vtagsRegardlessOfFields));
                 }
-            } else {
-                // vtag didn't change, but some fields did change:
+            }
+
+            if (!vtagsForFields.isEmpty()) {
                 Set<SchemaId> fields = new HashSet<SchemaId>();
                 for (Scope scope : updatedFieldsByScope.keySet()) {
                     fields.addAll(toSchemaIds(updatedFieldsByScope.get(scope)));
                 }
-                AbsoluteRecordId absRecordId = new AbsoluteRecordIdImpl(table, recordId);
-                final DependantRecordIdsIterator dependants = derefMap.findDependantsOf(absRecordId, fields, vtag);
-                while (dependants.hasNext()) {
-                    referrersAndVTags.put(dependants.next(), vtag);
+                for (SchemaId vtag : vtagsForFields) {
+                    int count = publishReindexEvents(batch, derefMap.findDependantsOf(absRecordId, fields, vtag),
+                            Collections.singleton(vtag));
+                    if (log.isDebugEnabled()) {
+                        log.debug(String.format("Record %1$s: requested reindex of %2$s records in vtag %3$s " +
+                                "because they might contain outdated denormalized data.", recordId, count, vtag));
+                    }
                 }
             }
+        } finally {
+            // Also publish the messages collected before a failure
+            batch.flush();
         }
+    }
 
-        if (log.isDebugEnabled()) {
-            log.debug(String.format("Record %1$s: found %2$s records (times vtags) to be updated because they " +
-                    "might contain outdated denormalized data." +
-                    " The records are: %3$s", recordId,
-                    referrersAndVTags.keySet().size(), referrersAndVTags.keySet()));
-        }
-
-        //
-        // Now add an index message to each of the found referrers, their actual indexing
-        // will be triggered by the message queue.
-        //
-        for (AbsoluteRecordId referrer : referrersAndVTags.keySet()) {
-            RecordEvent payload = new RecordEvent();
-            payload.setTableName(referrer.getTable());
-            payload.setType(INDEX);
-            for (SchemaId vtag : referrersAndVTags.get(referrer)) {
-                payload.addVTagToIndex(vtag);
-            }
-            RecordEvent.IndexRecordFilterData filterData = new RecordEvent.IndexRecordFilterData();
-            filterData.setSubscriptionInclusions(ImmutableSet.of(this.subscriptionId));
-            payload.setIndexRecordFilterData(filterData);
-
-            try {
-                eventPublisherManager.getEventPublisher(repo, referrer.getTable()
-                ).publishEvent(referrer.getRecordId().toBytes(), payload.toJsonBytes());
-            } catch (Exception e) {
-                // We failed to put the message: this is pretty important since it means the record's index
-                // won't get updated, therefore log as error, but after this we continue with the next one.
-                log.error("Error putting index message on queue of record " + referrer, e);
-                //metrics.errors.inc();
+    /**
+     * Adds a reindex message to the batch for the given vtags for each of the dependants, and closes the iterator.
+     *
+     * @return the number of dependants
+     */
+    private int publishReindexEvents(ReindexEventBatcher.Batch batch, DependantRecordIdsIterator dependants,
+            Set<SchemaId> vtags) throws IOException, InterruptedException {
+        int count = 0;
+        try {
+            while (dependants.hasNext()) {
+                batch.add(dependants.next(), vtags);
+                count++;
             }
-            //metrics.lastReindexRequestedTimestamp.set(System.currentTimeMillis());
-
-
-
+        } finally {
+            Closer.close(dependants);
         }
+        return count;
     }
 
     private Set<SchemaId> toSchemaIds(Set<FieldType> fieldTypes) {
@@ -425,14 +417,6 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         }));
     }
 
-    private List<AbsoluteRecordId> depIds(DependantRecordIdsIterator dependants) throws IOException {
-        List<AbsoluteRecordId> recordIds = Lists.newArrayList();
-        while (dependants.hasNext()) {
-            recordIds.add(dependants.next());
-        }
-        return recordIds;
-    }
-
     @Override
     public LRepository getRepository() {
         return this.repository;
@@ -487,7 +471,8 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         return builder.toString();
     }
 
-    private void processDependencies(String table, Record record, SchemaId vtag, SolrDocumentBuilder solrDocumentBuilder)
+    private void processDependencies(String table, Record record, SchemaId vtag, SolrDocumentBuilder solrDocumentBuilder,
+                                     List<DependantsUpdate> dependantsUpdates)
             throws IOException, RepositoryException, InterruptedException {
         if (log.isDebugEnabled()) {
             log.debug("Constructed Solr doc: " + solrDocumentBuilder.build());
@@ -496,8 +481,8 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         }
 
         if (derefMap != null) {
-            derefMap.updateDependants(new AbsoluteRecordIdImpl(table, record.getId()),
-                    vtag, solrDocumentBuilder.getDependencies());
+            dependantsUpdates.add(new DependantsUpdate(new AbsoluteRecordIdImpl(table, record.getId()),
+                    vtag, solrDocumentBuilder.getDependencies()));
         }
     }
 
@@ -512,7 +497,8 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         }
     }
 
-    private void handleRecordCreateUpdate(VTaggedRecord vtRecord, LTable table, SolrUpdateWriter solrUpdateWriter) throws Exception {
+    private void handleRecordCreateUpdate(VTaggedRecord vtRecord, LTable table, LRepository repository,
+                                          SolrUpdateWriter solrUpdateWriter) throws Exception {
 
         RecordEvent event = vtRecord.getRecordEvent();
         Map<Long, Set<SchemaId>> vtagsByVersion = vtRecord.getVTagsByVersion();
@@ -642,7 +628,7 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
             //
             // Index
             //
-            this.index(table, vtRecord, vtagsToIndex, solrUpdateWriter);
+            this.index(table, vtRecord, vtagsToIndex, repository, solrUpdateWriter);
         }
     }
 
@@ -664,9 +650,14 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         return result;
     }
 
-    private void index(LTable table, VTaggedRecord vtRecord, Set<SchemaId> vtagsToIndex, SolrUpdateWriter solrUpdateWriter) throws Exception {
+    private void index(LTable table, VTaggedRecord vtRecord, Set<SchemaId> vtagsToIndex, LRepository repository,
+                       SolrUpdateWriter solrUpdateWriter) throws Exception {
         IdRecord idRecord = vtRecord.getRecord();
         Map<Long, Set<SchemaId>> vtagsToIndexByVersion = getVtagsByVersion(vtagsToIndex, vtRecord.getVTags());
+        // The records reached through dereferencing are shared by the documents of all vtags
+        DerefRecordLoader derefRecordLoader = new DerefRecordLoader(repository);
+        // The dependencies of all vtags are written to the deref map together
+        List<DependantsUpdate> dependantsUpdates = new ArrayList<DependantsUpdate>();
         for (Map.Entry<Long, Set<SchemaId>> entry : vtagsToIndexByVersion.entrySet()) {
 
             IdRecord version = null;
@@ -693,8 +684,8 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
             } else {
                 for (SchemaId vtag : entry.getValue()) {
                     SolrDocumentBuilder solrDocumentBuilder = new SolrDocumentBuilder(repository, lilyIndexerConf.getRecordFilter(),
-                            lilyIndexerConf.getSystemFields(), valueEvaluator, table.getTableName(), version,
-                            getIndexId(table.getTableName(), vtRecord.getId(), vtag), vtag, entry.getKey());
+                            lilyIndexerConf.getSystemFields(), valueEvaluator, derefRecordLoader, table.getTableName(),
+                            version, getIndexId(table.getTableName(), vtRecord.getId(), vtag), vtag, entry.getKey());
 
                     lilyIndexerConf.getIndexFields().collectIndexUpdate(solrDocumentBuilder);
 
@@ -738,11 +729,13 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
                                     "removed from index if present", vtRecord.getId(), safeLoadTagName(vtag)));
                         }
 
-                        processDependencies(table.getTableName(), idRecord, vtag, solrDocumentBuilder);
+                        processDependencies(table.getTableName(), idRecord, vtag, solrDocumentBuilder,
+                                dependantsUpdates);
                     } else {
                         SolrInputDocument solrDoc = solrDocumentBuilder.build();
 
-                        processDependencies(table.getTableName(), idRecord, vtag, solrDocumentBuilder);
+                        processDependencies(table.getTableName(), idRecord, vtag, solrDocumentBuilder,
+                                dependantsUpdates);
                         solrUpdateWriter.add(solrDoc);
                         //log.debug("index response " + solrShardMgr.getSolrClient(record.getId()).add(solrDoc).toString());
                         //metrics.adds.inc();
@@ -755,6 +748,11 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
                 }
             }
         }
+
+        // The documents are only sent to Solr after the mapping, so the dependencies are still stored first
+        if (!dependantsUpdates.isEmpty()) {
+            derefMap.updateDependants(dependantsUpdates);
+        }
     }
 
     protected String vtagSetToNameString(Set<SchemaId> vtags) {
@@ -768,25 +766,6 @@ public class LilyResultToSolrMapper implements LResultToSolrMapper,Configurable
         return builder.toString();
     }
 
-    private static class StaticFieldTypeFinder implements Predicate<MappingNode> {
-        boolean foundRelevant = false;
-        final FieldType fieldType;
-        private StaticFieldTypeFinder(FieldType fieldType) {
-            this.fieldType = fieldType;
-        }
-
-        @Override
-        public boolean apply(MappingNode mappingNode) {
-            if (mappingNode instanceof IndexField) {
-                IndexField indexField = (IndexField)mappingNode;
-                if (fieldType.equals(indexField.getValue().getTargetFieldType())) {
-                    foundRelevant = true;
-                }
-            }
-            return !foundRelevant;
-        }
-    }
-
     /**
      * Lookup name of field type, for use in debug logs. Beware, this might be slow.
      */
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.hbase.mapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.api.IdRecord;
+import org.lilyproject.repository.api.LRepository;
+import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordFactory;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.Repository;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.TableManager;
+import org.lilyproject.repository.api.TypeManager;
+import org.lilyproject.repository.spi.BaseRepositoryDecorator;
+import org.lilyproject.util.hbase.LilyHBaseSchema.Table;
+
+/**
+ * A view on a repository which remembers the records read through it, so that a record which is needed
+ * several times while mapping one row (for the vtags of the record, for dereferencing, for the index record
+ * filter, ...) is only read once.
+ *
+ * <p>Reads are remembered per (table, record id, version, field set). Nothing is ever invalidated, an instance
+ * is meant to be used for the duration of one {@link LilyResultToSolrMapper#map} call and then thrown away.
+ * Records are cloned when they are remembered and when they are handed out, since Record objects are mutable.
+ * Records which are not found are not remembered.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+class MemoizingRepository implements LRepository {
+    private final LRepository delegate;
+    private final Map<String, LTable> tables = new HashMap<String, LTable>();
+    private final Map<List<Object>, Record> records = new HashMap<List<Object>, Record>();
+    private int hits;
+    private int misses;
+
+    MemoizingRepository(LRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public LTable getTable(String tableName) throws InterruptedException, RepositoryException {
+        LTable table = tables.get(tableName);
+        if (table == null) {
+            table = delegate.getTable(tableName);
+            // Tables that can't be decorated are used as is, reads from them are simply not remembered
+            if (table instanceof Repository) {
+                table = new MemoizingTable((Repository) table, tableName);
+            }
+            tables.put(tableName, table);
+        }
+        return table;
+    }
+
+    @Override
+    public LTable getDefaultTable() throws InterruptedException, RepositoryException {
+        return getTable(Table.RECORD.name);
+    }
+
+    @Override
+    public TableManager getTableManager() {
+        return delegate.getTableManager();
+    }
+
+    @Override
+    public IdGenerator getIdGenerator() {
+        return delegate.getIdGenerator();
+    }
+
+    @Override
+    public TypeManager getTypeManager() {
+        return delegate.getTypeManager();
+    }
+
+    @Override
+    public RecordFactory getRecordFactory() {
+        return delegate.getRecordFactory();
+    }
+
+    @Override
+    public String getRepositoryName() {
+        return delegate.getRepositoryName();
+    }
+
+    /**
+     * The number of reads that were served from the remembered records.
+     */
+    int getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of records that had to be read from the repository.
+     */
+    int getMisses() {
+        return misses;
+    }
+
+    private static List<Object> key(String tableName, boolean withIds, RecordId recordId, Long version,
+            List<?> fields) {
+        return Arrays.<Object>asList(tableName, withIds, recordId, version, fields);
+    }
+
+    private Record get(List<Object> key) {
+        Record record = records.get(key);
+        if (record == null) {
+            return null;
+        }
+        hits++;
+        return record.clone();
+    }
+
+    private void put(List<Object> key, Record record) {
+        misses++;
+        records.put(key, record.clone());
+    }
+
+    private class MemoizingTable extends BaseRepositoryDecorator {
+        private final String tableName;
+
+        MemoizingTable(Repository delegate, String tableName) {
+            super(delegate);
+            this.tableName = tableName;
+        }
+
+        @Override
+        public LTable getTable(String tableName) throws InterruptedException, RepositoryException {
+            return MemoizingRepository.this.getTable(tableName);
+        }
+
+        @Override
+        public LTable getDefaultTable() throws InterruptedException, RepositoryException {
+            return MemoizingRepository.this.getDefaultTable();
+        }
+
+        @Override
+        public Record read(RecordId recordId, List<QName> fieldNames)
+                throws RepositoryException, InterruptedException {
+            return read(recordId, null, fieldNames);
+        }
+
+        @Override
+        public Record read(RecordId recordId, QName... fieldNames)
+                throws RepositoryException, InterruptedException {
+            return read(recordId, null, fieldNames);
+        }
+
+        @Override
+        public Record read(RecordId recordId, Long version, QName... fieldNames)
+                throws RepositoryException, InterruptedException {
+            return read(recordId, version, fieldNames == null ? null : Arrays.asList(fieldNames));
+        }
+
+        @Override
+        public Record read(RecordId recordId, Long version, List<QName> fieldNames)
+                throws RepositoryException, InterruptedException {
+            List<Object> key = key(tableName, false, recordId, version, emptyToNull(fieldNames));
+            Record record = get(key);
+            if (record == null) {
+                record = delegate.read(recordId, version, fieldNames);
+                put(key, record);
+            }
+            return record;
+        }
+
+        @Override
+        public IdRecord readWithIds(RecordId recordId, Long version, List<SchemaId> fieldIds)
+                throws RepositoryException, InterruptedException {
+            List<Object> key = key(tableName, true, recordId, version, emptyToNull(fieldIds));
+            IdRecord record = (IdRecord) get(key);
+            if (record == null) {
+                record = delegate.readWithIds(recordId, version, fieldIds);
+                put(key, record);
+            }
+            return record;
+        }
+
+        @Override
+        public List<IdRecord> readWithIds(List<RecordId> recordIds, List<SchemaId> fieldIds)
+                throws RepositoryException, InterruptedException {
+            List<Object> fields = emptyToNull(fieldIds);
+
+            // Only the records which were not read before are fetched, with one multi-get
+            Map<RecordId, IdRecord> found = new HashMap<RecordId, IdRecord>();
+            Set<RecordId> toRead = new LinkedHashSet<RecordId>();
+            for (RecordId recordId : recordIds) {
+                if (found.containsKey(recordId) || toRead.contains(recordId)) {
+                    continue;
+                }
+                IdRecord record = (IdRecord) get(key(tableName, true, recordId, null, fields));
+                if (record != null) {
+                    found.put(recordId, record);
+                } else {
+                    toRead.add(recordId);
+                }
+            }
+
+            if (!toRead.isEmpty()) {
+                for (IdRecord record : delegate.readWithIds(new ArrayList<RecordId>(toRead), fieldIds)) {
+                    put(key(tableName, true, record.getId(), null, fields), record);
+                    found.put(record.getId(), record);
+                }
+            }
+
+            // Keep the contract of the delegate: the order of the requested ids, missing records are skipped
+            List<IdRecord> result = new ArrayList<IdRecord>(recordIds.size());
+            for (RecordId recordId : recordIds) {
+                IdRecord record = found.get(recordId);
+                if (record != null) {
+                    result.add(record);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Null and an empty list both stand for all fields.
+     */
+    private static List<Object> emptyToNull(List<?> fields) {
+        return fields == null || fields.isEmpty() ? null : new ArrayList<Object>(fields);
+    }
+}
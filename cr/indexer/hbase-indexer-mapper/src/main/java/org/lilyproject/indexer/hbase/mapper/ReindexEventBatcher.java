@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.hbase.mapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lilyproject.repository.api.AbsoluteRecordId;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.sep.LilyEventPublisherManager;
+import org.lilyproject.util.repo.RecordEvent;
+
+import static org.lilyproject.util.repo.RecordEvent.Type.INDEX;
+
+/**
+ * Publishes the reindex events for records containing denormalized data of updated records, in batches.
+ *
+ * <p>The events are collected in a {@link Batch}, which is used for the processing of one updated record.
+ * Events for the same record are merged into one event, so that a record which depends on the updated record
+ * in several ways is only reindexed once. A batch is published when it is full, and by {@link Batch#flush()},
+ * which should be called before the processing of the updated record ends: the SEP only keeps the update
+ * around until then, so events which are not yet published at that point would get lost when the process
+ * dies. Publishing is throttled to a maximum number of events per second, shared by all batches, so that an
+ * update of a record with many dependants does not swamp the region servers.</p>
+ */
+class ReindexEventBatcher {
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final LilyEventPublisherManager eventPublisherManager;
+    private final String repositoryName;
+    private final String subscriptionId;
+    private final int batchSize;
+    private final RateLimiter rateLimiter;
+    private final IndexerMetrics metrics;
+    private final boolean binaryEvents;
+
+    ReindexEventBatcher(LilyEventPublisherManager eventPublisherManager, String repositoryName,
+            String subscriptionId, int batchSize, double maxEventsPerSecond, IndexerMetrics metrics,
+            boolean binaryEvents) {
+        this.eventPublisherManager = eventPublisherManager;
+        this.repositoryName = repositoryName;
+        this.subscriptionId = subscriptionId;
+        this.batchSize = batchSize;
+        this.rateLimiter = RateLimiter.create(maxEventsPerSecond);
+        this.metrics = metrics;
+        this.binaryEvents = binaryEvents;
+    }
+
+    Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Collects the reindex events of the processing of one updated record. A batch is not thread safe.
+     */
+    class Batch {
+        private Map<AbsoluteRecordId, Set<SchemaId>> pending = new LinkedHashMap<AbsoluteRecordId, Set<SchemaId>>();
+
+        private Batch() {
+        }
+
+        /**
+         * Adds a reindex event for the given vtags of a record. Callers are held up while the throttling is
+         * in effect.
+         */
+        void add(AbsoluteRecordId recordId, Collection<SchemaId> vtags) throws InterruptedException {
+            Set<SchemaId> pendingVTags = pending.get(recordId);
+            if (pendingVTags == null) {
+                pending.put(recordId, new HashSet<SchemaId>(vtags));
+            } else {
+                pendingVTags.addAll(vtags);
+                metrics.reportMergedReindexEvent();
+            }
+
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Publishes the pending events.
+         */
+        void flush() throws InterruptedException {
+            if (!pending.isEmpty()) {
+                Map<AbsoluteRecordId, Set<SchemaId>> events = pending;
+                pending = new LinkedHashMap<AbsoluteRecordId, Set<SchemaId>>();
+                publish(events);
+            }
+        }
+    }
+
+    private void publish(Map<AbsoluteRecordId, Set<SchemaId>> batch) throws InterruptedException {
+        rateLimiter.acquire(batch.size());
+
+        // The events are put on the records themselves, which can be in different tables
+        Map<String, List<AbsoluteRecordId>> recordIdsByTable = new LinkedHashMap<String, List<AbsoluteRecordId>>();
+        for (AbsoluteRecordId recordId : batch.keySet()) {
+            List<AbsoluteRecordId> recordIds = recordIdsByTable.get(recordId.getTable());
+            if (recordIds == null) {
+                recordIds = new ArrayList<AbsoluteRecordId>();
+                recordIdsByTable.put(recordId.getTable(), recordIds);
+            }
+            recordIds.add(recordId);
+        }
+
+        for (Map.Entry<String, List<AbsoluteRecordId>> entry : recordIdsByTable.entrySet()) {
+            List<byte[]> rows = new ArrayList<byte[]>(entry.getValue().size());
+            List<byte[]> payloads = new ArrayList<byte[]>(entry.getValue().size());
+            for (AbsoluteRecordId recordId : entry.getValue()) {
+                rows.add(recordId.getRecordId().toBytes());
+                payloads.add(createPayload(recordId, batch.get(recordId)).toBytes(binaryEvents));
+            }
+
+            try {
+                eventPublisherManager.getEventPublisher(repositoryName, entry.getKey()).publishEvents(rows, payloads);
+                metrics.reportReindexEvents(rows.size());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // We failed to put the messages: this is pretty important since it means the records' index
+                // entries won't get updated, therefore log as error, but after this we continue with the next ones.
+                log.error("Error putting index messages on queue of records " + entry.getValue(), e);
+            }
+        }
+    }
+
+    private RecordEvent createPayload(AbsoluteRecordId recordId, Set<SchemaId> vtags) {
+        RecordEvent payload = new RecordEvent();
+        payload.setTableName(recordId.getTable());
+        payload.setType(INDEX);
+        for (SchemaId vtag : vtags) {
+            payload.addVTagToIndex(vtag);
+        }
+        RecordEvent.IndexRecordFilterData filterData = new RecordEvent.IndexRecordFilterData();
+        filterData.setSubscriptionInclusions(ImmutableSet.of(subscriptionId));
+        payload.setIndexRecordFilterData(filterData);
+        return payload;
+    }
+}
@@ -81,6 +81,27 @@ public class LilyResultToSolrMapperTest {
         Assert.assertEquals("myvalue", doc.get("a_string").getValue());
     }
 
+    @Test
+    public void testIsRelevantKV() throws Exception {
+        TypeManager typeManager = repository.getTypeManager();
+        byte[] row = Bytes.toBytes("row");
+        byte[] family = LilyHBaseSchema.RecordCf.DATA.bytes;
+
+        FieldType aString = typeManager.getFieldTypeByName(new QName(NS1, "a_string"));
+        Assert.assertTrue(mapper.isRelevantKV(new KeyValue(row, family, fieldQualifier(aString), Bytes.toBytes(1))));
+        Assert.assertTrue(mapper.isRelevantKV(new KeyValue(row, family, LilyHBaseSchema.RecordColumn.VERSION.bytes,
+                Bytes.toBytes(1L))));
+        Assert.assertFalse(mapper.isRelevantKV(new KeyValue(row, Bytes.toBytes("other"), fieldQualifier(aString),
+                Bytes.toBytes(1))));
+
+        // A field type created after the mapper, which is not used by the indexer configuration
+        FieldType other = typeManager.createFieldType("STRING", new QName(NS1, "other"), Scope.NON_VERSIONED);
+        Assert.assertFalse(mapper.isRelevantKV(new KeyValue(row, family, fieldQualifier(other), Bytes.toBytes(1))));
+    }
+
+    private static byte[] fieldQualifier(FieldType fieldType) {
+        return Bytes.add(new byte[]{LilyHBaseSchema.RecordColumn.DATA_PREFIX}, fieldType.getId().getBytes());
+    }
 
     public Result encodeRecord(Record record) throws InterruptedException, RepositoryException {
         TypeManager typeManager = repositoryManager.getDefaultRepository().getTypeManager();
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.hbase.mapper;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lilyproject.repository.api.IdRecord;
+import org.lilyproject.repository.api.LRepository;
+import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.fake.FakeRepositoryManager;
+import org.lilyproject.tools.import_.cli.JsonImport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MemoizingRepositoryTest {
+    private static final String NS1 = "org.lilyproject.indexer.hbase.mapper.test";
+    private static final QName RT1 = new QName(NS1, "rt1");
+    private static final QName A_STRING = new QName(NS1, "a_string");
+
+    private LRepository repository;
+    private Record record1;
+    private Record record2;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = FakeRepositoryManager.bootstrapRepositoryManager().getDefaultRepository();
+        JsonImport.loadSchema(repository, MemoizingRepositoryTest.class.getResourceAsStream("schema.json"));
+
+        LTable table = repository.getDefaultTable();
+        record1 = table.recordBuilder().assignNewUuid().recordType(RT1).field(A_STRING, "value1").create();
+        record2 = table.recordBuilder().assignNewUuid().recordType(RT1).field(A_STRING, "value2").create();
+    }
+
+    @Test
+    public void testReadIsRemembered() throws Exception {
+        MemoizingRepository memoRepository = new MemoizingRepository(repository);
+        LTable table = memoRepository.getDefaultTable();
+        assertSame(table, memoRepository.getTable(table.getTableName()));
+
+        Record read1 = table.read(record1.getId());
+        read1.setField(A_STRING, "changed");
+        Record read2 = table.read(record1.getId());
+
+        assertNotSame(read1, read2);
+        assertEquals("value1", read2.getField(A_STRING));
+        assertEquals(1, memoRepository.getMisses());
+        assertEquals(1, memoRepository.getHits());
+
+        // A different field set is a different read
+        table.read(record1.getId(), A_STRING);
+        assertEquals(2, memoRepository.getMisses());
+    }
+
+    @Test
+    public void testMultiReadOnlyFetchesUnknownRecords() throws Exception {
+        MemoizingRepository memoRepository = new MemoizingRepository(repository);
+        LTable table = memoRepository.getDefaultTable();
+
+        table.readWithIds(record1.getId(), null, null);
+        List<IdRecord> records = table.readWithIds(Arrays.asList(record2.getId(), record1.getId()), null);
+
+        assertEquals(2, records.size());
+        assertEquals(record2.getId(), records.get(0).getId());
+        assertEquals(record1.getId(), records.get(1).getId());
+        assertEquals(2, memoRepository.getMisses());
+        assertEquals(1, memoRepository.getHits());
+
+        table.readWithIds(record2.getId(), null, null);
+        assertEquals(2, memoRepository.getMisses());
+        assertEquals(2, memoRepository.getHits());
+    }
+}
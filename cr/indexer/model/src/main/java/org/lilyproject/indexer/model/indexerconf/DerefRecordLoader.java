@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.model.indexerconf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.lilyproject.repository.api.IdRecord;
+import org.lilyproject.repository.api.LRepository;
+import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordNotFoundException;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.VersionNotFoundException;
+import org.lilyproject.util.repo.VersionTag;
+
+/**
+ * Loads the records that are reached when following dereference expressions (links, master and variant
+ * records), in the version pointed to by a vtag.
+ *
+ * <p>All records needed by one follow step are read at once, using one multi-get for the latest versions
+ * of the records. The loaded records are kept, so that when the same record is reached again during
+ * the same index run, e.g. for another index field or another vtag, it is not read again.</p>
+ *
+ * <p>The loaded records are shared, they should not be modified. This class is not thread safe.</p>
+ */
+public class DerefRecordLoader {
+    private final LRepository repository;
+    private final Map<Key, IdRecord> records = new HashMap<Key, IdRecord>();
+
+    public DerefRecordLoader(LRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Returns the record in the version pointed to by the vtag, or null if the record does not exist, or
+     * if the vtag is not defined on it or points to a non-existing version.
+     */
+    public IdRecord load(String tableName, RecordId recordId, SchemaId vtag)
+            throws RepositoryException, InterruptedException {
+        return load(tableName, Collections.singletonList(recordId), vtag).get(0);
+    }
+
+    /**
+     * Returns the records in the version pointed to by the vtag, see {@link #load(String, RecordId, SchemaId)}.
+     *
+     * @return a list of the same size as the recordIds, containing null for the records which are not available
+     */
+    public List<IdRecord> load(String tableName, List<RecordId> recordIds, SchemaId vtag)
+            throws RepositoryException, InterruptedException {
+        Set<RecordId> toRead = new LinkedHashSet<RecordId>();
+        for (RecordId recordId : recordIds) {
+            if (!records.containsKey(new Key(tableName, recordId, vtag))) {
+                toRead.add(recordId);
+            }
+        }
+
+        if (!toRead.isEmpty()) {
+            read(tableName, new ArrayList<RecordId>(toRead), vtag);
+        }
+
+        List<IdRecord> result = new ArrayList<IdRecord>(recordIds.size());
+        for (RecordId recordId : recordIds) {
+            result.add(records.get(new Key(tableName, recordId, vtag)));
+        }
+        return result;
+    }
+
+    private void read(String tableName, List<RecordId> recordIds, SchemaId vtag)
+            throws RepositoryException, InterruptedException {
+        LTable table = repository.getTable(tableName);
+
+        Map<RecordId, IdRecord> lastRecords = new HashMap<RecordId, IdRecord>();
+        for (IdRecord record : table.readWithIds(recordIds, null)) {
+            lastRecords.put(record.getId(), record);
+        }
+
+        for (RecordId recordId : recordIds) {
+            IdRecord record = lastRecords.get(recordId);
+            if (record != null) {
+                // For vtags other than 'last' this can require reading an older version of the record
+                try {
+                    record = VersionTag.getIdRecord(record, vtag, table, repository);
+                } catch (RecordNotFoundException e) {
+                    record = null;
+                } catch (VersionNotFoundException e) {
+                    record = null;
+                }
+            }
+            records.put(new Key(tableName, recordId, vtag), record);
+        }
+    }
+
+    private static final class Key {
+        private final String tableName;
+        private final RecordId recordId;
+        private final SchemaId vtag;
+
+        Key(String tableName, RecordId recordId, SchemaId vtag) {
+            this.tableName = tableName;
+            this.recordId = recordId;
+            this.vtag = vtag;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return tableName.equals(other.tableName) && recordId.equals(other.recordId) && vtag.equals(other.vtag);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = tableName.hashCode();
+            result = 31 * result + recordId.hashCode();
+            result = 31 * result + vtag.hashCode();
+            return result;
+        }
+    }
+}
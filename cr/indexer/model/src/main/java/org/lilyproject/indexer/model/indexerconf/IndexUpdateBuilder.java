@@ -49,6 +49,12 @@ public interface IndexUpdateBuilder {
 
     public SchemaId getVTag();
 
+    /**
+     * Returns the loader to use for reading the records reached by dereferencing, which is shared by all
+     * builders of the same index run.
+     */
+    public DerefRecordLoader getDerefRecordLoader();
+
     public String evalIndexFieldName(NameTemplate nameTemplate);
 
     /**
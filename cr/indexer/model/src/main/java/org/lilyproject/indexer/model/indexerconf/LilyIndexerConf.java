@@ -42,6 +42,36 @@ import org.lilyproject.util.repo.VTaggedRecord;
  * construction.
  */
 public class LilyIndexerConf {
+    /**
+     * The default maximum number of characters extracted from a blob (Tika's own default is 100K).
+     */
+    public static final int DEFAULT_CONTENT_EXTRACTION_WRITE_LIMIT = 500 * 1000;
+
+    /**
+     * The default maximum number of characters of extracted blob text that is kept in memory.
+     */
+    public static final long DEFAULT_CONTENT_EXTRACTION_CACHE_SIZE = 10 * 1000 * 1000;
+
+    /**
+     * The default time in milliseconds after which the extraction of a blob is abandoned.
+     */
+    public static final long DEFAULT_CONTENT_EXTRACTION_TIMEOUT = 60 * 1000;
+
+    /**
+     * The default maximum number of reindex events for denormalized data that are published together.
+     */
+    public static final int DEFAULT_DENORMALIZED_UPDATES_BATCH_SIZE = 1000;
+
+    /**
+     * The default maximum number of reindex events for denormalized data published per second.
+     */
+    public static final int DEFAULT_DENORMALIZED_UPDATES_MAX_RATE = 10000;
+
+    /**
+     * The default number of records containing denormalized data read in one go from the dereference map.
+     */
+    public static final int DEFAULT_DENORMALIZED_UPDATES_SCANNER_CACHING = 500;
+
     private IndexRecordFilter recordFilter;
     private IndexFields indexFields;
     private List<DynamicIndexField> dynamicFields = new ArrayList<DynamicIndexField>();
@@ -49,6 +79,14 @@ public class LilyIndexerConf {
     private Formatters formatters = new Formatters();
     private SystemFields systemFields;
     private boolean containsDerefExpression = false;
+    private int contentExtractionWriteLimit = DEFAULT_CONTENT_EXTRACTION_WRITE_LIMIT;
+    private long contentExtractionCacheSize = DEFAULT_CONTENT_EXTRACTION_CACHE_SIZE;
+    private boolean contentExtractionCacheTable = true;
+    private int contentExtractionThreads = Runtime.getRuntime().availableProcessors();
+    private long contentExtractionTimeout = DEFAULT_CONTENT_EXTRACTION_TIMEOUT;
+    private int denormalizedUpdatesBatchSize = DEFAULT_DENORMALIZED_UPDATES_BATCH_SIZE;
+    private int denormalizedUpdatesMaxRate = DEFAULT_DENORMALIZED_UPDATES_MAX_RATE;
+    private int denormalizedUpdatesScannerCaching = DEFAULT_DENORMALIZED_UPDATES_SCANNER_CACHING;
 
     protected void setRecordFilter(IndexRecordFilter recordFilter) {
         this.recordFilter = recordFilter;
@@ -122,6 +160,98 @@ public class LilyIndexerConf {
         this.systemFields = systemFields;
     }
 
+    /**
+     * The maximum number of characters extracted from a blob, -1 for no limit.
+     */
+    public int getContentExtractionWriteLimit() {
+        return contentExtractionWriteLimit;
+    }
+
+    protected void setContentExtractionWriteLimit(int contentExtractionWriteLimit) {
+        this.contentExtractionWriteLimit = contentExtractionWriteLimit;
+    }
+
+    /**
+     * The maximum number of characters of extracted blob text to keep in memory, 0 to disable the caching
+     * of extracted text.
+     */
+    public long getContentExtractionCacheSize() {
+        return contentExtractionCacheSize;
+    }
+
+    protected void setContentExtractionCacheSize(long contentExtractionCacheSize) {
+        this.contentExtractionCacheSize = contentExtractionCacheSize;
+    }
+
+    /**
+     * Whether the extracted blob text is also cached in the blob text table in HBase, which is shared by all
+     * indexers and survives restarts. True by default.
+     */
+    public boolean getContentExtractionCacheTable() {
+        return contentExtractionCacheTable;
+    }
+
+    protected void setContentExtractionCacheTable(boolean contentExtractionCacheTable) {
+        this.contentExtractionCacheTable = contentExtractionCacheTable;
+    }
+
+    /**
+     * The number of threads extracting blob content, by default the number of processors.
+     */
+    public int getContentExtractionThreads() {
+        return contentExtractionThreads;
+    }
+
+    protected void setContentExtractionThreads(int contentExtractionThreads) {
+        this.contentExtractionThreads = contentExtractionThreads;
+    }
+
+    /**
+     * The time in milliseconds after which the extraction of a blob is abandoned.
+     */
+    public long getContentExtractionTimeout() {
+        return contentExtractionTimeout;
+    }
+
+    protected void setContentExtractionTimeout(long contentExtractionTimeout) {
+        this.contentExtractionTimeout = contentExtractionTimeout;
+    }
+
+    /**
+     * The maximum number of reindex events for records containing denormalized data that are published
+     * together.
+     */
+    public int getDenormalizedUpdatesBatchSize() {
+        return denormalizedUpdatesBatchSize;
+    }
+
+    protected void setDenormalizedUpdatesBatchSize(int denormalizedUpdatesBatchSize) {
+        this.denormalizedUpdatesBatchSize = denormalizedUpdatesBatchSize;
+    }
+
+    /**
+     * The maximum number of reindex events for records containing denormalized data published per second.
+     */
+    public int getDenormalizedUpdatesMaxRate() {
+        return denormalizedUpdatesMaxRate;
+    }
+
+    protected void setDenormalizedUpdatesMaxRate(int denormalizedUpdatesMaxRate) {
+        this.denormalizedUpdatesMaxRate = denormalizedUpdatesMaxRate;
+    }
+
+    /**
+     * The number of records containing denormalized data of an updated record that are read in one go
+     * from the dereference map.
+     */
+    public int getDenormalizedUpdatesScannerCaching() {
+        return denormalizedUpdatesScannerCaching;
+    }
+
+    protected void setDenormalizedUpdatesScannerCaching(int denormalizedUpdatesScannerCaching) {
+        this.denormalizedUpdatesScannerCaching = denormalizedUpdatesScannerCaching;
+    }
+
     public boolean changesAffectIndex(VTaggedRecord vtRecord, Scope scope)
             throws InterruptedException, RepositoryException {
         Set<FieldType> changedFields = vtRecord.getRecordEventHelper().getUpdatedFieldsByScope().get(scope);
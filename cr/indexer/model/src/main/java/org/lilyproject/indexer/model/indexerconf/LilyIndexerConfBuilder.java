@@ -128,6 +128,8 @@ public class LilyIndexerConfBuilder {
             buildFormatters();
             buildIndexFields();
             buildDynamicFields();
+            buildContentExtraction();
+            buildDenormalizedUpdates();
         } catch (Exception e) {
             throw new IndexerConfException("Error in the configuration.", e);
         }
@@ -281,6 +283,51 @@ public class LilyIndexerConfBuilder {
         }
     }
 
+    private void buildContentExtraction() throws Exception {
+        // The format of the values is checked by the XML schema validation
+        String writeLimit = XPathUtils.evalString("/indexer/contentExtraction/@writeLimit", doc);
+        if (writeLimit.length() != 0) {
+            conf.setContentExtractionWriteLimit(Integer.parseInt(writeLimit));
+        }
+
+        String cacheSize = XPathUtils.evalString("/indexer/contentExtraction/@cacheSize", doc);
+        if (cacheSize.length() != 0) {
+            conf.setContentExtractionCacheSize(Long.parseLong(cacheSize));
+        }
+
+        String cacheTable = XPathUtils.evalString("/indexer/contentExtraction/@cacheTable", doc);
+        if (cacheTable.length() != 0) {
+            conf.setContentExtractionCacheTable(Boolean.parseBoolean(cacheTable));
+        }
+
+        String threads = XPathUtils.evalString("/indexer/contentExtraction/@threads", doc);
+        if (threads.length() != 0) {
+            conf.setContentExtractionThreads(Integer.parseInt(threads));
+        }
+
+        String timeout = XPathUtils.evalString("/indexer/contentExtraction/@timeout", doc);
+        if (timeout.length() != 0) {
+            conf.setContentExtractionTimeout(Long.parseLong(timeout));
+        }
+    }
+
+    private void buildDenormalizedUpdates() throws Exception {
+        String batchSize = XPathUtils.evalString("/indexer/denormalizedUpdates/@batchSize", doc);
+        if (batchSize.length() != 0) {
+            conf.setDenormalizedUpdatesBatchSize(Integer.parseInt(batchSize));
+        }
+
+        String maxRate = XPathUtils.evalString("/indexer/denormalizedUpdates/@maxRate", doc);
+        if (maxRate.length() != 0) {
+            conf.setDenormalizedUpdatesMaxRate(Integer.parseInt(maxRate));
+        }
+
+        String scannerCaching = XPathUtils.evalString("/indexer/denormalizedUpdates/@scannerCaching", doc);
+        if (scannerCaching.length() != 0) {
+            conf.setDenormalizedUpdatesScannerCaching(Integer.parseInt(scannerCaching));
+        }
+    }
+
     private Formatter instantiateFormatter(String className) throws IndexerConfException {
         ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
         Class formatterClass;
@@ -16,20 +16,21 @@
 package org.lilyproject.indexer.model.indexerconf;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.lilyproject.repository.api.FieldType;
 import org.lilyproject.repository.api.IdGenerator;
-import org.lilyproject.repository.api.LRepository;
-import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.IdRecord;
 import org.lilyproject.repository.api.Link;
 import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.RecordId;
-import org.lilyproject.repository.api.RecordNotFoundException;
 import org.lilyproject.repository.api.RepositoryException;
-import org.lilyproject.repository.api.VersionNotFoundException;
-import org.lilyproject.util.repo.VersionTag;
 
 public class LinkFieldFollow implements Follow {
     private FieldType fieldType;
@@ -65,24 +66,40 @@ public class LinkFieldFollow implements Follow {
         IdGenerator idGenerator = indexUpdateBuilder.getRepository().getIdGenerator();
 
         RecordContext ctx = indexUpdateBuilder.getRecordContext();
-        LRepository repository = indexUpdateBuilder.getRepository();
 
-        // FIXME: it's more efficient to read all records at once
-        // but make sure missing records are also treated (handled here via null linkedRecord in case of RecordNotFoundException
         if (ctx.record != null) {
             List links = IndexerUtils.flatList(ctx.record, fieldType);
-            for (Link link: (List<Link>)links) {
+            if (links.isEmpty()) {
+                return;
+            }
+
+            // Read all linked records at once, per table. Missing records are treated via a null linkedRecord.
+            List<RecordId> linkedRecordIds = new ArrayList<RecordId>(links.size());
+            Map<String, List<RecordId>> linkedRecordIdsByTable = new LinkedHashMap<String, List<RecordId>>();
+            for (Link link : (List<Link>)links) {
                 RecordId linkedRecordId = link.resolve(ctx.contextRecord, idGenerator);
-                Record linkedRecord = null;
-                String tableName = link.getTable() != null ? link.getTable() : indexUpdateBuilder.getTable();
-                LTable table = repository.getTable(tableName);
-                try {
-                    linkedRecord = VersionTag.getIdRecord(linkedRecordId, indexUpdateBuilder.getVTag(), table, repository);
-                } catch (RecordNotFoundException rnfe) {
-                    // ok, continue with null value
-                } catch (VersionNotFoundException e) {
-                    // ok, continue with null value
+                linkedRecordIds.add(linkedRecordId);
+                String tableName = getTableName(link, indexUpdateBuilder);
+                List<RecordId> tableRecordIds = linkedRecordIdsByTable.get(tableName);
+                if (tableRecordIds == null) {
+                    tableRecordIds = new ArrayList<RecordId>();
+                    linkedRecordIdsByTable.put(tableName, tableRecordIds);
                 }
+                tableRecordIds.add(linkedRecordId);
+            }
+
+            DerefRecordLoader recordLoader = indexUpdateBuilder.getDerefRecordLoader();
+            Map<String, Iterator<IdRecord>> linkedRecordsByTable = new HashMap<String, Iterator<IdRecord>>();
+            for (Map.Entry<String, List<RecordId>> entry : linkedRecordIdsByTable.entrySet()) {
+                List<IdRecord> linkedRecords = recordLoader.load(entry.getKey(), entry.getValue(),
+                        indexUpdateBuilder.getVTag());
+                linkedRecordsByTable.put(entry.getKey(), linkedRecords.iterator());
+            }
+
+            for (int i = 0; i < linkedRecordIds.size(); i++) {
+                RecordId linkedRecordId = linkedRecordIds.get(i);
+                String tableName = getTableName((Link)links.get(i), indexUpdateBuilder);
+                Record linkedRecord = linkedRecordsByTable.get(tableName).next();
                 indexUpdateBuilder.push(linkedRecord, new Dep(linkedRecordId, Collections.<String>emptySet()));
                 callback.call();
                 indexUpdateBuilder.pop();
@@ -90,5 +107,9 @@ public class LinkFieldFollow implements Follow {
         }
     }
 
+    private static String getTableName(Link link, IndexUpdateBuilder indexUpdateBuilder) {
+        return link.getTable() != null ? link.getTable() : indexUpdateBuilder.getTable();
+    }
+
 
 }
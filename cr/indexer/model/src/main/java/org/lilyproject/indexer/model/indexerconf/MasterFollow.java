@@ -18,13 +18,8 @@ package org.lilyproject.indexer.model.indexerconf;
 import java.io.IOException;
 import java.util.Collections;
 
-import org.lilyproject.repository.api.LRepository;
-import org.lilyproject.repository.api.LTable;
 import org.lilyproject.repository.api.Record;
-import org.lilyproject.repository.api.RecordNotFoundException;
 import org.lilyproject.repository.api.RepositoryException;
-import org.lilyproject.repository.api.VersionNotFoundException;
-import org.lilyproject.util.repo.VersionTag;
 
 public class MasterFollow implements Follow {
 
@@ -36,18 +31,9 @@ public class MasterFollow implements Follow {
             return;
         }
 
-        LRepository repository = indexUpdateBuilder.getRepository();
-        LTable table = repository.getTable(indexUpdateBuilder.getTable());
-
         Dep masterDep = new Dep(ctx.dep.id.getMaster(), Collections.<String>emptySet());
-        Record master = null;
-        try {
-            master = VersionTag.getIdRecord(masterDep.id, indexUpdateBuilder.getVTag(), table, repository);
-        } catch (RecordNotFoundException e) {
-            // It's ok that the master does not exist
-        } catch (VersionNotFoundException e) {
-            // It's ok that the master does not exist
-        }
+        Record master = indexUpdateBuilder.getDerefRecordLoader().load(indexUpdateBuilder.getTable(), masterDep.id,
+                indexUpdateBuilder.getVTag());
 
         indexUpdateBuilder.push(master, masterDep);
         callback.call();
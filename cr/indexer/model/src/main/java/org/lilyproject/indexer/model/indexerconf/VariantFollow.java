@@ -20,13 +20,8 @@ import java.util.Set;
 
 import com.google.common.collect.Sets;
 import org.lilyproject.repository.api.IdGenerator;
-import org.lilyproject.repository.api.LRepository;
-import org.lilyproject.repository.api.LTable;
 import org.lilyproject.repository.api.Record;
-import org.lilyproject.repository.api.RecordNotFoundException;
 import org.lilyproject.repository.api.RepositoryException;
-import org.lilyproject.repository.api.VersionNotFoundException;
-import org.lilyproject.util.repo.VersionTag;
 
 /**
  * Represents a -prop1[,-prop2 ...] follow
@@ -45,9 +40,7 @@ public class VariantFollow implements Follow {
     @Override
     public void follow(IndexUpdateBuilder indexUpdateBuilder, FollowCallback callback)
             throws RepositoryException, IOException, InterruptedException {
-        LRepository repository = indexUpdateBuilder.getRepository();
-        LTable table = repository.getTable(indexUpdateBuilder.getTable());
-        IdGenerator idGenerator = repository.getIdGenerator();
+        IdGenerator idGenerator = indexUpdateBuilder.getRepository().getIdGenerator();
         RecordContext ctx = indexUpdateBuilder.getRecordContext();
 
         Set<String> currentDimensions = Sets.newHashSet(ctx.dep.id.getVariantProperties().keySet());
@@ -59,14 +52,8 @@ public class VariantFollow implements Follow {
         }
         Dep newDep = ctx.dep.minus(idGenerator, dimensions);
 
-        Record lessDimensionedRecord = null;
-        try {
-            lessDimensionedRecord = VersionTag.getIdRecord(newDep.id, indexUpdateBuilder.getVTag(), table, repository);
-        } catch (RecordNotFoundException e) {
-            // It's ok that the variant does not exist
-        } catch (VersionNotFoundException e) {
-            // It's ok that the variant does not exist
-        }
+        Record lessDimensionedRecord = indexUpdateBuilder.getDerefRecordLoader().load(indexUpdateBuilder.getTable(),
+                newDep.id, indexUpdateBuilder.getVTag());
 
         indexUpdateBuilder.push(lessDimensionedRecord, newDep);
         callback.call();
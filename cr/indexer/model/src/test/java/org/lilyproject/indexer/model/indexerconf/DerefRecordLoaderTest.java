@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.model.indexerconf;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.IdRecord;
+import org.lilyproject.repository.api.LRepository;
+import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.TypeManager;
+import org.lilyproject.util.repo.VersionTag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DerefRecordLoaderTest {
+    private static final String TABLE = "record";
+
+    private LTable table;
+    private SchemaId lastVTag;
+    private RecordId recordId1;
+    private RecordId recordId2;
+    private IdRecord record1;
+    private DerefRecordLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        lastVTag = mock(SchemaId.class);
+        FieldType lastVTagType = mock(FieldType.class);
+        when(lastVTagType.getId()).thenReturn(lastVTag);
+        TypeManager typeManager = mock(TypeManager.class);
+        when(typeManager.getFieldTypeByName(VersionTag.LAST)).thenReturn(lastVTagType);
+
+        recordId1 = mock(RecordId.class);
+        recordId2 = mock(RecordId.class);
+        record1 = mock(IdRecord.class);
+        when(record1.getId()).thenReturn(recordId1);
+        when(record1.getVersion()).thenReturn(1L);
+        when(record1.getFieldsById()).thenReturn(Collections.<SchemaId, Object>emptyMap());
+
+        table = mock(LTable.class);
+        when(table.readWithIds(anyListOf(RecordId.class), (List<SchemaId>) isNull()))
+                .thenReturn(Collections.singletonList(record1));
+
+        LRepository repository = mock(LRepository.class);
+        when(repository.getTypeManager()).thenReturn(typeManager);
+        when(repository.getTable(TABLE)).thenReturn(table);
+
+        loader = new DerefRecordLoader(repository);
+    }
+
+    @Test
+    public void testLoadInOneRead() throws Exception {
+        List<IdRecord> records = loader.load(TABLE, Arrays.asList(recordId1, recordId2, recordId1), lastVTag);
+
+        assertEquals(3, records.size());
+        assertSame(record1, records.get(0));
+        assertNull(records.get(1));
+        assertSame(record1, records.get(2));
+        verify(table).readWithIds(Arrays.asList(recordId1, recordId2), null);
+
+        // Loaded and missing records are both remembered
+        assertSame(record1, loader.load(TABLE, recordId1, lastVTag));
+        assertNull(loader.load(TABLE, recordId2, lastVTag));
+        verify(table, times(1)).readWithIds(anyListOf(RecordId.class), (List<SchemaId>) isNull());
+    }
+
+    @Test
+    public void testUndefinedVTag() throws Exception {
+        SchemaId liveVTag = mock(SchemaId.class);
+
+        assertNull(loader.load(TABLE, recordId1, liveVTag));
+        assertSame(record1, loader.load(TABLE, recordId1, lastVTag));
+        verify(table, times(2)).readWithIds(anyListOf(RecordId.class), (List<SchemaId>) isNull());
+    }
+}
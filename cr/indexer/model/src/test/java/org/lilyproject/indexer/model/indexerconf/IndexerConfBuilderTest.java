@@ -28,7 +28,9 @@ import org.lilyproject.repository.impl.id.IdGeneratorImpl;
 import org.mockito.Mockito;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -95,4 +97,40 @@ public class IndexerConfBuilderTest {
         assertNull(LilyIndexerConfBuilder.extractTableNames("  "));
     }
 
+    @Test
+    public void testContentExtraction() throws Exception {
+        LilyIndexerConf conf = LilyIndexerConfBuilder.build(new ByteArrayInputStream(
+                "<indexer/>".getBytes()), repository);
+        assertEquals(LilyIndexerConf.DEFAULT_CONTENT_EXTRACTION_WRITE_LIMIT, conf.getContentExtractionWriteLimit());
+        assertEquals(LilyIndexerConf.DEFAULT_CONTENT_EXTRACTION_CACHE_SIZE, conf.getContentExtractionCacheSize());
+        assertTrue(conf.getContentExtractionCacheTable());
+        assertEquals(LilyIndexerConf.DEFAULT_CONTENT_EXTRACTION_TIMEOUT, conf.getContentExtractionTimeout());
+
+        conf = LilyIndexerConfBuilder.build(new ByteArrayInputStream(
+                ("<indexer><contentExtraction writeLimit='-1' cacheSize='0' cacheTable='false' threads='2'"
+                        + " timeout='5000'/></indexer>").getBytes()), repository);
+        assertEquals(-1, conf.getContentExtractionWriteLimit());
+        assertEquals(0, conf.getContentExtractionCacheSize());
+        assertFalse(conf.getContentExtractionCacheTable());
+        assertEquals(2, conf.getContentExtractionThreads());
+        assertEquals(5000, conf.getContentExtractionTimeout());
+    }
+
+    @Test
+    public void testDenormalizedUpdates() throws Exception {
+        LilyIndexerConf conf = LilyIndexerConfBuilder.build(new ByteArrayInputStream(
+                "<indexer/>".getBytes()), repository);
+        assertEquals(LilyIndexerConf.DEFAULT_DENORMALIZED_UPDATES_BATCH_SIZE, conf.getDenormalizedUpdatesBatchSize());
+        assertEquals(LilyIndexerConf.DEFAULT_DENORMALIZED_UPDATES_MAX_RATE, conf.getDenormalizedUpdatesMaxRate());
+        assertEquals(LilyIndexerConf.DEFAULT_DENORMALIZED_UPDATES_SCANNER_CACHING,
+                conf.getDenormalizedUpdatesScannerCaching());
+
+        conf = LilyIndexerConfBuilder.build(new ByteArrayInputStream(
+                ("<indexer><denormalizedUpdates batchSize='10' maxRate='50' scannerCaching='20'/>"
+                        + "</indexer>").getBytes()), repository);
+        assertEquals(10, conf.getDenormalizedUpdatesBatchSize());
+        assertEquals(50, conf.getDenormalizedUpdatesMaxRate());
+        assertEquals(20, conf.getDenormalizedUpdatesScannerCaching());
+    }
+
 }
@@ -28,7 +28,7 @@ import org.lilyproject.repository.impl.id.IdGeneratorImpl;
 import org.lilyproject.util.hbase.LilyHBaseSchema.RecordCf;
 import org.lilyproject.util.hbase.LilyHBaseSchema.RecordColumn;
 import org.lilyproject.util.repo.RecordEvent;
-import org.lilyproject.util.repo.RecordEvent.IndexRecordFilterData;
+import org.lilyproject.util.repo.RecordEventHeader;
 
 /**
  * Filter for SEP events that removes all KeyValues from WALEdits that are not applicable to the configured index
@@ -68,26 +68,35 @@ class IndexerEditFilter implements WALEditFilter {
 
     private boolean isValidKeyValue(KeyValue kv) {
         if (kv.matchingColumn(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes)) {
-            RecordEvent recordEvent = null;
+            // This runs for each edit in the WAL, so only decode what is needed to route the event
+            RecordEventHeader header;
             try {
-                recordEvent = new RecordEvent(kv.getValue(), idGenerator);
-            } catch (IOException e) {
+                header = RecordEventHeader.fromBytes(kv.getBuffer(), kv.getValueOffset(), kv.getValueLength(),
+                        idGenerator);
+            } catch (Exception e) {
                 log.error("Error parsing RecordEvent", e);
                 return false;
             }
-            if (recordEvent.hasAttributes() && "false".equals(recordEvent.getAttributes().get(NO_INDEX_FLAG))) {
+            if ("false".equals(header.getAttributes().get(NO_INDEX_FLAG))) {
                 return false;
             }
-            IndexRecordFilterData indexRecordFilterData = recordEvent.getIndexRecordFilterData();
-            if (indexRecordFilterData != null) {
-                return indexRecordFilterData.appliesToSubscription(subscriptionName);
+            if (header.hasIndexRecordFilterData()) {
+                return header.appliesToSubscription(subscriptionName);
             } else {
-                log.warn("No IndexRecordFilterData on " + recordEvent.toJson());
+                log.warn("No IndexRecordFilterData on " + describe(kv));
             }
         }
         return false;
     }
 
+    private String describe(KeyValue kv) {
+        try {
+            return new RecordEvent(kv.getValue(), idGenerator).toJson();
+        } catch (IOException e) {
+            return "unparseable RecordEvent";
+        }
+    }
+
     public String getSubscriptionName() {
         return subscriptionName;
     }
@@ -99,6 +99,29 @@ public class IndexerEditFilterTest {
         assertEquals(0, walEdit.size());
     }
 
+    @Test
+    public void testApply_BinaryPayload() {
+        RecordEvent recordEvent = new RecordEvent();
+        IndexRecordFilterData filterData = new IndexRecordFilterData();
+        filterData.setSubscriptionInclusions(ImmutableSet.of(INDEX_NAME));
+        recordEvent.setIndexRecordFilterData(filterData);
+        RecordEvent otherRecordEvent = new RecordEvent();
+        IndexRecordFilterData otherFilterData = new IndexRecordFilterData();
+        otherFilterData.setSubscriptionExclusions(ImmutableSet.of(INDEX_NAME));
+        otherRecordEvent.setIndexRecordFilterData(otherFilterData);
+
+        WALEdit walEdit = new WALEdit();
+        walEdit.add(new KeyValue(Bytes.toBytes("row1"), RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes,
+                recordEvent.toBytes()));
+        walEdit.add(new KeyValue(Bytes.toBytes("row2"), RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes,
+                otherRecordEvent.toBytes()));
+
+        editFilter.apply(walEdit);
+
+        assertEquals(1, walEdit.size());
+        assertEquals("row1", Bytes.toString(walEdit.getKeyValues().get(0).getRow()));
+    }
+
     @Test
     public void testApply_NonJsonPayload() {
 
@@ -18,17 +18,32 @@ package org.lilyproject.linkindex;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Row;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.lilyproject.hbaseindex.Index;
 import org.lilyproject.hbaseindex.IndexDefinition;
 import org.lilyproject.hbaseindex.IndexEntry;
 import org.lilyproject.hbaseindex.IndexManager;
 import org.lilyproject.hbaseindex.IndexNotFoundException;
+import org.lilyproject.hbaseindex.IndexWriter;
 import org.lilyproject.hbaseindex.Query;
 import org.lilyproject.hbaseindex.QueryResult;
 import org.lilyproject.linkindex.LinkIndexMetrics.Action;
@@ -38,7 +53,10 @@ import org.lilyproject.repository.api.RecordId;
 import org.lilyproject.repository.api.RepositoryException;
 import org.lilyproject.repository.api.RepositoryManager;
 import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.util.ArgumentValidator;
+import org.lilyproject.util.ByteArrayKey;
 import org.lilyproject.util.Pair;
+import org.lilyproject.util.hbase.RepoAndTableUtil;
 import org.lilyproject.util.hbase.LilyHBaseSchema.Table;
 import org.lilyproject.util.io.Closer;
 
@@ -56,15 +74,24 @@ import org.lilyproject.util.io.Closer;
 // the backward table, is not arbitrary. It is such that if the process would fail in between, there would
 // never be left any state in the backward table which would not be found via the forward index.
 public class LinkIndex {
+    private Log log = LogFactory.getLog(getClass());
     private RepositoryManager repositoryManager;
     private IdGenerator lazyIdGenerator;
     private LinkIndexMetrics metrics;
     private Index forwardIndex;
     private Index backwardIndex;
+    private IndexWriter forwardIndexWriter;
+    private IndexWriter backwardIndexWriter;
+    private HTableInterface countsTable;
 
     private static final byte[] SOURCE_FIELD_KEY = Bytes.toBytes("sf");
     private static final byte[] VTAG_KEY = Bytes.toBytes("vt");
 
+    public static final String FORWARD_INDEX = "links-forward";
+    public static final String BACKWARD_INDEX = "links-backward";
+    public static final String COUNTS_TABLE = "links-counts";
+    public static final byte[] COUNTS_FAMILY = Bytes.toBytes("c");
+
     public LinkIndex(final IndexManager indexManager, RepositoryManager repositoryManager) throws IndexNotFoundException, IOException,
             InterruptedException {
         metrics = new LinkIndexMetrics("linkIndex");
@@ -77,7 +104,7 @@ public class LinkIndex {
 
         final int schemaIdByteLength = 16; // see SchemaIdImpl
         {
-            IndexDefinition indexDef = new IndexDefinition("links-forward");
+            IndexDefinition indexDef = new IndexDefinition(FORWARD_INDEX);
             // For the record ID we use a variable length byte array field of which the first two bytes are fixed length
             // The first byte is actually the record identifier byte.
             // The second byte really is the first byte of the record id. We put this in the fixed length part
@@ -90,13 +117,36 @@ public class LinkIndex {
         }
 
         {
-            IndexDefinition indexDef = new IndexDefinition("links-backward");
+            IndexDefinition indexDef = new IndexDefinition(BACKWARD_INDEX);
             // Same remark as in the forwardIndex.
             indexDef.addVariableLengthByteField("target", 2);
             indexDef.addByteField("vtag", schemaIdByteLength);
             indexDef.addByteField("sourcefield", schemaIdByteLength);
             backwardIndex = indexManager.getIndex(indexDef);
         }
+
+        // The changes of concurrent updaters are written together
+        forwardIndexWriter = new IndexWriter(forwardIndex);
+        backwardIndexWriter = new IndexWriter(backwardIndex);
+
+        // The number of links to each target record, per vtag (= row, after the target) and source field
+        // (= column), maintained along with the backward index so that counting needs no scan over it.
+        HTableDescriptor countsTableDescr = new HTableDescriptor(COUNTS_TABLE);
+        HColumnDescriptor countsFamily = new HColumnDescriptor(COUNTS_FAMILY);
+        countsFamily.setMaxVersions(1);
+        countsTableDescr.addFamily(countsFamily);
+        RepoAndTableUtil.setRepositoryOwnership(countsTableDescr, RepoAndTableUtil.DEFAULT_REPOSITORY);
+        countsTable = indexManager.getTableFactory().getTable(countsTableDescr);
+    }
+
+    /**
+     * Writes the pending changes and releases the resources held by this link index.
+     */
+    public void close() {
+        Closer.close(forwardIndexWriter);
+        Closer.close(backwardIndexWriter);
+        Closer.close(countsTable);
+        metrics.shutdown();
     }
 
     public void deleteLinks(RecordId sourceRecord) throws LinkIndexException, InterruptedException {
@@ -109,33 +159,11 @@ public class LinkIndex {
     public void deleteLinks(AbsoluteRecordId sourceRecord) throws LinkIndexException, InterruptedException {
         long before = System.currentTimeMillis();
         try {
-            byte[] sourceAsBytes = sourceRecord.toBytes();
-
-            // Read links from the forwards table
-            Set<Pair<FieldedLink, SchemaId>> oldLinks = getAllForwardLinks(sourceRecord);
-
-            // Delete existing entries from the backwards table
-            List<IndexEntry> entries = new ArrayList<IndexEntry>(oldLinks.size());
-            for (Pair<FieldedLink, SchemaId> link : oldLinks) {
-                IndexEntry entry = createBackwardIndexEntry(link.getV2(), link.getV1().getAbsoluteRecordId(),
-                        link.getV1().getFieldTypeId());
-                entry.setIdentifier(sourceAsBytes);
-                entries.add(entry);
-            }
-            backwardIndex.removeEntries(entries);
-
-            // Delete existing entries from the forwards table
-            entries.clear();
-            for (Pair<FieldedLink, SchemaId> link : oldLinks) {
-                IndexEntry entry = createForwardIndexEntry(link.getV2(), sourceRecord, link.getV1().getFieldTypeId());
-                entry.setIdentifier(link.getV1().getAbsoluteRecordId().toBytes());
-                entries.add(entry);
-            }
-            forwardIndex.removeEntries(entries);
+            Batch batch = newBatch();
+            batch.deleteLinks(sourceRecord);
+            batch.apply();
         } catch (LinkIndexException e) {
             throw new LinkIndexException("Error deleting links for record '" + sourceRecord + "'", e);
-        } catch (IOException e) {
-            throw new LinkIndexException("Error deleting links for record '" + sourceRecord + "'", e);
         } finally {
             metrics.report(Action.DELETE_LINKS, System.currentTimeMillis() - before);
         }
@@ -148,34 +176,12 @@ public class LinkIndex {
     public void deleteLinks(AbsoluteRecordId sourceRecord, SchemaId vtag) throws LinkIndexException, InterruptedException {
         long before = System.currentTimeMillis();
         try {
-            byte[] sourceAsBytes = sourceRecord.toBytes();
-
-            // Read links from the forwards table
-            Set<FieldedLink> oldLinks = getFieldedForwardLinks(sourceRecord, vtag);
-
-            // Delete existing entries from the backwards table
-            List<IndexEntry> entries = new ArrayList<IndexEntry>(oldLinks.size());
-            for (FieldedLink link : oldLinks) {
-                IndexEntry entry = createBackwardIndexEntry(vtag, link.getAbsoluteRecordId(), link.getFieldTypeId());
-                entry.setIdentifier(sourceAsBytes);
-                entries.add(entry);
-            }
-            backwardIndex.removeEntries(entries);
-
-            // Delete existing entries from the forwards table
-            entries.clear();
-            for (FieldedLink link : oldLinks) {
-                IndexEntry entry = createForwardIndexEntry(vtag, sourceRecord, link.getFieldTypeId());
-                entry.setIdentifier(link.getAbsoluteRecordId().toBytes());
-                entries.add(entry);
-            }
-            forwardIndex.removeEntries(entries);
+            Batch batch = newBatch();
+            batch.deleteLinks(sourceRecord, vtag);
+            batch.apply();
         } catch (LinkIndexException e) {
             throw new LinkIndexException("Error deleting links for record '" + sourceRecord + "', vtag '" + vtag + "'",
                     e);
-        } catch (IOException e) {
-            throw new LinkIndexException("Error deleting links for record '" + sourceRecord + "', vtag '" + vtag + "'",
-                    e);
         } finally {
             metrics.report(Action.DELETE_LINKS_VTAG, System.currentTimeMillis() - before);
         }
@@ -206,6 +212,76 @@ public class LinkIndex {
             throws LinkIndexException, InterruptedException {
         long before = System.currentTimeMillis();
         try {
+            Batch batch = newBatch();
+            batch.updateLinks(sourceRecord, vtag, links, isNewRecord);
+            batch.apply();
+        } catch (LinkIndexException e) {
+            throw new LinkIndexException("Error updating links for record '" + sourceRecord + "', vtag '" +
+                    vtag + "'", e);
+        } finally {
+            metrics.report(Action.UPDATE_LINKS, System.currentTimeMillis() - before);
+        }
+    }
+
+    /**
+     * Creates a batch to collect the link changes of a number of records, which are then written using one
+     * addEntries and one removeEntries call per index table. These writes are combined with those of
+     * concurrently applied batches.
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Collects link index changes, which are only written to the index when calling {@link #apply()}.
+     *
+     * <p>The existing links are read at the time a change is added to the batch, therefore a batch should
+     * contain at most one change for each record/vtag combination, and the changes of a record should not
+     * be mixed with changes made to that record outside of the batch. A batch is not thread safe.</p>
+     */
+    public class Batch {
+        private List<IndexEntry> addedFwdEntries = new ArrayList<IndexEntry>();
+        private List<IndexEntry> addedBkwdEntries = new ArrayList<IndexEntry>();
+        private List<IndexEntry> removedFwdEntries = new ArrayList<IndexEntry>();
+        private List<IndexEntry> removedBkwdEntries = new ArrayList<IndexEntry>();
+        private Map<ByteArrayKey, Map<ByteArrayKey, Long>> countDeltas =
+                new HashMap<ByteArrayKey, Map<ByteArrayKey, Long>>();
+
+        private Batch() {
+        }
+
+        /**
+         * See {@link LinkIndex#deleteLinks(AbsoluteRecordId)}.
+         */
+        public void deleteLinks(AbsoluteRecordId sourceRecord) throws LinkIndexException, InterruptedException {
+            // Read links from the forwards table
+            Set<Pair<FieldedLink, SchemaId>> oldLinks = getAllForwardLinks(sourceRecord);
+
+            byte[] sourceAsBytes = sourceRecord.toBytes();
+            for (Pair<FieldedLink, SchemaId> link : oldLinks) {
+                removeLink(sourceRecord, sourceAsBytes, link.getV2(), link.getV1());
+            }
+        }
+
+        /**
+         * See {@link LinkIndex#deleteLinks(AbsoluteRecordId, SchemaId)}.
+         */
+        public void deleteLinks(AbsoluteRecordId sourceRecord, SchemaId vtag)
+                throws LinkIndexException, InterruptedException {
+            // Read links from the forwards table
+            Set<FieldedLink> oldLinks = getFieldedForwardLinks(sourceRecord, vtag);
+
+            byte[] sourceAsBytes = sourceRecord.toBytes();
+            for (FieldedLink link : oldLinks) {
+                removeLink(sourceRecord, sourceAsBytes, vtag, link);
+            }
+        }
+
+        /**
+         * See {@link LinkIndex#updateLinks(AbsoluteRecordId, SchemaId, Set, boolean)}.
+         */
+        public void updateLinks(AbsoluteRecordId sourceRecord, SchemaId vtag, Set<FieldedLink> links,
+                boolean isNewRecord) throws LinkIndexException, InterruptedException {
             // We could simply delete all the old entries using deleteLinks() and then add
             // all new entries, but instead we find out what actually needs adding or removing and only
             // perform that. This is to avoid running into problems due to http://search-hadoop.com/m/rNnhN15Xecu
@@ -225,56 +301,140 @@ public class LinkIndex {
             Set<FieldedLink> addedLinks = new HashSet<FieldedLink>(links);
             addedLinks.removeAll(oldLinks);
 
-            // Apply added links
             byte[] sourceAsBytes = sourceRecord.toBytes();
-            List<IndexEntry> fwdEntries = null;
-            List<IndexEntry> bkwdEntries = null;
-            if (addedLinks.size() > 0) {
-                fwdEntries = new ArrayList<IndexEntry>(Math.max(addedLinks.size(), removedLinks.size()));
-                bkwdEntries = new ArrayList<IndexEntry>(fwdEntries.size());
-                for (FieldedLink link : addedLinks) {
-                    IndexEntry fwdEntry = createForwardIndexEntry(vtag, sourceRecord, link.getFieldTypeId());
-                    fwdEntry.setIdentifier(link.getAbsoluteRecordId().toBytes());
-                    fwdEntries.add(fwdEntry);
-
-                    IndexEntry bkwdEntry = createBackwardIndexEntry(vtag, link.getAbsoluteRecordId(), link.getFieldTypeId());
-                    bkwdEntry.setIdentifier(sourceAsBytes);
-                    bkwdEntries.add(bkwdEntry);
-                }
-                forwardIndex.addEntries(fwdEntries);
-                backwardIndex.addEntries(bkwdEntries);
+            for (FieldedLink link : addedLinks) {
+                IndexEntry fwdEntry = createForwardIndexEntry(vtag, sourceRecord, link.getFieldTypeId());
+                fwdEntry.setIdentifier(link.getAbsoluteRecordId().toBytes());
+                addedFwdEntries.add(fwdEntry);
+
+                IndexEntry bkwdEntry = createBackwardIndexEntry(vtag, link.getAbsoluteRecordId(), link.getFieldTypeId());
+                bkwdEntry.setIdentifier(sourceAsBytes);
+                addedBkwdEntries.add(bkwdEntry);
+
+                addCountDelta(link, vtag, 1);
             }
 
-            // Apply removed links
-            if (removedLinks.size() > 0) {
-                if (fwdEntries != null) {
-                    fwdEntries.clear();
-                    bkwdEntries.clear();
-                } else {
-                    fwdEntries = new ArrayList<IndexEntry>(removedLinks.size());
-                    bkwdEntries = new ArrayList<IndexEntry>(fwdEntries.size());
-                }
+            for (FieldedLink link : removedLinks) {
+                removeLink(sourceRecord, sourceAsBytes, vtag, link);
+            }
+        }
+
+        private void removeLink(AbsoluteRecordId sourceRecord, byte[] sourceAsBytes, SchemaId vtag, FieldedLink link) {
+            IndexEntry bkwdEntry = createBackwardIndexEntry(vtag, link.getAbsoluteRecordId(), link.getFieldTypeId());
+            bkwdEntry.setIdentifier(sourceAsBytes);
+            removedBkwdEntries.add(bkwdEntry);
+
+            addCountDelta(link, vtag, -1);
 
-                for (FieldedLink link : removedLinks) {
-                    IndexEntry bkwdEntry = createBackwardIndexEntry(vtag, link.getAbsoluteRecordId(), link.getFieldTypeId());
-                    bkwdEntry.setIdentifier(sourceAsBytes);
-                    bkwdEntries.add(bkwdEntry);
+            IndexEntry fwdEntry = createForwardIndexEntry(vtag, sourceRecord, link.getFieldTypeId());
+            fwdEntry.setIdentifier(link.getAbsoluteRecordId().toBytes());
+            removedFwdEntries.add(fwdEntry);
+        }
+
+        private void addCountDelta(FieldedLink link, SchemaId vtag, long delta) {
+            ByteArrayKey row = new ByteArrayKey(getCountsRow(link.getAbsoluteRecordId(), vtag));
+            Map<ByteArrayKey, Long> rowDeltas = countDeltas.get(row);
+            if (rowDeltas == null) {
+                rowDeltas = new HashMap<ByteArrayKey, Long>();
+                countDeltas.put(row, rowDeltas);
+            }
+            ByteArrayKey column = new ByteArrayKey(link.getFieldTypeId().getBytes());
+            Long current = rowDeltas.get(column);
+            rowDeltas.put(column, current == null ? delta : current + delta);
+        }
+
+        public boolean isEmpty() {
+            return addedFwdEntries.isEmpty() && removedFwdEntries.isEmpty();
+        }
 
-                    IndexEntry fwdEntry = createForwardIndexEntry(vtag, sourceRecord, link.getFieldTypeId());
-                    fwdEntry.setIdentifier(link.getAbsoluteRecordId().toBytes());
-                    fwdEntries.add(fwdEntry);
+        /**
+         * Writes the collected changes to the index tables, after which the batch is empty again.
+         */
+        public void apply() throws LinkIndexException, InterruptedException {
+            try {
+                // See the implementation note at the top of LinkIndex for the order of these calls. The
+                // additions to and removals from the backward table are independent, so they are written together.
+                if (!addedFwdEntries.isEmpty()) {
+                    IndexWriter.waitFor(forwardIndexWriter.addEntries(addedFwdEntries));
+                }
+                ListenableFuture<Void> addedBkwd = backwardIndexWriter.addEntries(addedBkwdEntries);
+                ListenableFuture<Void> removedBkwd = backwardIndexWriter.removeEntries(removedBkwdEntries);
+                IndexWriter.waitFor(addedBkwd);
+                IndexWriter.waitFor(removedBkwd);
+                if (!removedFwdEntries.isEmpty()) {
+                    IndexWriter.waitFor(forwardIndexWriter.removeEntries(removedFwdEntries));
                 }
-                backwardIndex.removeEntries(bkwdEntries);
-                forwardIndex.removeEntries(fwdEntries);
+                applyCountDeltas();
+            } catch (IOException e) {
+                throw new LinkIndexException("Error writing link index changes", e);
+            }
+            addedFwdEntries.clear();
+            addedBkwdEntries.clear();
+            removedFwdEntries.clear();
+            removedBkwdEntries.clear();
+            countDeltas.clear();
+        }
+
+        private void applyCountDeltas() throws IOException, InterruptedException {
+            // All rows in one call, rather than a round trip per row
+            List<Row> increments = new ArrayList<Row>(countDeltas.size());
+            for (Map.Entry<ByteArrayKey, Map<ByteArrayKey, Long>> row : countDeltas.entrySet()) {
+                Increment increment = new Increment(row.getKey().getKey());
+                for (Map.Entry<ByteArrayKey, Long> column : row.getValue().entrySet()) {
+                    if (column.getValue() != 0) {
+                        increment.addColumn(COUNTS_FAMILY, column.getKey().getKey(), column.getValue());
+                    }
+                }
+                if (increment.numColumns() > 0) {
+                    increments.add(increment);
+                }
+            }
+            if (!increments.isEmpty()) {
+                countsTable.batch(increments);
             }
-        } catch (IOException e) {
-            throw new LinkIndexException("Error updating links for record '" + sourceRecord + "', vtag '" +
-                    vtag + "'", e);
-        } finally {
-            metrics.report(Action.UPDATE_LINKS, System.currentTimeMillis() - before);
         }
     }
 
+    /**
+     * Returns the row of the {@link #COUNTS_TABLE} holding the number of links to a record in a vtag. The columns
+     * are the ids of the source fields, the values the counts encoded as longs.
+     */
+    public static byte[] getCountsRow(AbsoluteRecordId target, SchemaId vtag) {
+        // the vtag has a fixed length, so this is unambiguous
+        return Bytes.add(target.toBytes(), vtag.getBytes());
+    }
+
+    /**
+     * Creates the rows of the forward index for the links of a record in a vtag, without writing them. This is
+     * for building the link index from scratch, e.g. by bulk loading HFiles, and assumes there are no
+     * existing links for the record.
+     */
+    public List<Put> createForwardIndexPuts(AbsoluteRecordId sourceRecord, SchemaId vtag, Set<FieldedLink> links)
+            throws IOException {
+        List<Put> puts = new ArrayList<Put>(links.size());
+        for (FieldedLink link : links) {
+            IndexEntry fwdEntry = createForwardIndexEntry(vtag, sourceRecord, link.getFieldTypeId());
+            fwdEntry.setIdentifier(link.getAbsoluteRecordId().toBytes());
+            puts.add(forwardIndex.createAddEntryPut(fwdEntry));
+        }
+        return puts;
+    }
+
+    /**
+     * The backward index counterpart of {@link #createForwardIndexPuts}.
+     */
+    public List<Put> createBackwardIndexPuts(AbsoluteRecordId sourceRecord, SchemaId vtag, Set<FieldedLink> links)
+            throws IOException {
+        List<Put> puts = new ArrayList<Put>(links.size());
+        byte[] sourceAsBytes = sourceRecord.toBytes();
+        for (FieldedLink link : links) {
+            IndexEntry bkwdEntry = createBackwardIndexEntry(vtag, link.getAbsoluteRecordId(), link.getFieldTypeId());
+            bkwdEntry.setIdentifier(sourceAsBytes);
+            puts.add(backwardIndex.createAddEntryPut(bkwdEntry));
+        }
+        return puts;
+    }
+
     private IndexEntry createBackwardIndexEntry(SchemaId vtag, AbsoluteRecordId target, SchemaId sourceField) {
         IndexEntry entry = new IndexEntry(backwardIndex.getDefinition());
 
@@ -384,6 +544,123 @@ public class LinkIndex {
         }
     }
 
+    /**
+     * Returns a page of the links to a record, without reading the links on the preceding pages. Unlike
+     * {@link #getFieldedReferrers}, the links are not collected in a set: when no vtag is given, a link occurring
+     * in several vtags is returned once for each vtag.
+     *
+     * @param vtag        optional, can be null
+     * @param sourceField optional, can be null
+     * @param startAfter  null for the first page, or {@link ReferrerPage#getNextStartAfter()} of the previous page
+     * @param pageSize    the maximum number of links to return
+     */
+    public ReferrerPage getReferrersPage(AbsoluteRecordId record, SchemaId vtag, SchemaId sourceField,
+            byte[] startAfter, int pageSize) throws LinkIndexException, InterruptedException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize should be larger than 0, got: " + pageSize);
+        }
+
+        long before = System.currentTimeMillis();
+        try {
+            Query query = new Query();
+            query.addEqualsCondition("target", record.toBytes());
+            if (vtag != null) {
+                query.addEqualsCondition("vtag", vtag.getBytes());
+            }
+            if (sourceField != null) {
+                query.addEqualsCondition("sourcefield", sourceField.getBytes());
+            }
+            query.setStartAfter(startAfter);
+            // one more than the page size, to know in the same round trip whether there is a next page
+            query.setCaching(pageSize + 1);
+
+            List<FieldedLink> referrers = new ArrayList<FieldedLink>();
+            byte[] lastPosition = null;
+            byte[] nextStartAfter = null;
+
+            QueryResult qr = backwardIndex.performQuery(query);
+            byte[] id;
+            while ((id = qr.next()) != null) {
+                if (referrers.size() == pageSize) {
+                    nextStartAfter = lastPosition;
+                    break;
+                }
+                SchemaId linkSourceField = getIdGenerator().getSchemaId(qr.getData(SOURCE_FIELD_KEY));
+                referrers.add(new FieldedLink(getIdGenerator().absoluteFromBytes(id), linkSourceField));
+                lastPosition = qr.getPosition();
+            }
+            Closer.close(
+                    qr); // Not closed in finally block: avoid HBase contact when there could be connection problems.
+
+            return new ReferrerPage(referrers, nextStartAfter);
+        } catch (IOException e) {
+            throw new LinkIndexException("Error getting referrers for record '" + record + "', vtag '" + vtag +
+                    "', field '" + sourceField + "'", e);
+        } finally {
+            metrics.report(Action.GET_REFERRERS_PAGE, System.currentTimeMillis() - before);
+        }
+    }
+
+    public long countReferrers(RecordId record, SchemaId vtag) throws LinkIndexException, InterruptedException {
+        return countReferrers(getAbsoluteId(record), vtag, null);
+    }
+
+    public long countReferrers(AbsoluteRecordId record, SchemaId vtag)
+            throws LinkIndexException, InterruptedException {
+        return countReferrers(record, vtag, null);
+    }
+
+    public long countReferrers(RecordId record, SchemaId vtag, SchemaId sourceField)
+            throws LinkIndexException, InterruptedException {
+        return countReferrers(getAbsoluteId(record), vtag, sourceField);
+    }
+
+    /**
+     * Returns the number of links to a record in a vtag, reading a single row of counters rather than the links.
+     * A record linking to the record in several fields is counted once for each field.
+     *
+     * <p>The counters are maintained by the link index updates. Links indexed before the counters existed are
+     * not counted until the counts are rebuilt, using the counts-only mode of the link index builder
+     * (lily-build-linkindex --counts-only): this is a required step when upgrading an existing link index.</p>
+     *
+     * @param sourceField optional, can be null
+     */
+    public long countReferrers(AbsoluteRecordId record, SchemaId vtag, SchemaId sourceField)
+            throws LinkIndexException, InterruptedException {
+        ArgumentValidator.notNull(vtag, "vtag");
+
+        long before = System.currentTimeMillis();
+        try {
+            Get get = new Get(getCountsRow(record, vtag));
+            if (sourceField != null) {
+                get.addColumn(COUNTS_FAMILY, sourceField.getBytes());
+            } else {
+                get.addFamily(COUNTS_FAMILY);
+            }
+
+            long count = 0;
+            Result result = countsTable.get(get);
+            if (!result.isEmpty()) {
+                for (KeyValue kv : result.raw()) {
+                    count += Bytes.toLong(kv.getValue());
+                }
+            }
+
+            // A failure between updating the index and the counters can leave them a bit off
+            if (count < 0) {
+                log.warn("Negative referrer count " + count + " for record '" + record + "', vtag '" + vtag
+                        + "', field '" + sourceField + "'. Rebuild the link index counts to correct them.");
+                count = 0;
+            }
+            return count;
+        } catch (IOException e) {
+            throw new LinkIndexException("Error counting referrers for record '" + record + "', vtag '" + vtag +
+                    "', field '" + sourceField + "'", e);
+        } finally {
+            metrics.report(Action.COUNT_REFERRERS, System.currentTimeMillis() - before);
+        }
+    }
+
     public Set<Pair<FieldedLink, SchemaId>> getAllForwardLinks(RecordId record)
             throws LinkIndexException, InterruptedException {
         return this.getAllForwardLinks(getAbsoluteId(record));
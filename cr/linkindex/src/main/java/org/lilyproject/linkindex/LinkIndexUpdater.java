@@ -17,15 +17,25 @@ package org.lilyproject.linkindex;
 
 import static org.lilyproject.util.repo.RecordEvent.Type.CREATE;
 import static org.lilyproject.util.repo.RecordEvent.Type.DELETE;
+import static org.lilyproject.util.repo.RecordEvent.Type.INDEX;
 import static org.lilyproject.util.repo.RecordEvent.Type.UPDATE;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +45,7 @@ import org.lilyproject.repository.api.FieldType;
 import org.lilyproject.repository.api.IdRecord;
 import org.lilyproject.repository.api.LRepository;
 import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.RecordId;
 import org.lilyproject.repository.api.RecordNotFoundException;
 import org.lilyproject.repository.api.RepositoryException;
 import org.lilyproject.repository.api.RepositoryManager;
@@ -42,6 +53,8 @@ import org.lilyproject.repository.api.SchemaId;
 import org.lilyproject.repository.api.VersionNotFoundException;
 import org.lilyproject.sep.LilyEventListener;
 import org.lilyproject.sep.LilySepEvent;
+import org.lilyproject.util.Pair;
+import org.lilyproject.util.concurrent.CustomThreadFactory;
 import org.lilyproject.util.exception.ExceptionUtil;
 import org.lilyproject.util.repo.FieldFilter;
 import org.lilyproject.util.repo.RecordEvent;
@@ -58,12 +71,20 @@ import org.lilyproject.util.repo.VTaggedRecord;
  * Keeps the {@link LinkIndex} up to date when changes happen to records.
  */
 public class LinkIndexUpdater extends LilyEventListener {
+    /**
+     * The name of the SEP subscription through which the link index updater receives the record events.
+     */
+    public static final String SUBSCRIPTION_NAME = "LinkIndexUpdater";
+
     private RepositoryManager repositoryManager;
     private LinkIndex linkIndex;
 
     private Log log = LogFactory.getLog(getClass());
     private LinkIndexUpdaterMetrics metrics;
 
+    private static final int EXTRACT_THREADS = 10;
+    private ExecutorService extractExecutor;
+
     public LinkIndexUpdater(RepositoryManager repositoryManager, LinkIndex linkIndex) throws RepositoryException, InterruptedException {
         super(repositoryManager);
         this.repositoryManager = repositoryManager;
@@ -71,37 +92,59 @@ public class LinkIndexUpdater extends LilyEventListener {
         metrics = new LinkIndexUpdaterMetrics("linkIndexUpdater");
     }
 
+    /**
+     * Stops the threads used for link extraction.
+     */
+    public synchronized void stop() {
+        if (extractExecutor != null) {
+            extractExecutor.shutdownNow();
+            extractExecutor = null;
+        }
+        metrics.shutdown();
+    }
+
     @Override
     public void processLilyEvents(List<LilySepEvent> events) {
+        // The events of the batch are grouped by record, in the order in which the records first occur
+        Map<AbsoluteRecordId, List<RecordEvent>> eventsByRecord =
+                new LinkedHashMap<AbsoluteRecordId, List<RecordEvent>>();
         for (LilySepEvent event : events) {
-            processEvent(event);
+            RecordEvent recordEvent;
+            try {
+                recordEvent = event.getRecordEvent();
+            } catch (IOException e) {
+                log.error("Error reading record event, processing of message cancelled", e);
+                continue;
+            }
+            if (recordEvent.getType() == INDEX) {
+                // Reindex events do not change the record, and should not hide the changes before them when
+                // collapsing the events of a record
+                continue;
+            }
+            AbsoluteRecordId absoluteRecordId = event.getAbsoluteRecordId();
+            List<RecordEvent> recordEvents = eventsByRecord.get(absoluteRecordId);
+            if (recordEvents == null) {
+                recordEvents = new ArrayList<RecordEvent>(1);
+                eventsByRecord.put(absoluteRecordId, recordEvents);
+            }
+            recordEvents.add(recordEvent);
         }
+        update(eventsByRecord);
     }
-    
-    public void processEvent(LilySepEvent event) {
 
-        LRepository repository = null;
-        try {
-            repository = repositoryManager.getDefaultRepository();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException(e);
-        } catch (RepositoryException e) {
-            throw new RuntimeException(e);
-        }
-
-        RecordEvent recordEvent;
-        try {
-            recordEvent = event.getRecordEvent();
-        } catch (IOException e) {
-            log.error("Error reading record event, processing of message cancelled", e);
-            return;
-        }
-        AbsoluteRecordId absoluteRecordId = event.getAbsoluteRecordId();
-        update(absoluteRecordId, recordEvent);
+    public void processEvent(LilySepEvent event) {
+        processLilyEvents(Collections.singletonList(event));
     }
 
     public void update(AbsoluteRecordId absRecordId, RecordEvent recordEvent) {
+        update(Collections.singletonMap(absRecordId, Collections.singletonList(recordEvent)));
+    }
+
+    /**
+     * Updates the link index for a batch of records, given the events of each record in the order in
+     * which they occurred.
+     */
+    private void update(Map<AbsoluteRecordId, List<RecordEvent>> eventsByRecord) {
         // This is the algorithm for updating the LinkIndex when a record changes.
         //
         // The LinkIndex contains, for each vtag defined on the record, the links extracted from the record
@@ -113,81 +156,77 @@ public class LinkIndexUpdater extends LilyEventListener {
         //  * the content of (non-vtag) fields is changed
         //  * the vtags change: existing vtag now points to another version, a new vtag is added, or a vtag is removed
         //
+        // The records of the batch are processed together: the records are read with one multi-get per table,
+        // the link extraction is done in parallel, and all changes are written to the link index in one go.
+        // Only the last event of each record is considered, as it describes the current state of the record.
+
+        if (eventsByRecord.isEmpty()) {
+            return;
+        }
 
         long before = System.currentTimeMillis();
         try {
-            if (recordEvent.getType().equals(DELETE)) {
-                // Delete everything from the link index for this record, thus for all vtags
-                linkIndex.deleteLinks(absRecordId);
-                if (log.isDebugEnabled()) {
-                    log.debug("Record " + absRecordId + " : delete event : deleted extracted links.");
-                }
-            } else if (recordEvent.getType().equals(CREATE) || recordEvent.getType().equals(UPDATE)) {
-                boolean isNewRecord = recordEvent.getType().equals(CREATE);
-
-                RecordEventHelper eventHelper = new RecordEventHelper(recordEvent, LINK_FIELD_FILTER,
-                        repositoryManager.getDefaultRepository().getTypeManager());
-
-                VTaggedRecord vtRecord;
-                try {
-                    LRepository repository = repositoryManager.getDefaultRepository();
-                    LTable table = repository.getTable(recordEvent.getTableName());
-                    vtRecord = new VTaggedRecord(absRecordId.getRecordId(), eventHelper, table, repository);
-                } catch (RecordNotFoundException e) {
-                    // record not found: delete all links for all vtags
-                    linkIndex.deleteLinks(absRecordId);
+            LRepository repository = repositoryManager.getDefaultRepository();
+            LinkIndex.Batch batch = linkIndex.newBatch();
+
+            Map<String, List<AbsoluteRecordId>> recordsToReadByTable =
+                    new LinkedHashMap<String, List<AbsoluteRecordId>>();
+            for (Map.Entry<AbsoluteRecordId, List<RecordEvent>> entry : eventsByRecord.entrySet()) {
+                AbsoluteRecordId absRecordId = entry.getKey();
+                RecordEvent recordEvent = getLast(entry.getValue());
+                if (recordEvent.getType().equals(DELETE)) {
+                    // Delete everything from the link index for this record, thus for all vtags
+                    batch.deleteLinks(absRecordId);
                     if (log.isDebugEnabled()) {
-                        log.debug("Record " + absRecordId + " : does not exist : deleted extracted links.");
+                        log.debug("Record " + absRecordId + " : delete event : deleted extracted links.");
                     }
-                    return;
+                } else if (recordEvent.getType().equals(CREATE) || recordEvent.getType().equals(UPDATE)) {
+                    List<AbsoluteRecordId> recordIds = recordsToReadByTable.get(recordEvent.getTableName());
+                    if (recordIds == null) {
+                        recordIds = new ArrayList<AbsoluteRecordId>();
+                        recordsToReadByTable.put(recordEvent.getTableName(), recordIds);
+                    }
+                    recordIds.add(absRecordId);
                 }
+            }
 
-                //
-                // First find out for what vtags we need to re-perform the link extraction
-                //
-                Set<SchemaId> vtagsToProcess = new HashSet<SchemaId>();
-
-                // Modified vtag fields
-                vtagsToProcess.addAll(eventHelper.getModifiedVTags());
+            List<RecordUpdate> recordUpdates = new ArrayList<RecordUpdate>();
+            for (Map.Entry<String, List<AbsoluteRecordId>> entry : recordsToReadByTable.entrySet()) {
+                LTable table = repository.getTable(entry.getKey());
 
-                // The vtags of the created/modified version, if any, and if any link fields changed
-                vtagsToProcess.addAll(vtRecord.getVTagsOfModifiedData());
+                List<RecordId> recordIds = new ArrayList<RecordId>(entry.getValue().size());
+                for (AbsoluteRecordId absRecordId : entry.getValue()) {
+                    recordIds.add(absRecordId.getRecordId());
+                }
+                Map<RecordId, IdRecord> records = new HashMap<RecordId, IdRecord>();
+                for (IdRecord record : table.readWithIds(recordIds, null)) {
+                    records.put(record.getId(), record);
+                }
 
-                Map<SchemaId, Long> vtags = vtRecord.getVTags();
-
-                //
-                // For each of the vtags, perform the link extraction
-                //
-                Map<Long, Set<FieldedLink>> cache = new HashMap<Long, Set<FieldedLink>>();
-                for (SchemaId vtag : vtagsToProcess) {
-                    if (!vtags.containsKey(vtag)) {
-                        // The vtag is not defined on the document: it is a deleted vtag, delete the
-                        // links corresponding to it
-                        linkIndex.deleteLinks(absRecordId, vtag);
+                for (AbsoluteRecordId absRecordId : entry.getValue()) {
+                    IdRecord record = records.get(absRecordId.getRecordId());
+                    if (record == null) {
+                        // record not found: delete all links for all vtags
+                        batch.deleteLinks(absRecordId);
                         if (log.isDebugEnabled()) {
-                            log.debug(String.format("Record %1$s, vtag %2$s : deleted extracted links " +
-                                    "because vtag does not exist on document anymore",
-                                    absRecordId, safeLoadTagName(vtag)));
+                            log.debug("Record " + absRecordId + " : does not exist : deleted extracted links.");
                         }
                     } else {
-                        // Since one version might have multiple vtags, we keep a little cache to avoid
-                        // extracting the links from the same version twice.
-                        long version = vtags.get(vtag);
-                        Set<FieldedLink> links;
-                        if (cache.containsKey(version)) {
-                            links = cache.get(version);
-                        } else {
-                            links = extractLinks(vtRecord, version);
-                            cache.put(version, links);
-                        }
-                        linkIndex.updateLinks(absRecordId, vtag, links, isNewRecord);
-                        if (log.isDebugEnabled()) {
-                            log.debug(String.format("Record %1$s, vtag %2$s : extracted links count : %3$s",
-                                    absRecordId, safeLoadTagName(vtag), links.size()));
-                        }
+                        recordUpdates.add(new RecordUpdate(absRecordId, eventsByRecord.get(absRecordId), record,
+                                table, repository));
                     }
                 }
             }
+
+            // Start the link extraction of all records before collecting the results of any of them
+            for (RecordUpdate recordUpdate : recordUpdates) {
+                recordUpdate.startLinkExtraction();
+            }
+            for (RecordUpdate recordUpdate : recordUpdates) {
+                recordUpdate.addTo(batch);
+            }
+
+            batch.apply();
         } catch (Exception e) {
             // Throw the exception through so that it is retried later by the SEP
             ExceptionUtil.handleInterrupt(e);
@@ -197,6 +236,117 @@ public class LinkIndexUpdater extends LilyEventListener {
         }
     }
 
+    private static RecordEvent getLast(List<RecordEvent> recordEvents) {
+        return recordEvents.get(recordEvents.size() - 1);
+    }
+
+    /**
+     * The link index changes for one existing record.
+     */
+    private class RecordUpdate {
+        private final AbsoluteRecordId absRecordId;
+        private final VTaggedRecord vtRecord;
+        private final boolean isNewRecord;
+        private final Set<SchemaId> vtagsToProcess = new HashSet<SchemaId>();
+        private final Map<SchemaId, Long> vtags;
+        private final Map<Long, Future<Set<FieldedLink>>> linksByVersion =
+                new HashMap<Long, Future<Set<FieldedLink>>>();
+
+        RecordUpdate(AbsoluteRecordId absRecordId, List<RecordEvent> recordEvents, IdRecord record, LTable table,
+                LRepository repository) throws RepositoryException, InterruptedException {
+            this.absRecordId = absRecordId;
+
+            RecordEvent recordEvent = getLast(recordEvents);
+            RecordEventHelper eventHelper = new RecordEventHelper(recordEvent, LINK_FIELD_FILTER,
+                    repository.getTypeManager());
+            vtRecord = new VTaggedRecord(record, eventHelper, table, repository);
+            vtags = vtRecord.getVTags();
+
+            //
+            // First find out for what vtags we need to re-perform the link extraction
+            //
+            if (recordEvents.size() == 1) {
+                isNewRecord = recordEvent.getType().equals(CREATE);
+
+                // Modified vtag fields
+                vtagsToProcess.addAll(eventHelper.getModifiedVTags());
+
+                // The vtags of the created/modified version, if any, and if any link fields changed
+                vtagsToProcess.addAll(vtRecord.getVTagsOfModifiedData());
+            } else {
+                // The earlier events of the record are collapsed into the last one, so we do not know which
+                // vtags they affected: process all vtags of the record, and those that have links in the index.
+                isNewRecord = recordEvents.get(0).getType().equals(CREATE);
+                vtagsToProcess.addAll(vtags.keySet());
+                if (!isNewRecord) {
+                    for (Pair<FieldedLink, SchemaId> link : linkIndex.getAllForwardLinks(absRecordId)) {
+                        vtagsToProcess.add(link.getV2());
+                    }
+                }
+            }
+        }
+
+        void startLinkExtraction() {
+            // Since one version might have multiple vtags, the links are extracted only once per version
+            for (SchemaId vtag : vtagsToProcess) {
+                Long version = vtags.get(vtag);
+                if (version != null && !linksByVersion.containsKey(version)) {
+                    linksByVersion.put(version, getExtractExecutor().submit(new ExtractLinksTask(vtRecord, version)));
+                }
+            }
+        }
+
+        void addTo(LinkIndex.Batch batch) throws LinkIndexException, InterruptedException, ExecutionException {
+            //
+            // For each of the vtags, perform the link extraction
+            //
+            for (SchemaId vtag : vtagsToProcess) {
+                if (!vtags.containsKey(vtag)) {
+                    // The vtag is not defined on the document: it is a deleted vtag, delete the
+                    // links corresponding to it
+                    batch.deleteLinks(absRecordId, vtag);
+                    if (log.isDebugEnabled()) {
+                        log.debug(String.format("Record %1$s, vtag %2$s : deleted extracted links " +
+                                "because vtag does not exist on document anymore",
+                                absRecordId, safeLoadTagName(vtag)));
+                    }
+                } else {
+                    Set<FieldedLink> links = linksByVersion.get(vtags.get(vtag)).get();
+                    batch.updateLinks(absRecordId, vtag, links, isNewRecord);
+                    if (log.isDebugEnabled()) {
+                        log.debug(String.format("Record %1$s, vtag %2$s : extracted links count : %3$s",
+                                absRecordId, safeLoadTagName(vtag), links.size()));
+                    }
+                }
+            }
+        }
+    }
+
+    private class ExtractLinksTask implements Callable<Set<FieldedLink>> {
+        private final VTaggedRecord vtRecord;
+        private final long version;
+
+        ExtractLinksTask(VTaggedRecord vtRecord, long version) {
+            this.vtRecord = vtRecord;
+            this.version = version;
+        }
+
+        @Override
+        public Set<FieldedLink> call() {
+            return extractLinks(vtRecord, version);
+        }
+    }
+
+    private synchronized ExecutorService getExtractExecutor() {
+        if (extractExecutor == null) {
+            // When all threads are busy, the extraction is done by the submitting thread itself
+            extractExecutor = new ThreadPoolExecutor(1, EXTRACT_THREADS, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new CustomThreadFactory("linkindex-extract", null, true),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return extractExecutor;
+    }
+
     private Set<FieldedLink> extractLinks(VTaggedRecord vtRecord, Long version) {
         long before = System.currentTimeMillis();
         try {
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.linkindex;
+
+import java.util.List;
+
+/**
+ * A page of the referrers of a record, as returned by
+ * {@link LinkIndex#getReferrersPage(org.lilyproject.repository.api.AbsoluteRecordId,
+ * org.lilyproject.repository.api.SchemaId, org.lilyproject.repository.api.SchemaId, byte[], int)}.
+ */
+public class ReferrerPage {
+    private final List<FieldedLink> referrers;
+    private final byte[] nextStartAfter;
+
+    public ReferrerPage(List<FieldedLink> referrers, byte[] nextStartAfter) {
+        this.referrers = referrers;
+        this.nextStartAfter = nextStartAfter;
+    }
+
+    /**
+     * The links to the record, in the order of the link index.
+     */
+    public List<FieldedLink> getReferrers() {
+        return referrers;
+    }
+
+    /**
+     * The value to pass as startAfter to get the next page, or null if this is the last page.
+     */
+    public byte[] getNextStartAfter() {
+        return nextStartAfter;
+    }
+}
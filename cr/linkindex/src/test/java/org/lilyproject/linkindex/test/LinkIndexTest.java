@@ -16,14 +16,21 @@
 package org.lilyproject.linkindex.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 
 import com.google.common.collect.Sets;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -32,6 +39,7 @@ import org.lilyproject.hbaseindex.IndexManager;
 import org.lilyproject.linkindex.FieldedLink;
 import org.lilyproject.linkindex.LinkIndex;
 import org.lilyproject.linkindex.LinkIndexUpdater;
+import org.lilyproject.linkindex.ReferrerPage;
 import org.lilyproject.repository.api.AbsoluteRecordId;
 import org.lilyproject.repository.api.FieldType;
 import org.lilyproject.repository.api.HierarchyPath;
@@ -47,8 +55,11 @@ import org.lilyproject.repository.api.Scope;
 import org.lilyproject.repository.api.TypeManager;
 import org.lilyproject.repository.impl.id.SchemaIdImpl;
 import org.lilyproject.repotestfw.RepositorySetup;
+import org.lilyproject.sep.LilySepEvent;
+import org.lilyproject.util.hbase.RepoAndTableUtil;
 import org.lilyproject.util.hbase.LilyHBaseSchema.Table;
 import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.repo.RecordEvent;
 import org.lilyproject.util.repo.VersionTag;
 
 public class LinkIndexTest {
@@ -63,6 +74,7 @@ public class LinkIndexTest {
     private static Repository repository;
     private static IdGenerator ids;
     private static LinkIndex linkIndex;
+    private static LinkIndexUpdater linkIndexUpdater;
 
     private SchemaId field1 = new SchemaIdImpl(UUID.randomUUID());
 
@@ -86,12 +98,15 @@ public class LinkIndexTest {
         repoSetup.getTableManager().createTable(TABLE_B);
         repoSetup.getTableManager().createTable(TABLE_C);
 
-        repoSetup.startSepEventSlave("LinkIndexUpdater", new LinkIndexUpdater(repoSetup.getRepositoryManager(), linkIndex));
+        linkIndexUpdater = new LinkIndexUpdater(repoSetup.getRepositoryManager(), linkIndex);
+        repoSetup.startSepEventSlave("LinkIndexUpdater", linkIndexUpdater);
     }
 
     @AfterClass
     public static void tearDownAfterClass() throws Exception {
         Closer.close(repoSetup);
+        Closer.close(linkIndexUpdater);
+        Closer.close(linkIndex);
     }
 
     @Test
@@ -142,6 +157,116 @@ public class LinkIndexTest {
         assertEquals(1, referrers.size());
     }
 
+    @Test
+    public void testLinkIndexBatch() throws Exception {
+        SchemaId liveTag = repository.getIdGenerator().getSchemaId(UUID.randomUUID());
+
+        Set<FieldedLink> links1 = new HashSet<FieldedLink>();
+        links1.add(new FieldedLink(createAbsoluteId("batch1"), field1));
+        links1.add(new FieldedLink(createAbsoluteId("batch2"), field1));
+
+        linkIndex.updateLinks(ids.newRecordId("batchA"), liveTag, links1);
+        linkIndex.updateLinks(ids.newRecordId("batchB"), liveTag, links1);
+
+        // Nothing changes in the index until the batch is applied
+        Set<FieldedLink> links2 = new HashSet<FieldedLink>();
+        links2.add(new FieldedLink(createAbsoluteId("batch2"), field1));
+        links2.add(new FieldedLink(createAbsoluteId("batch3"), field1));
+
+        LinkIndex.Batch batch = linkIndex.newBatch();
+        batch.updateLinks(createAbsoluteId("batchA"), liveTag, links2, false);
+        batch.deleteLinks(createAbsoluteId("batchB"));
+        batch.updateLinks(createAbsoluteId("batchC"), liveTag, links1, true);
+        assertFalse(batch.isEmpty());
+        assertEquals(links1, linkIndex.getFieldedForwardLinks(ids.newRecordId("batchA"), liveTag));
+        assertEquals(0, linkIndex.getFieldedForwardLinks(ids.newRecordId("batchC"), liveTag).size());
+
+        batch.apply();
+        assertTrue(batch.isEmpty());
+
+        assertEquals(links2, linkIndex.getFieldedForwardLinks(ids.newRecordId("batchA"), liveTag));
+        assertEquals(0, linkIndex.getFieldedForwardLinks(ids.newRecordId("batchB"), liveTag).size());
+        assertEquals(links1, linkIndex.getFieldedForwardLinks(ids.newRecordId("batchC"), liveTag));
+
+        assertEquals(Sets.newHashSet(ids.newRecordId("batchC")),
+                linkIndex.getReferrers(ids.newRecordId("batch1"), liveTag));
+        assertEquals(Sets.newHashSet(ids.newRecordId("batchA"), ids.newRecordId("batchC")),
+                linkIndex.getReferrers(ids.newRecordId("batch2"), liveTag));
+        assertEquals(Sets.newHashSet(ids.newRecordId("batchA")),
+                linkIndex.getReferrers(ids.newRecordId("batch3"), liveTag));
+    }
+
+    @Test
+    public void testReferrersPageAndCount() throws Exception {
+        SchemaId liveTag = repository.getIdGenerator().getSchemaId(UUID.randomUUID());
+        SchemaId field2 = new SchemaIdImpl(UUID.randomUUID());
+
+        Set<FieldedLink> links = new HashSet<FieldedLink>();
+        links.add(new FieldedLink(createAbsoluteId("paged"), field1));
+        for (String source : new String[]{"pagedA", "pagedB", "pagedC", "pagedD", "pagedE"}) {
+            linkIndex.updateLinks(ids.newRecordId(source), liveTag, links);
+        }
+        links.add(new FieldedLink(createAbsoluteId("paged"), field2));
+        linkIndex.updateLinks(ids.newRecordId("pagedA"), liveTag, links);
+
+        AbsoluteRecordId target = createAbsoluteId("paged");
+        Set<FieldedLink> pagedReferrers = new HashSet<FieldedLink>();
+        ReferrerPage page = linkIndex.getReferrersPage(target, liveTag, null, null, 4);
+        assertEquals(4, page.getReferrers().size());
+        pagedReferrers.addAll(page.getReferrers());
+        assertNotNull(page.getNextStartAfter());
+
+        page = linkIndex.getReferrersPage(target, liveTag, null, page.getNextStartAfter(), 4);
+        assertEquals(2, page.getReferrers().size());
+        pagedReferrers.addAll(page.getReferrers());
+        assertNull(page.getNextStartAfter());
+        Set<FieldedLink> expectedReferrers = new HashSet<FieldedLink>();
+        for (String source : new String[]{"pagedA", "pagedB", "pagedC", "pagedD", "pagedE"}) {
+            expectedReferrers.add(new FieldedLink(createAbsoluteId(source), field1));
+        }
+        expectedReferrers.add(new FieldedLink(createAbsoluteId("pagedA"), field2));
+        assertEquals(expectedReferrers, pagedReferrers);
+
+        assertEquals(6, linkIndex.countReferrers(target, liveTag));
+        assertEquals(5, linkIndex.countReferrers(target, liveTag, field1));
+        assertEquals(1, linkIndex.countReferrers(target, liveTag, field2));
+
+        linkIndex.deleteLinks(ids.newRecordId("pagedA"));
+        assertEquals(4, linkIndex.countReferrers(target, liveTag));
+        assertEquals(0, linkIndex.countReferrers(target, liveTag, field2));
+
+        // Counts which drifted below zero are reported as zero
+        HTable countsTable = new HTable(repoSetup.getHadoopConf(), LinkIndex.COUNTS_TABLE);
+        countsTable.incrementColumnValue(LinkIndex.getCountsRow(target, liveTag), LinkIndex.COUNTS_FAMILY,
+                field2.getBytes(), -1);
+        countsTable.close();
+        assertEquals(0, linkIndex.countReferrers(target, liveTag, field2));
+    }
+
+    @Test
+    public void testCreateIndexPuts() throws Exception {
+        SchemaId liveTag = repository.getIdGenerator().getSchemaId(UUID.randomUUID());
+
+        Set<FieldedLink> links = new HashSet<FieldedLink>();
+        links.add(new FieldedLink(createAbsoluteId("putTarget1"), field1));
+        links.add(new FieldedLink(createAbsoluteId("putTarget2"), field1));
+        AbsoluteRecordId source = createAbsoluteId("putSource");
+
+        HTable forwardTable = new HTable(repoSetup.getHadoopConf(), LinkIndex.FORWARD_INDEX);
+        forwardTable.put(linkIndex.createForwardIndexPuts(source, liveTag, links));
+        forwardTable.close();
+        HTable backwardTable = new HTable(repoSetup.getHadoopConf(), LinkIndex.BACKWARD_INDEX);
+        backwardTable.put(linkIndex.createBackwardIndexPuts(source, liveTag, links));
+        backwardTable.close();
+
+        // The rows are the same as those written when updating the links
+        assertEquals(links, linkIndex.getFieldedForwardLinks(source, liveTag));
+        assertEquals(Collections.singleton(source),
+                linkIndex.getAbsoluteReferrers(createAbsoluteId("putTarget1"), liveTag));
+        assertEquals(Collections.singleton(source),
+                linkIndex.getAbsoluteReferrers(createAbsoluteId("putTarget2"), liveTag));
+    }
+
     @Test
     public void testLinkIndex_AcrossTables() throws Exception {
         SchemaId liveTag = repository.getIdGenerator().getSchemaId(UUID.randomUUID());
@@ -246,6 +371,56 @@ public class LinkIndexTest {
         assertEquals(1, referrers4.size());
     }
 
+    @Test
+    public void testLinkIndexUpdater_IndexEventAfterUpdate() throws Exception {
+        FieldType linkFt = typeManager.newFieldType(typeManager.getValueType("LINK"),
+                new QName("ns", "batchLink"), Scope.NON_VERSIONED);
+        linkFt = typeManager.createFieldType(linkFt);
+
+        RecordType recordType = typeManager.newRecordType(new QName("ns", "BatchRecordType"));
+        recordType.addFieldTypeEntry(typeManager.newFieldTypeEntry(linkFt.getId(), false));
+        recordType = typeManager.createRecordType(recordType);
+
+        SchemaId lastVTag = typeManager.getFieldTypeByName(VersionTag.LAST).getId();
+        RecordId target = ids.newRecordId("batchTarget");
+
+        Record record = repository.newRecord();
+        record.setRecordType(recordType.getName());
+        record.setField(linkFt.getName(), new Link(target));
+        record = repository.create(record);
+        repoSetup.waitForSepProcessing();
+
+        // Remove the links, so that they can only come back through the batch processed below
+        linkIndex.deleteLinks(record.getId());
+        assertEquals(0, linkIndex.getReferrers(target, lastVTag).size());
+
+        RecordEvent updateEvent = new RecordEvent();
+        updateEvent.setType(RecordEvent.Type.UPDATE);
+        updateEvent.setTableName(Table.RECORD.name);
+        updateEvent.addUpdatedField(linkFt.getId());
+
+        RecordEvent indexEvent = new RecordEvent();
+        indexEvent.setType(RecordEvent.Type.INDEX);
+        indexEvent.setTableName(Table.RECORD.name);
+        indexEvent.addVTagToIndex(lastVTag);
+
+        LinkIndexUpdater updater = new LinkIndexUpdater(repoSetup.getRepositoryManager(), linkIndex);
+        try {
+            updater.processLilyEvents(Arrays.asList(createSepEvent(record.getId(), updateEvent),
+                    createSepEvent(record.getId(), indexEvent)));
+        } finally {
+            updater.stop();
+        }
+
+        assertEquals(Collections.singleton(record.getId()), linkIndex.getReferrers(target, lastVTag));
+    }
+
+    private LilySepEvent createSepEvent(RecordId recordId, RecordEvent recordEvent) {
+        return new LilySepEvent(ids, RepoAndTableUtil.DEFAULT_REPOSITORY, Table.RECORD.name,
+                Bytes.toBytes(Table.RECORD.name), recordId.toBytes(), Collections.<KeyValue>emptyList(),
+                recordEvent.toBytes());
+    }
+
     @Test
     public void testLinkIndexUpdater() throws Exception {
         FieldType nonVersionedFt = typeManager.newFieldType(typeManager.getValueType("LINK"),
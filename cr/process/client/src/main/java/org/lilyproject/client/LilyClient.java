@@ -17,6 +17,7 @@ package org.lilyproject.client;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
@@ -33,6 +34,9 @@ import org.lilyproject.util.hbase.RepoAndTableUtil;
 
 import org.lilyproject.repository.model.api.RepositoryModel;
 
+import com.ngdata.sep.SepModel;
+import com.ngdata.sep.impl.SepConsumer;
+import com.ngdata.sep.impl.SepModelImpl;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -50,6 +54,8 @@ import org.lilyproject.avro.AvroConverter;
 import org.lilyproject.client.impl.HBaseConnections;
 import org.lilyproject.client.impl.LoadBalancingAndRetryingRepositoryManager;
 import org.lilyproject.client.impl.LoadBalancingUtil;
+import org.lilyproject.client.impl.RecordCache;
+import org.lilyproject.client.impl.RecordCacheInvalidator;
 import org.lilyproject.client.impl.RemoteSchemaCache;
 import org.lilyproject.client.impl.RetryUtil;
 import org.lilyproject.repository.api.BlobManager;
@@ -74,6 +80,8 @@ import org.lilyproject.repository.remote.AvroLilyTransceiver;
 import org.lilyproject.repository.remote.RemoteRepositoryManager;
 import org.lilyproject.repository.remote.RemoteTypeManager;
 import org.lilyproject.repository.model.impl.RepositoryModelImpl;
+import org.lilyproject.sep.LilyPayloadExtractor;
+import org.lilyproject.sep.ZooKeeperItfAdapter;
 import org.lilyproject.util.hbase.HBaseTableFactory;
 import org.lilyproject.util.hbase.HBaseTableFactoryImpl;
 import org.lilyproject.util.hbase.LilyHBaseSchema.Table;
@@ -113,6 +121,12 @@ public class LilyClient implements Closeable, RepositoryManager {
     private HBaseConnections hbaseConnections = new HBaseConnections();
     private RepositoryModel repositoryModel;
 
+    private final RecordCacheConf recordCacheConf;
+    private RecordCache recordCache;
+    private SepModel recordCacheSepModel;
+    private SepConsumer recordCacheSepConsumer;
+    private String recordCacheSubscription;
+
     private boolean isClosed = true;
 
     /**
@@ -120,18 +134,43 @@ public class LilyClient implements Closeable, RepositoryManager {
      */
     public LilyClient(String zookeeperConnectString, int sessionTimeout) throws IOException, InterruptedException,
             KeeperException, ZkConnectException, NoServersException, RepositoryException {
-        this(ZkUtil.connect(zookeeperConnectString, sessionTimeout));
+        this(zookeeperConnectString, sessionTimeout, new RecordCacheConf());
+    }
+
+    /**
+     * @param recordCacheConf configuration of the client-side record cache, which is disabled by default
+     * @throws NoServersException if the znode under which the repositories are published does not exist
+     */
+    public LilyClient(String zookeeperConnectString, int sessionTimeout, RecordCacheConf recordCacheConf)
+            throws IOException, InterruptedException, KeeperException, ZkConnectException, NoServersException,
+            RepositoryException {
+        this(connect(zookeeperConnectString, sessionTimeout, recordCacheConf), recordCacheConf);
         managedZk = true;
     }
 
+    private static ZooKeeperItf connect(String zookeeperConnectString, int sessionTimeout,
+            RecordCacheConf recordCacheConf) throws ZkConnectException {
+        // Before connecting, so that no connection is left open when the configuration is invalid
+        recordCacheConf.validate();
+        return ZkUtil.connect(zookeeperConnectString, sessionTimeout);
+    }
+
     public LilyClient(ZooKeeperItf zk) throws IOException, InterruptedException, KeeperException, ZkConnectException,
             NoServersException, RepositoryException {
+        this(zk, new RecordCacheConf());
+    }
+
+    public LilyClient(ZooKeeperItf zk, RecordCacheConf recordCacheConf) throws IOException, InterruptedException,
+            KeeperException, ZkConnectException, NoServersException, RepositoryException {
+        recordCacheConf.validate();
         this.zk = zk;
+        this.recordCacheConf = recordCacheConf;
         schemaCache = new RemoteSchemaCache(zk, this);
         init();
     }
 
-    private void init() throws InterruptedException, KeeperException, NoServersException, RepositoryException {
+    private void init() throws InterruptedException, KeeperException, NoServersException, RepositoryException,
+            IOException {
         this.isClosed = false; // needs to be before refreshServers and schemaCache.start()
         zk.addDefaultWatcher(watcher);
         refreshServers();
@@ -168,10 +207,57 @@ public class LilyClient implements Closeable, RepositoryManager {
         IdGenerator idGenerator = new IdGeneratorImpl();
         RecordFactory recordFactory = new RecordFactoryImpl();
 
+        if (recordCacheConf.isEnabled()) {
+            recordCache = new RecordCache(recordCacheConf.getMaximumSize());
+        }
+
         repositoryManager = new LoadBalancingAndRetryingRepositoryManager(repositoryProvider, typeManagerProvider,
-                retryConf, idGenerator, recordFactory, repositoryModel);
+                retryConf, idGenerator, recordFactory, repositoryModel, recordCache);
 
         schemaCache.start();
+
+        if (recordCache != null) {
+            startRecordCacheInvalidation();
+        }
+    }
+
+    /**
+     * Registers a SEP subscription for this client and starts consuming its events to keep the record
+     * cache up to date.
+     */
+    private void startRecordCacheInvalidation() throws InterruptedException, KeeperException, IOException {
+        Configuration hbaseConf = getNewOrExistingConfiguration(zk);
+
+        String hostName = recordCacheConf.getHostName();
+        if (hostName == null) {
+            hostName = InetAddress.getLocalHost().getHostName();
+        }
+
+        recordCacheSubscription = recordCacheConf.getSubscriptionName();
+        recordCacheSepModel = new SepModelImpl(new ZooKeeperItfAdapter(zk), hbaseConf);
+        recordCacheSepModel.addSubscriptionSilent(recordCacheSubscription);
+
+        // Only events of changes happening from now on are relevant, since the cache starts empty
+        recordCacheSepConsumer = new SepConsumer(recordCacheSubscription, System.currentTimeMillis(),
+                new RecordCacheInvalidator(this, recordCache), recordCacheConf.getInvalidationThreads(), hostName,
+                new ZooKeeperItfAdapter(zk), hbaseConf, new LilyPayloadExtractor());
+        recordCacheSepConsumer.start();
+    }
+
+    private void stopRecordCacheInvalidation() {
+        Closer.close(recordCacheSepConsumer);
+        recordCacheSepConsumer = null;
+
+        if (recordCacheSepModel != null) {
+            try {
+                recordCacheSepModel.removeSubscriptionSilent(recordCacheSubscription);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error removing record cache SEP subscription " + recordCacheSubscription, e);
+            }
+            recordCacheSepModel = null;
+        }
     }
 
     @Override
@@ -180,6 +266,9 @@ public class LilyClient implements Closeable, RepositoryManager {
 
         zk.removeDefaultWatcher(watcher);
 
+        // Before closing ZooKeeper, since the subscription is removed from there
+        stopRecordCacheInvalidation();
+
         schemaCache.close();
 
         synchronized (this) {
@@ -300,6 +389,14 @@ public class LilyClient implements Closeable, RepositoryManager {
         return retryConf;
     }
 
+    /**
+     * Returns the client-side record cache, which gives access to its statistics, or null if it is not
+     * enabled, see {@link RecordCacheConf}.
+     */
+    public RecordCache getRecordCache() {
+        return recordCache;
+    }
+
     private RepositoryManager constructRepositoryManager(ServerNode server) throws IOException, InterruptedException {
 
         IdGeneratorImpl idGenerator = new IdGeneratorImpl();
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.client;
+
+/**
+ * This is a configuration object for the client-side record cache of {@link LilyClient}.
+ *
+ * <p>When enabled, records read via the load-balancing tables of {@link LilyClient} are kept in a size-bounded
+ * cache. The cache is kept up to date by listening to the SEP (Side-Effect Processor) events of the record
+ * tables, for this the client registers its own SEP subscription, which is removed again when the client
+ * is closed. The name of this subscription needs to be {@link #setSubscriptionName configured}. A client that
+ * is not closed properly leaves its subscription behind, it is taken over again the next time a client with the
+ * same subscription name starts. Since the events are delivered asynchronously, reads can briefly return stale
+ * data after an update done by another client.</p>
+ *
+ * <p>Reads done while an authorization context is active bypass the cache.</p>
+ */
+public class RecordCacheConf {
+    private boolean enabled = false;
+    private long maximumSize = 10000;
+    private String subscriptionName;
+    private String hostName;
+    private int invalidationThreads = 1;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * The maximum number of records to keep in the cache. Reads of different versions or field subsets of
+     * the same record count as one record.
+     */
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public String getSubscriptionName() {
+        return subscriptionName;
+    }
+
+    /**
+     * The name of the SEP subscription used to receive the invalidation events, required when the cache is
+     * enabled. The events of a subscription are divided over its consumers, and the subscription is removed
+     * when the client is closed, so each LilyClient instance needs a name of its own that no other running
+     * client uses. Use a name that stays the same when the application is restarted, e.g. based on the name
+     * of the host and of the application instance, so that a subscription left behind by a crash is taken
+     * over rather than leaked. Since the subscription becomes an HBase replication peer, use only letters,
+     * digits and underscores.
+     */
+    public void setSubscriptionName(String subscriptionName) {
+        this.subscriptionName = subscriptionName;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    /**
+     * The host name on which the HBase region servers can reach this client to deliver the SEP events. If not
+     * set, the name of the local host is used.
+     */
+    public void setHostName(String hostName) {
+        this.hostName = hostName;
+    }
+
+    /**
+     * Checks that the configuration can be used.
+     *
+     * @throws IllegalArgumentException if the cache is enabled without a subscription name
+     */
+    public void validate() {
+        if (enabled && subscriptionName == null) {
+            throw new IllegalArgumentException("The record cache is enabled, but no subscription name is set.");
+        }
+    }
+
+    public int getInvalidationThreads() {
+        return invalidationThreads;
+    }
+
+    public void setInvalidationThreads(int invalidationThreads) {
+        this.invalidationThreads = invalidationThreads;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.client.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.lilyproject.repository.api.MutationCondition;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
+import org.lilyproject.repository.api.Repository;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.spi.AuthorizationContextHolder;
+import org.lilyproject.repository.spi.BaseRepositoryDecorator;
+
+/**
+ * A repository decorator which serves the single-record reads from a {@link RecordCache}.
+ *
+ * <p>Mutations done through this decorator invalidate the affected records right away, so that a client
+ * reads its own writes. Changes done by others are picked up via {@link RecordCacheInvalidator}.</p>
+ */
+public class CachingRepository extends BaseRepositoryDecorator {
+    private final RecordCache cache;
+    private final String repositoryName;
+    private final String tableName;
+
+    public CachingRepository(Repository delegate, RecordCache cache, String repositoryName, String tableName) {
+        super(delegate);
+        this.cache = cache;
+        this.repositoryName = repositoryName;
+        this.tableName = tableName;
+    }
+
+    @Override
+    public Record read(RecordId recordId, List<QName> fieldNames) throws RepositoryException, InterruptedException {
+        return cachedRead(recordId, null, fieldNames);
+    }
+
+    @Override
+    public Record read(RecordId recordId, QName... fieldNames) throws RepositoryException, InterruptedException {
+        return cachedRead(recordId, null, fieldNames == null ? null : Arrays.asList(fieldNames));
+    }
+
+    @Override
+    public Record read(RecordId recordId, Long version, List<QName> fieldNames)
+            throws RepositoryException, InterruptedException {
+        return cachedRead(recordId, version, fieldNames);
+    }
+
+    @Override
+    public Record read(RecordId recordId, Long version, QName... fieldNames)
+            throws RepositoryException, InterruptedException {
+        return cachedRead(recordId, version, fieldNames == null ? null : Arrays.asList(fieldNames));
+    }
+
+    private Record cachedRead(RecordId recordId, Long version, List<QName> fieldNames)
+            throws RepositoryException, InterruptedException {
+        // The outcome of a read depends on the permissions of the user, we don't want to mix those up
+        if (recordId == null || AuthorizationContextHolder.getCurrentContext() != null) {
+            return delegate.read(recordId, version, fieldNames);
+        }
+
+        Record record = cache.get(repositoryName, tableName, recordId, version, fieldNames);
+        if (record != null) {
+            return record;
+        }
+
+        long invalidationCount = cache.getInvalidationCount();
+        record = delegate.read(recordId, version, fieldNames);
+        cache.put(repositoryName, tableName, recordId, version, fieldNames, record, invalidationCount);
+        return record;
+    }
+
+    @Override
+    public Record create(Record record) throws RepositoryException, InterruptedException {
+        try {
+            return delegate.create(record);
+        } finally {
+            invalidate(record.getId());
+        }
+    }
+
+    @Override
+    public List<RecordMutationResult> create(List<Record> records) throws RepositoryException, InterruptedException {
+        try {
+            return delegate.create(records);
+        } finally {
+            invalidateRecords(records);
+        }
+    }
+
+    @Override
+    public Record update(Record record, boolean updateVersion, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException {
+        try {
+            return delegate.update(record, updateVersion, useLatestRecordType);
+        } finally {
+            invalidate(record.getId());
+        }
+    }
+
+    @Override
+    public Record update(Record record, boolean updateVersion, boolean useLatestRecordType,
+            List<MutationCondition> conditions) throws RepositoryException, InterruptedException {
+        try {
+            return delegate.update(record, updateVersion, useLatestRecordType, conditions);
+        } finally {
+            invalidate(record.getId());
+        }
+    }
+
+    @Override
+    public Record update(Record record) throws RepositoryException, InterruptedException {
+        try {
+            return delegate.update(record);
+        } finally {
+            invalidate(record.getId());
+        }
+    }
+
+    @Override
+    public Record update(Record record, List<MutationCondition> conditions)
+            throws RepositoryException, InterruptedException {
+        try {
+            return delegate.update(record, conditions);
+        } finally {
+            invalidate(record.getId());
+        }
+    }
+
+    @Override
+    public List<RecordMutationResult> update(List<Record> records, boolean updateVersion,
+            boolean useLatestRecordType) throws RepositoryException, InterruptedException {
+        try {
+            return delegate.update(records, updateVersion, useLatestRecordType);
+        } finally {
+            invalidateRecords(records);
+        }
+    }
+
+    @Override
+    public Record createOrUpdate(Record record) throws RepositoryException, InterruptedException {
+        try {
+            return delegate.createOrUpdate(record);
+        } finally {
+            invalidate(record.getId());
+        }
+    }
+
+    @Override
+    public Record createOrUpdate(Record record, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException {
+        try {
+            return delegate.createOrUpdate(record, useLatestRecordType);
+        } finally {
+            invalidate(record.getId());
+        }
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records)
+            throws RepositoryException, InterruptedException {
+        try {
+            return delegate.createOrUpdate(records);
+        } finally {
+            invalidateRecords(records);
+        }
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException {
+        try {
+            return delegate.createOrUpdate(records, useLatestRecordType);
+        } finally {
+            invalidateRecords(records);
+        }
+    }
+
+    @Override
+    public void delete(RecordId recordId) throws RepositoryException, InterruptedException {
+        try {
+            delegate.delete(recordId);
+        } finally {
+            invalidate(recordId);
+        }
+    }
+
+    @Override
+    public Record delete(RecordId recordId, List<MutationCondition> conditions)
+            throws RepositoryException, InterruptedException {
+        try {
+            return delegate.delete(recordId, conditions);
+        } finally {
+            invalidate(recordId);
+        }
+    }
+
+    @Override
+    public void delete(Record record) throws RepositoryException, InterruptedException {
+        try {
+            delegate.delete(record);
+        } finally {
+            invalidate(record.getId());
+        }
+    }
+
+    @Override
+    public List<RecordMutationResult> delete(List<RecordId> recordIds)
+            throws RepositoryException, InterruptedException {
+        try {
+            return delegate.delete(recordIds);
+        } finally {
+            for (RecordId recordId : recordIds) {
+                invalidate(recordId);
+            }
+        }
+    }
+
+    private void invalidate(RecordId recordId) {
+        if (recordId != null) {
+            cache.invalidate(repositoryName, tableName, recordId);
+        }
+    }
+
+    private void invalidateRecords(List<Record> records) {
+        for (Record record : records) {
+            invalidate(record.getId());
+        }
+    }
+}
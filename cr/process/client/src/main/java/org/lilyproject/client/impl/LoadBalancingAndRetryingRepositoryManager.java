@@ -15,10 +15,15 @@
  */
 package org.lilyproject.client.impl;
 
+import java.util.List;
+
 import org.lilyproject.client.RetryConf;
 import org.lilyproject.repository.api.IdGenerator;
 import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.RecordFactory;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.Repository;
 import org.lilyproject.repository.api.RepositoryException;
 import org.lilyproject.repository.api.TypeManager;
@@ -39,14 +44,25 @@ public class LoadBalancingAndRetryingRepositoryManager extends AbstractRepositor
     private final RetryConf retryConf;
     private final LoadBalancingUtil.LBInstanceProvider<Repository> repositoryProvider;
     private final LoadBalancingUtil.LBInstanceProvider<TypeManager> typeManagerProvider;
+    private final RecordCache recordCache;
 
     public LoadBalancingAndRetryingRepositoryManager(LoadBalancingUtil.LBInstanceProvider<Repository> repositoryProvider,
             LoadBalancingUtil.LBInstanceProvider<TypeManager> typeManagerProvider, RetryConf retryConf, IdGenerator idGenerator,
             RecordFactory recordFactory, RepositoryModel repositoryModel) {
+        this(repositoryProvider, typeManagerProvider, retryConf, idGenerator, recordFactory, repositoryModel, null);
+    }
+
+    /**
+     * @param recordCache optional (can be null), cache to serve record reads from
+     */
+    public LoadBalancingAndRetryingRepositoryManager(LoadBalancingUtil.LBInstanceProvider<Repository> repositoryProvider,
+            LoadBalancingUtil.LBInstanceProvider<TypeManager> typeManagerProvider, RetryConf retryConf, IdGenerator idGenerator,
+            RecordFactory recordFactory, RepositoryModel repositoryModel, RecordCache recordCache) {
         super(createTypeManager(typeManagerProvider, retryConf), idGenerator, recordFactory, repositoryModel);
         this.repositoryProvider = repositoryProvider;
         this.typeManagerProvider = typeManagerProvider;
         this.retryConf = retryConf;
+        this.recordCache = recordCache;
     }
 
     private static TypeManager createTypeManager(LoadBalancingUtil.LBInstanceProvider<TypeManager> typeManagerProvider, RetryConf retryConf) {
@@ -57,9 +73,13 @@ public class LoadBalancingAndRetryingRepositoryManager extends AbstractRepositor
     @Override
     protected Repository createRepository(RepoTableKey key) throws InterruptedException, RepositoryException {
         // Note that the parent caches these instances
-        return new LBAwareRepository(RetryUtil.getRetryingInstance(
+        Repository repository = new LBAwareRepository(RetryUtil.getRetryingInstance(
                 LoadBalancingUtil.getLoadBalancedInstance(repositoryProvider, Repository.class, key.getRepositoryName(),
                         key.getTableName()), Repository.class, retryConf), this, key.getRepositoryName());
+        if (recordCache != null) {
+            repository = new CachingRepository(repository, recordCache, key.getRepositoryName(), key.getTableName());
+        }
+        return repository;
     }
 
     /**
@@ -100,5 +120,37 @@ public class LoadBalancingAndRetryingRepositoryManager extends AbstractRepositor
             }
             return typeManager;
         }
+
+        // Pass batches on as a whole, so that they are sent to the server in one call
+
+        @Override
+        public List<RecordMutationResult> create(List<Record> records)
+                throws RepositoryException, InterruptedException {
+            return delegate.create(records);
+        }
+
+        @Override
+        public List<RecordMutationResult> createOrUpdate(List<Record> records)
+                throws RepositoryException, InterruptedException {
+            return delegate.createOrUpdate(records);
+        }
+
+        @Override
+        public List<RecordMutationResult> createOrUpdate(List<Record> records, boolean useLatestRecordType)
+                throws RepositoryException, InterruptedException {
+            return delegate.createOrUpdate(records, useLatestRecordType);
+        }
+
+        @Override
+        public List<RecordMutationResult> update(List<Record> records, boolean updateVersion,
+                boolean useLatestRecordType) throws RepositoryException, InterruptedException {
+            return delegate.update(records, updateVersion, useLatestRecordType);
+        }
+
+        @Override
+        public List<RecordMutationResult> delete(List<RecordId> recordIds)
+                throws RepositoryException, InterruptedException {
+            return delegate.delete(recordIds);
+        }
     }
 }
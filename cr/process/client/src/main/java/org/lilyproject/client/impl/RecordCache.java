@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.client.impl;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.util.ObjectUtils;
+
+/**
+ * A size-bounded cache of records, used by {@link CachingRepository}.
+ *
+ * <p>The cached reads are grouped per record, so that all of them can be dropped at once when the record
+ * changes. This includes the reads of older versions: these also contain the non-versioned fields and the
+ * record type, which an update of the record can change.</p>
+ *
+ * <p>Records are cloned when they go in and out of the cache, since Record objects are mutable.</p>
+ */
+public class RecordCache {
+    private final Cache<RecordKey, ConcurrentMap<ReadKey, Record>> cache;
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public RecordCache(long maximumSize) {
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * Returns the cached record, or null if not present.
+     *
+     * @param version null for the latest version
+     * @param fieldNames null or empty for all fields
+     */
+    public Record get(String repositoryName, String tableName, RecordId recordId, Long version,
+            Collection<QName> fieldNames) {
+        ConcurrentMap<ReadKey, Record> reads = cache.getIfPresent(new RecordKey(repositoryName, tableName, recordId));
+        Record record = reads != null ? reads.get(new ReadKey(version, fieldNames)) : null;
+        if (record == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return record.clone();
+    }
+
+    /**
+     * Returns a token to be passed to {@link #put}, this should be called before reading the record from
+     * the repository.
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * Adds a record to the cache, unless an invalidation happened since the supplied invalidationCount was
+     * retrieved, as the record might then already be outdated.
+     */
+    public void put(String repositoryName, String tableName, RecordId recordId, Long version,
+            Collection<QName> fieldNames, Record record, long invalidationCount) {
+        if (this.invalidationCount.get() != invalidationCount) {
+            return;
+        }
+
+        RecordKey recordKey = new RecordKey(repositoryName, tableName, recordId);
+        ConcurrentMap<ReadKey, Record> reads;
+        try {
+            reads = cache.get(recordKey, NEW_READS_MAP);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+
+        ReadKey readKey = new ReadKey(version, fieldNames);
+        Record clone = record.clone();
+        reads.put(readKey, clone);
+
+        // An invalidation might have run concurrently with the put above, in which case it might not have
+        // seen our entry.
+        if (this.invalidationCount.get() != invalidationCount) {
+            reads.remove(readKey, clone);
+        }
+    }
+
+    /**
+     * Drops all cached reads of a record.
+     */
+    public void invalidate(String repositoryName, String tableName, RecordId recordId) {
+        invalidationCount.incrementAndGet();
+        cache.invalidate(new RecordKey(repositoryName, tableName, recordId));
+    }
+
+    public void invalidateAll() {
+        invalidationCount.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * The number of records that were removed from the cache because of its size limit.
+     */
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    /**
+     * The number of records currently in the cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    private static final Callable<ConcurrentMap<ReadKey, Record>> NEW_READS_MAP =
+            new Callable<ConcurrentMap<ReadKey, Record>>() {
+                @Override
+                public ConcurrentMap<ReadKey, Record> call() {
+                    return new ConcurrentHashMap<ReadKey, Record>(4);
+                }
+            };
+
+    private static final class RecordKey {
+        private final String repositoryName;
+        private final String tableName;
+        private final RecordId recordId;
+
+        RecordKey(String repositoryName, String tableName, RecordId recordId) {
+            this.repositoryName = repositoryName;
+            this.tableName = tableName;
+            this.recordId = recordId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey other = (RecordKey) obj;
+            return recordId.equals(other.recordId) && tableName.equals(other.tableName)
+                    && repositoryName.equals(other.repositoryName);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = repositoryName.hashCode();
+            result = 31 * result + tableName.hashCode();
+            result = 31 * result + recordId.hashCode();
+            return result;
+        }
+    }
+
+    private static final class ReadKey {
+        private final Long version;
+        private final Set<QName> fieldNames;
+
+        ReadKey(Long version, Collection<QName> fieldNames) {
+            this.version = version;
+            // the order in which the fields are requested does not matter
+            this.fieldNames = fieldNames == null || fieldNames.isEmpty() ? null : new HashSet<QName>(fieldNames);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ReadKey)) {
+                return false;
+            }
+            ReadKey other = (ReadKey) obj;
+            return ObjectUtils.safeEquals(version, other.version)
+                    && ObjectUtils.safeEquals(fieldNames, other.fieldNames);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = version != null ? version.hashCode() : 0;
+            result = 31 * result + (fieldNames != null ? fieldNames.hashCode() : 0);
+            return result;
+        }
+    }
+}
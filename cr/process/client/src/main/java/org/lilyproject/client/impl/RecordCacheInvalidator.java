@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.client.impl;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lilyproject.repository.api.RepositoryManager;
+import org.lilyproject.sep.LilyEventListener;
+import org.lilyproject.sep.LilySepEvent;
+import org.lilyproject.util.repo.RecordEvent;
+
+/**
+ * Keeps a {@link RecordCache} up to date by dropping the records for which an update or delete
+ * event is received.
+ */
+public class RecordCacheInvalidator extends LilyEventListener {
+    private final RecordCache cache;
+    private Log log = LogFactory.getLog(getClass());
+
+    public RecordCacheInvalidator(RepositoryManager repositoryManager, RecordCache cache) {
+        super(repositoryManager);
+        this.cache = cache;
+    }
+
+    @Override
+    public void processLilyEvents(List<LilySepEvent> events) {
+        for (LilySepEvent event : events) {
+            RecordEvent recordEvent;
+            try {
+                recordEvent = event.getRecordEvent();
+            } catch (IOException e) {
+                log.error("Error parsing record event, dropping record from the cache: " + event.getRecordId(), e);
+                cache.invalidate(event.getLilyRepositoryName(), event.getLilyTableName(), event.getRecordId());
+                continue;
+            }
+
+            switch (recordEvent.getType()) {
+                case UPDATE:
+                case DELETE:
+                    cache.invalidate(event.getLilyRepositoryName(), event.getLilyTableName(), event.getRecordId());
+                    break;
+                default:
+                    // creates can't affect cached reads, since reads of non-existing records are not cached
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.client.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RecordCacheTest {
+    private static final String REPO = "default";
+    private static final String TABLE = "record";
+
+    private RecordCache cache;
+    private RecordId recordId;
+    private Record record;
+
+    @Before
+    public void setUp() {
+        cache = new RecordCache(100);
+        recordId = mock(RecordId.class);
+        record = mock(Record.class);
+        when(record.clone()).thenReturn(record);
+    }
+
+    @Test
+    public void testGetAndPut() {
+        assertNull(cache.get(REPO, TABLE, recordId, null, null));
+
+        cache.put(REPO, TABLE, recordId, null, null, record, cache.getInvalidationCount());
+
+        assertNotNull(cache.get(REPO, TABLE, recordId, null, null));
+        assertNull(cache.get(REPO, TABLE, recordId, 1L, null));
+        assertNull(cache.get(REPO, "othertable", recordId, null, null));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testFieldOrderDoesNotMatter() {
+        QName field1 = new QName("ns", "f1");
+        QName field2 = new QName("ns", "f2");
+        List<QName> fields = Lists.newArrayList(field1, field2);
+
+        cache.put(REPO, TABLE, recordId, null, fields, record, cache.getInvalidationCount());
+
+        assertNotNull(cache.get(REPO, TABLE, recordId, null, Lists.newArrayList(field2, field1)));
+        assertNull(cache.get(REPO, TABLE, recordId, null, Collections.singletonList(field1)));
+        assertNull(cache.get(REPO, TABLE, recordId, null, null));
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put(REPO, TABLE, recordId, null, null, record, cache.getInvalidationCount());
+        cache.put(REPO, TABLE, recordId, 1L, null, record, cache.getInvalidationCount());
+
+        cache.invalidate(REPO, TABLE, recordId);
+
+        assertNull(cache.get(REPO, TABLE, recordId, null, null));
+        assertNull(cache.get(REPO, TABLE, recordId, 1L, null));
+    }
+
+    @Test
+    public void testPutAfterInvalidationIsIgnored() {
+        long invalidationCount = cache.getInvalidationCount();
+        cache.invalidate(REPO, TABLE, recordId);
+
+        cache.put(REPO, TABLE, recordId, null, null, record, invalidationCount);
+
+        assertNull(cache.get(REPO, TABLE, recordId, null, null));
+    }
+}
@@ -45,6 +45,8 @@ public class LinkIndexSetup {
     private final ZooKeeperItf zk;
     private final String hostName;
     private SepConsumer sepConsumer;
+    private LinkIndex linkIndex;
+    private LinkIndexUpdater linkIndexUpdater;
 
     public LinkIndexSetup(SepModel sepModel, boolean linkIndexEnabled, int threads, RepositoryManager repositoryManager,
             Configuration hbaseConf, HBaseTableFactory tableFactory, ZooKeeperItf zk, String hostName) {
@@ -64,20 +66,20 @@ public class LinkIndexSetup {
 
         if (linkIndexEnabled) {
             // assure the subscription exists
-            sepModel.addSubscriptionSilent("LinkIndexUpdater");
+            sepModel.addSubscriptionSilent(LinkIndexUpdater.SUBSCRIPTION_NAME);
         } else {
             // assure the subscription doesn't exist
-            sepModel.removeSubscriptionSilent("LinkIndexUpdater");
+            sepModel.removeSubscriptionSilent(LinkIndexUpdater.SUBSCRIPTION_NAME);
         }
 
         if (linkIndexEnabled) {
             IndexManager indexManager = new IndexManager(hbaseConf, tableFactory);
 
-            LinkIndex linkIndex = new LinkIndex(indexManager, /* TODO multiple repositories */ repositoryManager);
+            linkIndex = new LinkIndex(indexManager, /* TODO multiple repositories */ repositoryManager);
 
-            LinkIndexUpdater linkIndexUpdater = new LinkIndexUpdater(repositoryManager, linkIndex);
+            linkIndexUpdater = new LinkIndexUpdater(repositoryManager, linkIndex);
 
-            sepConsumer = new SepConsumer("LinkIndexUpdater", 0L, linkIndexUpdater, threads, hostName,
+            sepConsumer = new SepConsumer(LinkIndexUpdater.SUBSCRIPTION_NAME, 0L, linkIndexUpdater, threads, hostName,
                     new ZooKeeperItfAdapter(zk), hbaseConf, new LilyPayloadExtractor());
             sepConsumer.start();
         }
@@ -86,5 +88,7 @@ public class LinkIndexSetup {
     @PreDestroy
     public void stop() {
         Closer.close(sepConsumer);
+        Closer.close(linkIndexUpdater);
+        Closer.close(linkIndex);
     }
 }
@@ -15,9 +15,14 @@
  */
 package org.lilyproject.server.modules.repository;
 
+import java.util.List;
+
 import org.lilyproject.util.hbase.RepoAndTableUtil;
 
 import org.lilyproject.repository.api.LTable;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.Repository;
 import org.lilyproject.repository.api.RepositoryException;
 import org.lilyproject.repository.spi.BaseRepositoryDecorator;
@@ -47,4 +52,35 @@ public class DecoratingRepository extends BaseRepositoryDecorator {
     public LTable getDefaultTable() throws InterruptedException, RepositoryException {
         return decoratingRepositoryManager.getRepository(getRepositoryName(), LilyHBaseSchema.Table.RECORD.name);
     }
+
+    // Pass batches on as a whole, the decorators in the chain each decide how to handle them
+
+    @Override
+    public List<RecordMutationResult> create(List<Record> records) throws RepositoryException, InterruptedException {
+        return delegate.create(records);
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records)
+            throws RepositoryException, InterruptedException {
+        return delegate.createOrUpdate(records);
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException {
+        return delegate.createOrUpdate(records, useLatestRecordType);
+    }
+
+    @Override
+    public List<RecordMutationResult> update(List<Record> records, boolean updateVersion,
+            boolean useLatestRecordType) throws RepositoryException, InterruptedException {
+        return delegate.update(records, updateVersion, useLatestRecordType);
+    }
+
+    @Override
+    public List<RecordMutationResult> delete(List<RecordId> recordIds)
+            throws RepositoryException, InterruptedException {
+        return delegate.delete(recordIds);
+    }
 }
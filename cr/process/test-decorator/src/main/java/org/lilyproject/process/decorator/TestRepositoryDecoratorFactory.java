@@ -63,6 +63,13 @@ public class TestRepositoryDecoratorFactory implements RepositoryDecoratorFactor
             return record;
         }
 
+        @Override
+        public Record createOrUpdate(Record record) throws RepositoryException, InterruptedException {
+            record.setField(new QName("ns", "f2"), "bar");
+            record = super.createOrUpdate(record);
+            return record;
+        }
+
         @Override
         public void close() throws IOException {
             CLOSE_COUNT.incrementAndGet();
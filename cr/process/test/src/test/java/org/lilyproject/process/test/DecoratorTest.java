@@ -16,7 +16,9 @@
 package org.lilyproject.process.test;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
@@ -28,6 +30,7 @@ import org.lilyproject.repository.api.LRepository;
 import org.lilyproject.repository.api.LTable;
 import org.lilyproject.repository.api.QName;
 import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.RecordType;
 import org.lilyproject.repository.api.Scope;
 import org.lilyproject.repository.api.TypeManager;
@@ -99,6 +102,22 @@ public class DecoratorTest {
                 assertEquals("foo", record.getField(field2));
                 assertEquals("foo", table.read(record.getId()).getField(field2));
 
+                // The decorator should also be applied to each record of a batch
+                Record batchRecord = table.newRecord();
+                batchRecord.setRecordType(typeName);
+                batchRecord.setField(field1, "foobar");
+                List<RecordMutationResult> results = table.create(Collections.singletonList(batchRecord));
+                assertTrue(results.get(0).isSuccess());
+                assertEquals("foo", results.get(0).getRecord().getField(field2));
+                assertEquals("foo", table.read(results.get(0).getRecord().getId()).getField(field2));
+
+                Record batchUpdate = table.newRecord(results.get(0).getRecord().getId());
+                batchUpdate.setRecordType(typeName);
+                batchUpdate.setField(field1, "foobar2");
+                results = table.createOrUpdate(Collections.singletonList(batchUpdate));
+                assertTrue(results.get(0).isSuccess());
+                assertEquals("bar", table.read(batchUpdate.getId()).getField(field2));
+
                 // Test we can get access to our test decorator: this is something that is occasionally useful
                 // in test cases to check certain conditions, e.g. if the decorator would have async side effects.
                 RepositoryDecoratorChain chain = repositoryMgr.getRepositoryDecoratorChain(repositoryName, tableName);
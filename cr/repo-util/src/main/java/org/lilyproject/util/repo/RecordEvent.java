@@ -34,6 +34,10 @@ import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.util.ByteArrayBuilder;
+import org.lilyproject.bytes.api.DataInput;
+import org.lilyproject.bytes.api.DataOutput;
+import org.lilyproject.bytes.impl.DataInputImpl;
+import org.lilyproject.bytes.impl.DataOutputImpl;
 import org.lilyproject.repository.api.IdGenerator;
 import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.SchemaId;
@@ -43,7 +47,12 @@ import org.lilyproject.util.json.JsonFormat;
 /**
  * Represents the payload of an event about a create-update-delete operation on the repository.
  *
- * <p>The actual payload is json, this class helps in parsing or constructing that json.
+ * <p>The payload is written either as json or in a compact binary format (see {@link #toBytes()}), this
+ * class helps in parsing or constructing both. Readers detect the format of a payload themselves, the format
+ * written is chosen by the {@link #BINARY_FORMAT_PROPERTY} configuration property: json is the default, since
+ * processes which predate the binary format can only read json. The binary format should only be enabled once
+ * all processes reading events (region servers with the SEP filters, Lily servers, indexers and clients with
+ * a record cache) have been upgraded.</p>
  */
 public class RecordEvent {
     private long versionCreated = -1;
@@ -58,6 +67,29 @@ public class RecordEvent {
     /** A copy of the attributes supplied via {@link Record#setAttributes(Map)}. */
     private Map<String, String> attributes;
 
+    /**
+     * Configuration property which enables writing events in the binary format, false by default.
+     */
+    public static final String BINARY_FORMAT_PROPERTY = "lily.recordevent.binary";
+
+    /**
+     * First byte of the binary encoding produced by {@link #toBytes()}. Json encoded events start with '{'.
+     */
+    static final byte BINARY_V1 = 1;
+
+    // Flags in the header of the binary encoding
+    static final int RECORD_TYPE_CHANGED = 0x01;
+    static final int HAS_ATTRIBUTES = 0x02;
+    static final int HAS_INDEX_RECORD_FILTER_DATA = 0x04;
+    static final int HAS_SUBSCRIPTIONS = 0x08;
+    static final int INCLUDE_SUBSCRIPTIONS = 0x10;
+    static final int OLD_RECORD_EXISTS = 0x20;
+    static final int NEW_RECORD_EXISTS = 0x40;
+
+    /**
+     * The type of an event. The order of the constants is part of the binary encoding, only add new ones
+     * at the end.
+     */
     public enum Type {
         CREATE("repo:record-created"),
         UPDATE("repo:record-updated"),
@@ -79,9 +111,21 @@ public class RecordEvent {
     }
 
     /**
-     * Creates a record event from the json data supplied as bytes.
+     * Creates a record event from its binary or json encoding.
      */
     public RecordEvent(byte[] data, IdGenerator idGenerator) throws IOException {
+        if (isBinary(data, 0, data.length)) {
+            readBinary(data, idGenerator);
+        } else {
+            readJson(data, idGenerator);
+        }
+    }
+
+    static boolean isBinary(byte[] data, int offset, int length) {
+        return length > 0 && data[offset] == BINARY_V1;
+    }
+
+    private void readJson(byte[] data, IdGenerator idGenerator) throws IOException {
         // Using streaming JSON parsing for performance. We expect the JSON to be correct, validation
         // is absent/minimal.
 
@@ -148,6 +192,53 @@ public class RecordEvent {
         }
     }
 
+    private void readBinary(byte[] data, IdGenerator idGenerator) {
+        DataInput input = new DataInputImpl(data);
+        RecordEventHeader header = new RecordEventHeader(input);
+        int flags = header.getFlags();
+
+        type = header.getType();
+        recordTypeChanged = (flags & RECORD_TYPE_CHANGED) != 0;
+        if ((flags & HAS_ATTRIBUTES) != 0) {
+            attributes = header.getAttributes();
+        }
+
+        tableName = input.readVUTF();
+        // versions are -1 when not set
+        versionCreated = input.readVLong() - 1;
+        versionUpdated = input.readVLong() - 1;
+
+        int updatedFieldCount = input.readVInt();
+        for (int i = 0; i < updatedFieldCount; i++) {
+            addUpdatedField(readSchemaId(input, idGenerator));
+        }
+        int vtagCount = input.readVInt();
+        for (int i = 0; i < vtagCount; i++) {
+            addVTagToIndex(readSchemaId(input, idGenerator));
+        }
+
+        if ((flags & HAS_INDEX_RECORD_FILTER_DATA) != 0) {
+            IndexRecordFilterData filterData = new IndexRecordFilterData();
+            filterData.oldRecordExists = (flags & OLD_RECORD_EXISTS) != 0;
+            filterData.newRecordExists = (flags & NEW_RECORD_EXISTS) != 0;
+            filterData.includeSubscriptions = (flags & INCLUDE_SUBSCRIPTIONS) != 0;
+            filterData.indexSubscriptionIds = header.getSubscriptionIds();
+            filterData.newRecordType = readSchemaId(input, idGenerator);
+            filterData.oldRecordType = readSchemaId(input, idGenerator);
+            int fieldChangeCount = input.readVInt() - 1;
+            if (fieldChangeCount >= 0) {
+                filterData.fieldChanges = new ArrayList<FieldChange>(fieldChangeCount);
+                for (int i = 0; i < fieldChangeCount; i++) {
+                    SchemaId id = readSchemaId(input, idGenerator);
+                    byte[] oldValue = readNullableBytes(input);
+                    byte[] newValue = readNullableBytes(input);
+                    filterData.fieldChanges.add(new FieldChange(id, oldValue, newValue));
+                }
+            }
+            indexRecordFilterData = filterData;
+        }
+    }
+
     public long getVersionCreated() {
         return versionCreated;
     }
@@ -335,6 +426,141 @@ public class RecordEvent {
         }
     }
 
+    /**
+     * Encodes this event in the binary format if {@code binary} is true, as json otherwise.
+     *
+     * @see #BINARY_FORMAT_PROPERTY
+     */
+    public byte[] toBytes(boolean binary) {
+        return binary ? toBytes() : toJsonBytes();
+    }
+
+    /**
+     * Encodes this event in a compact binary format, which can be decoded using
+     * {@link #RecordEvent(byte[], IdGenerator)}.
+     *
+     * <p>The encoding starts with a header containing what is needed to decide to which subscriptions an event
+     * should be passed on, which can be read without decoding the remainder of the event, see
+     * {@link RecordEventHeader}:</p>
+     *
+     * <ul>
+     *     <li>the format version: byte ({@link #BINARY_V1})</li>
+     *     <li>the type: byte (ordinal of the {@link Type}, -1 if there is none)</li>
+     *     <li>flags: byte</li>
+     *     <li>if there are subscriptions: their count (vint) followed by the subscription ids (vutf)</li>
+     *     <li>if there are attributes: their count (vint) followed by the keys and values (vutf)</li>
+     * </ul>
+     *
+     * <p>This is followed by the table name, the created and updated versions (vlong), the updated fields and
+     * vtags to index, and the remainder of the {@link IndexRecordFilterData}. Schema ids are written as their
+     * raw bytes, prefixed with their length.</p>
+     */
+    public byte[] toBytes() {
+        DataOutputImpl output = new DataOutputImpl(128);
+        IndexRecordFilterData filterData = indexRecordFilterData;
+        boolean hasAttributes = attributes != null && attributes.size() > 0;
+
+        int flags = 0;
+        if (recordTypeChanged) {
+            flags |= RECORD_TYPE_CHANGED;
+        }
+        if (hasAttributes) {
+            flags |= HAS_ATTRIBUTES;
+        }
+        if (filterData != null) {
+            flags |= HAS_INDEX_RECORD_FILTER_DATA;
+            if (filterData.indexSubscriptionIds != null) {
+                flags |= HAS_SUBSCRIPTIONS;
+            }
+            if (filterData.includeSubscriptions) {
+                flags |= INCLUDE_SUBSCRIPTIONS;
+            }
+            if (filterData.oldRecordExists) {
+                flags |= OLD_RECORD_EXISTS;
+            }
+            if (filterData.newRecordExists) {
+                flags |= NEW_RECORD_EXISTS;
+            }
+        }
+
+        output.writeByte(BINARY_V1);
+        output.writeByte(type != null ? (byte)type.ordinal() : -1);
+        output.writeByte((byte)flags);
+        if ((flags & HAS_SUBSCRIPTIONS) != 0) {
+            output.writeVInt(filterData.indexSubscriptionIds.size());
+            for (String subscriptionId : filterData.indexSubscriptionIds) {
+                output.writeVUTF(subscriptionId);
+            }
+        }
+        if (hasAttributes) {
+            output.writeVInt(attributes.size());
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                output.writeVUTF(attribute.getKey());
+                output.writeVUTF(attribute.getValue());
+            }
+        }
+
+        output.writeVUTF(tableName);
+        output.writeVLong(versionCreated + 1);
+        output.writeVLong(versionUpdated + 1);
+        writeSchemaIds(updatedFields, output);
+        writeSchemaIds(vtagsToIndex, output);
+
+        if (filterData != null) {
+            writeSchemaId(filterData.newRecordType, output);
+            writeSchemaId(filterData.oldRecordType, output);
+            if (filterData.fieldChanges == null) {
+                output.writeVInt(0);
+            } else {
+                output.writeVInt(filterData.fieldChanges.size() + 1);
+                for (FieldChange fieldChange : filterData.fieldChanges) {
+                    writeSchemaId(fieldChange.id, output);
+                    writeNullableBytes(fieldChange.oldValue, output);
+                    writeNullableBytes(fieldChange.newValue, output);
+                }
+            }
+        }
+
+        return output.toByteArray();
+    }
+
+    private static void writeSchemaIds(Set<SchemaId> ids, DataOutput output) {
+        if (ids == null) {
+            output.writeVInt(0);
+        } else {
+            output.writeVInt(ids.size());
+            for (SchemaId id : ids) {
+                writeSchemaId(id, output);
+            }
+        }
+    }
+
+    private static void writeSchemaId(SchemaId id, DataOutput output) {
+        writeNullableBytes(id != null ? id.getBytes() : null, output);
+    }
+
+    private static SchemaId readSchemaId(DataInput input, IdGenerator idGenerator) {
+        byte[] bytes = readNullableBytes(input);
+        return bytes != null ? idGenerator.getSchemaId(bytes) : null;
+    }
+
+    /**
+     * Writes the length + 1 (0 for null) followed by the bytes.
+     */
+    private static void writeNullableBytes(byte[] bytes, DataOutput output) {
+        if (bytes == null) {
+            output.writeVInt(0);
+        } else {
+            output.writeVInt(bytes.length + 1);
+            output.writeBytes(bytes);
+        }
+    }
+
+    private static byte[] readNullableBytes(DataInput input) {
+        int length = input.readVInt() - 1;
+        return length >= 0 ? input.readBytes(length) : null;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -519,6 +745,14 @@ public class RecordEvent {
             return fieldChanges;
         }
 
+        boolean getIncludeSubscriptions() {
+            return includeSubscriptions;
+        }
+
+        Set<String> getSubscriptionIds() {
+            return indexSubscriptionIds;
+        }
+
         public void toJson(JsonGenerator gen) throws IOException {
             gen.writeStartObject();
 
@@ -596,6 +830,11 @@ public class RecordEvent {
          * @return true if the RecordEvent is applicable for the index subscription
          */
         public boolean appliesToSubscription(String indexSubscriptionId) {
+            return appliesToSubscription(includeSubscriptions, indexSubscriptionIds, indexSubscriptionId);
+        }
+
+        static boolean appliesToSubscription(boolean includeSubscriptions, Set<String> indexSubscriptionIds,
+                                             String indexSubscriptionId) {
             if (includeSubscriptions) {
                 return indexSubscriptionIds == null
                         || indexSubscriptionIds.contains(indexSubscriptionId);
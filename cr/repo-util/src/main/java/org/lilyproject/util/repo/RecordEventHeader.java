@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.util.repo;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+import org.lilyproject.bytes.api.DataInput;
+import org.lilyproject.bytes.impl.DataInputImpl;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.util.repo.RecordEvent.IndexRecordFilterData;
+
+/**
+ * The part of a {@link RecordEvent} that is needed to decide to which subscriptions the event should be passed on:
+ * its type, its attributes and the index subscriptions it applies to.
+ *
+ * <p>For events in the binary format (see {@link RecordEvent#toBytes()}) only the header at the start of the
+ * payload is decoded, which makes this considerably cheaper than decoding the whole event. Json payloads are
+ * parsed entirely.</p>
+ */
+public class RecordEventHeader {
+    private RecordEvent.Type type;
+    private int flags;
+    private Set<String> subscriptionIds;
+    private Map<String, String> attributes;
+
+    /**
+     * Reads the header of a binary encoded event, leaving the input positioned at the remainder of the event.
+     */
+    RecordEventHeader(DataInput input) {
+        byte version = input.readByte();
+        if (version != RecordEvent.BINARY_V1) {
+            throw new IllegalArgumentException("Unsupported record event encoding: " + version);
+        }
+        byte typeOrdinal = input.readByte();
+        type = typeOrdinal >= 0 ? RecordEvent.Type.values()[typeOrdinal] : null;
+        flags = input.readByte();
+
+        if ((flags & RecordEvent.HAS_SUBSCRIPTIONS) != 0) {
+            int count = input.readVInt();
+            subscriptionIds = Sets.newHashSetWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                subscriptionIds.add(input.readVUTF());
+            }
+        }
+
+        if ((flags & RecordEvent.HAS_ATTRIBUTES) != 0) {
+            int count = input.readVInt();
+            attributes = new HashMap<String, String>();
+            for (int i = 0; i < count; i++) {
+                attributes.put(input.readVUTF(), input.readVUTF());
+            }
+        }
+    }
+
+    private RecordEventHeader(RecordEvent event) {
+        type = event.getType();
+        if (event.getRecordTypeChanged()) {
+            flags |= RecordEvent.RECORD_TYPE_CHANGED;
+        }
+        if (event.hasAttributes()) {
+            flags |= RecordEvent.HAS_ATTRIBUTES;
+            attributes = event.getAttributes();
+        }
+        IndexRecordFilterData filterData = event.getIndexRecordFilterData();
+        if (filterData != null) {
+            flags |= RecordEvent.HAS_INDEX_RECORD_FILTER_DATA;
+            if (filterData.getIncludeSubscriptions()) {
+                flags |= RecordEvent.INCLUDE_SUBSCRIPTIONS;
+            }
+            subscriptionIds = filterData.getSubscriptionIds();
+            if (subscriptionIds != null) {
+                flags |= RecordEvent.HAS_SUBSCRIPTIONS;
+            }
+        }
+    }
+
+    /**
+     * Reads the header of an event from its binary or json encoding.
+     */
+    public static RecordEventHeader fromBytes(byte[] data, int offset, int length, IdGenerator idGenerator)
+            throws IOException {
+        if (RecordEvent.isBinary(data, offset, length)) {
+            return new RecordEventHeader(new DataInputImpl(data, offset, length));
+        } else {
+            byte[] json = offset == 0 && length == data.length ? data
+                    : Arrays.copyOfRange(data, offset, offset + length);
+            return new RecordEventHeader(new RecordEvent(json, idGenerator));
+        }
+    }
+
+    public static RecordEventHeader fromBytes(byte[] data, IdGenerator idGenerator) throws IOException {
+        return fromBytes(data, 0, data.length, idGenerator);
+    }
+
+    public RecordEvent.Type getType() {
+        return type;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+
+    Set<String> getSubscriptionIds() {
+        return subscriptionIds;
+    }
+
+    /**
+     * The attributes of the event, see {@link RecordEvent#getAttributes()}.
+     */
+    public Map<String, String> getAttributes() {
+        return attributes != null ? attributes : Collections.<String, String>emptyMap();
+    }
+
+    public boolean hasIndexRecordFilterData() {
+        return (flags & RecordEvent.HAS_INDEX_RECORD_FILTER_DATA) != 0;
+    }
+
+    /**
+     * Same as {@link IndexRecordFilterData#appliesToSubscription(String)}, returns false if the event has
+     * no {@link IndexRecordFilterData}.
+     */
+    public boolean appliesToSubscription(String indexSubscriptionId) {
+        if (!hasIndexRecordFilterData()) {
+            return false;
+        }
+        return IndexRecordFilterData.appliesToSubscription((flags & RecordEvent.INCLUDE_SUBSCRIPTIONS) != 0,
+                subscriptionIds, indexSubscriptionId);
+    }
+}
@@ -31,6 +31,7 @@ import org.lilyproject.repository.impl.id.SchemaIdImpl;
 import org.lilyproject.util.repo.RecordEvent;
 import org.lilyproject.util.repo.RecordEvent.FieldChange;
 import org.lilyproject.util.repo.RecordEvent.IndexRecordFilterData;
+import org.lilyproject.util.repo.RecordEventHeader;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -122,6 +123,72 @@ public class RecordEventTest {
         assertEquals(tableName, deserialized.getTableName());
     }
 
+    @Test
+    public void testRecordEvent_BinaryRoundTrip() throws IOException {
+        RecordEvent event = new RecordEvent();
+        assertEquals(event, new RecordEvent(event.toBytes(), idGenerator));
+
+        event.setType(RecordEvent.Type.UPDATE);
+        event.setTableName("_table_name_");
+        event.setVersionCreated(3);
+        event.setVersionUpdated(2);
+        event.setRecordTypeChanged(true);
+        event.addUpdatedField(idGenerator.getSchemaId(UUID.randomUUID()));
+        event.addUpdatedField(new SchemaIdImpl("short".getBytes()));
+        event.addVTagToIndex(idGenerator.getSchemaId(UUID.randomUUID()));
+        event.getAttributes().put("key", "value");
+
+        IndexRecordFilterData filterData = new IndexRecordFilterData();
+        filterData.setOldRecordExists(true);
+        filterData.setNewRecordType(idGenerator.getSchemaId(UUID.randomUUID()));
+        filterData.addChangedField(idGenerator.getSchemaId(UUID.randomUUID()), null, Bytes.toBytes("new"));
+        filterData.addChangedField(idGenerator.getSchemaId(UUID.randomUUID()), new byte[0], null);
+        filterData.setSubscriptionExclusions(Sets.newHashSet("indexA", "indexB"));
+        event.setIndexRecordFilterData(filterData);
+
+        RecordEvent deserialized = new RecordEvent(event.toBytes(), idGenerator);
+
+        assertEquals(event, deserialized);
+        assertEquals("_table_name_", deserialized.getTableName());
+        assertEquals(filterData, deserialized.getIndexRecordFilterData());
+    }
+
+    @Test
+    public void testRecordEvent_WriteFormat() throws IOException {
+        RecordEvent event = new RecordEvent();
+        event.setType(RecordEvent.Type.DELETE);
+        event.setTableName("_table_name_");
+
+        assertArrayEquals(event.toJsonBytes(), event.toBytes(false));
+        assertArrayEquals(event.toBytes(), event.toBytes(true));
+        assertEquals(event, new RecordEvent(event.toBytes(false), idGenerator));
+        assertEquals(event, new RecordEvent(event.toBytes(true), idGenerator));
+    }
+
+    @Test
+    public void testRecordEventHeader() throws IOException {
+        RecordEvent event = new RecordEvent();
+        event.setType(RecordEvent.Type.CREATE);
+        event.getAttributes().put("key", "value");
+        IndexRecordFilterData filterData = new IndexRecordFilterData();
+        filterData.setSubscriptionInclusions(ImmutableSet.of("indexA"));
+        event.setIndexRecordFilterData(filterData);
+
+        for (byte[] data : new byte[][] {event.toBytes(), event.toJsonBytes()}) {
+            RecordEventHeader header = RecordEventHeader.fromBytes(data, idGenerator);
+            assertEquals(RecordEvent.Type.CREATE, header.getType());
+            assertEquals("value", header.getAttributes().get("key"));
+            assertTrue(header.hasIndexRecordFilterData());
+            assertTrue(header.appliesToSubscription("indexA"));
+            assertFalse(header.appliesToSubscription("indexB"));
+        }
+
+        RecordEventHeader header = RecordEventHeader.fromBytes(new RecordEvent().toBytes(), idGenerator);
+        assertNull(header.getType());
+        assertTrue(header.getAttributes().isEmpty());
+        assertFalse(header.hasIndexRecordFilterData());
+    }
+
     @Test
     public void testIndexRecordFilterData_JsonRoundtrip() {
         IndexRecordFilterData recordFilterData = new IndexRecordFilterData();
@@ -69,6 +69,18 @@ public interface LTable {
      */
     Record create(Record record) throws RepositoryException, InterruptedException;
 
+    /**
+     * Creates a batch of new records in the repository.
+     *
+     * <p>The outcome for each record is the same as calling {@link #create(Record)} for it individually.
+     * The batch is not atomic: a failure for one record, e.g. a {@link RecordExistsException}, does not
+     * cause an exception to be thrown, it is reported in the corresponding {@link RecordMutationResult}
+     * instead.
+     *
+     * @return a list containing one result for each of the supplied records, in the same order
+     */
+    List<RecordMutationResult> create(List<Record> records) throws RepositoryException, InterruptedException;
+
     /**
      * Shortcut for {@link #update(Record, boolean, boolean, java.util.List)
      * update(record, updateVersion, useLatestRecordType, null)}.
@@ -184,6 +196,19 @@ public interface LTable {
     Record update(Record record, boolean updateVersion, boolean useLatestRecordType, List<MutationCondition> conditions)
             throws RepositoryException, InterruptedException;
 
+    /**
+     * Updates a batch of existing records in the repository.
+     *
+     * <p>The outcome for each record is the same as calling {@link #update(Record, boolean, boolean)} for it
+     * individually. The batch is not atomic: a failure for one record, e.g. a {@link RecordNotFoundException},
+     * does not cause an exception to be thrown, it is reported in the corresponding
+     * {@link RecordMutationResult} instead.
+     *
+     * @return a list containing one result for each of the supplied records, in the same order
+     */
+    List<RecordMutationResult> update(List<Record> records, boolean updateVersion, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException;
+
     /**
      * Creates or updates a record, depending on whether the record already exists.
      *
@@ -204,6 +229,30 @@ public interface LTable {
      */
     Record createOrUpdate(Record record, boolean useLatestRecordType) throws RepositoryException, InterruptedException;
 
+    /**
+     * Shortcut for {@link #createOrUpdate(List, boolean) createOrUpdate(records, true)}.
+     */
+    List<RecordMutationResult> createOrUpdate(List<Record> records) throws RepositoryException, InterruptedException;
+
+    /**
+     * Creates or updates a batch of records, for each record depending on whether it already exists.
+     *
+     * <p>The outcome for each record is the same as calling {@link #createOrUpdate(Record, boolean)} for it
+     * individually, but the implementation can perform the work with less round trips, e.g. by reading
+     * the current state of all records at once.
+     *
+     * <p>The batch is not atomic: each record is created or updated independently of the others. A failure
+     * for one record does not cause an exception to be thrown, it is reported in the corresponding
+     * {@link RecordMutationResult} instead. Exceptions are only thrown for problems affecting the batch as
+     * a whole.
+     *
+     * <p>As for {@link #createOrUpdate(Record, boolean)}, all records should have an ID.
+     *
+     * @return a list containing one result for each of the supplied records, in the same order
+     */
+    List<RecordMutationResult> createOrUpdate(List<Record> records, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException;
+
     /**
      * @param recordId   the id of the record to read, null is not allowed
      * @param fieldNames list of names of the fields to read or null to read all fields
@@ -369,6 +418,20 @@ public interface LTable {
     IdRecord readWithIds(RecordId recordId, Long version, List<SchemaId> fieldIds)
             throws RepositoryException, InterruptedException;
 
+    /**
+     * Reads the latest version of a list of records, together with the mapping from QNames to IDs, using
+     * as few round trips as possible.
+     *
+     * <p>As for {@link #read(List, QName...)}, no RecordNotFoundException is thrown when a record does not
+     * exist or has been deleted, the returned list will then not contain an entry for that requested id.
+     *
+     * @param recordIds ids of the records to read, null is not allowed
+     * @param fieldIds  load only the fields with these ids. optional, can be null.
+     * @return the records that are read, in the order of the requested ids
+     */
+    List<IdRecord> readWithIds(List<RecordId> recordIds, List<SchemaId> fieldIds)
+            throws RepositoryException, InterruptedException;
+
     /**
      * Delete a {@link Record} from the repository.
      *
@@ -398,6 +461,18 @@ public interface LTable {
      */
     void delete(Record record) throws RepositoryException, InterruptedException;
 
+    /**
+     * Deletes a batch of records from the repository.
+     *
+     * <p>The outcome for each record is the same as calling {@link #delete(RecordId)} for it individually.
+     * The batch is not atomic: a failure for one record, e.g. a {@link RecordNotFoundException}, does not
+     * cause an exception to be thrown, it is reported in the corresponding {@link RecordMutationResult}
+     * instead. Successful results do not contain a record.
+     *
+     * @return a list containing one result for each of the supplied record ids, in the same order
+     */
+    List<RecordMutationResult> delete(List<RecordId> recordIds) throws RepositoryException, InterruptedException;
+
     /**
      * Returns an {@link java.io.OutputStream} for a blob. The binary data of a blob
      * must be written to this outputStream and the stream must be closed before
@@ -45,6 +45,9 @@ import java.util.Map;
  * Lily's repository model documentation, a record has a pointer to three (possibly) different record types, one
  * for each scope.
  *
+ * <p>Record objects are not thread-safe: a record that is modified should not be shared between threads. A record
+ * that is only read can be shared, but prefer to give each thread its own {@link #clone() copy}.
+ *
  */
 public interface Record {
     void setId(RecordId recordId);
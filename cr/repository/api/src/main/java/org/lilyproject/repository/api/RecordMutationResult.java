@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.api;
+
+import org.lilyproject.util.ArgumentValidator;
+
+/**
+ * The outcome of the mutation of one record as part of a batch operation, such as
+ * {@link LTable#createOrUpdate(java.util.List)}.
+ *
+ * <p>In case of success, the record is the same as what the corresponding single-record operation would
+ * have returned, and its {@link Record#getResponseStatus() responseStatus} tells what happened. For
+ * operations which do not return a record, such as {@link LTable#delete(java.util.List)}, the record
+ * is null. In case of failure, {@link #getException()} is non-null.</p>
+ */
+public class RecordMutationResult {
+    private final Record record;
+    private final RepositoryException exception;
+
+    private RecordMutationResult(Record record, RepositoryException exception) {
+        this.record = record;
+        this.exception = exception;
+    }
+
+    /**
+     * @param record the resulting record, can be null for operations that do not return a record
+     */
+    public static RecordMutationResult success(Record record) {
+        return new RecordMutationResult(record, null);
+    }
+
+    public static RecordMutationResult failure(RepositoryException exception) {
+        ArgumentValidator.notNull(exception, "exception");
+        return new RecordMutationResult(null, exception);
+    }
+
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * The resulting record, null in case of failure or for operations that do not return a record.
+     */
+    public Record getRecord() {
+        return record;
+    }
+
+    /**
+     * Shortcut for the response status of the resulting record, null in case of failure.
+     */
+    public ResponseStatus getResponseStatus() {
+        return record != null ? record.getResponseStatus() : null;
+    }
+
+    /**
+     * The reason why the mutation of this record failed, null in case of success.
+     */
+    public RepositoryException getException() {
+        return exception;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.lilyproject.repository.api.Blob;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.api.Link;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordType;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.Scope;
+import org.lilyproject.repository.fake.FakeTypeManager;
+import org.lilyproject.repository.impl.RecordImpl;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+
+/**
+ * A schema with a record type per {@link Shape}, built on a {@link FakeTypeManager} so that no HBase
+ * is needed.
+ */
+class BenchmarkSchema {
+    static final String NS = "org.lilyproject.benchmark";
+
+    /**
+     * The different kinds of records which are benchmarked.
+     */
+    enum Shape {
+        /** A handful of small fields of basic types. */
+        NARROW,
+        /** Many string fields. */
+        WIDE,
+        /** A record nested in a RECORD field. */
+        NESTED,
+        /** A LIST&lt;LINK&gt; field with many links. */
+        LINK_LIST,
+        /** A few BLOB fields. */
+        BLOBS
+    }
+
+    private static final int WIDE_FIELD_COUNT = 200;
+    private static final int LINK_COUNT = 50;
+    private static final int BLOB_COUNT = 3;
+
+    private final IdGenerator idGenerator = new IdGeneratorImpl();
+    private final FakeTypeManager typeManager = new FakeTypeManager(idGenerator);
+
+    BenchmarkSchema() throws RepositoryException, InterruptedException {
+        createRecordType(Shape.NARROW, fieldType("STRING", "title"), fieldType("LONG", "count"),
+                fieldType("DATETIME", "modified"), fieldType("BOOLEAN", "published"),
+                fieldType("DOUBLE", "score"));
+
+        FieldType[] wideFields = new FieldType[WIDE_FIELD_COUNT];
+        for (int i = 0; i < wideFields.length; i++) {
+            wideFields[i] = fieldType("STRING", "wide" + i);
+        }
+        createRecordType(Shape.WIDE, wideFields);
+
+        createRecordType(Shape.NESTED, fieldType("RECORD", "nested"));
+        createRecordType(Shape.LINK_LIST, fieldType("LIST<LINK>", "links"));
+
+        FieldType[] blobFields = new FieldType[BLOB_COUNT];
+        for (int i = 0; i < blobFields.length; i++) {
+            blobFields[i] = fieldType("BLOB", "blob" + i);
+        }
+        createRecordType(Shape.BLOBS, blobFields);
+    }
+
+    IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    FakeTypeManager getTypeManager() {
+        return typeManager;
+    }
+
+    private FieldType fieldType(String valueType, String name) throws RepositoryException, InterruptedException {
+        return typeManager.createFieldType(valueType, new QName(NS, name), Scope.NON_VERSIONED);
+    }
+
+    private void createRecordType(Shape shape, FieldType... fieldTypes)
+            throws RepositoryException, InterruptedException {
+        RecordType recordType = typeManager.newRecordType(recordTypeName(shape));
+        for (FieldType fieldType : fieldTypes) {
+            recordType.addFieldTypeEntry(fieldType.getId(), false);
+        }
+        typeManager.createRecordType(recordType);
+    }
+
+    private static QName recordTypeName(Shape shape) {
+        return new QName(NS, shape.name().toLowerCase());
+    }
+
+    /**
+     * Creates a new record of the given shape, with a new id.
+     */
+    Record newRecord(Shape shape) {
+        Record record = newRecord(shape, true);
+        record.setId(idGenerator.newRecordId());
+        return record;
+    }
+
+    private Record newRecord(Shape shape, boolean allowNesting) {
+        Record record = new RecordImpl();
+        record.setRecordType(recordTypeName(shape));
+        switch (shape) {
+            case NARROW:
+                record.setField(new QName(NS, "title"), "A not too long title of a document");
+                record.setField(new QName(NS, "count"), 123456789L);
+                record.setField(new QName(NS, "modified"), new DateTime(2013, 6, 1, 12, 0, 0, 0));
+                record.setField(new QName(NS, "published"), Boolean.TRUE);
+                record.setField(new QName(NS, "score"), 0.75d);
+                break;
+            case WIDE:
+                for (int i = 0; i < WIDE_FIELD_COUNT; i++) {
+                    record.setField(new QName(NS, "wide" + i), "value of field " + i);
+                }
+                break;
+            case NESTED:
+                if (allowNesting) {
+                    record.setField(new QName(NS, "nested"), newRecord(Shape.NARROW, false));
+                }
+                break;
+            case LINK_LIST:
+                List<Link> links = new ArrayList<Link>(LINK_COUNT);
+                for (int i = 0; i < LINK_COUNT; i++) {
+                    links.add(new Link(idGenerator.newRecordId("linked-record-" + i)));
+                }
+                record.setField(new QName(NS, "links"), links);
+                break;
+            case BLOBS:
+                for (int i = 0; i < BLOB_COUNT; i++) {
+                    byte[] key = new byte[20];
+                    key[0] = (byte) i;
+                    record.setField(new QName(NS, "blob" + i),
+                            new Blob(key, "application/octet-stream", 1024L * 1024L, "file" + i + ".bin"));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported shape: " + shape);
+        }
+        return record;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.lilyproject.repository.api.BlobManager;
+import org.lilyproject.repository.api.BlobReference;
+import org.lilyproject.repository.api.FieldTypes;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.Repository;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.TypeManager;
+import org.lilyproject.repository.benchmark.BenchmarkSchema.Shape;
+import org.lilyproject.repository.fake.FakeTableManager;
+import org.lilyproject.repository.impl.AbstractRepositoryManager;
+import org.lilyproject.repository.impl.HBaseRepository;
+import org.lilyproject.repository.impl.RecordDecoder;
+import org.lilyproject.repository.impl.RecordFactoryImpl;
+import org.lilyproject.repository.impl.RepoTableKey;
+import org.lilyproject.util.repo.RecordEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of records to HBase Puts and of HBase Results back to records, for
+ * different shapes of records.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordCodecBenchmark {
+    @Param
+    private Shape shape;
+
+    private HBaseRepository repository;
+    private RecordDecoder recordDecoder;
+    private FieldTypes fieldTypes;
+    private Record record;
+    private Result result;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSchema schema = new BenchmarkSchema();
+        TypeManager typeManager = schema.getTypeManager();
+        fieldTypes = typeManager.getFieldTypesSnapshot();
+
+        RecordFactoryImpl recordFactory = new RecordFactoryImpl();
+        AbstractRepositoryManager repositoryManager =
+                new AbstractRepositoryManager(typeManager, schema.getIdGenerator(), recordFactory, null) {
+                    @Override
+                    protected Repository createRepository(RepoTableKey key) {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+        // Building Puts does not touch the table or the blob store
+        HTableInterface table = unsupported(HTableInterface.class);
+        repository = new HBaseRepository(new RepoTableKey("default", "record"), repositoryManager, table, table,
+                unsupported(BlobManager.class), new FakeTableManager(), recordFactory);
+        recordDecoder = new RecordDecoder(typeManager, schema.getIdGenerator(), recordFactory);
+
+        record = schema.newRecord(shape);
+        result = toResult(buildPut());
+    }
+
+    @Benchmark
+    public Put buildPut() throws RepositoryException, InterruptedException {
+        return repository.buildPut(record, 1L, fieldTypes, new RecordEvent(), new HashSet<BlobReference>(),
+                new HashSet<BlobReference>(), 1L);
+    }
+
+    @Benchmark
+    public Record decodeRecord() throws RepositoryException, InterruptedException {
+        return recordDecoder.decodeRecord(record.getId(), null, null, result, fieldTypes);
+    }
+
+    /**
+     * Decodes the record and all its field values, since field values are decoded lazily.
+     */
+    @Benchmark
+    public Map<QName, Object> decodeRecordAndFields() throws RepositoryException, InterruptedException {
+        return recordDecoder.decodeRecord(record.getId(), null, null, result, fieldTypes).getFields();
+    }
+
+    private static Result toResult(Put put) {
+        List<KeyValue> keyValues = new ArrayList<KeyValue>();
+        for (List<KeyValue> familyKeyValues : put.getFamilyMap().values()) {
+            keyValues.addAll(familyKeyValues);
+        }
+        Collections.sort(keyValues, KeyValue.COMPARATOR);
+        return new Result(keyValues);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unsupported(final Class<T> clazz) {
+        return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class[]{clazz}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                throw new UnsupportedOperationException(clazz.getSimpleName() + "." + method.getName());
+            }
+        });
+    }
+}
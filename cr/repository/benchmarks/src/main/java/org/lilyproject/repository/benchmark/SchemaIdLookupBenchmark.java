@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.impl.AbstractSchemaCache;
+import org.lilyproject.repository.impl.FieldTypeImpl;
+import org.lilyproject.repository.impl.FieldTypesCache;
+import org.lilyproject.repository.impl.FieldTypesImpl;
+import org.lilyproject.repository.impl.SchemaIdMap;
+import org.lilyproject.repository.impl.id.SchemaIdImpl;
+import org.lilyproject.repository.impl.valuetype.StringValueType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the lookup of field types by the id contained in a field column qualifier, which is done
+ * for every cell that is decoded.
+ *
+ * <p>The bucketedLookup benchmark mimics how the lookup was done before {@link SchemaIdMap}: a SchemaId is
+ * created from a copy of the qualifier, its first byte is hex encoded to find the bucket, and the field
+ * type is then looked up in the HashMap of that bucket.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchemaIdLookupBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int fieldTypeCount;
+
+    private byte[][] qualifiers;
+    private int next;
+
+    private Map<String, Map<SchemaId, FieldType>> buckets;
+    private SchemaIdMap<FieldType> idMap;
+    private FieldTypesImpl fieldTypes;
+
+    @Setup
+    public void setup() {
+        buckets = new HashMap<String, Map<SchemaId, FieldType>>();
+        idMap = new SchemaIdMap<FieldType>();
+        FieldTypesCache cache = new FieldTypesCache();
+
+        List<FieldType> types = new ArrayList<FieldType>(fieldTypeCount);
+        for (int i = 0; i < fieldTypeCount; i++) {
+            SchemaId id = new SchemaIdImpl(UUID.randomUUID());
+            FieldType fieldType = new FieldTypeImpl(id, new StringValueType(), new QName("bench", "field" + i),
+                    org.lilyproject.repository.api.Scope.NON_VERSIONED);
+            types.add(fieldType);
+
+            String bucketId = AbstractSchemaCache.encodeHex(id.getBytes());
+            Map<SchemaId, FieldType> bucket = buckets.get(bucketId);
+            if (bucket == null) {
+                bucket = new HashMap<SchemaId, FieldType>();
+                buckets.put(bucketId, bucket);
+            }
+            bucket.put(id, fieldType);
+            idMap.put(id, fieldType);
+        }
+        cache.refreshFieldTypes(types);
+        fieldTypes = (FieldTypesImpl) cache.getSnapshot();
+
+        // Qualifiers as they are stored in HBase: a prefix byte followed by the field type id
+        Random random = new Random(0);
+        qualifiers = new byte[1024][];
+        for (int i = 0; i < qualifiers.length; i++) {
+            byte[] id = types.get(random.nextInt(types.size())).getId().getBytes();
+            qualifiers[i] = Bytes.add(new byte[]{(byte) 'F'}, id);
+        }
+    }
+
+    private byte[] nextQualifier() {
+        next = (next + 1) & (qualifiers.length - 1);
+        return qualifiers[next];
+    }
+
+    @Benchmark
+    public FieldType bucketedLookup() {
+        byte[] qualifier = nextQualifier();
+        SchemaId id = new SchemaIdImpl(Bytes.tail(qualifier, qualifier.length - 1));
+        return buckets.get(AbstractSchemaCache.encodeHex(id.getBytes())).get(id);
+    }
+
+    @Benchmark
+    public FieldType schemaIdMapLookup() {
+        byte[] qualifier = nextQualifier();
+        return idMap.get(qualifier, 1, qualifier.length - 1);
+    }
+
+    @Benchmark
+    public FieldType fieldTypesLookup() throws Exception {
+        // Includes cloning the field type, as done for the decoding of records
+        byte[] qualifier = nextQualifier();
+        return fieldTypes.getFieldType(qualifier, 1, qualifier.length - 1);
+    }
+}
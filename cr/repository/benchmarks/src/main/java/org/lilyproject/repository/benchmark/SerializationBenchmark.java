@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.lilyproject.bytes.api.DataInput;
+import org.lilyproject.bytes.impl.DataInputImpl;
+import org.lilyproject.bytes.impl.DataOutputImpl;
+import org.lilyproject.repository.api.Metadata;
+import org.lilyproject.repository.api.MetadataBuilder;
+import org.lilyproject.repository.impl.MetadataSerDeser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the low level serialization: {@link DataOutputImpl}, {@link DataInputImpl} and the field
+ * metadata encoding of {@link MetadataSerDeser}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    private static final String TEXT = "A not too long title of a document, with a non-ASCII character: \u00e9";
+
+    private byte[] encodedPrimitives;
+    private Metadata metadata;
+    private byte[] encodedMetadata;
+
+    @Setup
+    public void setup() {
+        encodedPrimitives = writePrimitives();
+        metadata = new MetadataBuilder()
+                .value("author", "somebody")
+                .value("revision", 12L)
+                .value("confidence", 0.9d)
+                .value("reviewed", true)
+                .build();
+        encodedMetadata = writeMetadata();
+    }
+
+    @Benchmark
+    public byte[] writePrimitives() {
+        DataOutputImpl output = new DataOutputImpl();
+        for (int i = 0; i < 10; i++) {
+            output.writeVInt(i * 1000);
+            output.writeVLong(i * 1000000L);
+            output.writeLong(i);
+            output.writeDouble(i / 3d);
+            output.writeVUTF(TEXT);
+        }
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public void readPrimitives(Blackhole blackhole) {
+        DataInput input = new DataInputImpl(encodedPrimitives);
+        for (int i = 0; i < 10; i++) {
+            blackhole.consume(input.readVInt());
+            blackhole.consume(input.readVLong());
+            blackhole.consume(input.readLong());
+            blackhole.consume(input.readDouble());
+            blackhole.consume(input.readVUTF());
+        }
+    }
+
+    @Benchmark
+    public byte[] writeMetadata() {
+        DataOutputImpl output = new DataOutputImpl();
+        MetadataSerDeser.write(metadata, output);
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public Metadata readMetadata() {
+        return MetadataSerDeser.read(new DataInputImpl(encodedMetadata));
+    }
+}
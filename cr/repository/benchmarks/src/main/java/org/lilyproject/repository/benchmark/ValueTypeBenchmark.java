@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.lilyproject.bytes.impl.DataInputImpl;
+import org.lilyproject.bytes.impl.DataOutputImpl;
+import org.lilyproject.repository.api.Blob;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.api.IdentityRecordStack;
+import org.lilyproject.repository.api.Link;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.ValueType;
+import org.lilyproject.repository.benchmark.BenchmarkSchema.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the encoding and decoding of single values by the different value types.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValueTypeBenchmark {
+    @Param({"STRING", "INTEGER", "LONG", "DOUBLE", "DECIMAL", "BOOLEAN", "DATE", "DATETIME", "LINK", "BLOB",
+            "LIST<STRING>", "LIST<LINK>", "RECORD"})
+    private String valueTypeName;
+
+    private ValueType valueType;
+    private Object value;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSchema schema = new BenchmarkSchema();
+        valueType = schema.getTypeManager().getValueType(valueTypeName);
+        value = createValue(valueTypeName, schema);
+        encoded = write();
+    }
+
+    @Benchmark
+    public byte[] write() throws RepositoryException, InterruptedException {
+        DataOutputImpl output = new DataOutputImpl();
+        valueType.write(value, output, new IdentityRecordStack());
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public Object read() throws RepositoryException, InterruptedException {
+        return valueType.read(new DataInputImpl(encoded));
+    }
+
+    private static Object createValue(String valueTypeName, BenchmarkSchema schema) {
+        IdGenerator idGenerator = schema.getIdGenerator();
+        if (valueTypeName.equals("STRING")) {
+            return "A not too long title of a document";
+        } else if (valueTypeName.equals("INTEGER")) {
+            return 123456;
+        } else if (valueTypeName.equals("LONG")) {
+            return 123456789L;
+        } else if (valueTypeName.equals("DOUBLE")) {
+            return 0.75d;
+        } else if (valueTypeName.equals("DECIMAL")) {
+            return new BigDecimal("12345.6789");
+        } else if (valueTypeName.equals("BOOLEAN")) {
+            return Boolean.TRUE;
+        } else if (valueTypeName.equals("DATE")) {
+            return new LocalDate(2013, 6, 1);
+        } else if (valueTypeName.equals("DATETIME")) {
+            return new DateTime(2013, 6, 1, 12, 0, 0, 0);
+        } else if (valueTypeName.equals("LINK")) {
+            return new Link(idGenerator.newRecordId("linked-record"));
+        } else if (valueTypeName.equals("BLOB")) {
+            return new Blob(new byte[20], "application/octet-stream", 1024L * 1024L, "file.bin");
+        } else if (valueTypeName.equals("LIST<STRING>")) {
+            List<String> list = new ArrayList<String>();
+            for (int i = 0; i < 20; i++) {
+                list.add("value " + i);
+            }
+            return list;
+        } else if (valueTypeName.equals("LIST<LINK>")) {
+            List<Link> list = new ArrayList<Link>();
+            for (int i = 0; i < 20; i++) {
+                list.add(new Link(idGenerator.newRecordId("linked-record-" + i)));
+            }
+            return list;
+        } else if (valueTypeName.equals("RECORD")) {
+            return schema.newRecord(Shape.NARROW);
+        }
+        throw new IllegalArgumentException("No value for value type " + valueTypeName);
+    }
+}
@@ -66,9 +66,7 @@ public abstract class AbstractSchemaCache implements SchemaCache {
 
     private final CacheRefresher cacheRefresher = new CacheRefresher();
 
-    private FieldTypes fieldTypesSnapshot;
     private FieldTypesCache fieldTypesCache = new FieldTypesCache();
-    private volatile boolean updatedFieldTypes = false;
 
     private RecordTypesCache recordTypes = new RecordTypesCache();
 
@@ -207,22 +205,12 @@ public abstract class AbstractSchemaCache implements SchemaCache {
     protected abstract TypeManager getTypeManager();
 
     @Override
-    public FieldTypes getFieldTypesSnapshot() throws InterruptedException {
-        if (!updatedFieldTypes) {
-            return fieldTypesSnapshot;
-        }
-        synchronized (this) {
-            if (updatedFieldTypes) {
-                fieldTypesSnapshot = fieldTypesCache.getSnapshot();
-                updatedFieldTypes = false;
-            }
-            return fieldTypesSnapshot;
-        }
+    public FieldTypes getFieldTypesSnapshot() {
+        return fieldTypesCache.getSnapshot();
     }
 
     public void updateFieldType(FieldType fieldType) throws TypeException, InterruptedException {
         fieldTypesCache.update(fieldType);
-        updatedFieldTypes = true;
     }
 
     public void updateRecordType(RecordType recordType) throws TypeException, InterruptedException {
@@ -345,7 +333,6 @@ public abstract class AbstractSchemaCache implements SchemaCache {
             // Read all types in one go
             Pair<List<FieldType>, List<RecordType>> types = getTypeManager().getTypesWithoutCache();
             fieldTypesCache.refreshFieldTypes(types.getV1());
-            updatedFieldTypes = true;
             recordTypes.refreshRecordTypes(types.getV2());
         } else {
             // Only the changed buckets need to be refreshed.
@@ -387,7 +374,6 @@ public abstract class AbstractSchemaCache implements SchemaCache {
                 bucketVersions.put(entry.getKey(), entry.getValue());
                 TypeBucket typeBucket = getTypeManager().getTypeBucketWithoutCache(entry.getKey());
                 fieldTypesCache.refreshFieldTypeBucket(typeBucket);
-                updatedFieldTypes = true;
                 recordTypes.refreshRecordTypeBucket(typeBucket);
             }
         }
@@ -442,7 +428,6 @@ public abstract class AbstractSchemaCache implements SchemaCache {
             fieldTypesCache.refreshFieldTypeBucket(typeBucket);
             recordTypes.refreshRecordTypeBucket(typeBucket);
         }
-        updatedFieldTypes = true;
     }
 
     private void watchPathsForExistence() throws InterruptedException {
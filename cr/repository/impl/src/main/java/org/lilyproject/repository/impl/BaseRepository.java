@@ -24,8 +24,16 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Preconditions;
+import com.ngdata.lily.security.hbase.client.AuthorizationContext;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
@@ -65,9 +73,11 @@ import org.lilyproject.repository.api.TypeManager;
 import org.lilyproject.repository.api.VersionNotFoundException;
 import org.lilyproject.repository.api.filter.RecordFilter;
 import org.lilyproject.repository.impl.RepositoryMetrics.Action;
+import org.lilyproject.repository.spi.AuthorizationContextHolder;
 import org.lilyproject.repository.spi.HBaseRecordFilterFactory;
 import org.lilyproject.util.ArgumentValidator;
 import org.lilyproject.util.Pair;
+import org.lilyproject.util.concurrent.CustomThreadFactory;
 import org.lilyproject.util.hbase.LilyHBaseSchema;
 import org.lilyproject.util.hbase.LilyHBaseSchema.RecordCf;
 import org.lilyproject.util.hbase.LilyHBaseSchema.RecordColumn;
@@ -86,6 +96,13 @@ public abstract class BaseRepository implements Repository {
     protected final TableManager tableManager;
     protected RepositoryMetrics metrics;
 
+    /**
+     * Reads of more than this number of records are split in chunks which are fetched concurrently.
+     */
+    private static final int MULTI_GET_CHUNK_SIZE = 100;
+    private static final int MULTI_GET_THREADS = 16;
+    private ExecutorService multiGetExecutor;
+
     /**
      * Not all rows in the HBase record table are real records, this filter excludes non-valid
      * record rows.
@@ -397,6 +414,36 @@ public abstract class BaseRepository implements Repository {
         }
     }
 
+    @Override
+    public List<IdRecord> readWithIds(List<RecordId> recordIds, List<SchemaId> fieldIds)
+            throws RepositoryException, InterruptedException {
+        long before = System.currentTimeMillis();
+        try {
+            ArgumentValidator.notNull(recordIds, "recordIds");
+            List<IdRecord> records = new ArrayList<IdRecord>(recordIds.size());
+            if (recordIds.isEmpty()) {
+                return records;
+            }
+
+            FieldTypes fieldTypes = typeManager.getFieldTypesSnapshot();
+            List<FieldType> fields = getFieldTypesFromIds(fieldIds, fieldTypes);
+            Map<RecordId, Result> results = getRows(recordIds, fields);
+
+            for (RecordId recordId : recordIds) {
+                Result result = results.get(recordId);
+                if (result != null) {
+                    Long version = recdec.getLatestVersion(result);
+                    records.add(recdec.decodeRecordWithIds(recordId, version, result, fieldTypes));
+                }
+            }
+            return records;
+        } finally {
+            if (metrics != null) {
+                metrics.report(Action.READ, System.currentTimeMillis() - before);
+            }
+        }
+    }
+
     private List<FieldType> getFieldTypesFromIds(List<SchemaId> fieldIds, FieldTypes fieldTypes)
             throws TypeException, InterruptedException {
         List<FieldType> fields = null;
@@ -474,13 +521,39 @@ public abstract class BaseRepository implements Repository {
                 return records;
             }
 
-            Map<RecordId, Result> results = getRows(recordIds, fields);
+            if (recordIds.size() <= MULTI_GET_CHUNK_SIZE) {
+                return readChunk(recordIds, fields, fieldTypes);
+            }
 
-            for (RecordId recordId : recordIds) {
-                Result result = results.get(recordId);
-                if (result != null){
-                    Long version = recdec.getLatestVersion(result);
-                    records.add(recdec.decodeRecord(recordId, version, null, result, fieldTypes));
+            // Split large requests in chunks which are fetched and decoded concurrently. The first chunk is
+            // handled by the calling thread itself.
+            List<Future<List<Record>>> futures = new ArrayList<Future<List<Record>>>();
+            AuthorizationContext authzContext = AuthorizationContextHolder.getCurrentContext();
+            for (int start = MULTI_GET_CHUNK_SIZE; start < recordIds.size(); start += MULTI_GET_CHUNK_SIZE) {
+                int end = Math.min(start + MULTI_GET_CHUNK_SIZE, recordIds.size());
+                List<RecordId> chunk = recordIds.subList(start, end);
+                futures.add(getMultiGetExecutor().submit(new ReadChunkTask(chunk, fields, fieldTypes, authzContext)));
+            }
+
+            try {
+                records.addAll(readChunk(recordIds.subList(0, MULTI_GET_CHUNK_SIZE), fields, fieldTypes));
+                for (Future<List<Record>> future : futures) {
+                    records.addAll(future.get());
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RepositoryException) {
+                    throw (RepositoryException)cause;
+                } else if (cause instanceof InterruptedException) {
+                    throw (InterruptedException)cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                throw new RecordException("Error reading records", cause);
+            } finally {
+                // in case of failure, no need to continue with the other chunks
+                for (Future<List<Record>> future : futures) {
+                    future.cancel(false);
                 }
             }
             return records;
@@ -491,6 +564,76 @@ public abstract class BaseRepository implements Repository {
         }
     }
 
+    /**
+     * Reads and decodes the records for the given ids with one multi-get, non-existing records are skipped.
+     */
+    private List<Record> readChunk(List<RecordId> recordIds, List<FieldType> fields, FieldTypes fieldTypes)
+            throws RepositoryException, InterruptedException {
+        List<Record> records = new ArrayList<Record>(recordIds.size());
+        Map<RecordId, Result> results = getRows(recordIds, fields);
+
+        for (RecordId recordId : recordIds) {
+            Result result = results.get(recordId);
+            if (result != null){
+                Long version = recdec.getLatestVersion(result);
+                records.add(recdec.decodeRecord(recordId, version, null, result, fieldTypes));
+            }
+        }
+        return records;
+    }
+
+    private class ReadChunkTask implements Callable<List<Record>> {
+        private final List<RecordId> recordIds;
+        private final List<FieldType> fields;
+        private final FieldTypes fieldTypes;
+        private final AuthorizationContext authzContext;
+
+        ReadChunkTask(List<RecordId> recordIds, List<FieldType> fields, FieldTypes fieldTypes,
+                AuthorizationContext authzContext) {
+            this.recordIds = recordIds;
+            this.fields = fields;
+            this.fieldTypes = fieldTypes;
+            this.authzContext = authzContext;
+        }
+
+        @Override
+        public List<Record> call() throws Exception {
+            // The authorization context is thread-bound, and needed by the record table to filter the results
+            AuthorizationContext previousContext = AuthorizationContextHolder.getCurrentContext();
+            AuthorizationContextHolder.setCurrentContext(authzContext);
+            try {
+                return readChunk(recordIds, fields, fieldTypes);
+            } finally {
+                if (previousContext != null) {
+                    AuthorizationContextHolder.setCurrentContext(previousContext);
+                } else {
+                    AuthorizationContextHolder.clearContext();
+                }
+            }
+        }
+    }
+
+    private synchronized ExecutorService getMultiGetExecutor() {
+        if (multiGetExecutor == null) {
+            // When all threads are busy, the chunk is read by the submitting thread itself, this avoids
+            // deadlocks in case of nested multi-record reads.
+            multiGetExecutor = new ThreadPoolExecutor(1, MULTI_GET_THREADS, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new CustomThreadFactory("record-multiget", null, true),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return multiGetExecutor;
+    }
+
+    /**
+     * Stops the threads used for multi-record reads, to be called when closing the repository.
+     */
+    protected synchronized void stopMultiGetExecutor() {
+        if (multiGetExecutor != null) {
+            multiGetExecutor.shutdownNow();
+            multiGetExecutor = null;
+        }
+    }
+
     // Retrieves the row from the table and check if it exists and has not been flagged as deleted
     protected Result getRow(RecordId recordId, Long version, int numberOfVersions, List<FieldType> fields)
             throws RecordException {
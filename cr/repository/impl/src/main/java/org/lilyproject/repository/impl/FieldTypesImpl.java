@@ -16,10 +16,10 @@
 package org.lilyproject.repository.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,19 +28,26 @@ import org.lilyproject.repository.api.FieldTypeNotFoundException;
 import org.lilyproject.repository.api.FieldTypes;
 import org.lilyproject.repository.api.QName;
 import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.impl.id.SchemaIdImpl;
 import org.lilyproject.util.ArgumentValidator;
 
 public class FieldTypesImpl implements FieldTypes {
     private Log log = LogFactory.getLog(getClass());
 
-    // Always use getNameCache() instead of this variable directly, to make sure
-    // this is the up-to-date nameCache (in case of FieldTypesCache).
     protected Map<QName, FieldType> nameCache;
-    protected Map<String, Map<SchemaId, FieldType>> buckets;
+    protected SchemaIdMap<FieldType> idCache;
 
     public FieldTypesImpl() {
         nameCache = new HashMap<QName, FieldType>();
-        buckets = new ConcurrentHashMap<String, Map<SchemaId, FieldType>>();
+        idCache = new SchemaIdMap<FieldType>();
+    }
+
+    /**
+     * Creates a FieldTypes on top of the given maps, which should not be modified anymore afterwards.
+     */
+    FieldTypesImpl(Map<QName, FieldType> nameCache, SchemaIdMap<FieldType> idCache) {
+        this.nameCache = nameCache;
+        this.idCache = idCache;
     }
 
     protected Map<QName, FieldType> getNameCache() throws InterruptedException {
@@ -59,14 +66,23 @@ public class FieldTypesImpl implements FieldTypes {
     @Override
     public FieldType getFieldType(SchemaId id) throws FieldTypeNotFoundException {
         ArgumentValidator.notNull(id, "id");
-        String bucket = AbstractSchemaCache.encodeHex(id.getBytes());
-
-        Map<SchemaId, FieldType> fieldTypeIdCacheBucket = buckets.get(bucket);
-        if (fieldTypeIdCacheBucket == null) {
+        FieldType fieldType = idCache.get(id);
+        if (fieldType == null) {
             throw new FieldTypeNotFoundException(id);
         }
-        FieldType fieldType = fieldTypeIdCacheBucket.get(id);
+        return fieldType.clone();
+    }
+
+    /**
+     * Gets the FieldType of which the id is contained in the given range of bytes, e.g. the
+     * qualifier of a field column. This avoids having to create a SchemaId for each lookup.
+     *
+     * @throws FieldTypeNotFoundException when no fieldType with the given ID exists
+     */
+    public FieldType getFieldType(byte[] idBytes, int offset, int length) throws FieldTypeNotFoundException {
+        FieldType fieldType = idCache.get(idBytes, offset, length);
         if (fieldType == null) {
+            SchemaId id = new SchemaIdImpl(Arrays.copyOfRange(idBytes, offset, offset + length));
             throw new FieldTypeNotFoundException(id);
         }
         return fieldType.clone();
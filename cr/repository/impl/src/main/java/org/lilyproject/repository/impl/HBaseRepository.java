@@ -16,6 +16,7 @@
 package org.lilyproject.repository.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -72,6 +73,7 @@ import org.lilyproject.repository.api.RecordException;
 import org.lilyproject.repository.api.RecordExistsException;
 import org.lilyproject.repository.api.RecordFactory;
 import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.RecordNotFoundException;
 import org.lilyproject.repository.api.RecordType;
 import org.lilyproject.repository.api.RepositoryException;
@@ -106,10 +108,26 @@ public class HBaseRepository extends BaseRepository {
 
     private List<RecordUpdateHook> updateHooks = Collections.emptyList();
 
+    private boolean binaryRecordEvents = false;
+
     private final Log log = LogFactory.getLog(getClass());
 
     private static final Object METADATA_ONLY_UPDATE = new Object();
 
+    private static final int MAX_RETAINED_ENCODE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Buffer in which the {@link FieldValueWriter}s of a thread encode the field values, including nested
+     * records and lists. Since the cells of a Put are built from it directly, no buffer needs to be allocated,
+     * grown and copied for each field value.
+     */
+    private static final ThreadLocal<DataOutputImpl> ENCODE_BUFFER = new ThreadLocal<DataOutputImpl>() {
+        @Override
+        protected DataOutputImpl initialValue() {
+            return new DataOutputImpl(4096);
+        }
+    };
+
     public HBaseRepository(RepoTableKey ttk, AbstractRepositoryManager repositoryManager, HTableInterface recordTable,
             HTableInterface nonAuthRecordTable, BlobManager blobManager, TableManager tableManager,
             RecordFactory recordFactory) throws IOException, InterruptedException {
@@ -119,6 +137,7 @@ public class HBaseRepository extends BaseRepository {
 
     @Override
     public void close() throws IOException {
+        stopMultiGetExecutor();
     }
 
     /**
@@ -129,6 +148,18 @@ public class HBaseRepository extends BaseRepository {
                 Collections.<RecordUpdateHook>emptyList() : recordUpdateHooks;
     }
 
+    /**
+     * Sets whether record events are written in the binary format rather than as json, see
+     * {@link RecordEvent#BINARY_FORMAT_PROPERTY}.
+     */
+    public void setBinaryRecordEvents(boolean binaryRecordEvents) {
+        this.binaryRecordEvents = binaryRecordEvents;
+    }
+
+    public boolean isBinaryRecordEvents() {
+        return binaryRecordEvents;
+    }
+
     @Override
     public IdGenerator getIdGenerator() {
         return idGenerator;
@@ -187,6 +218,133 @@ public class HBaseRepository extends BaseRepository {
                 " attempts, toggling between create and update mode.");
     }
 
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records)
+            throws RepositoryException, InterruptedException {
+        return createOrUpdate(records, true);
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException {
+        ArgumentValidator.notNull(records, "records");
+
+        long before = System.currentTimeMillis();
+        try {
+            RecordMutationResult[] results = new RecordMutationResult[records.size()];
+            FieldTypes fieldTypes = typeManager.getFieldTypesSnapshot();
+
+            // Read the current state of all records using one multi-get
+            List<Integer> positions = new ArrayList<Integer>(records.size());
+            List<Get> gets = new ArrayList<Get>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                Record record = records.get(i);
+                if (record == null || record.getId() == null) {
+                    results[i] = RecordMutationResult.failure(
+                            new RecordException("Record ID is mandatory when using create-or-update."));
+                    continue;
+                }
+                Get get = new Get(record.getId().toBytes());
+                get.addFamily(RecordCf.DATA.bytes);
+                get.setMaxVersions(1);
+                gets.add(get);
+                positions.add(i);
+            }
+
+            Result[] rows;
+            try {
+                rows = gets.isEmpty() ? new Result[0] : recordTable.get(gets);
+            } catch (IOException e) {
+                throw new RecordException("Exception occurred while reading " + gets.size()
+                        + " records for create-or-update from HBase table", e);
+            }
+
+            // Calculate the changes for all records. Records for which nothing needs to be written (no changes)
+            // are immediately done.
+            List<Integer> mutationPositions = new ArrayList<Integer>(positions.size());
+            List<RecordMutation> mutations = new ArrayList<RecordMutation>(positions.size());
+            for (int i = 0; i < positions.size(); i++) {
+                int pos = positions.get(i);
+                try {
+                    RecordMutation mutation = prepareCreateOrUpdate(records.get(pos), rows[i], useLatestRecordType,
+                            fieldTypes);
+                    if (mutation.put == null) {
+                        results[pos] = RecordMutationResult.success(mutation.record);
+                    } else {
+                        mutationPositions.add(pos);
+                        mutations.add(mutation);
+                    }
+                } catch (RepositoryException e) {
+                    results[pos] = RecordMutationResult.failure(e);
+                }
+            }
+
+            // Apply the changes. HBase has no multi-row conditional put, so each record still needs its own
+            // checkAndPut on the OCC column.
+            for (int i = 0; i < mutations.size(); i++) {
+                int pos = mutationPositions.get(i);
+                Record record = records.get(pos);
+                try {
+                    if (applyMutation(mutations.get(i))) {
+                        results[pos] = RecordMutationResult.success(mutations.get(i).record);
+                    } else {
+                        // The record was created, updated or deleted concurrently since we read it. Fall back to
+                        // the single-record create-or-update, which takes care of re-reading and retrying.
+                        results[pos] = RecordMutationResult.success(createOrUpdate(record, useLatestRecordType));
+                    }
+                } catch (RepositoryException e) {
+                    results[pos] = RecordMutationResult.failure(e);
+                } catch (IOException e) {
+                    results[pos] = RecordMutationResult.failure(new RecordException(
+                            "Exception occurred while putting record '" + record.getId() + "' on HBase table", e));
+                }
+            }
+
+            return Arrays.asList(results);
+        } finally {
+            metrics.report(Action.BATCH, System.currentTimeMillis() - before);
+        }
+    }
+
+    /**
+     * Prepares either the create or update of a record, depending on the current state of its row.
+     *
+     * @param row the current state of the record row, containing the latest version of the data family
+     */
+    private RecordMutation prepareCreateOrUpdate(Record record, Result row, boolean useLatestRecordType,
+            FieldTypes fieldTypes) throws RepositoryException, InterruptedException {
+        RecordId recordId = record.getId();
+        byte[] deleted = recdec.getLatest(row, RecordCf.DATA.bytes, RecordColumn.DELETED.bytes);
+        if ((deleted == null) || (Bytes.toBoolean(deleted))) {
+            checkCreatePreconditions(record);
+            try {
+                return prepareCreate(record, recordId, row, fieldTypes);
+            } catch (IOException e) {
+                throw new RecordException("Exception occurred while creating record '" + recordId
+                        + "' in HBase table", e);
+            }
+        } else {
+            Long latestVersion = recdec.getLatestVersion(row);
+            Record originalRecord = recdec.decodeRecord(recordId, latestVersion, null, row, fieldTypes);
+            byte[] oldOccBytes = row.getValue(RecordCf.DATA.bytes, RecordColumn.OCC.bytes);
+            return prepareUpdate(record, originalRecord, oldOccBytes, useLatestRecordType, null, fieldTypes);
+        }
+    }
+
+    @Override
+    public List<RecordMutationResult> create(List<Record> records) throws RepositoryException {
+        ArgumentValidator.notNull(records, "records");
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(records.size());
+        for (Record record : records) {
+            try {
+                results.add(RecordMutationResult.success(create(record)));
+            } catch (RepositoryException e) {
+                results.add(RecordMutationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
     @Override
     public Record create(Record record) throws RepositoryException {
 
@@ -204,9 +362,6 @@ public class HBaseRepository extends BaseRepository {
             try {
                 FieldTypes fieldTypes = typeManager.getFieldTypesSnapshot();
 
-                long version = 1L;
-                byte[] oldOccBytes = null;
-                long newOcc = 1L;
                 // If the record existed it would have been deleted.
                 // The version numbering continues from where it has been deleted.
                 Get get = new Get(rowId);
@@ -214,74 +369,12 @@ public class HBaseRepository extends BaseRepository {
                 get.addColumn(RecordCf.DATA.bytes, RecordColumn.VERSION.bytes);
                 get.addColumn(RecordCf.DATA.bytes, RecordColumn.OCC.bytes);
                 Result result = recordTable.get(get);
-                if (!result.isEmpty()) {
-                    // If the record existed it should have been deleted
-                    byte[] recordDeleted = result.getValue(RecordCf.DATA.bytes, RecordColumn.DELETED.bytes);
-                    if (recordDeleted != null && !Bytes.toBoolean(recordDeleted)) {
-                        throw new RecordExistsException(recordId);
-                    }
-
-                    oldOccBytes = result.getValue(RecordCf.DATA.bytes, RecordColumn.OCC.bytes);
-                    newOcc = Bytes.toLong(nextOcc(oldOccBytes));
-
-                    byte[] oldVersion = result.getValue(RecordCf.DATA.bytes, RecordColumn.VERSION.bytes);
-                    if (oldVersion != null) {
-                        version = Bytes.toLong(oldVersion) + 1;
-                        // Make sure any old data gets cleared and old blobs are deleted
-                        // This is to cover the failure scenario where a record was deleted, but a failure
-                        // occurred before executing the clearData
-                        // If this was already done, this is a no-op
-                        // Note: since the removal of the row locking, this part could run concurrent with other
-                        // threads trying to re-create a record or with a delete still being in progress. This
-                        // should be no problem since the clearData will only remove the versions at the old
-                        // timestamps, and leave the non-versioned fields untouched.
-                        clearData(recordId, null, Bytes.toLong(oldVersion));
-                    }
-                }
-
-                RecordEvent recordEvent = new RecordEvent();
-                recordEvent.setType(Type.CREATE);
-                recordEvent.setTableName(getTableName());
-                if (record.hasAttributes()) {
-                    recordEvent.getAttributes().putAll(record.getAttributes());
-                }
-
-                Record newRecord = record.cloneRecord();
-                newRecord.setId(recordId);
-
-                for (RecordUpdateHook hook : updateHooks) {
-                    hook.beforeCreate(newRecord, this, fieldTypes, recordEvent);
-                }
-
-                Set<BlobReference> referencedBlobs = new HashSet<BlobReference>();
-                Set<BlobReference> unReferencedBlobs = new HashSet<BlobReference>();
-
-                Put put = buildPut(newRecord, version, fieldTypes, recordEvent, referencedBlobs, unReferencedBlobs, newOcc);
-
-                // Make sure the record type changed flag stays false for a newly
-                // created record
-                recordEvent.setRecordTypeChanged(false);
-                Long newVersion = newRecord.getVersion();
-                if (newVersion != null) {
-                    recordEvent.setVersionCreated(newVersion);
-                }
 
-                // Reserve blobs so no other records can use them
-                reserveBlobs(null, referencedBlobs);
-
-                put.add(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes, recordEvent.toJsonBytes());
-                boolean success = recordTable.checkAndPut(put.getRow(), RecordCf.DATA.bytes, RecordColumn.OCC.bytes,
-                        oldOccBytes, put);
-                if (!success) {
+                RecordMutation mutation = prepareCreate(record, recordId, result, fieldTypes);
+                if (!applyMutation(mutation)) {
                     throw new RecordExistsException(recordId);
                 }
-
-                // Remove the used blobs from the blobIncubator
-                blobManager.handleBlobReferences(recordId, referencedBlobs, unReferencedBlobs);
-
-                newRecord.setResponseStatus(ResponseStatus.CREATED);
-                removeUnidirectionalState(newRecord);
-                return newRecord;
+                return mutation.record;
 
             } catch (IOException e) {
                 throw new RecordException("Exception occurred while creating record '" + recordId + "' in HBase table",
@@ -299,6 +392,129 @@ public class HBaseRepository extends BaseRepository {
         }
     }
 
+    /**
+     * Prepares the creation of a record.
+     *
+     * @param result the current state of the record row, containing at least the deleted, version and occ
+     *               columns. The row can be empty, or contain a deleted record.
+     */
+    private RecordMutation prepareCreate(Record record, RecordId recordId, Result result, FieldTypes fieldTypes)
+            throws IOException, InterruptedException, RepositoryException {
+        long version = 1L;
+        byte[] oldOccBytes = null;
+        long newOcc = 1L;
+        if (result != null && !result.isEmpty()) {
+            // If the record existed it should have been deleted
+            byte[] recordDeleted = result.getValue(RecordCf.DATA.bytes, RecordColumn.DELETED.bytes);
+            if (recordDeleted != null && !Bytes.toBoolean(recordDeleted)) {
+                throw new RecordExistsException(recordId);
+            }
+
+            oldOccBytes = result.getValue(RecordCf.DATA.bytes, RecordColumn.OCC.bytes);
+            newOcc = Bytes.toLong(nextOcc(oldOccBytes));
+
+            byte[] oldVersion = result.getValue(RecordCf.DATA.bytes, RecordColumn.VERSION.bytes);
+            if (oldVersion != null) {
+                version = Bytes.toLong(oldVersion) + 1;
+                // Make sure any old data gets cleared and old blobs are deleted
+                // This is to cover the failure scenario where a record was deleted, but a failure
+                // occurred before executing the clearData
+                // If this was already done, this is a no-op
+                // Note: since the removal of the row locking, this part could run concurrent with other
+                // threads trying to re-create a record or with a delete still being in progress. This
+                // should be no problem since the clearData will only remove the versions at the old
+                // timestamps, and leave the non-versioned fields untouched.
+                clearData(recordId, null, Bytes.toLong(oldVersion));
+            }
+        }
+
+        RecordEvent recordEvent = new RecordEvent();
+        recordEvent.setType(Type.CREATE);
+        recordEvent.setTableName(getTableName());
+        if (record.hasAttributes()) {
+            recordEvent.getAttributes().putAll(record.getAttributes());
+        }
+
+        Record newRecord = record.cloneRecord();
+        newRecord.setId(recordId);
+
+        for (RecordUpdateHook hook : updateHooks) {
+            hook.beforeCreate(newRecord, this, fieldTypes, recordEvent);
+        }
+
+        Set<BlobReference> referencedBlobs = new HashSet<BlobReference>();
+        Set<BlobReference> unReferencedBlobs = new HashSet<BlobReference>();
+
+        Put put = buildPut(newRecord, version, fieldTypes, recordEvent, referencedBlobs, unReferencedBlobs, newOcc);
+
+        // Make sure the record type changed flag stays false for a newly
+        // created record
+        recordEvent.setRecordTypeChanged(false);
+        Long newVersion = newRecord.getVersion();
+        if (newVersion != null) {
+            recordEvent.setVersionCreated(newVersion);
+        }
+
+        put.add(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes, recordEvent.toBytes(binaryRecordEvents));
+
+        return new RecordMutation(newRecord, put, oldOccBytes, referencedBlobs, unReferencedBlobs, true);
+    }
+
+    /**
+     * Writes a prepared create or update to the record table, guarded by a checkAndPut on the OCC column.
+     *
+     * @return false if the OCC check failed, i.e. if the record row was modified since it was read
+     */
+    private boolean applyMutation(RecordMutation mutation)
+            throws IOException, InterruptedException, RepositoryException {
+        RecordId recordId = mutation.record.getId();
+
+        // Reserve blobs so no other records can use them
+        reserveBlobs(mutation.create ? null : recordId, mutation.referencedBlobs);
+
+        boolean success = recordTable.checkAndPut(mutation.put.getRow(), RecordCf.DATA.bytes,
+                RecordColumn.OCC.bytes, mutation.oldOccBytes, mutation.put);
+        if (!success) {
+            return false;
+        }
+
+        // Remove the used blobs from the blobIncubator and delete unreferenced blobs from the blobstore
+        blobManager.handleBlobReferences(recordId, mutation.referencedBlobs, mutation.unReferencedBlobs);
+
+        mutation.record.setResponseStatus(mutation.create ? ResponseStatus.CREATED : ResponseStatus.UPDATED);
+        removeUnidirectionalState(mutation.record);
+        return true;
+    }
+
+    /**
+     * A create or update of a record of which the changes have been calculated, but which still needs to
+     * be written to the record table.
+     */
+    private static class RecordMutation {
+        /** The record to return to the client. */
+        final Record record;
+        /** The put to perform, null in case nothing needs to be written. */
+        final Put put;
+        final byte[] oldOccBytes;
+        final Set<BlobReference> referencedBlobs;
+        final Set<BlobReference> unReferencedBlobs;
+        final boolean create;
+
+        RecordMutation(Record record) {
+            this(record, null, null, null, null, false);
+        }
+
+        RecordMutation(Record record, Put put, byte[] oldOccBytes, Set<BlobReference> referencedBlobs,
+                Set<BlobReference> unReferencedBlobs, boolean create) {
+            this.record = record;
+            this.put = put;
+            this.oldOccBytes = oldOccBytes;
+            this.referencedBlobs = referencedBlobs;
+            this.unReferencedBlobs = unReferencedBlobs;
+            this.create = create;
+        }
+    }
+
     /**
      * Build a Put for inserting a new (blank) record into a Lily repository table.
      */
@@ -369,6 +585,21 @@ public class HBaseRepository extends BaseRepository {
         return update(record, updateVersion, useLatestRecordType, null);
     }
 
+    @Override
+    public List<RecordMutationResult> update(List<Record> records, boolean updateVersion,
+            boolean useLatestRecordType) throws RepositoryException, InterruptedException {
+        ArgumentValidator.notNull(records, "records");
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(records.size());
+        for (Record record : records) {
+            try {
+                results.add(RecordMutationResult.success(update(record, updateVersion, useLatestRecordType)));
+            } catch (RepositoryException e) {
+                results.add(RecordMutationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
     @Override
     public Record update(Record record, boolean updateVersion, boolean useLatestRecordType,
                          List<MutationCondition> conditions) throws RepositoryException, InterruptedException {
@@ -407,61 +638,14 @@ public class HBaseRepository extends BaseRepository {
 
         try {
             Pair<Record, byte[]> recordAndOcc = readWithOcc(record.getId(), null, null, fieldTypes);
-            Record originalRecord = new UnmodifiableRecord(recordAndOcc.getV1());
-
-            byte[] oldOccBytes = recordAndOcc.getV2();
-
-            RecordEvent recordEvent = new RecordEvent();
-            recordEvent.setType(Type.UPDATE);
-            recordEvent.setTableName(getTableName());
-            if (record.hasAttributes()) {
-                recordEvent.getAttributes().putAll(record.getAttributes());
-            }
-
-            for (RecordUpdateHook hook : updateHooks) {
-                hook.beforeUpdate(record, originalRecord, this, fieldTypes, recordEvent);
-            }
-
-            Record newRecord = record.cloneRecord();
-
-            Put put = new Put(newRecord.getId().toBytes());
-            Set<BlobReference> referencedBlobs = new HashSet<BlobReference>();
-            Set<BlobReference> unReferencedBlobs = new HashSet<BlobReference>();
-            long newVersion = originalRecord.getVersion() == null ? 1 : originalRecord.getVersion() + 1;
-
-            // Check the mutation conditions.
-            // It is important that we do this before checking if the record needs updating at all: otherwise,
-            // another client might already have performed the update we intended to do, which is problematic
-            // in cases like incrementing a counter (the counter should be updated twice, not once).
-            Record conditionsResponse = MutationConditionVerifier.checkConditions(originalRecord, conditions, this,
-                    record);
-            if (conditionsResponse != null) {
-                return conditionsResponse;
-            }
-
-            if (calculateRecordChanges(newRecord, originalRecord, newVersion, put, recordEvent, referencedBlobs,
-                    unReferencedBlobs, useLatestRecordType, fieldTypes)) {
-
-                // Reserve blobs so no other records can use them
-                reserveBlobs(record.getId(), referencedBlobs);
 
-                put.add(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes, recordEvent.toJsonBytes());
-                put.add(RecordCf.DATA.bytes, RecordColumn.OCC.bytes, 1L, nextOcc(oldOccBytes));
-                boolean occSuccess = recordTable.checkAndPut(put.getRow(), RecordCf.DATA.bytes, RecordColumn.OCC.bytes,
-                        oldOccBytes, put);
-                if (!occSuccess) {
-                    throw new ConcurrentRecordUpdateException(recordId);
-                }
-
-                // Remove the used blobs from the blobIncubator and delete unreferenced blobs from the blobstore
-                blobManager.handleBlobReferences(recordId, referencedBlobs, unReferencedBlobs);
-                newRecord.setResponseStatus(ResponseStatus.UPDATED);
-            } else {
-                newRecord.setResponseStatus(ResponseStatus.UP_TO_DATE);
+            RecordMutation mutation = prepareUpdate(record, recordAndOcc.getV1(), recordAndOcc.getV2(),
+                    useLatestRecordType, conditions, fieldTypes);
+            if (mutation.put != null && !applyMutation(mutation)) {
+                throw new ConcurrentRecordUpdateException(recordId);
             }
 
-            removeUnidirectionalState(newRecord);
-            return newRecord;
+            return mutation.record;
 
         } catch (IOException e) {
             throw new RecordException("Exception occurred while updating record '" + recordId + "' on HBase table",
@@ -476,6 +660,62 @@ public class HBaseRepository extends BaseRepository {
         }
     }
 
+    /**
+     * Prepares the update of a record (the non-mutable update case).
+     *
+     * @param storedRecord the current state of the record, as read from the record table
+     * @param oldOccBytes the current OCC value of the record
+     * @return the prepared mutation, which has no put in case there is nothing to write (the record
+     *         is up to date or the mutation conditions are not satisfied)
+     */
+    private RecordMutation prepareUpdate(Record record, Record storedRecord, byte[] oldOccBytes,
+            boolean useLatestRecordType, List<MutationCondition> conditions, FieldTypes fieldTypes)
+            throws RepositoryException, InterruptedException {
+
+        Record originalRecord = new UnmodifiableRecord(storedRecord);
+
+        RecordEvent recordEvent = new RecordEvent();
+        recordEvent.setType(Type.UPDATE);
+        recordEvent.setTableName(getTableName());
+        if (record.hasAttributes()) {
+            recordEvent.getAttributes().putAll(record.getAttributes());
+        }
+
+        for (RecordUpdateHook hook : updateHooks) {
+            hook.beforeUpdate(record, originalRecord, this, fieldTypes, recordEvent);
+        }
+
+        Record newRecord = record.cloneRecord();
+
+        Put put = new Put(newRecord.getId().toBytes());
+        Set<BlobReference> referencedBlobs = new HashSet<BlobReference>();
+        Set<BlobReference> unReferencedBlobs = new HashSet<BlobReference>();
+        long newVersion = originalRecord.getVersion() == null ? 1 : originalRecord.getVersion() + 1;
+
+        // Check the mutation conditions.
+        // It is important that we do this before checking if the record needs updating at all: otherwise,
+        // another client might already have performed the update we intended to do, which is problematic
+        // in cases like incrementing a counter (the counter should be updated twice, not once).
+        Record conditionsResponse = MutationConditionVerifier.checkConditions(originalRecord, conditions, this,
+                record);
+        if (conditionsResponse != null) {
+            return new RecordMutation(conditionsResponse);
+        }
+
+        if (calculateRecordChanges(newRecord, originalRecord, newVersion, put, recordEvent, referencedBlobs,
+                unReferencedBlobs, useLatestRecordType, fieldTypes)) {
+
+            put.add(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes, recordEvent.toBytes(binaryRecordEvents));
+            put.add(RecordCf.DATA.bytes, RecordColumn.OCC.bytes, 1L, nextOcc(oldOccBytes));
+
+            return new RecordMutation(newRecord, put, oldOccBytes, referencedBlobs, unReferencedBlobs, false);
+        } else {
+            newRecord.setResponseStatus(ResponseStatus.UP_TO_DATE);
+            removeUnidirectionalState(newRecord);
+            return new RecordMutation(newRecord);
+        }
+    }
+
     // Calculates the changes that are to be made on the record-row and puts
     // this information on the Put object and the RecordEvent
     private boolean calculateRecordChanges(Record record, Record originalRecord, Long version, Put put,
@@ -854,11 +1094,9 @@ public class HBaseRepository extends BaseRepository {
 
 
     public static void writeMetadataWithLengthSuffix(Metadata metadata, DataOutput output) {
-        DataOutput tmp = new DataOutputImpl();
-        MetadataSerDeser.write(metadata, tmp);
-        byte[] metadataBytes = tmp.toByteArray();
-        output.writeBytes(metadataBytes);
-        output.writeInt(metadataBytes.length);
+        int start = output.getSize();
+        MetadataSerDeser.write(metadata, output);
+        output.writeInt(output.getSize() - start);
     }
 
     private boolean isDeleteMarker(Object fieldValue) {
@@ -988,7 +1226,7 @@ public class HBaseRepository extends BaseRepository {
                 // Reserve blobs so no other records can use them
                 reserveBlobs(record.getId(), referencedBlobs);
 
-                put.add(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes, 1L, recordEvent.toJsonBytes());
+                put.add(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes, 1L, recordEvent.toBytes(binaryRecordEvents));
                 put.add(RecordCf.DATA.bytes, RecordColumn.OCC.bytes, 1L, nextOcc(oldOccBytes));
                 boolean occSuccess = recordTable.checkAndPut(put.getRow(), RecordCf.DATA.bytes, RecordColumn.OCC.bytes,
                         oldOccBytes, put);
@@ -1065,6 +1303,21 @@ public class HBaseRepository extends BaseRepository {
         delete(record.getId(), null, record.hasAttributes() ? record.getAttributes() : null);
     }
 
+    @Override
+    public List<RecordMutationResult> delete(List<RecordId> recordIds) throws RepositoryException {
+        ArgumentValidator.notNull(recordIds, "recordIds");
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(recordIds.size());
+        for (RecordId recordId : recordIds) {
+            try {
+                delete(recordId);
+                results.add(RecordMutationResult.success(null));
+            } catch (RepositoryException e) {
+                results.add(RecordMutationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
     private  Record delete(RecordId recordId, List<MutationCondition> conditions, Map<String,String> attributes)
             throws RepositoryException {
         ArgumentValidator.notNull(recordId, "recordId");
@@ -1131,7 +1384,7 @@ public class HBaseRepository extends BaseRepository {
 
             }
 
-            put.add(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes, recordEvent.toJsonBytes());
+            put.add(RecordCf.DATA.bytes, RecordColumn.PAYLOAD.bytes, recordEvent.toBytes(binaryRecordEvents));
             put.add(RecordCf.DATA.bytes, RecordColumn.OCC.bytes, 1L, nextOcc(oldOcc));
 
             // Hint towards the NGDATA HBase authorization coprocessor: for deletes, we need write access to all
@@ -1404,10 +1657,12 @@ public class HBaseRepository extends BaseRepository {
 
         private Put put;
         private Record parentRecord;
+        private IdentityRecordStack parentRecords;
 
         private FieldValueWriter(Put put, Record parentRecord) {
             this.put = put;
             this.parentRecord = parentRecord;
+            this.parentRecords = new IdentityRecordStack(parentRecord);
         }
 
         public FieldValueWriter addFieldValue(FieldType fieldType, Object value, Metadata metadata) throws RepositoryException, InterruptedException {
@@ -1415,16 +1670,34 @@ public class HBaseRepository extends BaseRepository {
         }
 
         public FieldValueWriter addFieldValue(FieldType fieldType, Object value, Metadata metadata, long version) throws RepositoryException, InterruptedException {
-            byte[] encodedFieldValue = encodeFieldValue(parentRecord, fieldType, value, metadata);
-            put.add(RecordCf.DATA.bytes, ((FieldTypeImpl)fieldType).getQualifier(), version, encodedFieldValue);
+            byte[] qualifier = ((FieldTypeImpl)fieldType).getQualifier();
+            if (isDeleteMarker(value)) {
+                put.add(RecordCf.DATA.bytes, qualifier, version, FieldFlags.getDeleteMarker());
+                return this;
+            }
+
+            DataOutputImpl buffer = ENCODE_BUFFER.get();
+            buffer.reset();
+            try {
+                encodeFieldValue(fieldType, value, metadata, buffer);
+                // The cell is built directly from the encode buffer, so the value is only copied once
+                byte[] row = put.getRow();
+                byte[] family = RecordCf.DATA.bytes;
+                put.add(new KeyValue(row, 0, row.length, family, 0, family.length, qualifier, 0, qualifier.length,
+                        version, KeyValue.Type.Put, buffer.getBuffer(), 0, buffer.getSize()));
+            } catch (IOException e) {
+                throw new RepositoryException("Error adding value of field " + fieldType.getName() + " to put", e);
+            } finally {
+                if (buffer.getBuffer().length > MAX_RETAINED_ENCODE_BUFFER_SIZE) {
+                    // Don't keep the memory of exceptionally large values around
+                    ENCODE_BUFFER.remove();
+                }
+            }
             return this;
         }
 
-        private byte[] encodeFieldValue(Record parentRecord, FieldType fieldType, Object fieldValue, Metadata metadata)
-                throws RepositoryException, InterruptedException {
-            if (isDeleteMarker(fieldValue)) {
-                return FieldFlags.getDeleteMarker();
-            }
+        private void encodeFieldValue(FieldType fieldType, Object fieldValue, Metadata metadata,
+                                      DataOutput dataOutput) throws RepositoryException, InterruptedException {
             ValueType valueType = fieldType.getValueType();
 
             // fieldValue should never be null by the time we get here, but check anyway
@@ -1438,15 +1711,17 @@ public class HBaseRepository extends BaseRepository {
                         fieldValue.getClass().getName()));
             }
 
-            DataOutput dataOutput = new DataOutputImpl();
             boolean hasMetadata = metadata != null && !metadata.getMap().isEmpty();
 
             dataOutput.writeByte(hasMetadata ? FieldFlags.METADATA_V1 : FieldFlags.DEFAULT);
             try {
-                valueType.write(fieldValue, dataOutput, new IdentityRecordStack(parentRecord));
+                valueType.write(fieldValue, dataOutput, parentRecords);
             } catch (InterruptedException e) {
+                parentRecords = new IdentityRecordStack(parentRecord);
                 throw e;
             } catch (Exception e) {
+                // the stack might not have been popped back to the parent record
+                parentRecords = new IdentityRecordStack(parentRecord);
                 // wrap the exception so that it is known what field causes the problem
                 throw new RepositoryException("Error serializing value for field " + fieldType.getName(), e);
             }
@@ -1460,8 +1735,6 @@ public class HBaseRepository extends BaseRepository {
                 }
                 writeMetadataWithLengthSuffix(metadata, dataOutput);
             }
-
-            return dataOutput.toByteArray();
         }
 
     }
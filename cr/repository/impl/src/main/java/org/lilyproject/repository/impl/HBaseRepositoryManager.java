@@ -30,6 +30,7 @@ import org.lilyproject.repository.api.TypeManager;
 import org.lilyproject.repository.model.api.RepositoryModel;
 import org.lilyproject.util.hbase.HBaseTableFactory;
 import org.lilyproject.util.hbase.LilyHBaseSchema;
+import org.lilyproject.util.repo.RecordEvent;
 
 public class HBaseRepositoryManager extends AbstractRepositoryManager {
 
@@ -52,7 +53,10 @@ public class HBaseRepositoryManager extends AbstractRepositoryManager {
         try {
             HTableInterface nonAuthHTable = LilyHBaseSchema.getRecordTable(hbaseTableFactory, key.getRepositoryName(), key.getTableName(), true);
             HTableInterface htable = wrapWithAuthorization(nonAuthHTable);
-            return new HBaseRepository(key, this, htable, nonAuthHTable, blobManager, tableManager, getRecordFactory());
+            HBaseRepository repository = new HBaseRepository(key, this, htable, nonAuthHTable, blobManager,
+                    tableManager, getRecordFactory());
+            repository.setBinaryRecordEvents(hbaseConf.getBoolean(RecordEvent.BINARY_FORMAT_PROPERTY, false));
+            return repository;
         } catch (org.apache.hadoop.hbase.TableNotFoundException e) {
             throw new TableNotFoundException(key.getRepositoryName(), key.getTableName());
         } catch (IOException e) {
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl;
+
+import org.lilyproject.bytes.impl.DataInputImpl;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.ValueType;
+
+/**
+ * The encoded value of a field, as stored in HBase, which is only decoded when it is accessed.
+ * See {@link RecordImpl#setLazyField}.
+ *
+ * <p>Instances are immutable, so they can be shared between clones of a record. The decoded value is
+ * not kept here but in the record, since decoded values are mutable.</p>
+ */
+final class LazyFieldValue {
+    private final ValueType valueType;
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    LazyFieldValue(ValueType valueType, byte[] data, int offset, int length) {
+        this.valueType = valueType;
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    Object decode() {
+        try {
+            return valueType.read(new DataInputImpl(data, offset, length));
+        } catch (RepositoryException e) {
+            throw new RuntimeException("Error decoding field value of type " + valueType.getName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while decoding field value of type " + valueType.getName(), e);
+        }
+    }
+}
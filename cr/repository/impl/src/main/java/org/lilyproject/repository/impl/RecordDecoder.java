@@ -16,6 +16,7 @@
 package org.lilyproject.repository.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -24,6 +25,7 @@ import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
 
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.Scan;
@@ -71,6 +73,8 @@ public class RecordDecoder {
         RECORD_TYPE_VERSION_QUALIFIERS.put(Scope.VERSIONED_MUTABLE, RecordColumn.VERSIONED_MUTABLE_RT_VERSION.bytes);
     }
 
+    private static final Scope[] SCOPES = Scope.values();
+
     public static final List<byte[]> SYSTEM_FIELDS = new ArrayList<byte[]>();
 
     static {
@@ -113,39 +117,81 @@ public class RecordDecoder {
         Record record = recordFactory.newRecord(recordId);
         record.setVersion(requestedVersion);
 
+        // With our own record implementation, field values are only decoded once they are accessed, which saves
+        // a lot of work when only a few fields of a wide record are used.
+        RecordImpl lazyRecord = record instanceof RecordImpl ? (RecordImpl)record : null;
+
         // If the version is null, this means the record has no version an thus only contains non-versioned fields (if any)
         // All non-versioned fields are stored at version 1, so we extract the fields at version 1
         Long versionToRead = (requestedVersion == null) ? 1L : requestedVersion;
 
-        // Get a map of all fields with their values for each (cell-)version
-        NavigableMap<byte[], NavigableMap<Long, byte[]>> mapWithVersions = result.getMap().get(RecordCf.DATA.bytes);
-        if (mapWithVersions != null) {
-            // Iterate over all columns
-            for (Map.Entry<byte[], NavigableMap<Long, byte[]>> columnWithAllVersions : mapWithVersions.entrySet()) {
-                // Check if the retrieved column is from a data field, and not a system field
-                byte[] key = columnWithAllVersions.getKey();
-                if (key[0] == LilyHBaseSchema.RecordColumn.DATA_PREFIX) {
-                    NavigableMap<Long, byte[]> allValueVersions = columnWithAllVersions.getValue();
-                    // Get the entry for the version (can be a cell with a lower version number if the field was not changed)
-                    Map.Entry<Long, byte[]> ceilingEntry = allValueVersions.ceilingEntry(versionToRead);
-                    if (ceilingEntry != null) {
+        // Walk once over the cells of the row rather than building the nested maps of Result.getMap(). The cells
+        // are sorted by column, and within a column from the most recent to the oldest version, so the cell to use
+        // for a column is the first one which is not more recent than the version we're reading.
+        KeyValue[] recordTypeIdCells = new KeyValue[SCOPES.length];
+        KeyValue[] recordTypeVersionCells = new KeyValue[SCOPES.length];
+        KeyValue[] cells = result.raw();
+        if (cells != null) {
+            // The column of the previous cell, and whether a cell has been picked for it already
+            byte[] columnBuffer = null;
+            int columnOffset = 0;
+            int columnLength = 0;
+            boolean columnDone = false;
+
+            for (KeyValue cell : cells) {
+                if (!cell.matchingFamily(RecordCf.DATA.bytes)) {
+                    continue;
+                }
+                byte[] buffer = cell.getBuffer();
+                int qualifierOffset = cell.getQualifierOffset();
+                int qualifierLength = cell.getQualifierLength();
+                if (qualifierLength == 0) {
+                    continue;
+                }
+
+                if (columnBuffer != null && Bytes.equals(buffer, qualifierOffset, qualifierLength,
+                        columnBuffer, columnOffset, columnLength)) {
+                    if (columnDone) {
+                        continue;
+                    }
+                } else {
+                    columnBuffer = buffer;
+                    columnOffset = qualifierOffset;
+                    columnLength = qualifierLength;
+                    columnDone = false;
+                }
+
+                // Check if the column is from a data field, and not a system field
+                if (buffer[qualifierOffset] == RecordColumn.DATA_PREFIX) {
+                    // This can be a cell with a lower version number if the field was not changed
+                    if (cell.getTimestamp() <= versionToRead) {
+                        columnDone = true;
                         // Extract and decode the value of the field
-                        ExtractedField field =
-                                extractField(key, ceilingEntry.getValue(), readContext, fieldTypes);
+                        ExtractedField field = extractField(buffer, qualifierOffset + 1, qualifierLength - 1,
+                                buffer, cell.getValueOffset(), cell.getValueLength(), readContext, fieldTypes,
+                                lazyRecord != null);
                         if (field != null) {
-                            record.setField(field.type.getName(), field.value);
+                            if (lazyRecord != null) {
+                                lazyRecord.setLazyField(field.type.getName(), (LazyFieldValue)field.value);
+                            } else {
+                                record.setField(field.type.getName(), field.value);
+                            }
                             if (field.metadata != null) {
                                 record.setMetadata(field.type.getName(), field.metadata);
                             }
                         }
                     }
+                } else if (requestedVersion == null || cell.getTimestamp() <= requestedVersion) {
+                    // Without a requested version, the latest record type is used
+                    columnDone = true;
+                    collectRecordTypeCell(cell, recordTypeIdCells, recordTypeVersionCells);
                 }
             }
         }
 
-        for (Scope scope : Scope.values()) {
-            Pair<SchemaId, Long> recordTypePair =  requestedVersion == null ? extractLatestRecordType(scope, result) :
-                extractVersionRecordType(scope, result, requestedVersion);
+        for (Scope scope : SCOPES) {
+            Pair<SchemaId, Long> recordTypePair =
+                    toRecordType(recordTypeIdCells[scope.ordinal()], recordTypeVersionCells[scope.ordinal()]);
             if (recordTypePair != null) {
                 // We read the last version of the record type, though it might seem more logical to read
                 // the exact version stored in the record. However, this doesn't make any difference, since
@@ -237,7 +283,9 @@ public class RecordDecoder {
                                     !lastDecodedFieldVersion.equals(ceilingEntry.getKey())) {
                                 // Not yet decoded, do it now
                                 lastDecodedFieldVersion = ceilingEntry.getKey();
-                                lastDecodedField = extractField(key, ceilingEntry.getValue(), null, fieldTypes);
+                                byte[] value = ceilingEntry.getValue();
+                                lastDecodedField = extractField(key, 1, key.length - 1, value, 0, value.length, null,
+                                        fieldTypes, false);
                             }
                             if (lastDecodedField != null) {
                                 record.setField(lastDecodedField.type.getName(), lastDecodedField.value);
@@ -288,75 +336,91 @@ public class RecordDecoder {
         }
     }
 
-    private ExtractedField extractField(byte[] key, byte[] prefixedValue, ReadContext context,
-                                                 FieldTypes fieldTypes)
+    /**
+     * Extracts a field from its cell, the field type id and the value are passed as ranges of (possibly
+     * shared) arrays so that no copies of them need to be made.
+     *
+     * @param lazy if true, the value of the returned field is a {@link LazyFieldValue} rather than the
+     *             decoded value
+     */
+    private ExtractedField extractField(byte[] idBuffer, int idOffset, int idLength, byte[] valueBuffer,
+                                        int valueOffset, int valueLength, ReadContext context,
+                                        FieldTypes fieldTypes, boolean lazy)
             throws RepositoryException, InterruptedException {
-        byte flags = prefixedValue[0];
+        byte flags = valueBuffer[valueOffset];
         if (FieldFlags.isDeletedField(flags)) {
             return null;
         }
-        FieldType fieldType = fieldTypes.getFieldType(new SchemaIdImpl(Bytes.tail(key, key.length - 1)));
+        FieldType fieldType;
+        if (fieldTypes instanceof FieldTypesImpl) {
+            // Avoid creating a SchemaId for each cell
+            fieldType = ((FieldTypesImpl) fieldTypes).getFieldType(idBuffer, idOffset, idLength);
+        } else {
+            fieldType = fieldTypes.getFieldType(
+                    new SchemaIdImpl(Arrays.copyOfRange(idBuffer, idOffset, idOffset + idLength)));
+        }
         if (context != null) {
             context.addFieldType(fieldType);
         }
         ValueType valueType = fieldType.getValueType();
 
+        int valueEnd = valueOffset + valueLength;
         Metadata metadata = null;
         int metadataSpace = 0; // space taken up by metadata (= metadata itself + length suffix)
         int metadataEncodingVersion = FieldFlags.getFieldMetadataVersion(flags);
         if (metadataEncodingVersion == 0) {
             // there is no metadata
         } else if (metadataEncodingVersion == 1) {
-            int metadataSize = Bytes.toInt(prefixedValue, prefixedValue.length - Bytes.SIZEOF_INT, Bytes.SIZEOF_INT);
+            int metadataSize = Bytes.toInt(valueBuffer, valueEnd - Bytes.SIZEOF_INT, Bytes.SIZEOF_INT);
             metadataSpace = metadataSize + Bytes.SIZEOF_INT;
-            metadata = MetadataSerDeser.read(
-                    new DataInputImpl(prefixedValue, prefixedValue.length - metadataSpace, metadataSize));
+            metadata = MetadataSerDeser.read(new DataInputImpl(valueBuffer, valueEnd - metadataSpace, metadataSize));
         } else {
             throw new RuntimeException("Unsupported field metadata encoding version: " + metadataEncodingVersion);
         }
 
-        Object value = valueType.read(new DataInputImpl(prefixedValue, FieldFlags.SIZE_OF_FIELD_FLAGS,
-                prefixedValue.length - FieldFlags.SIZE_OF_FIELD_FLAGS - metadataSpace));
+        int fieldValueOffset = valueOffset + FieldFlags.SIZE_OF_FIELD_FLAGS;
+        int fieldValueLength = valueLength - FieldFlags.SIZE_OF_FIELD_FLAGS - metadataSpace;
+        Object value;
+        if (lazy) {
+            value = new LazyFieldValue(valueType, valueBuffer, fieldValueOffset, fieldValueLength);
+        } else {
+            value = valueType.read(new DataInputImpl(valueBuffer, fieldValueOffset, fieldValueLength));
+        }
 
         return new ExtractedField(fieldType, value, metadata);
     }
 
     /**
-     * Extracts the latest record type for a specific scope from the Result.
+     * Keeps the cell in the array for its scope if it is one of the record type columns.
      */
-    private Pair<SchemaId, Long> extractLatestRecordType(Scope scope, Result result) {
-        byte[] idBytes = getLatest(result, RecordCf.DATA.bytes, RECORD_TYPE_ID_QUALIFIERS.get(scope));
-        byte[] versionBytes = getLatest(result, RecordCf.DATA.bytes, RECORD_TYPE_VERSION_QUALIFIERS.get(scope));
-        if ((idBytes == null || idBytes.length == 0) || (versionBytes == null || versionBytes.length == 0)) {
+    private static void collectRecordTypeCell(KeyValue cell, KeyValue[] idCells, KeyValue[] versionCells) {
+        for (Scope scope : SCOPES) {
+            if (cell.matchingQualifier(RECORD_TYPE_ID_QUALIFIERS.get(scope))) {
+                idCells[scope.ordinal()] = cell;
+                return;
+            } else if (cell.matchingQualifier(RECORD_TYPE_VERSION_QUALIFIERS.get(scope))) {
+                versionCells[scope.ordinal()] = cell;
+                return;
+            }
+        }
+    }
+
+    private static Pair<SchemaId, Long> toRecordType(KeyValue idCell, KeyValue versionCell) {
+        if (idCell == null || idCell.getValueLength() == 0 || versionCell == null
+                || versionCell.getValueLength() == 0) {
             return null; // No record type was found
         }
-        return new Pair<SchemaId, Long>(new SchemaIdImpl(idBytes), Bytes.toLong(versionBytes));
+        return new Pair<SchemaId, Long>(new SchemaIdImpl(idCell.getValue()),
+                Bytes.toLong(versionCell.getBuffer(), versionCell.getValueOffset(), versionCell.getValueLength()));
     }
 
     /**
-     * Gets the latest value for a family/qualifier from a Result object, using its
-     * getMap(). Most of the time this will be more efficient than using
-     * Result.getValue() since the map will need to built anyway when reading the
-     * record.
+     * Gets the latest value for a family/qualifier from a Result object. This looks up the cell in the
+     * sorted cells of the Result, and does not require the map of Result.getMap() to be built.
      */
     public byte[] getLatest(Result result, byte[] family, byte[] qualifier) {
-        NavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> map = result.getMap();
-        if (map == null) {
-            return null;
-        }
-
-        NavigableMap<byte[], NavigableMap<Long, byte[]>> qualifiers = map.get(family);
-        if (qualifiers == null) {
-            return null;
-        }
-
-        NavigableMap<Long, byte[]> timestamps = qualifiers.get(qualifier);
-        if (timestamps == null) {
-            return null;
-        }
-
-        Map.Entry<Long, byte[]> entry = timestamps.lastEntry();
-        return entry == null ? null : entry.getValue();
+        KeyValue cell = result.getColumnLatest(family, qualifier);
+        return cell == null ? null : cell.getValue();
     }
 
     /**
@@ -53,6 +53,9 @@ public class RecordImpl implements Record, Cloneable {
 
     private Map<QName, Metadata> metadatas;
 
+    /** Number of entries in the fields map which are a {@link LazyFieldValue}. */
+    private int lazyFieldCount;
+
     /**
      * This constructor should not be called directly.
      * @use {@link Repository#newRecord} instead
@@ -131,7 +134,20 @@ public class RecordImpl implements Record, Cloneable {
 
     @Override
     public void setField(QName name, Object value) {
-        fields.put(name, value);
+        if (fields.put(name, value) instanceof LazyFieldValue) {
+            lazyFieldCount--;
+        }
+        fieldsToDelete.remove(name);
+    }
+
+    /**
+     * Sets a field whose value will only be decoded when it is first accessed, after which the decoded value
+     * takes its place. This avoids the decoding cost for the fields of a record that are never looked at.
+     */
+    void setLazyField(QName name, LazyFieldValue value) {
+        if (!(fields.put(name, value) instanceof LazyFieldValue)) {
+            lazyFieldCount++;
+        }
         fieldsToDelete.remove(name);
     }
 
@@ -141,9 +157,42 @@ public class RecordImpl implements Record, Cloneable {
         if (field == null) {
             throw new FieldNotFoundException(name);
         }
+        if (field instanceof LazyFieldValue) {
+            field = decodeLazyField(name);
+        }
         return (T)field;
     }
 
+    /**
+     * Replaces a lazy field value by its decoded value. Reading a record should be safe from multiple threads,
+     * so the methods that decode lazy values are synchronized. Replacing the value of an existing key does not
+     * change the structure of the fields map, which keeps the unsynchronized lookups safe.
+     */
+    private synchronized Object decodeLazyField(QName name) {
+        Object field = fields.get(name);
+        if (field instanceof LazyFieldValue) {
+            field = ((LazyFieldValue)field).decode();
+            fields.put(name, field);
+            lazyFieldCount--;
+        }
+        return field;
+    }
+
+    /**
+     * Decodes all lazy field values, needed before the fields map is exposed or compared.
+     */
+    private synchronized void decodeLazyFields() {
+        if (lazyFieldCount == 0) {
+            return;
+        }
+        for (Entry<QName, Object> entry : fields.entrySet()) {
+            if (entry.getValue() instanceof LazyFieldValue) {
+                entry.setValue(((LazyFieldValue)entry.getValue()).decode());
+            }
+        }
+        lazyFieldCount = 0;
+    }
+
     @Override
     public boolean hasField(QName fieldName) {
         return fields.containsKey(fieldName);
@@ -151,12 +200,15 @@ public class RecordImpl implements Record, Cloneable {
 
     @Override
     public Map<QName, Object> getFields() {
+        decodeLazyFields();
         return fields;
     }
 
     @Override
     public void delete(QName fieldName, boolean addToFieldsToDelete) {
-        fields.remove(fieldName);
+        if (fields.remove(fieldName) instanceof LazyFieldValue) {
+            lazyFieldCount--;
+        }
 
         if (addToFieldsToDelete) {
             getFieldsToDelete().add(fieldName);
@@ -215,8 +267,13 @@ public class RecordImpl implements Record, Cloneable {
         record.version = version;
         record.recordTypes.putAll(recordTypes);
         parentRecords.push(this);
-        for (Entry<QName, Object> entry : fields.entrySet()) {
-            record.fields.put(entry.getKey(), tryCloneValue(parentRecords, entry));
+        // synchronized so that the lazy field count matches the copied values
+        synchronized (this) {
+            for (Entry<QName, Object> entry : fields.entrySet()) {
+                record.fields.put(entry.getKey(), tryCloneValue(parentRecords, entry));
+            }
+            // lazy values are immutable and thus copied as-is
+            record.lazyFieldCount = lazyFieldCount;
         }
         parentRecords.pop();
         if (fieldsToDelete.size() > 0) { // addAll seems expensive even when list is empty
@@ -309,11 +366,12 @@ public class RecordImpl implements Record, Cloneable {
             Record record = (Record) value;
             return (record).cloneRecord(parentRecords);
         }
-        return value; // All other values are immutable
+        return value; // All other values are immutable, this includes LazyFieldValue
     }
 
     @Override
     public int hashCode() {
+        decodeLazyFields();
         final int prime = 31;
         int result = 1;
         result = prime * result + ((fields == null) ? 0 : fields.hashCode());
@@ -376,6 +434,8 @@ public class RecordImpl implements Record, Cloneable {
             return false;
         }
         RecordImpl other = (RecordImpl) obj;
+        decodeLazyFields();
+        other.decodeLazyFields();
 
         if (fields == null) {
             if (other.fields != null) {
@@ -413,6 +473,7 @@ public class RecordImpl implements Record, Cloneable {
 
     @Override
     public String toString() {
+        decodeLazyFields();
         return "RecordImpl [id=" + id + ", version=" + version + ", recordTypes=" + recordTypes
                         + ", fields=" + fields + ", fieldsToDelete="
                         + fieldsToDelete + "]";
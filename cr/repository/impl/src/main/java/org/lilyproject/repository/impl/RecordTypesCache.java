@@ -62,6 +62,10 @@ public class RecordTypesCache {
 
     private Map<String, Map<SchemaId, RecordType>> buckets;
 
+    // Copy of the content of the buckets for fast lookups by id. It is replaced as a whole on every
+    // change, which happens with a lock on the monitor.
+    private volatile SchemaIdMap<RecordType> idCache = new SchemaIdMap<RecordType>();
+
     private ConcurrentHashMap<String, Map<SchemaId, RecordType>> localUpdateBuckets = new ConcurrentHashMap<String, Map<SchemaId, RecordType>>();
 
     public RecordTypesCache() {
@@ -215,12 +219,20 @@ public class RecordTypesCache {
      * @return
      */
     public RecordType getRecordType(SchemaId id) {
-        String bucketId = AbstractSchemaCache.encodeHex(id.getBytes());
-        Map<SchemaId, RecordType> bucket = buckets.get(bucketId);
-        if (bucket == null) {
-            return null;
+        return idCache.get(id);
+    }
+
+    /**
+     * Adds the given record types to the id cache.
+     */
+    private void updateIdCache(Collection<RecordType> recordTypes) {
+        synchronized (monitor) {
+            SchemaIdMap<RecordType> newIdCache = idCache.copy();
+            for (RecordType recordType : recordTypes) {
+                newIdCache.put(recordType.getId(), recordType);
+            }
+            idCache = newIdCache;
         }
-        return bucket.get(id);
     }
 
     /**
@@ -238,6 +250,7 @@ public class RecordTypesCache {
             }
             nameCacheOutOfDate = true;
             childRecordTypesOutOfDate = true;
+            List<RecordType> updatedRecordTypes = new ArrayList<RecordType>(recordTypes.size());
             // One would expect that existing buckets need to be cleared first.
             // But since record types cannot be deleted we will just overwrite
             // them.
@@ -254,8 +267,10 @@ public class RecordTypesCache {
                         buckets.put(bucketId, bucket);
                     }
                     bucket.put(recordType.getId(), recordType);
+                    updatedRecordTypes.add(recordType);
                 }
             }
+            updateIdCache(updatedRecordTypes);
         }
     }
 
@@ -282,11 +297,14 @@ public class RecordTypesCache {
                 buckets.put(bucketId, bucket);
             }
             // Fill the bucket with the new record types
+            List<RecordType> updatedRecordTypes = new ArrayList<RecordType>(recordTypes.size());
             for (RecordType recordType : recordTypes) {
                 if (!removeFromLocalUpdateBucket(recordType, bucketId)) {
                     bucket.put(recordType.getId(), recordType);
+                    updatedRecordTypes.add(recordType);
                 }
             }
+            updateIdCache(updatedRecordTypes);
         }
         // Decrement the number of buckets that are being updated again.
         decCount();
@@ -313,6 +331,7 @@ public class RecordTypesCache {
                 buckets.put(bucketId, bucket);
             }
             bucket.put(id, rtToCache);
+            updateIdCache(Collections.singleton(rtToCache));
             // Mark that this recordType is updated locally
             // and that the next refresh can be ignored
             // since this refresh can contain an old recordType
@@ -353,6 +372,7 @@ public class RecordTypesCache {
 
     public void clear() {
         nameCache.clear();
+        idCache = new SchemaIdMap<RecordType>();
 
         for (Map bucket : buckets.values()) {
             bucket.clear();
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.util.ArgumentValidator;
+
+/**
+ * A map from {@link SchemaId} to a value, specialized for the lookups done for every cell that is read.
+ *
+ * <p>Schema ids are 16 bytes long, the map stores them as two longs in open addressing tables. Lookups
+ * can be done straight on the bytes of an HBase column qualifier, without creating a SchemaId or copying
+ * the bytes.</p>
+ *
+ * <p>The entries are spread over a fixed number of segments, each being a small table of its own. A
+ * {@link #copy()} shares the segments with the original map, a segment is only copied when it is changed,
+ * so that a copy in which a few schema ids are put costs a few segments rather than the whole map.</p>
+ *
+ * <p>This map is not thread safe. It is meant to be filled once and then only read, concurrent readers
+ * are fine as long as the map is safely published.</p>
+ */
+public final class SchemaIdMap<V> {
+    private static final int SCHEMA_ID_LENGTH = 16;
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int MIN_SEGMENT_CAPACITY = 8;
+
+    private final Segment[] segments;
+    // Whether the segment at the same index belongs to this map only, and can thus be changed in place
+    private final boolean[] ownedSegments;
+    private final int segmentCapacity;
+    private int size;
+
+    public SchemaIdMap() {
+        this(0);
+    }
+
+    public SchemaIdMap(int expectedSize) {
+        int capacity = MIN_SEGMENT_CAPACITY;
+        // Keep the load factor at most 0.5, so that probe sequences stay short
+        while (capacity * SEGMENT_COUNT < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        segmentCapacity = capacity;
+        segments = new Segment[SEGMENT_COUNT];
+        ownedSegments = new boolean[SEGMENT_COUNT];
+    }
+
+    private SchemaIdMap(SchemaIdMap<V> other) {
+        segmentCapacity = other.segmentCapacity;
+        segments = other.segments.clone();
+        ownedSegments = new boolean[SEGMENT_COUNT];
+        size = other.size;
+        // The segments are shared from now on, also the original has to copy them before changing them
+        Arrays.fill(other.ownedSegments, false);
+    }
+
+    /**
+     * Returns the value for the given schema id, or null if there is none.
+     */
+    public V get(SchemaId id) {
+        byte[] bytes = id.getBytes();
+        return get(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the value for the schema id contained in the given range of bytes, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(byte[] bytes, int offset, int length) {
+        if (length != SCHEMA_ID_LENGTH) {
+            return null;
+        }
+        long msb = Bytes.toLong(bytes, offset);
+        long lsb = Bytes.toLong(bytes, offset + Bytes.SIZEOF_LONG);
+        int hash = hash(msb, lsb);
+        Segment segment = segments[segmentIndex(hash)];
+        return segment != null ? (V) segment.get(msb, lsb, hash) : null;
+    }
+
+    /**
+     * Associates the value with the given schema id.
+     *
+     * @return the previous value for the schema id, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(SchemaId id, V value) {
+        ArgumentValidator.notNull(id, "id");
+        ArgumentValidator.notNull(value, "value");
+        byte[] bytes = id.getBytes();
+        if (bytes.length != SCHEMA_ID_LENGTH) {
+            throw new IllegalArgumentException("Unexpected schema id length: " + bytes.length);
+        }
+        long msb = Bytes.toLong(bytes, 0);
+        long lsb = Bytes.toLong(bytes, Bytes.SIZEOF_LONG);
+        int hash = hash(msb, lsb);
+
+        V previous = (V) getOwnedSegment(segmentIndex(hash)).put(msb, lsb, hash, value);
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values contained in this map, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<V>(size);
+        for (Segment segment : segments) {
+            if (segment != null) {
+                for (Object value : segment.values) {
+                    if (value != null) {
+                        result.add((V) value);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an independent copy of this map. The copy is cheap: the contents are only copied, per segment,
+     * when either map is changed.
+     */
+    public SchemaIdMap<V> copy() {
+        return new SchemaIdMap<V>(this);
+    }
+
+    /**
+     * Returns the segment at the given index, creating or copying it if it can not be changed in place.
+     */
+    private Segment getOwnedSegment(int index) {
+        if (!ownedSegments[index]) {
+            Segment segment = segments[index];
+            segments[index] = segment != null ? new Segment(segment) : new Segment(segmentCapacity);
+            ownedSegments[index] = true;
+        }
+        return segments[index];
+    }
+
+    private static int segmentIndex(int hash) {
+        // The top bits, the slot within the segment is chosen by the low bits
+        return hash >>> (Integer.SIZE - SEGMENT_BITS);
+    }
+
+    private static int hash(long msb, long lsb) {
+        // Schema ids are mostly random UUIDs, the mixing is to be safe against ids which are not
+        long h = msb * 0x9E3779B97F4A7C15L + lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * An open addressing table holding part of the entries.
+     */
+    private static final class Segment {
+        private long[] msbs;
+        private long[] lsbs;
+        private Object[] values;
+        private int size;
+
+        Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        Segment(Segment other) {
+            msbs = other.msbs.clone();
+            lsbs = other.lsbs.clone();
+            values = other.values.clone();
+            size = other.size;
+        }
+
+        private void allocate(int capacity) {
+            msbs = new long[capacity];
+            lsbs = new long[capacity];
+            values = new Object[capacity];
+        }
+
+        Object get(long msb, long lsb, int hash) {
+            return values[indexOf(msb, lsb, hash)];
+        }
+
+        Object put(long msb, long lsb, int hash, Object value) {
+            int index = indexOf(msb, lsb, hash);
+            Object previous = values[index];
+            if (previous == null) {
+                if ((size + 1) * 2 > values.length) {
+                    resize(values.length << 1);
+                    index = indexOf(msb, lsb, hash);
+                }
+                msbs[index] = msb;
+                lsbs[index] = lsb;
+                size++;
+            }
+            values[index] = value;
+            return previous;
+        }
+
+        /**
+         * Returns the slot holding the given schema id, or the empty slot where it should be put.
+         */
+        private int indexOf(long msb, long lsb, int hash) {
+            int mask = values.length - 1;
+            int index = hash & mask;
+            while (values[index] != null && (msbs[index] != msb || lsbs[index] != lsb)) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private void resize(int capacity) {
+            long[] oldMsbs = msbs;
+            long[] oldLsbs = lsbs;
+            Object[] oldValues = values;
+            allocate(capacity);
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int index = indexOf(oldMsbs[i], oldLsbs[i], hash(oldMsbs[i], oldLsbs[i]));
+                    msbs[index] = oldMsbs[i];
+                    lsbs[index] = oldLsbs[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -38,6 +38,7 @@ import org.lilyproject.repository.api.RecordBuilder;
 import org.lilyproject.repository.api.RecordException;
 import org.lilyproject.repository.api.RecordFactory;
 import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.RepositoryException;
 import org.lilyproject.repository.api.TableManager;
 import org.lilyproject.repository.impl.AbstractRepositoryManager;
@@ -45,6 +46,7 @@ import org.lilyproject.repository.impl.BaseRepository;
 import org.lilyproject.repository.impl.RecordBuilderImpl;
 import org.lilyproject.repository.impl.RepoTableKey;
 import org.lilyproject.repository.spi.AuthorizationContextHolder;
+import org.lilyproject.util.ArgumentValidator;
 import org.lilyproject.util.io.Closer;
 
 // ATTENTION: when adding new methods, do not forget to add handling for UndeclaredThrowableException! This is
@@ -73,6 +75,7 @@ public class RemoteRepository extends BaseRepository {
 
     @Override
     public void close() throws IOException {
+        stopMultiGetExecutor();
         Closer.close(client);
     }
 
@@ -101,6 +104,23 @@ public class RemoteRepository extends BaseRepository {
         }
     }
 
+    @Override
+    public List<RecordMutationResult> create(List<Record> records) throws RepositoryException, InterruptedException {
+        ArgumentValidator.notNull(records, "records");
+        try {
+            return converter.convertAvroMutationResults(lilyProxy.createBatch(getAuthzContext(),
+                    converter.convertRecords(records, this), repositoryName, tableName), this);
+        } catch (AvroRepositoryException e) {
+            throw converter.convert(e);
+        } catch (AvroGenericException e) {
+            throw converter.convert(e);
+        } catch (AvroRemoteException e) {
+            throw handleAvroRemoteException(e);
+        } catch (UndeclaredThrowableException e) {
+            throw handleUndeclaredRecordThrowable(e);
+        }
+    }
+
     @Override
     public Record delete(RecordId recordId, List<MutationCondition> conditions)
             throws RepositoryException, InterruptedException {
@@ -150,6 +170,24 @@ public class RemoteRepository extends BaseRepository {
         }
     }
 
+    @Override
+    public List<RecordMutationResult> delete(List<RecordId> recordIds)
+            throws RepositoryException, InterruptedException {
+        ArgumentValidator.notNull(recordIds, "recordIds");
+        try {
+            return converter.convertAvroMutationResults(lilyProxy.deleteBatch(getAuthzContext(),
+                    converter.convertRecordIds(recordIds), repositoryName, tableName), this);
+        } catch (AvroRepositoryException e) {
+            throw converter.convert(e);
+        } catch (AvroGenericException e) {
+            throw converter.convert(e);
+        } catch (AvroRemoteException e) {
+            throw handleAvroRemoteException(e);
+        } catch (UndeclaredThrowableException e) {
+            throw handleUndeclaredRecordThrowable(e);
+        }
+    }
+
     @Override
     public Record update(Record record) throws RepositoryException, InterruptedException {
         return update(record, false, true);
@@ -186,6 +224,25 @@ public class RemoteRepository extends BaseRepository {
         }
     }
 
+    @Override
+    public List<RecordMutationResult> update(List<Record> records, boolean updateVersion,
+            boolean useLatestRecordType) throws RepositoryException, InterruptedException {
+        ArgumentValidator.notNull(records, "records");
+        try {
+            return converter.convertAvroMutationResults(lilyProxy.updateBatch(getAuthzContext(),
+                    converter.convertRecords(records, this), repositoryName, tableName, updateVersion,
+                    useLatestRecordType), this);
+        } catch (AvroRepositoryException e) {
+            throw converter.convert(e);
+        } catch (AvroGenericException e) {
+            throw converter.convert(e);
+        } catch (AvroRemoteException e) {
+            throw handleAvroRemoteException(e);
+        } catch (UndeclaredThrowableException e) {
+            throw handleUndeclaredRecordThrowable(e);
+        }
+    }
+
     @Override
     public Record createOrUpdate(Record record) throws RepositoryException, InterruptedException {
         return createOrUpdate(record, true);
@@ -208,6 +265,30 @@ public class RemoteRepository extends BaseRepository {
         }
     }
 
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records)
+            throws RepositoryException, InterruptedException {
+        return createOrUpdate(records, true);
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException {
+        ArgumentValidator.notNull(records, "records");
+        try {
+            return converter.convertAvroMutationResults(lilyProxy.createOrUpdateBatch(getAuthzContext(),
+                    converter.convertRecords(records, this), repositoryName, tableName, useLatestRecordType), this);
+        } catch (AvroRepositoryException e) {
+            throw converter.convert(e);
+        } catch (AvroGenericException e) {
+            throw converter.convert(e);
+        } catch (AvroRemoteException e) {
+            throw handleAvroRemoteException(e);
+        } catch (UndeclaredThrowableException e) {
+            throw handleUndeclaredRecordThrowable(e);
+        }
+    }
+
     @Override
     public Set<RecordId> getVariants(RecordId recordId) throws RepositoryException, InterruptedException {
         try {
@@ -28,14 +28,17 @@ import org.junit.Test;
 import org.lilyproject.avro.AvroConverter;
 import org.lilyproject.avro.AvroLily;
 import org.lilyproject.avro.AvroMutationCondition;
+import org.lilyproject.avro.AvroMutationResult;
 import org.lilyproject.repository.api.BlobManager;
 import org.lilyproject.repository.api.MutationCondition;
 import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.RecordFactory;
 import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.impl.RepoTableKey;
 import org.lilyproject.util.hbase.LilyHBaseSchema.Table;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -109,4 +112,33 @@ public class RemoteRepositoryTest {
         verify(avroLily).delete(null, encodedRecordId, repositoryName, Table.RECORD.name, null, attributes);
     }
 
+    @Test
+    public void testCreateOrUpdate_Batch() throws Exception {
+        List<Record> records = Lists.newArrayList(mock(Record.class), mock(Record.class));
+        List<ByteBuffer> encodedRecords = Lists.newArrayList(mock(ByteBuffer.class), mock(ByteBuffer.class));
+        List<AvroMutationResult> avroResults =
+                Lists.newArrayList(mock(AvroMutationResult.class), mock(AvroMutationResult.class));
+        List<RecordMutationResult> results = Lists.newArrayList(mock(RecordMutationResult.class),
+                mock(RecordMutationResult.class));
+
+        when(avroConverter.convertRecords(records, remoteRepository)).thenReturn(encodedRecords);
+        when(avroLily.createOrUpdateBatch(null, encodedRecords, repositoryName, Table.RECORD.name, true))
+                .thenReturn(avroResults);
+        when(avroConverter.convertAvroMutationResults(avroResults, remoteRepository)).thenReturn(results);
+
+        assertEquals(results, remoteRepository.createOrUpdate(records));
+    }
+
+    @Test
+    public void testDelete_Batch() throws Exception {
+        List<RecordId> recordIds = Lists.newArrayList(mock(RecordId.class), mock(RecordId.class));
+        List<ByteBuffer> encodedRecordIds = Lists.newArrayList(mock(ByteBuffer.class), mock(ByteBuffer.class));
+
+        when(avroConverter.convertRecordIds(recordIds)).thenReturn(encodedRecordIds);
+
+        remoteRepository.delete(recordIds);
+
+        verify(avroLily).deleteBatch(null, encodedRecordIds, repositoryName, Table.RECORD.name);
+    }
+
 }
@@ -18,6 +18,7 @@ package org.lilyproject.repository.spi;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -34,6 +35,7 @@ import org.lilyproject.repository.api.RecordBuilder;
 import org.lilyproject.repository.api.RecordException;
 import org.lilyproject.repository.api.RecordFactory;
 import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.RecordScan;
 import org.lilyproject.repository.api.RecordScanner;
 import org.lilyproject.repository.api.Repository;
@@ -44,6 +46,10 @@ import org.lilyproject.repository.api.TypeManager;
 
 /**
  * Base class for implementing a repository decorator, avoids having to delegate all methods.
+ *
+ * <p>The batch methods, such as {@link #create(List)}, call the corresponding single-record method of this
+ * decorator for each record, so that a decorator only needs to override the single-record methods. A decorator
+ * which can handle a batch as a whole can override the batch methods to pass the batch on to the delegate.</p>
  */
 public class BaseRepositoryDecorator implements Repository {
     protected Repository delegate;
@@ -120,6 +126,76 @@ public class BaseRepositoryDecorator implements Repository {
         return delegate.createOrUpdate(record, useLatestRecordType);
     }
 
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records)
+            throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(records.size());
+        for (Record record : records) {
+            try {
+                results.add(RecordMutationResult.success(createOrUpdate(record)));
+            } catch (RepositoryException e) {
+                results.add(RecordMutationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<RecordMutationResult> createOrUpdate(List<Record> records, boolean useLatestRecordType)
+            throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(records.size());
+        for (Record record : records) {
+            try {
+                results.add(RecordMutationResult.success(createOrUpdate(record, useLatestRecordType)));
+            } catch (RepositoryException e) {
+                results.add(RecordMutationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<RecordMutationResult> create(List<Record> records) throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(records.size());
+        for (Record record : records) {
+            try {
+                results.add(RecordMutationResult.success(create(record)));
+            } catch (RepositoryException e) {
+                results.add(RecordMutationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<RecordMutationResult> update(List<Record> records, boolean updateVersion,
+            boolean useLatestRecordType) throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(records.size());
+        for (Record record : records) {
+            try {
+                results.add(RecordMutationResult.success(update(record, updateVersion, useLatestRecordType)));
+            } catch (RepositoryException e) {
+                results.add(RecordMutationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<RecordMutationResult> delete(List<RecordId> recordIds)
+            throws RepositoryException, InterruptedException {
+        List<RecordMutationResult> results = new ArrayList<RecordMutationResult>(recordIds.size());
+        for (RecordId recordId : recordIds) {
+            try {
+                delete(recordId);
+                results.add(RecordMutationResult.success(null));
+            } catch (RepositoryException e) {
+                results.add(RecordMutationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
     @Override
     public Record read(RecordId recordId, List<QName> fieldNames) throws RepositoryException, InterruptedException {
         return delegate.read(recordId, fieldNames);
@@ -184,6 +260,12 @@ public class BaseRepositoryDecorator implements Repository {
         return delegate.readWithIds(recordId, version, fieldIds);
     }
 
+    @Override
+    public List<IdRecord> readWithIds(List<RecordId> recordIds, List<SchemaId> fieldIds)
+            throws RepositoryException, InterruptedException {
+        return delegate.readWithIds(recordIds, fieldIds);
+    }
+
     @Override
     public void delete(RecordId recordId) throws RepositoryException, InterruptedException {
         delegate.delete(recordId);
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.FieldTypes;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.Scope;
+import org.lilyproject.repository.api.TypeBucket;
+import org.lilyproject.repository.impl.id.SchemaIdImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FieldTypesCacheTest {
+    private FieldTypesCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new FieldTypesCache();
+    }
+
+    @Test
+    public void testSnapshotIsNotChangedByUpdates() throws Exception {
+        FieldType fieldType = newFieldType(new QName("ns", "f1"));
+        FieldTypes before = cache.getSnapshot();
+
+        cache.update(fieldType);
+
+        assertFalse(before.fieldTypeExists(fieldType.getName()));
+        assertTrue(cache.getSnapshot().fieldTypeExists(fieldType.getName()));
+        assertEquals(fieldType.getName(), cache.getFieldType(fieldType.getId()).getName());
+    }
+
+    @Test
+    public void testRenameDropsOldName() throws Exception {
+        FieldType fieldType = newFieldType(new QName("ns", "f1"));
+        cache.refreshFieldTypes(Collections.singletonList(fieldType));
+
+        FieldType renamed = fieldType.clone();
+        renamed.setName(new QName("ns", "f2"));
+        TypeBucket bucket = new TypeBucket(AbstractSchemaCache.encodeHex(fieldType.getId().getBytes()));
+        bucket.add(renamed);
+        cache.refreshFieldTypeBucket(bucket);
+
+        assertNull(cache.getFieldTypeByNameReturnNull(new QName("ns", "f1")));
+        assertEquals(fieldType.getId(), cache.getFieldType(new QName("ns", "f2")).getId());
+    }
+
+    @Test
+    public void testRenameToNameGivenUpByOther() throws Exception {
+        FieldType fieldType1 = newFieldType(new QName("ns", "f1"));
+        FieldType fieldType2 = newFieldType(new QName("ns", "f2"));
+        cache.refreshFieldTypes(Arrays.asList(fieldType1, fieldType2));
+
+        // The second field type takes the old name of the first one, before the first one is renamed
+        FieldType renamed1 = fieldType1.clone();
+        renamed1.setName(new QName("ns", "f3"));
+        FieldType renamed2 = fieldType2.clone();
+        renamed2.setName(new QName("ns", "f1"));
+        cache.refreshFieldTypes(Arrays.asList(renamed2, renamed1));
+
+        assertEquals(fieldType2.getId(), cache.getFieldType(new QName("ns", "f1")).getId());
+        assertNull(cache.getFieldTypeByNameReturnNull(new QName("ns", "f2")));
+        assertEquals(fieldType1.getId(), cache.getFieldType(new QName("ns", "f3")).getId());
+        assertEquals(2, cache.getFieldTypes().size());
+    }
+
+    @Test
+    public void testRefreshSkipsLocalUpdate() throws Exception {
+        FieldType fieldType = newFieldType(new QName("ns", "f1"));
+        FieldType stale = fieldType.clone();
+        fieldType.setName(new QName("ns", "f2"));
+
+        cache.update(fieldType);
+        cache.refreshFieldTypes(Collections.singletonList(stale));
+
+        assertTrue(cache.fieldTypeExists(new QName("ns", "f2")));
+        assertFalse(cache.fieldTypeExists(new QName("ns", "f1")));
+    }
+
+    private FieldType newFieldType(QName name) {
+        SchemaId id = new SchemaIdImpl(UUID.randomUUID());
+        return new FieldTypeImpl(id, null, name, Scope.NON_VERSIONED);
+    }
+}
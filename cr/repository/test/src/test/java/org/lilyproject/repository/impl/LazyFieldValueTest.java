@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lilyproject.bytes.api.DataInput;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.ValueType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LazyFieldValueTest {
+    private static final QName FIELD = new QName("ns", "field");
+
+    private ValueType valueType;
+    private RecordImpl record;
+
+    @Before
+    public void setUp() throws Exception {
+        valueType = mock(ValueType.class);
+        when(valueType.read(any(DataInput.class))).thenReturn("decoded");
+
+        record = new RecordImpl();
+        record.setLazyField(FIELD, new LazyFieldValue(valueType, new byte[] {0, 1, 2}, 1, 2));
+    }
+
+    @Test
+    public void testDecodedOnceOnAccess() throws Exception {
+        assertTrue(record.hasField(FIELD));
+        verify(valueType, never()).read(any(DataInput.class));
+
+        assertEquals("decoded", record.getField(FIELD));
+        assertEquals("decoded", record.getField(FIELD));
+        verify(valueType, times(1)).read(any(DataInput.class));
+    }
+
+    @Test
+    public void testGetFieldsDecodesAll() throws Exception {
+        assertEquals("decoded", record.getFields().get(FIELD));
+    }
+
+    @Test
+    public void testCloneKeepsFieldLazy() throws Exception {
+        Record clone = record.clone();
+        verify(valueType, never()).read(any(DataInput.class));
+
+        assertEquals("decoded", clone.getField(FIELD));
+        assertEquals(clone, record);
+    }
+
+    @Test
+    public void testOverwriteLazyField() throws Exception {
+        record.setField(FIELD, "other");
+
+        assertEquals("other", record.getField(FIELD));
+        verify(valueType, never()).read(any(DataInput.class));
+    }
+}
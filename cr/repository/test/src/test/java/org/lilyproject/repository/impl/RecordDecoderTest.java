@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.lilyproject.bytes.impl.DataOutputImpl;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.FieldTypes;
+import org.lilyproject.repository.api.IdRecord;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordType;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.Scope;
+import org.lilyproject.repository.api.TypeManager;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.lilyproject.repository.impl.id.SchemaIdImpl;
+import org.lilyproject.repository.impl.valuetype.StringValueType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.lilyproject.util.hbase.LilyHBaseSchema.RecordCf;
+import static org.lilyproject.util.hbase.LilyHBaseSchema.RecordColumn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RecordDecoderTest {
+    private static final IdGeneratorImpl ID_GENERATOR = new IdGeneratorImpl();
+    private static final RecordId RECORD_ID = ID_GENERATOR.newRecordId("record");
+
+    private RecordDecoder decoder;
+    private FieldTypes fieldTypes;
+    private FieldType versionedField;
+    private FieldType nonVersionedField;
+    private SchemaId recordTypeId;
+
+    @Before
+    public void setUp() throws Exception {
+        versionedField = new FieldTypeImpl(new SchemaIdImpl(UUID.randomUUID()), new StringValueType(),
+                new QName("ns", "versioned"), Scope.VERSIONED);
+        nonVersionedField = new FieldTypeImpl(new SchemaIdImpl(UUID.randomUUID()), new StringValueType(),
+                new QName("ns", "nonversioned"), Scope.NON_VERSIONED);
+        FieldTypesCache fieldTypesCache = new FieldTypesCache();
+        fieldTypesCache.update(versionedField);
+        fieldTypesCache.update(nonVersionedField);
+        fieldTypes = fieldTypesCache.getSnapshot();
+
+        recordTypeId = new SchemaIdImpl(UUID.randomUUID());
+        RecordType recordType = mock(RecordType.class);
+        when(recordType.getName()).thenReturn(new QName("ns", "rt"));
+        TypeManager typeManager = mock(TypeManager.class);
+        when(typeManager.getRecordTypeById(recordTypeId, null)).thenReturn(recordType);
+        when(typeManager.getFieldTypesSnapshot()).thenReturn(fieldTypes);
+
+        decoder = new RecordDecoder(typeManager, ID_GENERATOR, new RecordFactoryImpl());
+    }
+
+    @Test
+    public void testPicksCellVersionPerColumn() throws Exception {
+        Result result = newResult(
+                fieldCell(versionedField, 3L, "v3"),
+                fieldCell(versionedField, 1L, "v1"),
+                fieldCell(nonVersionedField, 1L, "nv"),
+                cell(RecordColumn.VERSION.bytes, 1L, Bytes.toBytes(3L)),
+                cell(RecordColumn.NON_VERSIONED_RT_ID.bytes, 1L, recordTypeId.getBytes()),
+                cell(RecordColumn.NON_VERSIONED_RT_VERSION.bytes, 1L, Bytes.toBytes(5L)),
+                cell(RecordColumn.VERSIONED_RT_ID.bytes, 1L, recordTypeId.getBytes()),
+                cell(RecordColumn.VERSIONED_RT_VERSION.bytes, 1L, Bytes.toBytes(5L)),
+                cell(RecordColumn.VERSIONED_RT_ID.bytes, 3L, recordTypeId.getBytes()),
+                cell(RecordColumn.VERSIONED_RT_VERSION.bytes, 3L, Bytes.toBytes(6L)));
+
+        Record latest = decoder.decodeRecord(result);
+        assertEquals(Long.valueOf(3L), latest.getVersion());
+        assertEquals("v3", latest.getField(versionedField.getName()));
+        assertEquals("nv", latest.getField(nonVersionedField.getName()));
+        assertEquals(Long.valueOf(6L), latest.getRecordTypeVersion(Scope.VERSIONED));
+
+        Record version2 = decoder.decodeRecord(RECORD_ID, 2L, null, result, fieldTypes);
+        assertEquals("v1", version2.getField(versionedField.getName()));
+        assertEquals("nv", version2.getField(nonVersionedField.getName()));
+        assertEquals(new QName("ns", "rt"), version2.getRecordTypeName());
+        assertEquals(Long.valueOf(5L), version2.getRecordTypeVersion(Scope.VERSIONED));
+
+        Record noVersion = decoder.decodeRecord(RECORD_ID, null, null, result, fieldTypes);
+        assertEquals("v1", noVersion.getField(versionedField.getName()));
+    }
+
+    @Test
+    public void testDeletedFieldAndIds() throws Exception {
+        Result result = newResult(
+                fieldCell(versionedField, 2L, null),
+                fieldCell(versionedField, 1L, "v1"),
+                fieldCell(nonVersionedField, 1L, "nv"),
+                cell(RecordColumn.NON_VERSIONED_RT_ID.bytes, 1L, recordTypeId.getBytes()),
+                cell(RecordColumn.NON_VERSIONED_RT_VERSION.bytes, 1L, Bytes.toBytes(5L)));
+
+        IdRecord record = decoder.decodeRecordWithIds(RECORD_ID, 2L, result, fieldTypes);
+        assertFalse(record.hasField(versionedField.getName()));
+        assertEquals("nv", record.getField(nonVersionedField.getId()));
+        assertEquals(recordTypeId, record.getRecordTypeId());
+        assertNull(decoder.getLatest(result, RecordCf.DATA.bytes, RecordColumn.DELETED.bytes));
+    }
+
+    private static KeyValue cell(byte[] qualifier, long timestamp, byte[] value) {
+        return new KeyValue(RECORD_ID.toBytes(), RecordCf.DATA.bytes, qualifier, timestamp, value);
+    }
+
+    /**
+     * Creates the cell of a field value, or of a field deletion if the value is null.
+     */
+    private static KeyValue fieldCell(FieldType fieldType, long timestamp, String value) throws Exception {
+        byte[] qualifier = Bytes.add(new byte[]{RecordColumn.DATA_PREFIX}, fieldType.getId().getBytes());
+        if (value == null) {
+            return cell(qualifier, timestamp, FieldFlags.getDeleteMarker());
+        }
+        DataOutputImpl output = new DataOutputImpl();
+        output.writeByte(FieldFlags.DEFAULT);
+        fieldType.getValueType().write(value, output, null);
+        return cell(qualifier, timestamp, output.toByteArray());
+    }
+
+    private static Result newResult(KeyValue... cells) {
+        List<KeyValue> sorted = new ArrayList<KeyValue>();
+        Collections.addAll(sorted, cells);
+        Collections.sort(sorted, KeyValue.COMPARATOR);
+        return new Result(sorted);
+    }
+}
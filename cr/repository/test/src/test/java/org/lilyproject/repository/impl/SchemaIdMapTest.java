@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.impl.id.SchemaIdImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SchemaIdMapTest {
+
+    @Test
+    public void testPutAndGet() {
+        SchemaIdMap<String> map = new SchemaIdMap<String>();
+        List<SchemaId> ids = new ArrayList<SchemaId>();
+        // Enough to trigger a few resizes
+        for (int i = 0; i < 1000; i++) {
+            SchemaId id = new SchemaIdImpl(UUID.randomUUID());
+            ids.add(id);
+            assertNull(map.put(id, "value" + i));
+        }
+
+        assertEquals(1000, map.size());
+        for (int i = 0; i < ids.size(); i++) {
+            // Use a different instance than the one used for the put
+            assertEquals("value" + i, map.get(new SchemaIdImpl(ids.get(i).getBytes().clone())));
+        }
+        assertNull(map.get(new SchemaIdImpl(UUID.randomUUID())));
+        assertEquals(1000, new HashSet<String>(map.values()).size());
+    }
+
+    @Test
+    public void testReplace() {
+        SchemaIdMap<String> map = new SchemaIdMap<String>();
+        SchemaId id = new SchemaIdImpl(UUID.randomUUID());
+
+        map.put(id, "a");
+        assertEquals("a", map.put(id, "b"));
+        assertEquals("b", map.get(id));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testGetFromBytesRange() {
+        SchemaIdMap<String> map = new SchemaIdMap<String>();
+        SchemaId id = new SchemaIdImpl(UUID.randomUUID());
+        map.put(id, "a");
+
+        byte[] qualifier = Bytes.add(new byte[] {1}, id.getBytes());
+        assertEquals("a", map.get(qualifier, 1, qualifier.length - 1));
+        assertNull(map.get(qualifier, 0, qualifier.length));
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        SchemaIdMap<String> map = new SchemaIdMap<String>();
+        SchemaId id1 = new SchemaIdImpl(UUID.randomUUID());
+        SchemaId id2 = new SchemaIdImpl(UUID.randomUUID());
+        map.put(id1, "a");
+
+        SchemaIdMap<String> copy = map.copy();
+        copy.put(id2, "b");
+
+        assertNull(map.get(id2));
+        assertEquals("a", copy.get(id1));
+        assertEquals(2, copy.size());
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        SchemaIdMap<String> map = new SchemaIdMap<String>();
+        List<SchemaId> ids = new ArrayList<SchemaId>();
+        for (int i = 0; i < 200; i++) {
+            SchemaId id = new SchemaIdImpl(UUID.randomUUID());
+            ids.add(id);
+            map.put(id, "value" + i);
+        }
+
+        // Changes to either map, replacing as well as adding values, are not visible in the other one
+        SchemaIdMap<String> copy = map.copy();
+        SchemaId added1 = new SchemaIdImpl(UUID.randomUUID());
+        SchemaId added2 = new SchemaIdImpl(UUID.randomUUID());
+        copy.put(ids.get(0), "copy");
+        copy.put(added1, "copy");
+        map.put(ids.get(1), "original");
+        map.put(added2, "original");
+
+        assertEquals("value0", map.get(ids.get(0)));
+        assertEquals("copy", copy.get(ids.get(0)));
+        assertEquals("original", map.get(ids.get(1)));
+        assertEquals("value1", copy.get(ids.get(1)));
+        assertNull(map.get(added1));
+        assertNull(copy.get(added2));
+        assertEquals(201, map.size());
+        assertEquals(201, copy.size());
+        for (int i = 2; i < ids.size(); i++) {
+            assertEquals("value" + i, map.get(ids.get(i)));
+            assertEquals("value" + i, copy.get(ids.get(i)));
+        }
+    }
+}
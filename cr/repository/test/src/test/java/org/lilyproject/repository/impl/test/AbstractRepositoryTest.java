@@ -64,6 +64,7 @@ import org.lilyproject.repository.api.RecordBuilder;
 import org.lilyproject.repository.api.RecordException;
 import org.lilyproject.repository.api.RecordExistsException;
 import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordMutationResult;
 import org.lilyproject.repository.api.RecordNotFoundException;
 import org.lilyproject.repository.api.RecordScan;
 import org.lilyproject.repository.api.RecordScanner;
@@ -1476,6 +1477,24 @@ public abstract class AbstractRepositoryTest {
         assertEquals(record, idRecord.getRecord());
     }
 
+    @Test
+    public void testIdRecords() throws Exception {
+        Record record1 = createDefaultRecord();
+        Record record2 = createDefaultRecord();
+        Record record3 = createDefaultRecord();
+        repository.delete(record2.getId());
+
+        List<IdRecord> idRecords = repository.readWithIds(
+                Arrays.asList(record3.getId(), record2.getId(), record1.getId()), null);
+        assertEquals(2, idRecords.size());
+        assertEquals(record3, idRecords.get(0).getRecord());
+        assertEquals(record1, idRecords.get(1).getRecord());
+        assertEquals(record1.getField(fieldType1.getName()), idRecords.get(1).getField(fieldType1.getId()));
+        assertEquals(recordType1.getId(), idRecords.get(1).getRecordTypeId());
+
+        assertTrue(repository.readWithIds(Collections.<RecordId>emptyList(), null).isEmpty());
+    }
+
     @Test
     public void testVersionNumbers() throws Exception {
         // Create a record without versioned fields, the record will be without versions
@@ -1638,6 +1657,42 @@ public abstract class AbstractRepositoryTest {
         assertEquals(ResponseStatus.UP_TO_DATE, resultRecord.getResponseStatus());
     }
 
+    @Test
+    public void testCreateOrUpdateBatch() throws Exception {
+        Record existing = repository.newRecord(idGenerator.newRecordId());
+        existing.setRecordType(recordType1.getName(), recordType1.getVersion());
+        existing.setField(fieldType1.getName(), "value1");
+        repository.create(existing);
+
+        Record unchanged = repository.newRecord(idGenerator.newRecordId());
+        unchanged.setRecordType(recordType1.getName(), recordType1.getVersion());
+        unchanged.setField(fieldType1.getName(), "value1");
+        repository.create(unchanged);
+
+        Record updated = repository.newRecord(existing.getId());
+        updated.setField(fieldType1.getName(), "value2");
+
+        Record created = repository.newRecord(idGenerator.newRecordId());
+        created.setRecordType(recordType1.getName(), recordType1.getVersion());
+        created.setField(fieldType1.getName(), "value3");
+
+        Record withoutId = repository.newRecord();
+        withoutId.setRecordType(recordType1.getName(), recordType1.getVersion());
+        withoutId.setField(fieldType1.getName(), "value4");
+
+        List<RecordMutationResult> results =
+                repository.createOrUpdate(Lists.newArrayList(updated, created, unchanged, withoutId));
+        assertEquals(4, results.size());
+        assertEquals(ResponseStatus.UPDATED, results.get(0).getResponseStatus());
+        assertEquals(ResponseStatus.CREATED, results.get(1).getResponseStatus());
+        assertEquals(ResponseStatus.UP_TO_DATE, results.get(2).getResponseStatus());
+        assertFalse(results.get(3).isSuccess());
+        assertNotNull(results.get(3).getException());
+
+        assertEquals("value2", repository.read(existing.getId()).getField(fieldType1.getName()));
+        assertEquals("value3", repository.read(created.getId()).getField(fieldType1.getName()));
+    }
+
     @Test
     public void testUpdateMutableFieldsRecordType() throws Exception {
         Record record = repository.newRecord();
@@ -1703,6 +1758,34 @@ public abstract class AbstractRepositoryTest {
         assertTrue(readRecords.isEmpty());
     }
 
+    @Test
+    public void testReadManyRecords() throws Exception {
+        // enough records for the read to be split in multiple chunks
+        List<RecordId> recordIds = new ArrayList<RecordId>();
+        for (int i = 0; i < 250; i++) {
+            Record record = repository.newRecord(idGenerator.newRecordId());
+            record.setRecordType(recordType1.getName());
+            record.setField(fieldType1.getName(), "value" + i);
+            recordIds.add(repository.create(record).getId());
+        }
+
+        RecordId deletedId = recordIds.get(150);
+        repository.delete(deletedId);
+
+        List<Record> readRecords = repository.read(recordIds);
+
+        assertEquals(249, readRecords.size());
+        int i = 0;
+        for (Record record : readRecords) {
+            if (i == 150) {
+                i++;
+            }
+            assertEquals(recordIds.get(i), record.getId());
+            assertEquals("value" + i, record.getField(fieldType1.getName()));
+            i++;
+        }
+    }
+
     @Test
     public void testConditionalUpdate() throws Exception {
         Record record = createDefaultRecord();
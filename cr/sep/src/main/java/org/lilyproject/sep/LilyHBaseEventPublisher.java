@@ -16,12 +16,16 @@
 package org.lilyproject.sep;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import com.ngdata.sep.impl.HBaseEventPublisher;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.lilyproject.util.hbase.LilyHBaseSchema;
 import org.lilyproject.util.hbase.LilyHBaseSchema.RecordCf;
@@ -49,4 +53,32 @@ public class LilyHBaseEventPublisher extends HBaseEventPublisher {
             LogFactory.getLog(getClass()).warn("Did not publish event as requested, row=" + Arrays.toString(row));
     }
 
+    /**
+     * Publishes a batch of events. One multi-get first leaves out the events for records which do not exist or
+     * are deleted, so that these do not cost a write. The remaining events are each put with a check-and-put,
+     * as in {@link #publishEvent}: HBase has no batched check-and-put, and a plain multi-put would not be atomic
+     * with the check, so that an event could still be put on a record deleted in between.
+     *
+     * @param rows the rows of the records, in the same order as the payloads
+     */
+    public void publishEvents(List<byte[]> rows, List<byte[]> payloads) throws IOException {
+        List<Get> gets = new ArrayList<Get>(rows.size());
+        for (byte[] row : rows) {
+            Get get = new Get(row);
+            get.addColumn(RecordCf.DATA.bytes, RecordColumn.DELETED.bytes);
+            gets.add(get);
+        }
+        Result[] results = getPayloadTable().get(gets);
+
+        for (int i = 0; i < rows.size(); i++) {
+            byte[] deleted = results[i].getValue(RecordCf.DATA.bytes, RecordColumn.DELETED.bytes);
+            if (deleted != null && Bytes.equals(deleted, FALSE_BYTES)) {
+                publishEvent(rows.get(i), payloads.get(i));
+            } else {
+                LogFactory.getLog(getClass()).warn("Did not publish event as requested, row="
+                        + Arrays.toString(rows.get(i)));
+            }
+        }
+    }
+
 }
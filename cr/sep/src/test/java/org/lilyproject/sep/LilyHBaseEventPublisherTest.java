@@ -17,20 +17,29 @@ package org.lilyproject.sep;
 
 
 import java.io.IOException;
+import java.util.Arrays;
 
-import com.ngdata.sep.impl.HBaseEventPublisher;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Before;
 import org.junit.Test;
 import org.lilyproject.util.hbase.LilyHBaseSchema.RecordCf;
 import org.lilyproject.util.hbase.LilyHBaseSchema.RecordColumn;
+import org.mockito.ArgumentCaptor;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Adapter from the Lily ZooKeeperItf interface and the HBase SEP ZooKeepterItf interface.
@@ -38,7 +47,7 @@ import static org.mockito.Mockito.verify;
 public class LilyHBaseEventPublisherTest {
 
     private HTableInterface recordTable;
-    private HBaseEventPublisher eventPublisher;
+    private LilyHBaseEventPublisher eventPublisher;
 
     @Before
     public void setUp() {
@@ -61,4 +70,32 @@ public class LilyHBaseEventPublisherTest {
                 aryEq(Bytes.toBytes(false)), any(Put.class));
     }
 
+    @Test
+    public void testPublishEvents_OnlyExistingRecords() throws IOException {
+        byte[] existingRow = Bytes.toBytes("existing");
+        byte[] deletedRow = Bytes.toBytes("deleted");
+        byte[] missingRow = Bytes.toBytes("missing");
+        byte[] messagePayload = Bytes.toBytes("payload");
+
+        when(recordTable.get(anyListOf(Get.class))).thenReturn(new Result[] {
+                deletedFlag(existingRow, false), deletedFlag(deletedRow, true), new Result(new KeyValue[0])});
+
+        eventPublisher.publishEvents(Arrays.asList(existingRow, deletedRow, missingRow),
+                Arrays.asList(messagePayload, messagePayload, messagePayload));
+
+        // Each event is put atomically with the check that its record is not deleted
+        ArgumentCaptor<Put> put = ArgumentCaptor.forClass(Put.class);
+        verify(recordTable).checkAndPut(aryEq(existingRow), aryEq(RecordCf.DATA.bytes),
+                aryEq(RecordColumn.DELETED.bytes), aryEq(Bytes.toBytes(false)), put.capture());
+        assertArrayEquals(existingRow, put.getValue().getRow());
+        verify(recordTable, times(1)).checkAndPut(any(byte[].class), any(byte[].class), any(byte[].class),
+                any(byte[].class), any(Put.class));
+        verify(recordTable, never()).put(anyListOf(Put.class));
+    }
+
+    private static Result deletedFlag(byte[] row, boolean deleted) {
+        return new Result(new KeyValue[] {
+                new KeyValue(row, RecordCf.DATA.bytes, RecordColumn.DELETED.bytes, Bytes.toBytes(deleted))});
+    }
+
 }
@@ -56,6 +56,14 @@ public class LilyHBaseSchema {
         blobIncubatorDescriptor.addFamily(new HColumnDescriptor(BlobIncubatorCf.REF.bytes));
     }
 
+    private static final HTableDescriptor blobTextDescriptor;
+
+    static {
+        blobTextDescriptor = new HTableDescriptor(Table.BLOBTEXT.bytes);
+        blobTextDescriptor.addFamily(new HColumnDescriptor(BlobTextCf.DATA.bytes, 1, "none", false, true,
+                HConstants.FOREVER, HColumnDescriptor.DEFAULT_BLOOMFILTER));
+    }
+
     private LilyHBaseSchema() {
     }
 
@@ -112,10 +120,19 @@ public class LilyHBaseSchema {
         return tableFactory.getTable(blobIncubatorDescriptor, !clientMode);
     }
 
+    /**
+     * The table holding the text extracted from blobs by the indexers, which is only a cache: it can be
+     * truncated at any time.
+     */
+    public static HTableInterface getBlobTextTable(HBaseTableFactory tableFactory) throws IOException, InterruptedException {
+        return tableFactory.getTable(blobTextDescriptor);
+    }
+
     public static enum Table {
         RECORD("record"),
         TYPE("type"),
-        BLOBINCUBATOR("blobincubator");
+        BLOBINCUBATOR("blobincubator"),
+        BLOBTEXT("blobtext");
 
         public final byte[] bytes;
         public final String name;
@@ -237,4 +254,19 @@ public class LilyHBaseSchema {
             this.bytes = Bytes.toBytes(name);
         }
     }
+
+    /**
+     * Column families in the blob text table.
+     */
+    public static enum BlobTextCf {
+        DATA("data");
+
+        public final byte[] bytes;
+        public final String name;
+
+        BlobTextCf(String name) {
+            this.name = name;
+            this.bytes = Bytes.toBytes(name);
+        }
+    }
 }
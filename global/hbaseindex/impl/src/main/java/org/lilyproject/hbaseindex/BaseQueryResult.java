@@ -31,6 +31,18 @@ abstract class BaseQueryResult implements QueryResult {
         this.definition = definition;
     }
 
+    /**
+     * Default implementation of {@link QueryResult#advanceTo}, which moves forward one result at a time.
+     */
+    @Override
+    public byte[] advanceTo(byte[] identifier) throws IOException {
+        byte[] next = next();
+        while (next != null && Bytes.compareTo(next, identifier) < 0) {
+            next = next();
+        }
+        return next;
+    }
+
     @Override
     public byte[] getData(byte[] qualifier) {
         if (currentResult != null) {
@@ -42,6 +54,17 @@ abstract class BaseQueryResult implements QueryResult {
         }
     }
 
+    @Override
+    public byte[] getPosition() {
+        if (currentResult != null) {
+            return currentResult.getRow();
+        } else if (currentQResult != null) {
+            return currentQResult.getPosition();
+        } else {
+            throw new RuntimeException("QueryResult.getPosition() is being called but there is no current result.");
+        }
+    }
+
     @Override
     public byte[] getData(String qualifier) {
         return getData(Bytes.toBytes(qualifier));
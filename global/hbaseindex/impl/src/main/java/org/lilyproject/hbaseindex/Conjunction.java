@@ -16,12 +16,14 @@
 package org.lilyproject.hbaseindex;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.hadoop.hbase.util.Bytes;
 
 /**
- * Merge-joins two QueryResults into one, in other words: an AND
- * operation on two indices.
+ * Merge-joins QueryResults into one, in other words: an AND
+ * operation on indices.
  *
  * <p>This only works if the individual QueryResults return their rows
  * sorted in increasing identifier order, and return each identifier at most
@@ -32,63 +34,73 @@ import org.apache.hadoop.hbase.util.Bytes;
  * <p>A Conjunction itself also returns its results in increasing identifier
  * order, and can hence serve as input to other Conjunctions.
  *
- * <p>TODO the implementation is currently not optimal if lots of rows need
- * to be skipped to move to the next common result, since this is done by
- * iterating one result at a time using next() calls. It would be better to
- * directly skip to the next appropriate result. HBase scanners don't support
- * this natively, so to skip we would rather need to open a new scanner. But
- * we can't exactly know on beforehand if this will be beneficial or not. Maybe
- * we could have some heuristic for this, e.g. after 10 next() calls open a new
- * scanner to jump directly to the next relevant result.
+ * <p>The results are intersected by leapfrogging: each result in turn is advanced,
+ * using {@link QueryResult#advanceTo}, to the largest identifier seen so far, until
+ * all results agree on an identifier. Results on top of HBase scanners reopen their
+ * scanner to skip over large runs of rows, see {@link ScannerQueryResult}. It is best
+ * to pass the most selective result first.
  */
 public class Conjunction extends BaseQueryResult {
-    private QueryResult result1;
-    private QueryResult result2;
+    private final QueryResult[] results;
 
     public Conjunction(QueryResult result1, QueryResult result2) {
+        this(Arrays.asList(result1, result2));
+    }
+
+    public Conjunction(List<QueryResult> results) {
         super(null);
-        this.result1 = result1;
-        this.result2 = result2;
+        if (results.size() < 2) {
+            throw new IllegalArgumentException("A conjunction needs at least two query results, got: "
+                    + results.size());
+        }
+        this.results = results.toArray(new QueryResult[results.size()]);
     }
 
     @Override
     public byte[] next() throws IOException {
-        byte[] key1 = result1.next();
-        byte[] key2 = result2.next();
+        return leapfrog(results[0].next());
+    }
 
-        if (key1 == null || key2 == null) {
+    @Override
+    public byte[] advanceTo(byte[] identifier) throws IOException {
+        return leapfrog(results[0].advanceTo(identifier));
+    }
+
+    /**
+     * Moves all results to the first identifier they have in common, starting from the
+     * given identifier of the first result.
+     */
+    private byte[] leapfrog(byte[] key) throws IOException {
+        if (key == null) {
             return null;
         }
 
-        int cmp = Bytes.compareTo(key1, key2);
+        // the number of results, ending with the current one, which are positioned on key
+        int agreeing = 1;
+        int i = 0;
+        while (agreeing < results.length) {
+            i = (i + 1) % results.length;
+            byte[] other = results[i].advanceTo(key);
+            if (other == null) {
+                return null;
+            }
 
-        while (cmp != 0) {
-            if (cmp < 0) {
-                while (cmp < 0) {
-                    key1 = result1.next();
-                    if (key1 == null) {
-                        return null;
-                    }
-                    cmp = Bytes.compareTo(key1, key2);
-                }
-            } else if (cmp > 0) {
-                while (cmp > 0) {
-                    key2 = result2.next();
-                    if (key2 == null) {
-                        return null;
-                    }
-                    cmp = Bytes.compareTo(key1, key2);
-                }
+            if (Bytes.equals(other, key)) {
+                agreeing++;
+            } else {
+                key = other;
+                agreeing = 1;
             }
         }
 
-        currentQResult = result1;
-        return key1;
+        currentQResult = results[0];
+        return key;
     }
 
     @Override
     public void close() {
-        result1.close();
-        result2.close();
+        for (QueryResult result : results) {
+            result.close();
+        }
     }
 }
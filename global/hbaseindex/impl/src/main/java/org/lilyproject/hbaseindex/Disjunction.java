@@ -16,74 +16,131 @@
 package org.lilyproject.hbaseindex;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 
 import org.apache.hadoop.hbase.util.Bytes;
 
 /**
- * A QueryResult which is the disjunction (= OR operation) of two other QueryResults.
+ * A QueryResult which is the disjunction (= OR operation) of other QueryResults.
  *
  * <p>The supplied QueryResults should adhere to the same requirements as for
  * {@link Conjunction}s.
+ *
+ * <p>The results are merged using a heap ordered on their current identifier, so
+ * that moving to the next result costs a logarithmic rather than a linear number of
+ * comparisons in the number of merged results. Identifiers occurring in several
+ * results are returned once.
  */
 public class Disjunction extends BaseQueryResult {
-    private QueryResult result1;
-    private QueryResult result2;
-    private byte[] key1;
-    private byte[] key2;
+    private final List<QueryResult> results;
+    private final PriorityQueue<Entry> heap;
+    /**
+     * The entries positioned on the identifier returned last, these are only moved forward
+     * on the next call, so that getData() and the like keep working on the current result.
+     */
+    private final List<Entry> current;
     private boolean init = false;
 
     public Disjunction(QueryResult result1, QueryResult result2) {
+        this(Arrays.asList(result1, result2));
+    }
+
+    public Disjunction(List<QueryResult> results) {
         super(null);
-        this.result1 = result1;
-        this.result2 = result2;
+        this.results = new ArrayList<QueryResult>(results);
+        this.heap = new PriorityQueue<Entry>(Math.max(1, results.size()), new Comparator<Entry>() {
+            @Override
+            public int compare(Entry entry1, Entry entry2) {
+                return Bytes.compareTo(entry1.key, entry2.key);
+            }
+        });
+        this.current = new ArrayList<Entry>(results.size());
     }
 
     @Override
     public byte[] next() throws IOException {
+        init();
+
+        for (Entry entry : current) {
+            entry.key = entry.result.next();
+            if (entry.key != null) {
+                heap.add(entry);
+            }
+        }
+        current.clear();
+
+        return pollCurrent();
+    }
+
+    @Override
+    public byte[] advanceTo(byte[] identifier) throws IOException {
+        init();
+
+        for (Entry entry : current) {
+            entry.key = entry.result.advanceTo(identifier);
+            if (entry.key != null) {
+                heap.add(entry);
+            }
+        }
+        current.clear();
+
+        // Entries which are already positioned at or beyond the identifier stay where they are
+        while (!heap.isEmpty() && Bytes.compareTo(heap.peek().key, identifier) < 0) {
+            Entry entry = heap.poll();
+            entry.key = entry.result.advanceTo(identifier);
+            if (entry.key != null) {
+                heap.add(entry);
+            }
+        }
+
+        return pollCurrent();
+    }
+
+    private void init() {
         if (!init) {
-            key1 = result1.next();
-            key2 = result2.next();
+            // Nothing has been read yet: make all results move to their first entry
+            for (QueryResult result : results) {
+                current.add(new Entry(result));
+            }
             init = true;
         }
+    }
 
-        if (key1 == null && key2 == null) {
+    /**
+     * Takes the entries positioned on the smallest identifier from the heap.
+     */
+    private byte[] pollCurrent() {
+        if (heap.isEmpty()) {
             return null;
-        } else if (key1 == null) {
-            byte[] result = key2;
-            currentQResult = result2;
-            key2 = result2.next();
-            return result;
-        } else if (key2 == null) {
-            byte[] result = key1;
-            currentQResult = result1;
-            key1 = result1.next();
-            return result;
         }
 
-        int cmp = Bytes.compareTo(key1, key2);
-
-        if (cmp == 0) {
-            byte[] result = key1;
-            currentQResult = result1;
-            key1 = result1.next();
-            key2 = result2.next();
-            return result;
-        } else if (cmp < 0) {
-            byte[] result = key1;
-            currentQResult = result1;
-            key1 = result1.next();
-            return result;
-        } else { // cmp > 0
-            byte[] result = key2;
-            currentQResult = result2;
-            key2 = result2.next();
-            return result;
+        Entry first = heap.poll();
+        current.add(first);
+        while (!heap.isEmpty() && Bytes.equals(heap.peek().key, first.key)) {
+            current.add(heap.poll());
         }
+
+        currentQResult = first.result;
+        return first.key;
     }
 
     @Override
     public void close() {
-        result1.close();
-        result2.close();
+        for (QueryResult result : results) {
+            result.close();
+        }
+    }
+
+    private static final class Entry {
+        private final QueryResult result;
+        private byte[] key;
+
+        Entry(QueryResult result) {
+            this.result = result;
+        }
     }
 }
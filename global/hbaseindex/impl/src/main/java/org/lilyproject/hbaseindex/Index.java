@@ -17,9 +17,11 @@ package org.lilyproject.hbaseindex;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.base.Preconditions;
 import com.gotometrics.orderly.RowKey;
 import com.gotometrics.orderly.StructBuilder;
 import com.gotometrics.orderly.StructRowKey;
@@ -30,10 +32,10 @@ import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
 import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
-import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.RowFilter;
 import org.apache.hadoop.hbase.filter.WhileMatchFilter;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.lilyproject.hbaseindex.filter.IndexFilterHbaseImpl;
 import org.lilyproject.util.ArgumentValidator;
 import org.lilyproject.util.ByteArrayKey;
@@ -42,10 +44,15 @@ import org.lilyproject.util.ByteArrayKey;
  * Allows to query an index, and add entries to it or remove entries from it.
  *
  * <p>An Index instance can be obtained from {@link IndexManager#getIndex(String)}.
+ *
+ * <p>The add and remove methods write synchronously. Use an {@link IndexWriter} to combine the
+ * mutations of concurrent callers into fewer writes.
  */
 public class Index {
     private HTableInterface htable;
     private IndexDefinition definition;
+    private int scanCaching = Query.DEFAULT_CACHING;
+    private boolean scanCacheBlocks = true;
 
     private static final byte[] DUMMY_QUALIFIER = new byte[]{0};
     private static final byte[] DUMMY_VALUE = new byte[]{0};
@@ -59,6 +66,43 @@ public class Index {
         return definition;
     }
 
+    /**
+     * @see #setScanCaching(int)
+     */
+    public int getScanCaching() {
+        return scanCaching;
+    }
+
+    /**
+     * Sets the number of index entries read in one go from the server by queries which do not specify this
+     * themselves, by default {@link Query#DEFAULT_CACHING}. Indexes which are typically queried for many entries
+     * benefit from a larger value.
+     *
+     * <p>This is a setting of this Index instance, it is not stored as part of the {@link IndexDefinition}.
+     */
+    public void setScanCaching(int scanCaching) {
+        Preconditions.checkArgument(scanCaching > 0, "scanCaching should be larger than 0, got: %s", scanCaching);
+        this.scanCaching = scanCaching;
+    }
+
+    /**
+     * @see #setScanCacheBlocks(boolean)
+     */
+    public boolean getScanCacheBlocks() {
+        return scanCacheBlocks;
+    }
+
+    /**
+     * Enable or disable block caching for queries which do not specify this themselves. By default this is true.
+     * Indexes which are mostly scanned in full, rather than queried for a few entries, can disable this to avoid
+     * evicting more useful blocks from the block cache.
+     *
+     * <p>This is a setting of this Index instance, it is not stored as part of the {@link IndexDefinition}.
+     */
+    public void setScanCacheBlocks(boolean scanCacheBlocks) {
+        this.scanCacheBlocks = scanCacheBlocks;
+    }
+
     /**
      * Adds an entry to this index. See {@link IndexEntry} for more information.
      *
@@ -89,7 +133,11 @@ public class Index {
         htable.put(puts);
     }
 
-    private Put createAddEntryPut(IndexEntry entry) throws IOException {
+    /**
+     * Creates the Put which adds an entry to the index, without writing it. This allows to build the index
+     * by other means than this class, e.g. by bulk loading HFiles.
+     */
+    public Put createAddEntryPut(IndexEntry entry) throws IOException {
         byte[] indexKey = buildRowKey(entry);
         Put put = new Put(indexKey);
 
@@ -114,9 +162,7 @@ public class Index {
         ArgumentValidator.notNull(entry, "entry");
         entry.validate();
 
-        byte[] indexKey = buildRowKey(entry);
-        Delete delete = new Delete(indexKey);
-        htable.delete(delete);
+        htable.delete(createRemoveEntryDelete(entry));
     }
 
     public void removeEntries(List<IndexEntry> entries) throws IOException {
@@ -125,15 +171,29 @@ public class Index {
         List<Delete> deletes = new ArrayList<Delete>();
         for (IndexEntry entry : entries) {
             entry.validate();
-
-            byte[] indexKey = buildRowKey(entry);
-            Delete delete = new Delete(indexKey);
-            deletes.add(delete);
+            deletes.add(createRemoveEntryDelete(entry));
         }
 
         htable.delete(deletes);
     }
 
+    Delete createRemoveEntryDelete(IndexEntry entry) throws IOException {
+        return new Delete(buildRowKey(entry));
+    }
+
+    /**
+     * Writes the mutations created by {@link #createAddEntryPut} and {@link #createRemoveEntryDelete}, used by
+     * {@link IndexWriter}.
+     */
+    void write(List<Put> puts, List<Delete> deletes) throws IOException {
+        if (!puts.isEmpty()) {
+            htable.put(puts);
+        }
+        if (!deletes.isEmpty()) {
+            htable.delete(deletes);
+        }
+    }
+
     /**
      * Build the index row key.
      *
@@ -263,30 +323,64 @@ public class Index {
         // CompareOp.LESS_OR_EQUAL
         boolean upperBoundInclusive =
                 rangeCond != null && (rangeCond.isUpperBoundInclusive() || rangeCond.getToValue() == Query.MAX_VALUE);
-        CompareOp op = rangeCondSet && !upperBoundInclusive ? CompareOp.LESS : CompareOp.LESS_OR_EQUAL;
-        Filter toFilter = new RowFilter(op, new BinaryPrefixComparator(toKey));
+
+        // The from and to keys are compared with the same-length prefix of the row keys. An exclusive bound on
+        // such a prefix coincides with a bound on the row keys themselves, an inclusive bound translates into the
+        // first row key beyond all row keys starting with it. Using these as start and stop row avoids evaluating
+        // a filter for each row, the filters are only needed when no such row key exists.
+        boolean lowerBoundExclusive = rangeCondSet && !rangeCond.isLowerBoundInclusive();
+        byte[] startRow = lowerBoundExclusive ? prefixSuccessor(fromKey) : fromKey;
+        boolean upperBoundExclusive = rangeCondSet && !upperBoundInclusive;
+        byte[] stopRow = upperBoundExclusive ? (toKey.length > 0 ? toKey : null) : prefixSuccessor(toKey);
 
         FilterList filters = new FilterList(FilterList.Operator.MUST_PASS_ALL);
         if (query.getIndexFilter() != null) {
             filters.addFilter(new IndexFilterHbaseImpl(query.getIndexFilter(), definition));
         }
 
-        if (rangeCondSet && !rangeCond.isLowerBoundInclusive()) {
-            // TODO: optimize the performance hit caused by the extra filter
-            //  Once the greater filter on the fromKey returns true, it will remain true because
-            //  row keys are sorted. The RowFilter will however keep doing the check again and again
-            //  on each new row key. We need a new filter in HBase, something like the opposite of the
-            //  WhileMatchFilter.
+        if (startRow != null) {
+            scan.setStartRow(startRow);
+        } else {
             filters.addFilter(new RowFilter(CompareOp.GREATER, new BinaryPrefixComparator(fromKey)));
-            filters.addFilter(new WhileMatchFilter(toFilter));
+        }
+
+        if (query.getStartAfter() != null) {
+            // the smallest row key after the given one
+            byte[] resumeRow = Bytes.add(query.getStartAfter(), new byte[]{0});
+            if (Bytes.compareTo(resumeRow, scan.getStartRow()) > 0) {
+                scan.setStartRow(resumeRow);
+            }
+        }
+
+        if (stopRow != null) {
+            scan.setStopRow(stopRow);
         } else {
-            filters.addFilter(new WhileMatchFilter(toFilter));
+            CompareOp op = upperBoundExclusive ? CompareOp.LESS : CompareOp.LESS_OR_EQUAL;
+            filters.addFilter(new WhileMatchFilter(new RowFilter(op, new BinaryPrefixComparator(toKey))));
         }
 
-        scan.setFilter(filters);
-        scan.setCaching(30);
+        if (!filters.getFilters().isEmpty()) {
+            scan.setFilter(filters);
+        }
+        scan.setCaching(query.getCaching() != null ? query.getCaching() : scanCaching);
+        scan.setCacheBlocks(query.getCacheBlocks() != null ? query.getCacheBlocks() : scanCacheBlocks);
 
-        return new ScannerQueryResult(htable.getScanner(scan), definition);
+        return new ScannerQueryResult(htable, scan, definition);
+    }
+
+    /**
+     * Returns the smallest byte array which is larger than all byte arrays starting with the given prefix, or null
+     * if there is none.
+     */
+    static byte[] prefixSuccessor(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xFF) {
+                byte[] successor = Arrays.copyOf(prefix, i + 1);
+                successor[i]++;
+                return successor;
+            }
+        }
+        return null;
     }
 
     /**
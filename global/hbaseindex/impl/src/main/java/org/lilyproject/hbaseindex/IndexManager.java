@@ -59,6 +59,14 @@ public class IndexManager {
         this.tableFactory = tableFactory != null ? tableFactory : new HBaseTableFactoryImpl(hbaseConf);
     }
     
+    /**
+     * Returns the factory through which the index tables are created, for users of the indexes which need
+     * additional tables.
+     */
+    public HBaseTableFactory getTableFactory() {
+        return tableFactory;
+    }
+
     /**
      * Creates a new index in the default repository.
      *
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.hbaseindex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.lilyproject.util.ArgumentValidator;
+import org.lilyproject.util.ByteArrayKey;
+import org.lilyproject.util.concurrent.CustomThreadFactory;
+
+/**
+ * Writes entries to an {@link Index} asynchronously, group-committing the mutations of all threads using
+ * the writer.
+ *
+ * <p>Added and removed entries are collected in a buffer, which is written by a background thread using
+ * one multi-put and one multi-delete. The buffer is written as soon as it holds flushSize mutations, or
+ * at the latest maxDelay milliseconds after its first mutation was added. With a maxDelay of 0, the buffer
+ * is written as soon as the previous write finished, so that the mutations coming in during a write are
+ * committed together without adding latency.</p>
+ *
+ * <p>Each call returns a future which completes when its mutations are written. Callers which need the
+ * mutations to be durable, or need them to be written before some other mutation, wait on it. When mutations
+ * come in faster than they can be written, the buffer reaches its maximum size and callers block until there
+ * is room again. The time spent blocked is reported in the metrics.</p>
+ *
+ * <p>Mutations of the same index row which are in the buffer at the same time are coalesced: only the last
+ * one is written. If an entry is removed and then added again, the data of the removed entry is therefore not
+ * deleted, only overwritten by the data of the added entry.</p>
+ */
+public class IndexWriter implements Closeable {
+    public static final int DEFAULT_FLUSH_SIZE = 1000;
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 10000;
+    public static final long DEFAULT_MAX_DELAY = 0;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final Index index;
+    private final int flushSize;
+    private final int maxBufferSize;
+    private final long maxDelay;
+    private final IndexWriterMetrics metrics;
+    private final Thread flushThread;
+
+    private Map<ByteArrayKey, Mutation> buffer = new LinkedHashMap<ByteArrayKey, Mutation>();
+    private List<SettableFuture<Void>> bufferFutures = new ArrayList<SettableFuture<Void>>();
+    private long bufferCreated;
+    private boolean flushRequested;
+    private boolean closed;
+
+    public IndexWriter(Index index) {
+        this(index, DEFAULT_FLUSH_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param flushSize     number of buffered mutations at which the buffer is written
+     * @param maxBufferSize number of buffered mutations at which callers are blocked until the buffer is written
+     * @param maxDelay      maximum time in milliseconds a mutation is buffered while no write is in progress
+     */
+    public IndexWriter(Index index, int flushSize, int maxBufferSize, long maxDelay) {
+        ArgumentValidator.notNull(index, "index");
+        if (flushSize < 1 || maxBufferSize < flushSize || maxDelay < 0) {
+            throw new IllegalArgumentException("Invalid IndexWriter settings: flushSize " + flushSize +
+                    ", maxBufferSize " + maxBufferSize + ", maxDelay " + maxDelay);
+        }
+
+        this.index = index;
+        this.flushSize = flushSize;
+        this.maxBufferSize = maxBufferSize;
+        this.maxDelay = maxDelay;
+
+        String name = index.getDefinition().getName();
+        this.metrics = new IndexWriterMetrics(name);
+
+        flushThread = new CustomThreadFactory("index-writer-" + name, null, true).newThread(new Runnable() {
+            @Override
+            public void run() {
+                writeBuffers();
+            }
+        });
+        flushThread.start();
+    }
+
+    public ListenableFuture<Void> addEntry(IndexEntry entry) throws IOException, InterruptedException {
+        ArgumentValidator.notNull(entry, "entry");
+        return addEntries(Collections.singletonList(entry));
+    }
+
+    /**
+     * Adds entries to the index, see {@link Index#addEntries}.
+     *
+     * @return a future which completes when the entries are written
+     */
+    public ListenableFuture<Void> addEntries(List<IndexEntry> entries) throws IOException, InterruptedException {
+        ArgumentValidator.notNull(entries, "entries");
+
+        List<Mutation> puts = new ArrayList<Mutation>(entries.size());
+        for (IndexEntry entry : entries) {
+            entry.validate();
+            puts.add(index.createAddEntryPut(entry));
+        }
+
+        return buffer(puts);
+    }
+
+    public ListenableFuture<Void> removeEntry(IndexEntry entry) throws IOException, InterruptedException {
+        ArgumentValidator.notNull(entry, "entry");
+        return removeEntries(Collections.singletonList(entry));
+    }
+
+    /**
+     * Removes entries from the index, see {@link Index#removeEntries}.
+     *
+     * @return a future which completes when the entries are removed
+     */
+    public ListenableFuture<Void> removeEntries(List<IndexEntry> entries) throws IOException, InterruptedException {
+        ArgumentValidator.notNull(entries, "entries");
+
+        List<Mutation> deletes = new ArrayList<Mutation>(entries.size());
+        for (IndexEntry entry : entries) {
+            entry.validate();
+            deletes.add(index.createRemoveEntryDelete(entry));
+        }
+
+        return buffer(deletes);
+    }
+
+    /**
+     * Writes the buffered mutations, and waits until they, and all mutations which were being written, are written.
+     */
+    public void flush() throws IOException, InterruptedException {
+        SettableFuture<Void> future = SettableFuture.create();
+        synchronized (this) {
+            checkNotClosed();
+            bufferFutures.add(future);
+            flushRequested = true;
+            notifyAll();
+        }
+        waitFor(future);
+    }
+
+    /**
+     * Waits for the completion of a future returned by this writer.
+     *
+     * @throws IOException if the mutations could not be written
+     */
+    public static void waitFor(ListenableFuture<Void> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error writing index entries", e.getCause());
+        }
+    }
+
+    /**
+     * Writes the buffered mutations and stops the writer.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+
+        try {
+            flushThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metrics.shutdown();
+    }
+
+    private ListenableFuture<Void> buffer(List<Mutation> mutations) throws InterruptedException {
+        SettableFuture<Void> future = SettableFuture.create();
+        if (mutations.isEmpty()) {
+            future.set(null);
+            return future;
+        }
+
+        long blockedSince = -1;
+        synchronized (this) {
+            checkNotClosed();
+
+            // All mutations of a call go in the same buffer, so that they are written in one go
+            while (!buffer.isEmpty() && buffer.size() + mutations.size() > maxBufferSize) {
+                if (blockedSince == -1) {
+                    blockedSince = System.currentTimeMillis();
+                }
+                flushRequested = true;
+                notifyAll();
+                wait();
+                checkNotClosed();
+            }
+
+            if (bufferFutures.isEmpty()) {
+                bufferCreated = System.currentTimeMillis();
+            }
+            for (Mutation mutation : mutations) {
+                if (buffer.put(new ByteArrayKey(mutation.getRow()), mutation) != null) {
+                    metrics.reportCoalesced();
+                }
+            }
+            bufferFutures.add(future);
+            metrics.reportBufferSize(buffer.size());
+
+            // Wake up the flush thread when it has something new to wait for or to do
+            if (bufferFutures.size() == 1 || buffer.size() >= flushSize) {
+                notifyAll();
+            }
+        }
+
+        if (blockedSince != -1) {
+            metrics.reportBlocked(System.currentTimeMillis() - blockedSince);
+        }
+
+        return future;
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("IndexWriter for index " + index.getDefinition().getName() +
+                    " is closed.");
+        }
+    }
+
+    private void writeBuffers() {
+        while (true) {
+            Map<ByteArrayKey, Mutation> mutations;
+            List<SettableFuture<Void>> futures;
+
+            synchronized (this) {
+                try {
+                    while (!isBufferDue()) {
+                        if (closed && bufferFutures.isEmpty()) {
+                            return;
+                        }
+                        long wait = bufferFutures.isEmpty() ? 0 :
+                                bufferCreated + maxDelay - System.currentTimeMillis();
+                        if (bufferFutures.isEmpty() || wait > 0) {
+                            wait(Math.max(wait, 0));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Only happens when the thread is interrupted from outside this class, don't lose the buffer
+                    log.error("IndexWriter for index " + index.getDefinition().getName() + " was interrupted, "
+                            + buffer.size() + " buffered mutations were not written.");
+                    for (SettableFuture<Void> future : bufferFutures) {
+                        future.setException(e);
+                    }
+                    return;
+                }
+
+                mutations = buffer;
+                futures = bufferFutures;
+                buffer = new LinkedHashMap<ByteArrayKey, Mutation>();
+                bufferFutures = new ArrayList<SettableFuture<Void>>();
+                flushRequested = false;
+                metrics.reportBufferSize(0);
+
+                // Wake up the callers waiting for room in the buffer
+                notifyAll();
+            }
+
+            write(mutations, futures);
+        }
+    }
+
+    private boolean isBufferDue() {
+        if (bufferFutures.isEmpty()) {
+            return false;
+        }
+        return closed || flushRequested || buffer.size() >= flushSize
+                || System.currentTimeMillis() - bufferCreated >= maxDelay;
+    }
+
+    private void write(Map<ByteArrayKey, Mutation> mutations, List<SettableFuture<Void>> futures) {
+        long before = System.currentTimeMillis();
+
+        List<Put> puts = new ArrayList<Put>();
+        List<Delete> deletes = new ArrayList<Delete>();
+        for (Mutation mutation : mutations.values()) {
+            if (mutation instanceof Put) {
+                puts.add((Put) mutation);
+            } else {
+                deletes.add((Delete) mutation);
+            }
+        }
+
+        try {
+            index.write(puts, deletes);
+            metrics.reportFlush(System.currentTimeMillis() - before, mutations.size());
+            for (SettableFuture<Void> future : futures) {
+                future.set(null);
+            }
+        } catch (Throwable t) {
+            // Also log the error, since not all callers wait for the outcome
+            log.error("Error writing " + mutations.size() + " mutations to index " + index.getDefinition().getName(), t);
+            for (SettableFuture<Void> future : futures) {
+                future.setException(t);
+            }
+        }
+    }
+}
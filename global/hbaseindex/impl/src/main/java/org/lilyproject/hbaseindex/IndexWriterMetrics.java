@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.hbaseindex;
+
+import javax.management.ObjectName;
+
+import org.apache.hadoop.metrics.MetricsContext;
+import org.apache.hadoop.metrics.MetricsRecord;
+import org.apache.hadoop.metrics.MetricsUtil;
+import org.apache.hadoop.metrics.Updater;
+import org.apache.hadoop.metrics.util.MetricsBase;
+import org.apache.hadoop.metrics.util.MetricsIntValue;
+import org.apache.hadoop.metrics.util.MetricsRegistry;
+import org.apache.hadoop.metrics.util.MetricsTimeVaryingLong;
+import org.apache.hadoop.metrics.util.MetricsTimeVaryingRate;
+import org.lilyproject.util.hbase.metrics.MBeanUtil;
+import org.lilyproject.util.hbase.metrics.MetricsDynamicMBeanBase;
+
+/**
+ * Metrics of an {@link IndexWriter}.
+ */
+class IndexWriterMetrics implements Updater {
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final MetricsRecord metricsRecord;
+    private final MetricsContext context;
+    private final MetricsTimeVaryingRate flushRate;
+    private final MetricsTimeVaryingLong mutations;
+    private final MetricsTimeVaryingLong coalescedMutations;
+    private final MetricsTimeVaryingRate blockedRate;
+    private final MetricsIntValue bufferedMutations;
+    private final IndexWriterMetricsMXBean mbean;
+    private final String recordName;
+
+    IndexWriterMetrics(String recordName) {
+        this.recordName = recordName;
+        flushRate = new MetricsTimeVaryingRate("flush", registry);
+        mutations = new MetricsTimeVaryingLong("mutations", registry);
+        coalescedMutations = new MetricsTimeVaryingLong("coalescedMutations", registry);
+        blockedRate = new MetricsTimeVaryingRate("blocked", registry);
+        bufferedMutations = new MetricsIntValue("bufferedMutations", registry);
+
+        context = MetricsUtil.getContext("hbaseindex");
+        metricsRecord = MetricsUtil.createRecord(context, recordName);
+        context.registerUpdater(this);
+        mbean = new IndexWriterMetricsMXBean(this.registry);
+    }
+
+    public void shutdown() {
+        context.unregisterUpdater(this);
+        mbean.shutdown();
+    }
+
+    @Override
+    public void doUpdates(MetricsContext unused) {
+        synchronized (this) {
+            for (MetricsBase m : registry.getMetricsList()) {
+                m.pushMetric(metricsRecord);
+            }
+        }
+        metricsRecord.update();
+    }
+
+    /**
+     * Reports the writing of a buffer.
+     *
+     * @param mutations the number of mutations written
+     */
+    void reportFlush(long duration, int mutations) {
+        flushRate.inc(duration);
+        this.mutations.inc(mutations);
+    }
+
+    /**
+     * Reports a mutation which replaced a buffered mutation of the same row.
+     */
+    void reportCoalesced() {
+        coalescedMutations.inc();
+    }
+
+    /**
+     * Reports the time a caller was held up because the buffer was full.
+     */
+    void reportBlocked(long duration) {
+        blockedRate.inc(duration);
+    }
+
+    void reportBufferSize(int size) {
+        bufferedMutations.set(size);
+    }
+
+    public class IndexWriterMetricsMXBean extends MetricsDynamicMBeanBase {
+        private final ObjectName mbeanName;
+
+        public IndexWriterMetricsMXBean(MetricsRegistry registry) {
+            super(registry, "Lily HBase Index Writer");
+
+            mbeanName = MBeanUtil.registerMBean("HBase Index Writer", recordName, this);
+        }
+
+        public void shutdown() {
+            if (mbeanName != null) {
+                MBeanUtil.unregisterMBean(mbeanName);
+            }
+        }
+    }
+}
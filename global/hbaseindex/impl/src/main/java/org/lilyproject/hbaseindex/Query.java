@@ -43,6 +43,14 @@ public class Query {
     private List<EqualsCondition> eqConditions = new ArrayList<EqualsCondition>();
     private RangeCondition rangeCondition;
     private IndexFilter indexFilter;
+    private Integer caching;
+    private Boolean cacheBlocks;
+    private byte[] startAfter;
+
+    /**
+     * The default number of index entries read in one go from the server.
+     */
+    public static final int DEFAULT_CACHING = 30;
 
     public static final Object MIN_VALUE = new Object() {
         @Override
@@ -116,6 +124,56 @@ public class Query {
         return null;
     }
 
+    /**
+     * @return the number of index entries to be read in one go, or null if not set
+     * @see #setCaching(int)
+     */
+    public Integer getCaching() {
+        return caching;
+    }
+
+    /**
+     * Sets the number of index entries to be read in one go from the server, by default
+     * {@link Index#getScanCaching()}. Queries which are expected to return many entries which
+     * are consumed while iterating can use a larger value to save round trips, the
+     * entries are still fetched incrementally.
+     */
+    public void setCaching(int caching) {
+        this.caching = caching;
+    }
+
+    /**
+     * @return whether to use block caching, or null if not set
+     * @see #setCacheBlocks(boolean)
+     */
+    public Boolean getCacheBlocks() {
+        return cacheBlocks;
+    }
+
+    /**
+     * Enable or disable block caching for the scan performed by this query, by default
+     * {@link Index#getScanCacheBlocks()}.
+     */
+    public void setCacheBlocks(boolean cacheBlocks) {
+        this.cacheBlocks = cacheBlocks;
+    }
+
+    /**
+     * @see #setStartAfter(byte[])
+     */
+    public byte[] getStartAfter() {
+        return startAfter;
+    }
+
+    /**
+     * Makes the query only return the results after the given position, as obtained from
+     * {@link QueryResult#getPosition()} on a result of the same query. The scan starts
+     * directly at the position, the preceding results are not read again.
+     */
+    public void setStartAfter(byte[] startAfter) {
+        this.startAfter = startAfter;
+    }
+
     public RangeCondition getRangeCondition() {
         return rangeCondition;
     }
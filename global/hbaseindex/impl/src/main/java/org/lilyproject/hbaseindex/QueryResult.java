@@ -30,6 +30,27 @@ public interface QueryResult extends Closeable {
      */
     byte[] next() throws IOException;
 
+    /**
+     * Move forward to and return the first result, after the current one, whose identifier is equal to or larger
+     * than the given identifier. Implementations can use this to skip over results without fetching them, which
+     * makes intersecting query results efficient.
+     *
+     * <p>This only makes sense for query results which return their identifiers in increasing order, see
+     * {@link Conjunction}.</p>
+     *
+     * @return the identifier of the result moved to, or null if the end is reached.
+     */
+    byte[] advanceTo(byte[] identifier) throws IOException;
+
+    /**
+     * Returns the position of the current result in the index. Passing it to {@link Query#setStartAfter} makes
+     * the same query continue after this result, which allows to page through large results.
+     *
+     * <p>For a {@link Conjunction} or {@link Disjunction}, this is the position in the index of one of the
+     * combined results.</p>
+     */
+    byte[] getPosition();
+
     /**
      * Retrieves data that was stored as part of the {@link IndexEntry} from the current index
      * entry (corresponding to the last {@link #next} call).
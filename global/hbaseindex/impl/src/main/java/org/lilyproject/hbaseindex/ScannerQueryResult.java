@@ -19,17 +19,34 @@ import java.io.IOException;
 
 import com.gotometrics.orderly.StructIterator;
 import com.gotometrics.orderly.StructRowKey;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
 
 /**
  * A QueryResult on top of a HBase scanner.
+ *
+ * <p>{@link #advanceTo} first tries to reach the requested identifier with a few next() calls, these are cheap
+ * as long as the rows come from the scanner cache. If that does not suffice, the scanner is closed and a new one is
+ * opened starting at the row key of the requested identifier, so that the rows in between are neither read nor
+ * shipped to the client.</p>
  */
 class ScannerQueryResult extends BaseQueryResult {
+    /**
+     * Number of next() calls advanceTo does before it reopens the scanner.
+     */
+    private static final int SEEK_THRESHOLD = 10;
+
+    private final HTableInterface htable;
+    private final Scan scan;
     private ResultScanner scanner;
 
-    ScannerQueryResult(ResultScanner scanner, IndexDefinition definition) {
+    ScannerQueryResult(HTableInterface htable, Scan scan, IndexDefinition definition) throws IOException {
         super(definition);
-        this.scanner = scanner;
+        this.htable = htable;
+        this.scan = scan;
+        this.scanner = htable.getScanner(scan);
     }
 
     @Override
@@ -44,6 +61,29 @@ class ScannerQueryResult extends BaseQueryResult {
         return decodeIdentifierFrom(rowKey);
     }
 
+    @Override
+    public byte[] advanceTo(byte[] identifier) throws IOException {
+        for (int i = 0; i < SEEK_THRESHOLD; i++) {
+            byte[] next = next();
+            if (next == null || Bytes.compareTo(next, identifier) >= 0) {
+                return next;
+            }
+        }
+
+        // Since the results are in identifier order, all rows up to the one we look for share the fields preceding
+        // the identifier with the current row
+        Object[] values = (Object[]) definition.asStructRowKey().deserialize(currentResult.getRow());
+        values[values.length - 1] = identifier;
+        byte[] seekRow = definition.asStructRowKey().serialize(values);
+
+        scanner.close();
+        Scan seekScan = new Scan(scan);
+        seekScan.setStartRow(seekRow);
+        scanner = htable.getScanner(seekScan);
+
+        return next();
+    }
+
     private byte[] decodeIdentifierFrom(byte[] rowKey) throws IOException {
         final StructRowKey structRowKey = definition.asStructRowKey();
         structRowKey.iterateOver(rowKey);
@@ -17,8 +17,15 @@ package org.lilyproject.hbaseindex;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.gotometrics.orderly.Order;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.AfterClass;
@@ -27,6 +34,7 @@ import org.junit.Test;
 import org.lilyproject.hadooptestfw.HBaseProxy;
 import org.lilyproject.hadooptestfw.TestHelper;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -971,6 +979,149 @@ public class IndexTest {
         assertEquals("foo", result.getDataAsString("originalValue"));
     }
 
+    @Test
+    public void testAdvanceTo() throws Exception {
+        final String INDEX_NAME = "advanceTo";
+        IndexManager indexManager = new IndexManager(HBASE_PROXY.getConf());
+
+        IndexDefinition indexDef = new IndexDefinition(INDEX_NAME);
+        indexDef.addStringField("field1");
+        Index index = indexManager.getIndex(indexDef);
+
+        for (String value : new String[]{"x", "y"}) {
+            for (int i = 0; i < 100; i++) {
+                IndexEntry entry = new IndexEntry(indexDef);
+                entry.addField("field1", value);
+                entry.addData(Bytes.toBytes("originalValue"), Bytes.toBytes(value + i));
+                entry.setIdentifier(Bytes.toBytes(String.format("key%03d", i)));
+                index.addEntry(entry);
+            }
+        }
+
+        Query query = new Query();
+        query.addEqualsCondition("field1", "x");
+        QueryResult result = index.performQuery(query);
+
+        assertEquals("key000", Bytes.toString(result.next()));
+        // close by, reached by next() calls
+        assertEquals("key005", Bytes.toString(result.advanceTo(Bytes.toBytes("key005"))));
+        // further away, reached by reopening the scanner
+        assertEquals("key050", Bytes.toString(result.advanceTo(Bytes.toBytes("key050"))));
+        assertEquals("x50", result.getDataAsString("originalValue"));
+        assertEquals("key051", Bytes.toString(result.next()));
+        // the new scanner should still stop at the end of the matching rows
+        assertNull(result.advanceTo(Bytes.toBytes("key200")));
+        result.close();
+    }
+
+    @Test
+    public void testStartAfter() throws Exception {
+        final String INDEX_NAME = "startAfter";
+        IndexManager indexManager = new IndexManager(HBASE_PROXY.getConf());
+
+        IndexDefinition indexDef = new IndexDefinition(INDEX_NAME);
+        indexDef.addStringField("field1");
+        Index index = indexManager.getIndex(indexDef);
+
+        for (String value : new String[]{"x", "y"}) {
+            for (int i = 0; i < 5; i++) {
+                index.addEntry(createEntry(indexDef, value, "key" + i));
+            }
+        }
+
+        Query query = new Query();
+        query.addEqualsCondition("field1", "x");
+        QueryResult result = index.performQuery(query);
+        assertEquals("key0", Bytes.toString(result.next()));
+        assertEquals("key1", Bytes.toString(result.next()));
+        byte[] position = result.getPosition();
+        result.close();
+
+        query.setStartAfter(position);
+        assertResultIds(index.performQuery(query), "key2", "key3", "key4");
+    }
+
+    @Test
+    public void testIndexWriter() throws Exception {
+        final String INDEX_NAME = "indexWriter";
+        IndexManager indexManager = new IndexManager(HBASE_PROXY.getConf());
+
+        final IndexDefinition indexDef = new IndexDefinition(INDEX_NAME);
+        indexDef.addStringField("field1");
+        Index index = indexManager.getIndex(indexDef);
+
+        final IndexWriter writer = new IndexWriter(index, 10, 50, 0);
+        try {
+            // Several threads adding entries at the same time
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<ListenableFuture<Void>>> results = new ArrayList<Future<ListenableFuture<Void>>>();
+            for (int i = 0; i < 100; i++) {
+                final int nr = i;
+                results.add(executor.submit(new Callable<ListenableFuture<Void>>() {
+                    @Override
+                    public ListenableFuture<Void> call() throws Exception {
+                        return writer.addEntry(createEntry(indexDef, "x", String.format("key%03d", nr)));
+                    }
+                }));
+            }
+            for (Future<ListenableFuture<Void>> result : results) {
+                IndexWriter.waitFor(result.get());
+            }
+            executor.shutdown();
+
+            Query query = new Query();
+            query.addEqualsCondition("field1", "x");
+            assertResultSize(100, index.performQuery(query));
+
+            IndexWriter.waitFor(writer.removeEntry(createEntry(indexDef, "x", "key000")));
+            assertEquals("key001", Bytes.toString(index.performQuery(query).next()));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testIndexWriterCoalescing() throws Exception {
+        final String INDEX_NAME = "indexWriterCoalescing";
+        IndexManager indexManager = new IndexManager(HBASE_PROXY.getConf());
+
+        IndexDefinition indexDef = new IndexDefinition(INDEX_NAME);
+        indexDef.addStringField("field1");
+        Index index = indexManager.getIndex(indexDef);
+
+        // A long delay, so that the mutations stay in the buffer until the flush
+        IndexWriter writer = new IndexWriter(index, 100, 100, 60000);
+        try {
+            writer.addEntry(createEntry(indexDef, "x", "key1"));
+            writer.addEntry(createEntry(indexDef, "x", "key2"));
+            writer.removeEntry(createEntry(indexDef, "x", "key1"));
+
+            Query query = new Query();
+            query.addEqualsCondition("field1", "x");
+            assertResultSize(0, index.performQuery(query));
+
+            writer.flush();
+            assertResultIds(index.performQuery(query), "key2");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private IndexEntry createEntry(IndexDefinition indexDef, String value, String identifier) {
+        IndexEntry entry = new IndexEntry(indexDef);
+        entry.addField("field1", value);
+        entry.setIdentifier(Bytes.toBytes(identifier));
+        return entry;
+    }
+
+    @Test
+    public void testPrefixSuccessor() throws Exception {
+        assertArrayEquals(new byte[]{1, 3}, Index.prefixSuccessor(new byte[]{1, 2}));
+        assertArrayEquals(new byte[]{2}, Index.prefixSuccessor(new byte[]{1, (byte) 0xFF, (byte) 0xFF}));
+        assertNull(Index.prefixSuccessor(new byte[]{(byte) 0xFF}));
+        assertNull(Index.prefixSuccessor(new byte[0]));
+    }
+
     private void assertResultIds(QueryResult result, String... expectedIdentifiers) throws IOException {
         int resultIdx = 0;
         byte[] identifier;
@@ -16,6 +16,7 @@
 package org.lilyproject.hbaseindex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.hadoop.hbase.util.Bytes;
@@ -55,6 +56,76 @@ public class MergeJoinTest {
         assertNull(result.next());
     }
 
+    @Test
+    public void testConjunctionOfThree() throws Exception {
+        String[] values1 = {"a", "b", "c", "f", "g", "h"};
+        String[] values2 = {"b", "c", "d", "e", "f", "h"};
+        String[] values3 = {"c", "e", "h", "i"};
+
+        QueryResult result = new Conjunction(Arrays.asList(buildQueryResult(values1), buildQueryResult(values2),
+                buildQueryResult(values3)));
+
+        assertEquals("c", Bytes.toString(result.next()));
+        assertEquals("h", Bytes.toString(result.next()));
+        assertNull(result.next());
+    }
+
+    @Test
+    public void testConjunctionAdvanceTo() throws Exception {
+        String[] values1 = {"a", "b", "c", "f", "g"};
+        String[] values2 = {"b", "c", "d", "e", "f", "g"};
+
+        QueryResult result = new Conjunction(buildQueryResult(values1), buildQueryResult(values2));
+
+        assertEquals("b", Bytes.toString(result.next()));
+        assertEquals("f", Bytes.toString(result.advanceTo(Bytes.toBytes("d"))));
+        assertEquals("g", Bytes.toString(result.next()));
+        assertNull(result.advanceTo(Bytes.toBytes("h")));
+    }
+
+    @Test
+    public void testDisjunctionOfThree() throws Exception {
+        String[] values1 = {"a", "c", "f"};
+        String[] values2 = {"b", "c", "g"};
+        String[] values3 = {"c", "d", "f"};
+
+        QueryResult result = new Disjunction(Arrays.asList(buildQueryResult(values1), buildQueryResult(values2),
+                buildQueryResult(values3)));
+
+        assertEquals("a", Bytes.toString(result.next()));
+        assertEquals("b", Bytes.toString(result.next()));
+        assertEquals("c", Bytes.toString(result.next()));
+        assertEquals("d", Bytes.toString(result.next()));
+        assertEquals("f", Bytes.toString(result.next()));
+        assertEquals("g", Bytes.toString(result.next()));
+        assertNull(result.next());
+    }
+
+    @Test
+    public void testDisjunctionAdvanceTo() throws Exception {
+        String[] values1 = {"a", "c", "f", "h"};
+        String[] values2 = {"b", "e", "g"};
+
+        QueryResult result = new Disjunction(buildQueryResult(values1), buildQueryResult(values2));
+
+        assertEquals("a", Bytes.toString(result.next()));
+        assertEquals("e", Bytes.toString(result.advanceTo(Bytes.toBytes("d"))));
+        assertEquals("f", Bytes.toString(result.next()));
+        assertEquals("h", Bytes.toString(result.advanceTo(Bytes.toBytes("h"))));
+        assertNull(result.next());
+    }
+
+    @Test
+    public void testConjunctionOfDisjunctions() throws Exception {
+        QueryResult result = new Conjunction(
+                new Disjunction(buildQueryResult(new String[] {"a", "d"}), buildQueryResult(new String[] {"b", "e"})),
+                new Disjunction(buildQueryResult(new String[] {"b"}), buildQueryResult(new String[] {"c", "e"})));
+
+        assertEquals("b", Bytes.toString(result.next()));
+        assertEquals("e", Bytes.toString(result.next()));
+        assertNull(result.next());
+    }
+
     private QueryResult buildQueryResult(String[] values) {
         List<byte[]> byteValues = new ArrayList<byte[]>(values.length);
 
@@ -19,6 +19,8 @@ import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 
+import org.apache.hadoop.hbase.util.Bytes;
+
 public class StaticQueryResult implements QueryResult {
     private Iterator<byte[]> iterator;
 
@@ -31,6 +33,20 @@ public class StaticQueryResult implements QueryResult {
         return iterator.hasNext() ? iterator.next() : null;
     }
 
+    @Override
+    public byte[] advanceTo(byte[] identifier) throws IOException {
+        byte[] next = next();
+        while (next != null && Bytes.compareTo(next, identifier) < 0) {
+            next = next();
+        }
+        return next;
+    }
+
+    @Override
+    public byte[] getPosition() {
+        throw new UnsupportedOperationException("not supported");
+    }
+
     @Override
     public byte[] getData(byte[] qualifier) {
         return null;
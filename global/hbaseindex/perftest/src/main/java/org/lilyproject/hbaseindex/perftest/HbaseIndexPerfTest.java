@@ -15,6 +15,7 @@
  */
 package org.lilyproject.hbaseindex.perftest;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,6 +24,8 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.hadoop.conf.Configuration;
 import org.lilyproject.cli.OptionUtil;
+import org.lilyproject.hbaseindex.Conjunction;
+import org.lilyproject.hbaseindex.Disjunction;
 import org.lilyproject.hbaseindex.Index;
 import org.lilyproject.hbaseindex.IndexDefinition;
 import org.lilyproject.hbaseindex.IndexEntry;
@@ -39,6 +42,14 @@ import org.lilyproject.util.Version;
 public class HbaseIndexPerfTest extends BaseTestTool {
     private Index index;
 
+    /**
+     * Index on only the word, with a few words per identifier. Equals queries on it return their results in
+     * identifier order, so they can be combined into conjunctions and disjunctions.
+     */
+    private Index wordsIndex;
+
+    private int wordsPerIdentifier = 3;
+
     private IdGenerator idGenerator = new IdGeneratorImpl();
 
     private Option initialInsertOption;
@@ -116,6 +127,11 @@ public class HbaseIndexPerfTest extends BaseTestTool {
 
         index = indexMgr.getIndex(indexDef);
 
+        IndexDefinition wordsIndexDef = new IndexDefinition("perftest2");
+        wordsIndexDef.addStringField("word");
+
+        wordsIndex = indexMgr.getIndex(wordsIndexDef);
+
         initialInserts = OptionUtil.getIntOption(cmd, initialInsertOption, 5000000);
         initialInsertsBatchSize = OptionUtil.getIntOption(cmd, initialInsertBatchOption, 300);
         loops = OptionUtil.getIntOption(cmd, loopsOption, 100000);
@@ -158,6 +174,8 @@ public class HbaseIndexPerfTest extends BaseTestTool {
             executor.submit(new BulkInserter(1));
             executor.submit(new StringRangeQuery());
             executor.submit(new BulkInserter(5));
+            executor.submit(new ConjunctionQuery());
+            executor.submit(new DisjunctionQuery());
         }
 
         stopExecutor();
@@ -174,19 +192,31 @@ public class HbaseIndexPerfTest extends BaseTestTool {
         public void run() {
             try {
                 List<IndexEntry> entries = new ArrayList<IndexEntry>(amount);
+                List<IndexEntry> wordEntries = new ArrayList<IndexEntry>(amount * wordsPerIdentifier);
 
                 for (int i = 0; i < amount; i++) {
+                    byte[] identifier = idGenerator.newRecordId().toBytes();
+
                     IndexEntry entry = new IndexEntry(index.getDefinition());
                     entry.addField("word", Words.get());
                     entry.addField("number", (long) Math.floor(Math.random() * Long.MAX_VALUE));
-                    entry.setIdentifier(idGenerator.newRecordId().toBytes());
+                    entry.setIdentifier(identifier);
                     entries.add(entry);
+
+                    for (int j = 0; j < wordsPerIdentifier; j++) {
+                        IndexEntry wordEntry = new IndexEntry(wordsIndex.getDefinition());
+                        wordEntry.addField("word", Words.get());
+                        wordEntry.setIdentifier(identifier);
+                        wordEntries.add(wordEntry);
+                    }
                 }
 
                 long before = System.nanoTime();
                 index.addEntries(entries);
                 double duration = System.nanoTime() - before;
                 metrics.increment("Index insert in batch of " + amount, "I", amount, duration / 1e6d);
+
+                wordsIndex.addEntries(wordEntries);
             } catch (Throwable t) {
                 t.printStackTrace();
             }
@@ -247,4 +277,52 @@ public class HbaseIndexPerfTest extends BaseTestTool {
             }
         }
     }
+
+    private QueryResult performWordQuery() throws IOException {
+        Query query = new Query();
+        query.addEqualsCondition("word", Words.get());
+        return wordsIndex.performQuery(query);
+    }
+
+    private class ConjunctionQuery implements Runnable {
+        @Override
+        public void run() {
+            try {
+                int resultCount = 0;
+
+                long before = System.nanoTime();
+                QueryResult result = new Conjunction(performWordQuery(), performWordQuery());
+                while (result.next() != null && resultCount < maxResults) {
+                    resultCount++;
+                }
+                double duration = System.nanoTime() - before;
+                metrics.increment("Conjunction query duration", "Q", duration / 1e6d);
+                metrics.increment("Conjunction query # of results", resultCount);
+                result.close();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    private class DisjunctionQuery implements Runnable {
+        @Override
+        public void run() {
+            try {
+                int resultCount = 0;
+
+                long before = System.nanoTime();
+                QueryResult result = new Disjunction(performWordQuery(), performWordQuery());
+                while (result.next() != null && resultCount < maxResults) {
+                    resultCount++;
+                }
+                double duration = System.nanoTime() - before;
+                metrics.increment("Disjunction query duration", "Q", duration / 1e6d);
+                metrics.increment("Disjunction query # of results", resultCount);
+                result.close();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
 }
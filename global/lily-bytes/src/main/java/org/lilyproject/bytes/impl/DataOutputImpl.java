@@ -75,6 +75,23 @@ public class DataOutputImpl implements DataOutput {
         return Arrays.copyOfRange(buffer, 0, pos);
     }
 
+    /**
+     * Returns the underlying byte[], of which the first {@link #getSize()} bytes are the bytes written so far.
+     * Contrary to {@link #toByteArray()} this does not make a copy, the returned byte[] is only valid until
+     * the next write or {@link #reset()}.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Discards the bytes written so far, so that this DataOutputImpl (and its underlying byte[]) can be
+     * reused to write new values.
+     */
+    public void reset() {
+        pos = 0;
+    }
+
     /**
      * Checks if the buffer has enough space to put <code>len</code> bytes.
      * If not the buffer is resized to at least twice its current size.
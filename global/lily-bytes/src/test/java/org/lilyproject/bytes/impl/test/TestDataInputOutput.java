@@ -203,4 +203,16 @@ public class TestDataInputOutput extends TestCase {
         Assert.assertEquals(-1, new DataInputImpl(source, 7, 3).indexOf((byte) 0x00));
     }
 
+    public void testReset() {
+        DataOutputImpl dataOutput = new DataOutputImpl(4);
+        dataOutput.writeUTF("a string which does not fit in the initial buffer");
+        dataOutput.reset();
+        Assert.assertEquals(0, dataOutput.getSize());
+
+        dataOutput.writeLong(42L);
+        Assert.assertEquals(8, dataOutput.getSize());
+        DataInput dataInput = new DataInputImpl(dataOutput.getBuffer(), 0, dataOutput.getSize());
+        Assert.assertEquals(42L, dataInput.readLong());
+    }
+
 }